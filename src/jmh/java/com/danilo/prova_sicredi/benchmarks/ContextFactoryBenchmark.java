@@ -0,0 +1,70 @@
+package com.danilo.prova_sicredi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.danilo.prova_sicredi.support.TestContext;
+import com.danilo.prova_sicredi.support.factories.ContextFactory;
+import com.danilo.prova_sicredi.support.report.ParallelReport;
+
+/**
+ * Measures ContextFactory.getContext() with as many threads as the surefire
+ * thread count: the lookup of the context of a running test, and the creation
+ * and finalization of a context, that creates a test in the shared report.
+ *
+ * @author danilo
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(10)
+public class ContextFactoryBenchmark {
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ParallelReport.initialize();
+	}
+
+	/**
+	 * Every created context adds a test to the report, start a new one so the
+	 * iterations don't get slower.
+	 */
+	@TearDown(Level.Iteration)
+	public void resetReport() {
+		ParallelReport.initialize();
+	}
+
+	@Benchmark
+	public TestContext getExistingContext() {
+		return ContextFactory.getContext("Benchmark");
+	}
+
+	@Benchmark
+	public TestContext createAndFinalizeContext() {
+
+		TestContext context;
+
+		context = ContextFactory.getContext("Benchmark");
+		ContextFactory.finalizeContext();
+
+		return context;
+	}
+
+}
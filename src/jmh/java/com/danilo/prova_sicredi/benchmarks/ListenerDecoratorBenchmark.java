@@ -0,0 +1,108 @@
+package com.danilo.prova_sicredi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.events.EventFiringWebDriver;
+
+import com.danilo.prova_sicredi.support.TestContext;
+import com.danilo.prova_sicredi.support.listeners.ListeningDriver;
+import com.danilo.prova_sicredi.support.listeners.SeleniumListener;
+import com.danilo.prova_sicredi.support.report.ParallelReport;
+import com.danilo.prova_sicredi.support.report.StepTimings;
+
+/**
+ * Measures the time the listener decorators add to each driver command, on top
+ * of the NullDriver, so only the framework is measured. Each command runs on
+ * the raw driver, on the EventFiringWebDriver and on the ListeningDriver, each
+ * one in its own fork so the JIT profile of one driver doesn't slow down the
+ * others.
+ *
+ * @author danilo
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerDecoratorBenchmark {
+
+	private final By locator = By.id("id");
+
+	@Param({ "raw", "EventFiringWebDriver", "ListeningDriver" })
+	public String decorator;
+
+	private WebDriver driver;
+	private WebElement element;
+
+	/**
+	 * The listener keeps every step duration and every passed step goes to the
+	 * report, start again after each iteration so the iterations don't get
+	 * slower.
+	 */
+	@Setup(Level.Iteration)
+	public void setUp() {
+
+		EventFiringWebDriver firing;
+		SeleniumListener listener;
+
+		ParallelReport.initialize();
+		listener = new SeleniumListener(new TestContext("Benchmark"));
+
+		switch (decorator) {
+		case "raw":
+			driver = new NullDriver();
+			break;
+		case "EventFiringWebDriver":
+			firing = new EventFiringWebDriver(new NullDriver());
+			firing.register(listener);
+			driver = firing;
+			break;
+		default:
+			driver = new ListeningDriver(new NullDriver(), listener);
+		}
+
+		element = driver.findElement(locator);
+
+		StepTimings.clear();
+	}
+
+	@Benchmark
+	public WebElement findElement() {
+		return driver.findElement(locator);
+	}
+
+	@Benchmark
+	public String elementGetText() {
+		return element.getText();
+	}
+
+	@Benchmark
+	public String getTitle() {
+		return driver.getTitle();
+	}
+
+	@Benchmark
+	public byte[] getScreenshotAs() {
+		return ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES);
+	}
+
+}
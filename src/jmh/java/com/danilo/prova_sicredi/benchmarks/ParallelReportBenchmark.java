@@ -0,0 +1,85 @@
+package com.danilo.prova_sicredi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.danilo.prova_sicredi.support.report.ParallelReport;
+import com.danilo.prova_sicredi.support.report.ReportNode;
+
+/**
+ * Measures the shared report: creating the test nodes from many threads, and
+ * writing a report of a given size to the disk.
+ *
+ * @author danilo
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelReportBenchmark {
+
+	/**
+	 * An empty report, started again after each iteration so the created tests
+	 * don't pile up.
+	 */
+	@State(Scope.Benchmark)
+	public static class EmptyReport {
+
+		@Setup(Level.Iteration)
+		public void setUp() {
+			ParallelReport.initialize();
+		}
+	}
+
+	/**
+	 * A report with some tests, each one with the steps of a typical test.
+	 */
+	@State(Scope.Benchmark)
+	public static class FilledReport {
+
+		@Param({ "10", "100" })
+		public int tests;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+
+			ReportNode test;
+
+			ParallelReport.initialize();
+
+			for (int i = 0; i < tests; i++) {
+				test = ParallelReport.getExtentTest("Benchmark " + i);
+				for (int step = 0; step < 20; step++) {
+					test.pass("Click on element 'xpath: //a[text()=\"Step " + step + "\"]'.");
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	@Threads(10)
+	public ReportNode getExtentTest(EmptyReport report) {
+		return ParallelReport.getExtentTest("Benchmark");
+	}
+
+	@Benchmark
+	public void flush(FilledReport report) {
+		ParallelReport.flush();
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.danilo.prova_sicredi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.danilo.prova_sicredi.support.TestContext;
+import com.danilo.prova_sicredi.support.report.ParallelReport;
+import com.danilo.prova_sicredi.support.report.ReportHelper;
+import com.danilo.prova_sicredi.support.report.ScreenshotWriter;
+
+/**
+ * Measures ReportHelper.saveScreenshot() with a synthetic PNG of the size of
+ * the browser window, taken by the NullDriver. The naming and the format are
+ * the ones in config.properties: with the content naming the same image is
+ * written once and then only hashed.
+ *
+ * @author danilo
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScreenshotBenchmark {
+
+	private byte[] screenshot;
+	private TestContext context;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		screenshot = NullDriver.createScreenshot(1366, 768);
+		ParallelReport.initialize();
+		context = new TestContext("Benchmark");
+		context.driver = new NullDriver(screenshot);
+	}
+
+	/**
+	 * Wait for the scheduled writes and drop the screenshots, so the disk doesn't
+	 * fill up with the sequential naming.
+	 */
+	@TearDown(Level.Iteration)
+	public void cleanScreenshots() {
+		ScreenshotWriter.awaitPending(60);
+		ParallelReport.initialize();
+	}
+
+	@Benchmark
+	public String saveScreenshot() {
+		return ReportHelper.saveScreenshot(context);
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.danilo.prova_sicredi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.events.EventFiringWebDriver;
+
+import com.danilo.prova_sicredi.support.TestContext;
+import com.danilo.prova_sicredi.support.listeners.ListeningDriver;
+import com.danilo.prova_sicredi.support.listeners.SeleniumListener;
+import com.danilo.prova_sicredi.support.report.ParallelReport;
+import com.danilo.prova_sicredi.support.report.StepTimings;
+
+/**
+ * Measures the before/after callbacks of the SeleniumListener for the most
+ * used commands, and the same commands going through the ListeningDriver and,
+ * as the baseline, through the EventFiringWebDriver, on top of the NullDriver.
+ *
+ * @author danilo
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeleniumListenerBenchmark {
+
+	private final By locator = By.xpath("//input[@id='field-customerName']");
+	private final CharSequence[] keys = { "Teste Sicredi" };
+
+	private WebDriver driver;
+	private WebElement element;
+	private SeleniumListener listener;
+	private WebDriver decorated;
+	private EventFiringWebDriver firing;
+
+	/**
+	 * Every passed step goes to the report and every step is timed, start again
+	 * after each iteration so the iterations don't get slower.
+	 */
+	@Setup(Level.Iteration)
+	public void setUp() {
+
+		TestContext context;
+
+		ParallelReport.initialize();
+
+		context = new TestContext("Benchmark");
+		driver = new NullDriver();
+		element = driver.findElement(locator);
+		listener = new SeleniumListener(context);
+		decorated = new ListeningDriver(driver, listener);
+		firing = new EventFiringWebDriver(driver);
+		firing.register(listener);
+
+		StepTimings.clear();
+	}
+
+	@Benchmark
+	public void findBy() {
+		listener.beforeFindBy(locator, null, driver);
+		listener.afterFindBy(locator, null, driver);
+	}
+
+	@Benchmark
+	public void clickOn() {
+		listener.beforeClickOn(element, driver);
+		listener.afterClickOn(element, driver);
+	}
+
+	@Benchmark
+	public void changeValueOf() {
+		listener.beforeChangeValueOf(element, driver, keys);
+		listener.afterChangeValueOf(element, driver, keys);
+	}
+
+	@Benchmark
+	public void navigateTo() {
+		listener.beforeNavigateTo("https://www.grocerycrud.com/demo/bootstrap_theme", driver);
+		listener.afterNavigateTo("https://www.grocerycrud.com/demo/bootstrap_theme", driver);
+	}
+
+	@Benchmark
+	public WebElement decoratedFindElement() {
+		return decorated.findElement(locator);
+	}
+
+	@Benchmark
+	public void decoratedClick() {
+		decorated.findElement(locator).click();
+	}
+
+	@Benchmark
+	public WebElement firingFindElement() {
+		return firing.findElement(locator);
+	}
+
+	@Benchmark
+	public void firingClick() {
+		firing.findElement(locator).click();
+	}
+
+}
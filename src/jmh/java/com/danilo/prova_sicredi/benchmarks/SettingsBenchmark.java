@@ -0,0 +1,41 @@
+package com.danilo.prova_sicredi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.danilo.prova_sicredi.support.Settings;
+
+/**
+ * Measures Settings.getProperty(), that is read all over the framework, from
+ * one thread and from as many threads as the surefire thread count.
+ *
+ * @author danilo
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SettingsBenchmark {
+
+	@Benchmark
+	public String getProperty() {
+		return Settings.getProperty("screenshot_policy");
+	}
+
+	@Benchmark
+	@Threads(10)
+	public String getPropertyContended() {
+		return Settings.getProperty("screenshot_policy");
+	}
+
+}
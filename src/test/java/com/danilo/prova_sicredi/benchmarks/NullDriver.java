@@ -0,0 +1,227 @@
+package com.danilo.prova_sicredi.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import com.danilo.prova_sicredi.support.stub.StubDriver;
+
+/**
+ * This class is an in-memory driver that answers everything at once, without a
+ * browser, so the benchmarks measure only the framework. The screenshots are
+ * the same synthetic PNG every time.
+ *
+ * @author danilo
+ *
+ */
+public class NullDriver implements WebDriver, JavascriptExecutor, TakesScreenshot {
+
+	private final NullElement element = new NullElement();
+	private final byte[] screenshot;
+
+	/**
+	 * Creates a driver with a tiny screenshot, for the benchmarks that don't
+	 * look at it.
+	 */
+	public NullDriver() {
+		this(new byte[64]);
+	}
+
+	/**
+	 * Creates a driver that returns the given screenshot.
+	 *
+	 * @param screenshot
+	 *            The PNG bytes, see createScreenshot().
+	 */
+	public NullDriver(byte[] screenshot) {
+		this.screenshot = screenshot;
+	}
+
+	/**
+	 * Draws a page-like image, the same as the screenshots of the StubDriver.
+	 *
+	 * @param width
+	 *            Width of the image.
+	 * @param height
+	 *            Height of the image.
+	 * @return the PNG bytes.
+	 */
+	public static byte[] createScreenshot(int width, int height) {
+		return StubDriver.createScreenshot(width, height);
+	}
+
+	@Override
+	public void get(String url) {
+	}
+
+	@Override
+	public String getCurrentUrl() {
+		return "about:blank";
+	}
+
+	@Override
+	public String getTitle() {
+		return "Benchmark";
+	}
+
+	@Override
+	public List<WebElement> findElements(By by) {
+		return Collections.singletonList(element);
+	}
+
+	@Override
+	public WebElement findElement(By by) {
+		return element;
+	}
+
+	@Override
+	public String getPageSource() {
+		return "";
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public void quit() {
+	}
+
+	@Override
+	public Set<String> getWindowHandles() {
+		return Collections.singleton("main");
+	}
+
+	@Override
+	public String getWindowHandle() {
+		return "main";
+	}
+
+	@Override
+	public TargetLocator switchTo() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Navigation navigate() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Options manage() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Object executeScript(String script, Object... args) {
+		return null;
+	}
+
+	@Override
+	public Object executeAsyncScript(String script, Object... args) {
+		return null;
+	}
+
+	@Override
+	public <X> X getScreenshotAs(OutputType<X> target) {
+		return target.convertFromPngBytes(screenshot);
+	}
+
+	/**
+	 * This class is an element that answers everything at once.
+	 */
+	private static class NullElement implements WebElement {
+
+		@Override
+		public void click() {
+		}
+
+		@Override
+		public void submit() {
+		}
+
+		@Override
+		public void sendKeys(CharSequence... keysToSend) {
+		}
+
+		@Override
+		public void clear() {
+		}
+
+		@Override
+		public String getTagName() {
+			return "div";
+		}
+
+		@Override
+		public String getAttribute(String name) {
+			return null;
+		}
+
+		@Override
+		public boolean isSelected() {
+			return false;
+		}
+
+		@Override
+		public boolean isEnabled() {
+			return true;
+		}
+
+		@Override
+		public String getText() {
+			return "text";
+		}
+
+		@Override
+		public List<WebElement> findElements(By by) {
+			return Collections.singletonList(this);
+		}
+
+		@Override
+		public WebElement findElement(By by) {
+			return this;
+		}
+
+		@Override
+		public boolean isDisplayed() {
+			return true;
+		}
+
+		@Override
+		public Point getLocation() {
+			return new Point(0, 0);
+		}
+
+		@Override
+		public Dimension getSize() {
+			return new Dimension(0, 0);
+		}
+
+		@Override
+		public Rectangle getRect() {
+			return new Rectangle(0, 0, 0, 0);
+		}
+
+		@Override
+		public String getCssValue(String propertyName) {
+			return "";
+		}
+
+		@Override
+		public <X> X getScreenshotAs(OutputType<X> target) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+}
@@ -1,50 +1,57 @@
 package com.danilo.prova_sicredi.pageobjects;
 
+import java.util.LinkedHashMap;
+
 import org.openqa.selenium.By;
 import org.openqa.selenium.Keys;
-import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
 
+import com.danilo.prova_sicredi.support.Locators;
 import com.danilo.prova_sicredi.support.PageObject;
 import com.danilo.prova_sicredi.support.report.ReportHelper;
+import com.danilo.prova_sicredi.support.waits.EventWait;
+import com.danilo.prova_sicredi.support.waits.WaitConditions;
 
 public class PageAddCustomer extends PageObject {
 
 	// "Add Customer" header
-	private By lblAddCustomerHeader = By.xpath("//div[contains(text(), 'A') and @class='floatL l5']");
+	private By lblAddCustomerHeader = Locators.xpath("//div[contains(text(), 'A') and @class='floatL l5']");
 
 	// Form fields
-	private By txtName = By.xpath("//input[@id='field-customerName']");
-	private By txtLastName = By.xpath("//input[@id='field-contactLastName']");
-	private By txtContactFirstName = By.xpath("//input[@id='field-contactFirstName']");
-	private By txtPhone = By.xpath("//input[@id='field-phone']");
-	private By txtAddressLine1 = By.xpath("//input[@id='field-addressLine1']");
-	private By txtAddressLine2 = By.xpath("//input[@id='field-addressLine2']");
-	private By txtCity = By.xpath("//input[@id='field-city']");
-	private By txtState = By.xpath("//input[@id='field-state']");
-	private By txtPostalCode = By.xpath("//input[@id='field-postalCode']");
-	private By txtCountry = By.xpath("//input[@id='field-country']");
-	private By txtFromEmployeer = By.xpath("//div[@class='chosen-search']/input");
-	private By txtCreditLimit = By.xpath("//input[@id='field-creditLimit']");
+	private By txtName = Locators.xpath("//input[@id='field-customerName']");
+	private By txtLastName = Locators.xpath("//input[@id='field-contactLastName']");
+	private By txtContactFirstName = Locators.xpath("//input[@id='field-contactFirstName']");
+	private By txtPhone = Locators.xpath("//input[@id='field-phone']");
+	private By txtAddressLine1 = Locators.xpath("//input[@id='field-addressLine1']");
+	private By txtAddressLine2 = Locators.xpath("//input[@id='field-addressLine2']");
+	private By txtCity = Locators.xpath("//input[@id='field-city']");
+	private By txtState = Locators.xpath("//input[@id='field-state']");
+	private By txtPostalCode = Locators.xpath("//input[@id='field-postalCode']");
+	private By txtCountry = Locators.xpath("//input[@id='field-country']");
+	private By txtFromEmployeer = Locators.xpath("//div[@class='chosen-search']/input");
+	private By txtCreditLimit = Locators.xpath("//input[@id='field-creditLimit']");
 
 	// From employer needs special handling
-	private By lblSelectFromEmployer = By.xpath("//span[text()='Select from Employeer']");
+	private By lblSelectFromEmployer = Locators.xpath("//span[text()='Select from Employeer']");
 
 	// Buttons
-	private By btnSave = By.xpath("//button[@id='form-button-save']");
+	private By btnSave = Locators.xpath("//button[@id='form-button-save']");
 	
 	// Links
-	private By lnkGoBackToList = By.xpath("//a[text()='Go back to list']");
+	private By lnkGoBackToList = Locators.xpath("//a[text()='Go back to list']");
 
 	// Success message
-	private By lblSuccessMessage = By.xpath("//div[@id='report-success']");
+	private By lblSuccessMessage = Locators.xpath("//div[@id='report-success']");
 
 	@Override
 	public void validatePageLoaded() {
 		report.info("Validate the 'Add Customer' page has loaded.");
 
 		// Validate the page is displayed
-		new WebDriverWait(driver, timeout).until(ExpectedConditions.presenceOfElementLocated(lblAddCustomerHeader));
+		new EventWait(context, timeout).until(WaitConditions.presenceOfElementLocated(lblAddCustomerHeader));
+
+		// Find the elements used next at once
+		resolveAll(txtName, txtLastName, txtContactFirstName, txtPhone, txtAddressLine1, txtAddressLine2, txtCity,
+				txtState, txtPostalCode, txtCountry, txtCreditLimit, lblSelectFromEmployer, btnSave);
 
 		// Add a screenshot and report entry
 		report.pass("Page was displayed sucessfully.");
@@ -58,28 +65,33 @@ public class PageAddCustomer extends PageObject {
 			String address2, String city, String state, String postalCode, String country, String fromEmployer,
 			String creditLimit) {
 
-		// Send keys to different fields
-		driver.findElement(txtName).sendKeys(name);
-		driver.findElement(txtLastName).sendKeys(lastName);
-		driver.findElement(txtContactFirstName).sendKeys(contactFirstName);
-		driver.findElement(txtPhone).sendKeys(phone);
-		driver.findElement(txtAddressLine1).sendKeys(address1);
-		driver.findElement(txtAddressLine2).sendKeys(address2);
-		driver.findElement(txtCity).sendKeys(city);
-		driver.findElement(txtState).sendKeys(state);
-		driver.findElement(txtPostalCode).sendKeys(postalCode);
-		driver.findElement(txtCountry).sendKeys(country);
-		
-		// "From Employer" needs some special handling
-		driver.findElement(txtCountry).sendKeys(Keys.TAB);
-		driver.findElement(lblSelectFromEmployer).click();
+		LinkedHashMap<By, String> fields;
+
+		// Setup the values of the plain inputs
+		fields = new LinkedHashMap<>();
+		fields.put(txtName, name);
+		fields.put(txtLastName, lastName);
+		fields.put(txtContactFirstName, contactFirstName);
+		fields.put(txtPhone, phone);
+		fields.put(txtAddressLine1, address1);
+		fields.put(txtAddressLine2, address2);
+		fields.put(txtCity, city);
+		fields.put(txtState, state);
+		fields.put(txtPostalCode, postalCode);
+		fields.put(txtCountry, country);
+		fields.put(txtCreditLimit, creditLimit);
+
+		// Fill them (by script or by keys, depending on the settings)
+		fillInputs(fields);
+
+		// "From Employer" needs some special handling, it always gets real keys
+		find(txtCountry).sendKeys(Keys.TAB);
+		find(lblSelectFromEmployer).click();
 		
 		// Wait for the field to be on screen and then send the keys
-		new WebDriverWait(driver, timeout).until(ExpectedConditions.visibilityOfElementLocated(txtFromEmployeer));
-		driver.findElement(txtFromEmployeer).sendKeys(fromEmployer);
-		driver.findElement(txtFromEmployeer).sendKeys(Keys.TAB);
-
-		driver.findElement(txtCreditLimit).sendKeys(creditLimit);
+		new EventWait(context, timeout).until(WaitConditions.visibilityOfElementLocated(txtFromEmployeer));
+		find(txtFromEmployeer).sendKeys(fromEmployer);
+		find(txtFromEmployeer).sendKeys(Keys.TAB);
 
 	}
 
@@ -87,14 +99,14 @@ public class PageAddCustomer extends PageObject {
 	 * Click on the save button.
 	 */
 	public void doClickSave() {
-		driver.findElement(btnSave).click();
+		find(btnSave).click();
 	}
 
 	/**
 	 * Click on "Go Back to list" at the green panel.
 	 */
 	public void doClickGoBackToList() {
-		driver.findElement(lnkGoBackToList).click();
+		find(lnkGoBackToList).click();
 	}
 
 	/**
@@ -109,14 +121,14 @@ public class PageAddCustomer extends PageObject {
 		report.info("Validate that the following message shows up on screen: '" + message + "'.");
 
 		// Check if it is being displayed
-		new WebDriverWait(driver, timeout).until(ExpectedConditions.visibilityOfElementLocated(lblSuccessMessage));
+		new EventWait(context, timeout).until(WaitConditions.visibilityOfElementLocated(lblSuccessMessage));
 
 		// Check if the right message is in place
-		assert (driver.findElement(lblSuccessMessage).getText().trim().toUpperCase().contains(message));
+		assert (find(lblSuccessMessage).getText().trim().toUpperCase().contains(message));
 
 		// Add an screenshot and some reporting
 		report.pass("Message has been found on screen.");
-		ReportHelper.addScreenshot(context, driver.findElement(lblSuccessMessage));
+		ReportHelper.addScreenshot(context, find(lblSuccessMessage));
 	}
 
 }
@@ -1,52 +1,55 @@
 package com.danilo.prova_sicredi.pageobjects;
 
-import java.util.Calendar;
-import java.util.Date;
-
 import org.openqa.selenium.By;
+import org.openqa.selenium.ElementClickInterceptedException;
+import org.openqa.selenium.ElementNotInteractableException;
 import org.openqa.selenium.Keys;
-import org.openqa.selenium.support.ui.ExpectedConditions;
+import org.openqa.selenium.NotFoundException;
+import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.support.ui.Select;
-import org.openqa.selenium.support.ui.WebDriverWait;
 
 import com.danilo.prova_sicredi.support.Environment;
+import com.danilo.prova_sicredi.support.Locators;
 import com.danilo.prova_sicredi.support.PageObject;
 import com.danilo.prova_sicredi.support.report.ReportHelper;
+import com.danilo.prova_sicredi.support.waits.EventWait;
+import com.danilo.prova_sicredi.support.waits.Retry;
+import com.danilo.prova_sicredi.support.waits.WaitConditions;
 
 public class PageCustomers extends PageObject {
 
 	// "Add Customer" header
-	private By lblCustomersHeader = By.xpath("//div[contains(text(), 'Customers') and @class='floatL l5']");
+	private By lblCustomersHeader = Locators.xpath("//div[contains(text(), 'Customers') and @class='floatL l5']");
 
 	// Select Version drop down
-	private By dpwSelectVersion = By.xpath("//select[@id='switch-version-select']");
+	private By dpwSelectVersion = Locators.xpath("//select[@id='switch-version-select']");
 
 	// Add Customer button
-	private By btnAddCustomer = By
+	private By btnAddCustomer = Locators
 			.xpath("//a[contains(text()[2], 'Add Customer') and contains(@class, 'btn btn-default')]");
 
 	// Search elements
-	private By btnSearch = By.xpath("//a[contains(@class, 'search-button')]");
-	private By txtSearch = By.xpath("//input[@name='search']");
+	private By btnSearch = Locators.xpath("//a[contains(@class, 'search-button')]");
+	private By txtSearch = Locators.xpath("//input[@name='search']");
 
 	// Search results elements
-	// Those selectors are parameterized, so we use string for those ones
-	private String lblNameSearchResults = "//td[contains(text(), '?')]";
-	private String chkActions = "//td[contains(text(), '?')]//ancestor::tr//input[@type='checkbox']";
+	// Those selectors are parameterized, so we use templates for those ones
+	private String lblNameSearchResults = "//td[contains(text(), ?)]";
+	private String chkActions = "//td[contains(text(), ?)]//ancestor::tr//input[@type='checkbox']";
 
 	// Delete button
-	private By btnDelete = By.xpath("//tr[contains(@class, 'filter-row')]//a[@title='Delete']");
+	private By btnDelete = Locators.xpath("//tr[contains(@class, 'filter-row')]//a[@title='Delete']");
 
 	// Modal dialog element
-	private By lblDeleteModalHeader = By
+	private By lblDeleteModalHeader = Locators
 			.xpath("//div[contains(@class, 'delete-multiple-confirmation modal')]//h5[text()='Delete']");
-	private By lblDeleteModalTextOne = By.xpath(
+	private By lblDeleteModalTextOne = Locators.xpath(
 			"//div[contains(@class, 'delete-multiple-confirmation modal')]//p[@class='alert-delete-multiple-one']");
-	private By btnDeleteModalDeleteButton = By.xpath(
+	private By btnDeleteModalDeleteButton = Locators.xpath(
 			"//div[contains(@class, 'delete-multiple-confirmation modal')]//button[normalize-space(text())='Delete']");
 
 	// Delete confirmation alert
-	private By lblDeleteConfirmationAlert = By.xpath("//span[@data-growl='message']/p");
+	private By lblDeleteConfirmationAlert = Locators.xpath("//span[@data-growl='message']/p");
 
 	// Drop down options enum
 	public static enum SelectVersionOptions {
@@ -58,7 +61,10 @@ public class PageCustomers extends PageObject {
 		report.info("Validate the 'Customers' page has loaded.");
 
 		// Wait for the element to be on screen
-		new WebDriverWait(driver, timeout).until(ExpectedConditions.presenceOfElementLocated(lblCustomersHeader));
+		new EventWait(context, timeout).until(WaitConditions.presenceOfElementLocated(lblCustomersHeader));
+
+		// Find the elements used next at once
+		resolveAll(dpwSelectVersion, btnAddCustomer, btnSearch);
 
 		// Add a screenshot and report entry
 		report.pass("Page was displayed sucessfully.");
@@ -69,7 +75,7 @@ public class PageCustomers extends PageObject {
 	 * Will navigate to the Customers page and validate it has loaded.
 	 */
 	public void navigateToCustomers() {
-		driver.get(Environment.GROCERY_CRUD_URL);
+		driver.get(Environment.getGroceryCrudUrl());
 
 		// Validate that the page has loaded
 		validatePageLoaded();
@@ -82,7 +88,7 @@ public class PageCustomers extends PageObject {
 	 *            An option from the enum SelectVersionOptions
 	 */
 	public void doSelectVersion(SelectVersionOptions option) {
-		Select dropDown = new Select(driver.findElement(dpwSelectVersion));
+		Select dropDown = new Select(find(dpwSelectVersion));
 
 		switch (option) {
 		case BOOTSTRAP_V3:
@@ -98,7 +104,7 @@ public class PageCustomers extends PageObject {
 	 * Click on the addCustomer button.
 	 */
 	public void doClickAddCustomer() {
-		driver.findElement(btnAddCustomer).click();
+		find(btnAddCustomer).click();
 	}
 
 	/**
@@ -109,16 +115,16 @@ public class PageCustomers extends PageObject {
 	 */
 	public void doSearch(String value) {
 		// Click on the button
-		driver.findElement(btnSearch).click();
+		find(btnSearch).click();
 
 		// Wait for the input to be visible
-		new WebDriverWait(driver, timeout).until(ExpectedConditions.visibilityOfElementLocated(txtSearch));
+		new EventWait(context, timeout).until(WaitConditions.visibilityOfElementLocated(txtSearch));
 
 		// Send keys to the text field
-		driver.findElement(txtSearch).sendKeys(value);
+		find(txtSearch).sendKeys(value);
 
 		// Do the search
-		driver.findElement(txtSearch).sendKeys(Keys.ENTER);
+		find(txtSearch).sendKeys(Keys.ENTER);
 
 	}
 
@@ -137,10 +143,10 @@ public class PageCustomers extends PageObject {
 		By selector;
 
 		// Setup the selector parameters
-		selector = By.xpath(lblNameSearchResults.replaceAll("\\?", value));
+		selector = Locators.xpath(lblNameSearchResults, value);
 
 		// Assert the value is on screen
-		new WebDriverWait(driver, timeout).until(ExpectedConditions.presenceOfElementLocated(selector));
+		new EventWait(context, timeout).until(WaitConditions.presenceOfElementLocated(selector));
 
 		// Add a screenshot
 		ReportHelper.addScreenshot(context);
@@ -152,47 +158,20 @@ public class PageCustomers extends PageObject {
 	 */
 	public void doSelectSearchResult(String name) {
 
-		Calendar cal;
-		Date endTime;
 		By selector;
 
 		// Setup the selector parameters
-		selector = By.xpath(chkActions.replaceAll("\\?", name));
+		selector = Locators.xpath(chkActions, name);
 
 		// Make sure it is clickable
-		new WebDriverWait(driver, timeout).until(ExpectedConditions.elementToBeClickable(selector));
+		new EventWait(context, timeout).until(WaitConditions.elementToBeClickable(selector));
 
 		// When there are too many search results, we'll get stale reference
 		// exceptions.. Needs to be insistent here.
-		cal = Calendar.getInstance();
-		cal.add(Calendar.SECOND, timeout);
-		endTime = cal.getTime();
-
-		// Deactivate Selenium's exception handling for a moment
-		context.setHandleExceptions(false);
-
-		// Try for some time
-		while (Calendar.getInstance().getTime().before(endTime)) {
-
-			try {
-
-				// Click on the checkbox
-				driver.findElement(selector).click();
-
-				// Reactivate exception handling
-				context.setHandleExceptions(true);
-
-				// Leave the method
-				return;
-
-			} catch (Exception e) {
-				continue;
-			}
-
-		}
-
-		// Throw an exception in case we reach this point
-		throw new RuntimeException("Unable to select result.");
+		new Retry(context, timeout)
+				.ignoring(StaleElementReferenceException.class, NotFoundException.class,
+						ElementNotInteractableException.class, ElementClickInterceptedException.class)
+				.run(() -> find(selector).click());
 
 	}
 
@@ -200,7 +179,7 @@ public class PageCustomers extends PageObject {
 	 * Will clicl on the button 'Delete' after selecting a search result.
 	 */
 	public void doClickDelete() {
-		driver.findElement(btnDelete).click();
+		find(btnDelete).click();
 	}
 
 	/**
@@ -217,10 +196,10 @@ public class PageCustomers extends PageObject {
 		report.info("Validate that the following message shows up on screen: '" + message + "'.");
 
 		// Wait for the modal to show up
-		new WebDriverWait(driver, timeout).until(ExpectedConditions.visibilityOfElementLocated(lblDeleteModalHeader));
+		new EventWait(context, timeout).until(WaitConditions.visibilityOfElementLocated(lblDeleteModalHeader));
 
 		// Validate the message
-		assert (driver.findElement(lblDeleteModalTextOne).getText().trim().toUpperCase().equals(message));
+		assert (find(lblDeleteModalTextOne).getText().trim().toUpperCase().equals(message));
 
 		// Add a screenshot and some reporting
 		report.pass("Message has been found on screen.");
@@ -232,7 +211,7 @@ public class PageCustomers extends PageObject {
 	 * Click on 'Delete' in the delete confirmation modal.
 	 */
 	public void doConfirmDeleteModal() {
-		driver.findElement(btnDeleteModalDeleteButton).click();
+		find(btnDeleteModalDeleteButton).click();
 	}
 
 	/**
@@ -248,14 +227,14 @@ public class PageCustomers extends PageObject {
 		report.info("Validate that the following message shows up on screen: '" + message + "'.");
 
 		// Wait for the alert to be on screen and capture it
-		new WebDriverWait(driver, timeout)
-				.until(ExpectedConditions.presenceOfElementLocated(lblDeleteConfirmationAlert));
+		new EventWait(context, timeout)
+				.until(WaitConditions.presenceOfElementLocated(lblDeleteConfirmationAlert));
 
-		new WebDriverWait(driver, timeout)
-				.until(ExpectedConditions.visibilityOfElementLocated(lblDeleteConfirmationAlert));
+		new EventWait(context, timeout)
+				.until(WaitConditions.visibilityOfElementLocated(lblDeleteConfirmationAlert));
 
 		// Do the assert
-		assert (driver.findElement(lblDeleteConfirmationAlert).getText().trim().toUpperCase().equals(message));
+		assert (find(lblDeleteConfirmationAlert).getText().trim().toUpperCase().equals(message));
 
 		// Add a screenshot and some reporting
 		report.pass("Message has been found on screen.");
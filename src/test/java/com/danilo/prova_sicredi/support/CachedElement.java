@@ -0,0 +1,198 @@
+package com.danilo.prova_sicredi.support;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsElement;
+
+/**
+ * This class is the handle given by the ElementCache. It remembers the locator
+ * used to find the element, so when the element turns out to be stale (the
+ * page replaced it or navigated away) it is found again and the command is
+ * sent once more.
+ *
+ * @author danilo
+ *
+ */
+class CachedElement implements WebElement, WrapsElement {
+
+	// The cache that created this handle
+	private final ElementCache cache;
+
+	// The locator of the element
+	private final By locator;
+
+	// The element found by the driver, null when it has to be found again
+	private WebElement element;
+
+	/**
+	 * Creates a new handle.
+	 *
+	 * @param cache
+	 *            The cache that created this handle.
+	 * @param locator
+	 *            The locator of the element.
+	 * @param element
+	 *            The element already found, or null.
+	 */
+	CachedElement(ElementCache cache, By locator, WebElement element) {
+		this.cache = cache;
+		this.locator = locator;
+		this.element = element;
+	}
+
+	/**
+	 * Forget the element, it will be found again on the next command.
+	 */
+	void invalidate() {
+		element = null;
+	}
+
+	/**
+	 * Sends a command to the element. In case the element is stale, it is found
+	 * again and the command is sent once more.
+	 */
+	private <T> T call(Function<WebElement, T> command) {
+
+		// Find it in case it is needed
+		if (element == null) {
+			element = cache.resolve(locator);
+			return command.apply(element);
+		}
+
+		// Try with the cached element, the listener must not fail the test if it is
+		// stale
+		try {
+			cache.expectStaleElements(true);
+			return command.apply(element);
+		} catch (StaleElementReferenceException e) {
+			cache.countStale();
+		} finally {
+			cache.expectStaleElements(false);
+		}
+
+		// Find it again and send the command once more
+		element = cache.resolve(locator);
+		return command.apply(element);
+	}
+
+	/**
+	 * Sends a command that returns nothing.
+	 */
+	private void run(Consumer<WebElement> command) {
+		call(element -> {
+			command.accept(element);
+			return null;
+		});
+	}
+
+	@Override
+	public void click() {
+		run(WebElement::click);
+	}
+
+	@Override
+	public void submit() {
+		run(WebElement::submit);
+	}
+
+	@Override
+	public void sendKeys(CharSequence... keysToSend) {
+		run(element -> element.sendKeys(keysToSend));
+	}
+
+	@Override
+	public void clear() {
+		run(WebElement::clear);
+	}
+
+	@Override
+	public String getTagName() {
+		return call(WebElement::getTagName);
+	}
+
+	@Override
+	public String getAttribute(String name) {
+		return call(element -> element.getAttribute(name));
+	}
+
+	@Override
+	public boolean isSelected() {
+		return call(WebElement::isSelected);
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return call(WebElement::isEnabled);
+	}
+
+	@Override
+	public String getText() {
+		return call(WebElement::getText);
+	}
+
+	@Override
+	public List<WebElement> findElements(By by) {
+		return call(element -> element.findElements(by));
+	}
+
+	@Override
+	public WebElement findElement(By by) {
+		return call(element -> element.findElement(by));
+	}
+
+	@Override
+	public boolean isDisplayed() {
+		return call(WebElement::isDisplayed);
+	}
+
+	@Override
+	public Point getLocation() {
+		return call(WebElement::getLocation);
+	}
+
+	@Override
+	public Dimension getSize() {
+		return call(WebElement::getSize);
+	}
+
+	@Override
+	public Rectangle getRect() {
+		return call(WebElement::getRect);
+	}
+
+	@Override
+	public String getCssValue(String propertyName) {
+		return call(element -> element.getCssValue(propertyName));
+	}
+
+	@Override
+	public <X> X getScreenshotAs(OutputType<X> target) throws WebDriverException {
+		return call(element -> element.getScreenshotAs(target));
+	}
+
+	/**
+	 * Gives the element found by the driver, so it can be passed to scripts.
+	 */
+	@Override
+	public WebElement getWrappedElement() {
+		if (element == null)
+			element = cache.resolve(locator);
+		return element;
+	}
+
+	@Override
+	public String toString() {
+		return "[cached -> " + locator + "]";
+	}
+
+}
@@ -0,0 +1,226 @@
+package com.danilo.prova_sicredi.support;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebElement;
+
+import com.danilo.prova_sicredi.support.listeners.ListeningDriver;
+import com.danilo.prova_sicredi.support.report.LocatorProfile;
+
+/**
+ * This class keeps the elements found by a page object, so each locator is sent
+ * to the driver only once. The handles given are CachedElements, that find the
+ * element again in case it goes stale. The whole cache is dropped when the
+ * SeleniumListener sees a navigation.
+ *
+ * Many locators can be resolved at once with resolveAll(), that finds them all
+ * with a single script.
+ *
+ * @author danilo
+ *
+ */
+public class ElementCache {
+
+	// Finds the elements for a list of locators. Arguments are the kinds of
+	// locator and the selectors. Returns the elements (null for the ones not
+	// found) and the time taken by each one, in milliseconds.
+	public static final String RESOLVE_SCRIPT = "var kinds = arguments[0], selectors = arguments[1];"
+			+ "var result = [], times = [], start;"
+			+ "for (var i = 0; i < selectors.length; i++) {"
+			+ "  start = performance.now();"
+			+ "  if (kinds[i] === 'xpath') result.push(document.evaluate(selectors[i], document, null,"
+			+ "      XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue);"
+			+ "  else if (kinds[i] === 'css') result.push(document.querySelector(selectors[i]));"
+			+ "  else result.push(document.getElementById(selectors[i]));"
+			+ "  times.push(performance.now() - start);"
+			+ "}"
+			+ "return [result, times];";
+
+	// Statistics
+	private static AtomicLong lookups = new AtomicLong();
+	private static AtomicLong hits = new AtomicLong();
+	private static AtomicLong finds = new AtomicLong();
+	private static AtomicLong staleElements = new AtomicLong();
+	private static AtomicLong bulkScripts = new AtomicLong();
+	private static AtomicLong bulkElements = new AtomicLong();
+
+	// The context of the test
+	private final TestContext context;
+
+	// Whether the elements are cached at all
+	private final boolean enabled;
+
+	// The handles given so far
+	private final Map<By, CachedElement> elements = new HashMap<>();
+
+	// The number of navigations seen when the elements were cached
+	private int navigations;
+
+	/**
+	 * Creates a new cache for the driver of the context.
+	 *
+	 * @param context
+	 *            TestContext for the current Thread.
+	 */
+	public ElementCache(TestContext context) {
+		this.context = context;
+		this.enabled = Boolean.parseBoolean(Settings.getProperty("element_cache"));
+		this.navigations = context.getNavigations();
+	}
+
+	/**
+	 * Returns the element for the locator, finding it only in case it is not in
+	 * the cache.
+	 *
+	 * @param locator
+	 *            The locator of the element.
+	 * @return the element.
+	 */
+	public WebElement get(By locator) {
+
+		CachedElement element;
+
+		lookups.incrementAndGet();
+
+		// Just ask the driver in case the cache is off
+		if (!enabled) {
+			return resolve(locator);
+		}
+
+		// Check the cache
+		dropOnNavigation();
+		element = elements.get(locator);
+		if (element != null) {
+			hits.incrementAndGet();
+			return element;
+		}
+
+		// Find it and keep it
+		element = new CachedElement(this, locator, resolve(locator));
+		elements.put(locator, element);
+
+		return element;
+	}
+
+	/**
+	 * Finds the elements of many locators with a single script and keep them in
+	 * the cache. Locators not found by the script are ignored, they will be found
+	 * by get() as usual.
+	 *
+	 * @param locators
+	 *            The locators.
+	 */
+	public void resolveAll(By... locators) {
+
+		List<By> pending;
+		List<String> kinds, selectors;
+		String[] scriptLocator;
+		List<?> answer, found, times;
+		WebElement element;
+
+		// Nothing to do in case the cache is off
+		if (!enabled)
+			return;
+
+		dropOnNavigation();
+
+		// Only the ones not cached yet that can be used in a script
+		pending = new ArrayList<>();
+		kinds = new ArrayList<>();
+		selectors = new ArrayList<>();
+		for (By locator : locators) {
+			scriptLocator = Locators.toScriptLocator(locator);
+			if (scriptLocator != null && !elements.containsKey(locator) && !pending.contains(locator)) {
+				pending.add(locator);
+				kinds.add(scriptLocator[0]);
+				selectors.add(scriptLocator[1]);
+			}
+		}
+
+		if (pending.isEmpty())
+			return;
+
+		// Find them all at once
+		answer = (List<?>) ((JavascriptExecutor) context.driver).executeScript(RESOLVE_SCRIPT, kinds, selectors);
+		found = (List<?>) answer.get(0);
+		times = (List<?>) answer.get(1);
+		bulkScripts.incrementAndGet();
+
+		// Keep the ones found and the time the browser took on each one
+		for (int i = 0; i < pending.size(); i++) {
+			LocatorProfile.recordBrowserTime(Locators.describe(pending.get(i)), ((Number) times.get(i)).doubleValue());
+
+			// The element of a script doesn't know its locator, tell it to the listener
+			if (found.get(i) instanceof WebElement) {
+				element = ListeningDriver.foundBy((WebElement) found.get(i), pending.get(i));
+				elements.put(pending.get(i), new CachedElement(this, pending.get(i), element));
+				bulkElements.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Forget all the elements.
+	 */
+	public void clear() {
+		for (CachedElement element : elements.values()) {
+			element.invalidate();
+		}
+		elements.clear();
+	}
+
+	/**
+	 * @return a line with the cache statistics.
+	 */
+	public static String getStatistics() {
+
+		long saved;
+
+		// Each hit saves a find, each stale element and each script costs one call
+		saved = hits.get() - staleElements.get() - bulkScripts.get();
+
+		return String.format("Lookups: %d, hits: %d (%.0f%%), finds: %d, stale: %d, bulk scripts: %d (%d elements), "
+				+ "round trips saved: %d",
+				lookups.get(), hits.get(), lookups.get() == 0 ? 0.0 : 100.0 * hits.get() / lookups.get(),
+				finds.get(), staleElements.get(), bulkScripts.get(), bulkElements.get(), saved);
+	}
+
+	/**
+	 * Asks the driver for the element.
+	 */
+	WebElement resolve(By locator) {
+		finds.incrementAndGet();
+		return context.driver.findElement(locator);
+	}
+
+	/**
+	 * Counts a stale element found again.
+	 */
+	void countStale() {
+		staleElements.incrementAndGet();
+	}
+
+	/**
+	 * Tells the listener that stale elements are expected and will be handled.
+	 */
+	void expectStaleElements(boolean expected) {
+		context.setStaleElementsExpected(expected);
+	}
+
+	/**
+	 * Drops the cache in case the driver navigated since the elements were found.
+	 */
+	private void dropOnNavigation() {
+		if (navigations != context.getNavigations()) {
+			clear();
+			navigations = context.getNavigations();
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.danilo.prova_sicredi.support;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.testng.annotations.Test;
+
+import com.danilo.prova_sicredi.support.factories.ContextFactory;
+import com.danilo.prova_sicredi.support.server.GroceryCrudServer;
+import com.danilo.prova_sicredi.support.stub.StubDriver;
+
+/**
+ * Unit tests of the element cache, on the stub browser and the local server.
+ * They don't need a real browser.
+ *
+ * @author danilo
+ *
+ */
+@TestClass("Element Cache Unit Tests")
+public class ElementCacheTest {
+
+	@Test(testName = "001 - Bulk resolve", description = "The elements found by resolveAll() are used without finding them again;")
+	public void bulkResolve() {
+
+		List<By> finds;
+		TestContext context;
+		ElementCache cache;
+		By name, phone, form;
+		WebElement element;
+
+		name = Locators.xpath("//input[@id='field-customerName']");
+		phone = By.id("field-phone");
+		form = By.tagName("form");
+
+		// A context of its own, with a driver that counts the finds
+		finds = new ArrayList<>();
+		context = new TestContext(ContextFactory.getContext().report);
+		context.driver = new StubDriver() {
+			@Override
+			public WebElement findElement(By by) {
+				finds.add(by);
+				return super.findElement(by);
+			}
+		};
+
+		try {
+			context.driver.get(GroceryCrudServer.start() + "/add");
+			cache = new ElementCache(context);
+
+			// The tag name can't go in the script, it is left for get()
+			cache.resolveAll(name, phone, form);
+
+			element = cache.get(name);
+			element.sendKeys("Ana");
+			assert (element.getAttribute("value").equals("Ana"));
+
+			element = cache.get(phone);
+			element.sendKeys("51 9999-9999");
+			assert (element.getAttribute("value").equals("51 9999-9999"));
+
+			assert (finds.isEmpty());
+
+			cache.get(form);
+			assert (finds.size() == 1 && finds.get(0).equals(form));
+
+		} finally {
+			context.driver.quit();
+		}
+	}
+
+}
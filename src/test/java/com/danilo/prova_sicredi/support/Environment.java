@@ -1,9 +1,14 @@
 package com.danilo.prova_sicredi.support;
 
+import com.danilo.prova_sicredi.support.server.GroceryCrudServer;
+
 /**
  * This is a simple environment variable class. The reason to use a class instead of a config.properties file
  * is that we can have autocomplete in the IDE and can also add custom logic to define environment-specific
- * values. (not done here, though) 
+ * values.
+ *
+ * The 'environment' setting tells where the application is: 'demo' is the public demo site and 'local' is the
+ * stand-in server started by the tests themselves.
  * @author danilo
  *
  */
@@ -11,5 +16,28 @@ public abstract class Environment {
 
 	// Grocery Application URL
 	public static String GROCERY_CRUD_URL = "https://www.grocerycrud.com/demo/bootstrap_theme";
-	
+
+	/**
+	 * Returns the URL of the Grocery Application for the environment set. The local server is started the first
+	 * time it is needed.
+	 *
+	 * @return the URL of the customers CRUD.
+	 */
+	public static String getGroceryCrudUrl() {
+
+		String environment;
+
+		environment = Settings.getProperty("environment");
+
+		switch (environment) {
+		case "demo":
+			return GROCERY_CRUD_URL;
+		case "local":
+			return GroceryCrudServer.start();
+		default:
+			throw new RuntimeException(
+					String.format("Invalid environment '%s'. Use 'demo' or 'local'.", environment));
+		}
+	}
+
 }
@@ -0,0 +1,262 @@
+package com.danilo.prova_sicredi.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openqa.selenium.By;
+
+/**
+ * This class is the registry of the locators used by the page objects. It
+ * caches the By instances and compiles the parameterized XPath templates, so a
+ * template is parsed only once and the values are always escaped properly.
+ *
+ * In a template, each '?' is replaced by a value as an XPath string literal,
+ * quotes included. For example "//td[contains(text(), ?)]" with the value
+ * "O'Brien" gives //td[contains(text(), "O'Brien")].
+ *
+ * The locators filled from a template are not cached, there would be one for
+ * each value ever used. They remember their template instead, so the timings
+ * and the locator profile group them under the template.
+ *
+ * It also has helpers to use the locators inside the page, in the scripts
+ * injected by the framework, and to suggest CSS selectors for simple XPaths.
+ *
+ * @author danilo
+ *
+ */
+public abstract class Locators {
+
+	// A step of a simple XPath: axis, tag and predicates
+	private static final Pattern STEP = Pattern.compile("(//?)([\\w-]+|\\*)((?:\\[[^\\[\\]]+\\])*)");
+
+	// A predicate that can be written in CSS
+	private static final Pattern PREDICATE = Pattern
+			.compile("@([\\w-]+)\\s*=\\s*'([^']*)'|contains\\(\\s*@([\\w-]+)\\s*,\\s*'([^']*)'\\s*\\)");
+
+	// The By instances already created, by their XPath
+	private static Map<String, By> locators = new ConcurrentHashMap<>();
+
+	// The templates already compiled
+	private static Map<String, String[]> templates = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the locator for an XPath, creating it only once.
+	 *
+	 * @param xpath
+	 *            The XPath.
+	 * @return the locator.
+	 */
+	public static By xpath(String xpath) {
+		return locators.computeIfAbsent(xpath, By::xpath);
+	}
+
+	/**
+	 * Returns the locator for a parameterized XPath. It is not cached, as each
+	 * set of values gives a different locator.
+	 *
+	 * @param template
+	 *            The XPath, with a '?' in the place of each value.
+	 * @param values
+	 *            The values, in order.
+	 * @return the locator.
+	 */
+	public static By xpath(String template, String... values) {
+
+		String[] parts;
+		StringBuilder xpath;
+
+		// Compile the template only once
+		parts = templates.computeIfAbsent(template, key -> key.split("\\?", -1));
+		if (parts.length - 1 != values.length)
+			throw new IllegalArgumentException(String.format("Template '%s' takes %d value(s), %d given.", template,
+					parts.length - 1, values.length));
+
+		// Put the values in place
+		xpath = new StringBuilder(parts[0]);
+		for (int i = 0; i < values.length; i++) {
+			xpath.append(toXPathLiteral(values[i])).append(parts[i + 1]);
+		}
+
+		return new ByTemplate(template, xpath.toString());
+	}
+
+	/**
+	 * Describes a locator for the timings and the locator profile. The locators
+	 * filled from a template are described by the template, so they all share the
+	 * same entry.
+	 *
+	 * @param locator
+	 *            The locator.
+	 * @return the description, like "By.xpath: //td[contains(text(), ?)]".
+	 */
+	public static String describe(By locator) {
+		if (locator instanceof ByTemplate)
+			return "By.xpath: " + ((ByTemplate) locator).getTemplate();
+		return locator.toString();
+	}
+
+	/**
+	 * Writes a value as an XPath string literal. XPath 1.0 has no escaping, so
+	 * values with both kinds of quotes are built with concat().
+	 *
+	 * @param value
+	 *            The value.
+	 * @return the literal, quotes included.
+	 */
+	public static String toXPathLiteral(String value) {
+
+		StringBuilder literal;
+		String[] pieces;
+
+		if (!value.contains("'"))
+			return "'" + value + "'";
+		if (!value.contains("\""))
+			return "\"" + value + "\"";
+
+		// Split on the single quotes and put them back as "'"
+		pieces = value.split("'", -1);
+		literal = new StringBuilder("concat(");
+		for (int i = 0; i < pieces.length; i++) {
+			if (i > 0)
+				literal.append(", \"'\", ");
+			literal.append("'").append(pieces[i]).append("'");
+		}
+
+		return literal.append(")").toString();
+	}
+
+	/**
+	 * Tells how the element is found inside the page. Only XPath, CSS and id
+	 * locators can be used inside the page.
+	 *
+	 * @param locator
+	 *            The Selenium locator.
+	 * @return 'xpath', 'css' or 'id' followed by the selector, or null in case the
+	 *         locator can't be used inside the page.
+	 */
+	public static String[] toScriptLocator(By locator) {
+
+		String text;
+
+		// The By classes only expose the selector through toString()
+		text = locator.toString();
+		if (text.startsWith("By.xpath: "))
+			return new String[] { "xpath", text.substring(10) };
+		if (text.startsWith("By.cssSelector: "))
+			return new String[] { "css", text.substring(16) };
+		if (text.startsWith("By.id: "))
+			return new String[] { "id", text.substring(7) };
+
+		return null;
+	}
+
+	/**
+	 * Suggests a CSS selector equivalent to an XPath. Only simple XPaths can be
+	 * translated: tags, child and descendant steps, and attribute predicates.
+	 * Text matching and axes like ancestor have no CSS equivalent.
+	 *
+	 * @param xpath
+	 *            The XPath.
+	 * @return the CSS selector, or null in case there is none.
+	 */
+	public static String toCssSuggestion(String xpath) {
+
+		Matcher step, predicate;
+		StringBuilder css;
+		List<String> conditions;
+		int position;
+
+		css = new StringBuilder();
+		step = STEP.matcher(xpath.trim());
+		position = 0;
+
+		while (position < xpath.trim().length()) {
+
+			// Every bit of the XPath must be a simple step
+			if (!step.find(position) || step.start() != position)
+				return null;
+
+			// The axis
+			if (css.length() > 0)
+				css.append(step.group(1).equals("//") ? " " : " > ");
+
+			// The tag
+			css.append(step.group(2).equals("*") ? "" : step.group(2));
+
+			// The predicates
+			if (!step.group(3).isEmpty()) {
+				conditions = new ArrayList<>();
+				for (String text : step.group(3).substring(1, step.group(3).length() - 1).split("\\]\\[")) {
+					for (String condition : text.split("\\s+and\\s+")) {
+						conditions.add(condition.trim());
+					}
+				}
+				for (String condition : conditions) {
+					predicate = PREDICATE.matcher(condition);
+					if (!predicate.matches())
+						return null;
+
+					if (predicate.group(1) != null && predicate.group(1).equals("id")
+							&& predicate.group(2).matches("[\\w-]+")) {
+						css.append("#").append(predicate.group(2));
+					} else if (predicate.group(1) != null) {
+						css.append("[").append(predicate.group(1)).append("='").append(predicate.group(2)).append("']");
+					} else {
+						css.append("[").append(predicate.group(3)).append("*='").append(predicate.group(4))
+								.append("']");
+					}
+				}
+			}
+
+			position = step.end();
+		}
+
+		return css.length() == 0 ? null : css.toString();
+	}
+
+	/**
+	 * This class is an XPath locator filled from a template. It works as any XPath
+	 * locator, and also knows the template it came from.
+	 */
+	public static class ByTemplate extends By.ByXPath {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String template;
+		private final String xpath;
+
+		/**
+		 * Creates a new locator.
+		 *
+		 * @param template
+		 *            The XPath, with a '?' in the place of each value.
+		 * @param xpath
+		 *            The XPath with the values in place.
+		 */
+		ByTemplate(String template, String xpath) {
+			super(xpath);
+			this.template = template;
+			this.xpath = xpath;
+		}
+
+		/**
+		 * @return the template, with a '?' in the place of each value.
+		 */
+		public String getTemplate() {
+			return template;
+		}
+
+		/**
+		 * @return the XPath with the values in place.
+		 */
+		public String getXPath() {
+			return xpath;
+		}
+
+	}
+
+}
@@ -1,9 +1,19 @@
 package com.danilo.prova_sicredi.support;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchElementException;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
 
-import com.aventstack.extentreports.ExtentTest;
 import com.danilo.prova_sicredi.support.factories.ContextFactory;
+import com.danilo.prova_sicredi.support.report.ReportNode;
+import com.danilo.prova_sicredi.support.report.StepTimings;
 
 /**
  * This class represents a basic PageObject. It enforces the usage of a
@@ -15,14 +25,37 @@ import com.danilo.prova_sicredi.support.factories.ContextFactory;
  */
 public abstract class PageObject {
 
+	// Sets the value of plain inputs and fires the events a user would. Arguments
+	// are the kinds of locator, the selectors and the values. Returns the
+	// selectors not found.
+	public static final String FILL_SCRIPT = "var kinds = arguments[0], selectors = arguments[1], values = arguments[2];"
+			+ "var missing = [], el, property;"
+			+ "for (var i = 0; i < selectors.length; i++) {"
+			+ "  if (kinds[i] === 'xpath') el = document.evaluate(selectors[i], document, null,"
+			+ "      XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue;"
+			+ "  else if (kinds[i] === 'css') el = document.querySelector(selectors[i]);"
+			+ "  else el = document.getElementById(selectors[i]);"
+			+ "  if (el === null) { missing.push(selectors[i]); continue; }"
+			+ "  el.focus();"
+			+ "  property = Object.getOwnPropertyDescriptor(Object.getPrototypeOf(el), 'value');"
+			+ "  if (property && property.set) property.set.call(el, values[i]); else el.value = values[i];"
+			+ "  el.dispatchEvent(new Event('input', { bubbles: true }));"
+			+ "  el.dispatchEvent(new Event('change', { bubbles: true }));"
+			+ "  el.blur();"
+			+ "}"
+			+ "return missing;";
+
 	// Useful things to have in the PageObject
 	public TestContext context;
 	public WebDriver driver;
-	public ExtentTest report;
+	public ReportNode report;
 
 	// Default timeout
 	public int timeout;
 
+	// The elements found by this page
+	private ElementCache elements;
+
 	/**
 	 * Default constructor gets the TestContext as parameter so that the driver,
 	 * report and context are integrated in the PageObject, removing the need to
@@ -39,6 +72,9 @@ public abstract class PageObject {
 
 		// Stores the default timeout
 		timeout = Integer.parseInt(Settings.getProperty("default_timeout"));
+
+		// Start with no elements found
+		elements = new ElementCache(context);
 	}
 
 	/**
@@ -48,4 +84,91 @@ public abstract class PageObject {
 	 */
 	public abstract void validatePageLoaded();
 
+	/**
+	 * Finds an element. The element is kept by the page, so the next calls with the
+	 * same locator don't go to the driver. The element is found again in case it
+	 * goes stale or the page navigates.
+	 * 
+	 * @param locator
+	 *            The locator of the element.
+	 * @return the element.
+	 */
+	protected WebElement find(By locator) {
+		return elements.get(locator);
+	}
+
+	/**
+	 * Finds many elements with a single script, so the next calls to find() with
+	 * those locators don't go to the driver. Useful to call after the page has
+	 * loaded, with the locators the page is going to use.
+	 * 
+	 * @param locators
+	 *            The locators of the elements.
+	 */
+	protected void resolveAll(By... locators) {
+		elements.resolveAll(locators);
+	}
+
+	/**
+	 * Fills plain text inputs. When the setting 'form_fill_mode' is 'script', all
+	 * the values are set by a single script, which saves a findElement and a
+	 * sendKeys round trip per field. Otherwise the keys are sent as usual, which
+	 * must be used when the page reacts to each key stroke.
+	 * 
+	 * Widgets that are not plain inputs (like the chosen drop downs) must not be
+	 * filled by this method.
+	 * 
+	 * @param values
+	 *            The locators of the inputs and their values, in the order they
+	 *            have to be filled.
+	 */
+	protected void fillInputs(Map<By, String> values) {
+
+		List<String> kinds, selectors, texts;
+		String[] scriptLocator;
+		Object missing;
+		long start;
+		double elapsed, find, changeValue;
+
+		// Send the keys in case it is asked for
+		if (!Settings.getProperty("form_fill_mode").trim().equalsIgnoreCase("script")) {
+			for (Map.Entry<By, String> entry : values.entrySet()) {
+				find(entry.getKey()).sendKeys(entry.getValue());
+			}
+			return;
+		}
+
+		// Setup the script arguments
+		kinds = new ArrayList<>();
+		selectors = new ArrayList<>();
+		texts = new ArrayList<>();
+		for (Map.Entry<By, String> entry : values.entrySet()) {
+			scriptLocator = Locators.toScriptLocator(entry.getKey());
+			if (scriptLocator == null)
+				throw new IllegalArgumentException("Locator can't be used in a script: " + entry.getKey());
+
+			kinds.add(scriptLocator[0]);
+			selectors.add(scriptLocator[1]);
+			texts.add(entry.getValue());
+		}
+
+		// Fill them all at once
+		start = System.nanoTime();
+		missing = ((JavascriptExecutor) driver).executeScript(FILL_SCRIPT, kinds, selectors, texts);
+		elapsed = (System.nanoTime() - start) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+
+		if (missing instanceof List && !((List<?>) missing).isEmpty())
+			throw new NoSuchElementException("Unable to fill the inputs: " + missing);
+
+		// Estimate what it would have taken with a find and a key stroke per field
+		find = StepTimings.getAverageMillis("find");
+		changeValue = StepTimings.getAverageMillis("change value");
+		if (find < 0 || changeValue < 0) {
+			report.info(String.format("%d inputs filled by script in %.0f ms.", values.size(), elapsed));
+		} else {
+			report.info(String.format("%d inputs filled by script in %.0f ms, about %.0f ms saved.", values.size(),
+					elapsed, Math.max(0, values.size() * (find + changeValue) - elapsed)));
+		}
+	}
+
 }
@@ -45,7 +45,11 @@ public abstract class Settings {
 	private static void parseOverrides() {
 
 		// List of possible command-line overrides
-		String[] overrides = new String[] { "browser", "timeout" };
+		String[] overrides = new String[] { "browser", "timeout", "driver_pool", "driver_pool_size",
+				"screenshot_policy", "wait_mode", "form_fill_mode", "data_generator", "data_seed",
+				"fixture_mode", "environment", "local_server_latency", "proxy", "proxy_archive",
+				"chrome_headless", "chrome_window_size", "chrome_block_images", "report_path",
+				"stub_command_latency", "load_users", "load_ramp_up", "load_duration", "load_think_time" };
 
 		// Check for the overrides
 		for (String entry : overrides) {
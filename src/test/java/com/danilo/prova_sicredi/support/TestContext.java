@@ -2,9 +2,10 @@ package com.danilo.prova_sicredi.support;
 
 import org.openqa.selenium.WebDriver;
 
-import com.aventstack.extentreports.ExtentTest;
 import com.danilo.prova_sicredi.support.factories.DriverFactory;
 import com.danilo.prova_sicredi.support.report.ParallelReport;
+import com.danilo.prova_sicredi.support.report.ReportNode;
+import com.danilo.prova_sicredi.support.report.ScreenshotBuffer;
 
 /**
  * The test context makes it easier to handle multi-threaded test execution. We
@@ -24,7 +25,7 @@ public class TestContext {
 	public WebDriver driver;
 
 	// The report instance
-	public ExtentTest report;
+	public ReportNode report;
 
 	// This flag will be checked by the Selenium listener
 	// It defines wheter it has or not to handle exceptions in the exception capture
@@ -34,6 +35,19 @@ public class TestContext {
 	// Mark if Selenium has been initialized already
 	private boolean seleniumInitialized = false;
 
+	// Screenshots kept in memory by the RING_BUFFER screenshot policy
+	private ScreenshotBuffer screenshotBuffer;
+
+	// Number of screenshots requested by the test, used by the EVERY_NTH policy
+	private int screenshotRequests = 0;
+
+	// Number of navigations seen by the Selenium listener, used by the
+	// ElementCache to know when the cached elements are gone
+	private int navigations = 0;
+
+	// Set by the ElementCache while it uses an element that may be stale
+	private boolean staleElementsExpected = false;
+
 	/**
 	 * This is the default constructor. It has to take no parameters so this class
 	 * becomes compatible with any dependency injection system we might want to use
@@ -57,8 +71,20 @@ public class TestContext {
 	public TestContext(String testName) {
 
 		// Get the report instance
-		report = ParallelReport.getExtentTest(testName);
-		
+		this(ParallelReport.getExtentTest(testName));
+
+	}
+
+	/**
+	 * This constructor takes a node that was already created in the suite report.
+	 * 
+	 * @param report
+	 *            The report of the test.
+	 */
+	public TestContext(ReportNode report) {
+
+		this.report = report;
+
 		// Handle exceptions is true
 		handleExceptions = true;
 
@@ -91,9 +117,9 @@ public class TestContext {
 	 * Finalizes Selenium and avoid hanging sessions.
 	 */
 	public void finalizeSelenium() {
-		// In case the driver is not null, close it
+		// In case the driver is not null, close it (or give it back to the pool)
 		if (driver != null) {
-			driver.quit();
+			DriverFactory.releaseDriver(this, driver);
 		}
 
 		// Set the driver to null again
@@ -101,6 +127,64 @@ public class TestContext {
 		seleniumInitialized = false;
 	}
 
+	/**
+	 * Returns the buffer where the screenshots are kept in memory when using the
+	 * RING_BUFFER screenshot policy. The buffer is created on the first call.
+	 * 
+	 * @return the ScreenshotBuffer for this test.
+	 */
+	public synchronized ScreenshotBuffer getScreenshotBuffer() {
+		if (screenshotBuffer == null) {
+			screenshotBuffer = new ScreenshotBuffer(Integer.parseInt(Settings.getProperty("screenshot_buffer_size")),
+					Long.parseLong(Settings.getProperty("screenshot_buffer_max_bytes")));
+		}
+		return screenshotBuffer;
+	}
+
+	/**
+	 * Counts one more screenshot requested by the test.
+	 * 
+	 * @return the number of screenshots requested so far, including this one.
+	 */
+	public int countScreenshotRequest() {
+		return ++screenshotRequests;
+	}
+
+	/**
+	 * Counts one more navigation of the driver.
+	 */
+	public void countNavigation() {
+		navigations++;
+	}
+
+	/**
+	 * @return the number of navigations seen so far.
+	 */
+	public int getNavigations() {
+		return navigations;
+	}
+
+	/**
+	 * Tells whether a stale element is expected and will be handled by the
+	 * caller, so the Selenium Listener must not fail the test.
+	 * 
+	 * @return true or false.
+	 */
+	public boolean isStaleElementsExpected() {
+		return staleElementsExpected;
+	}
+
+	/**
+	 * Defines whether a stale element is expected and will be handled by the
+	 * caller.
+	 * 
+	 * @param staleElementsExpected
+	 *            True in case the caller handles stale elements.
+	 */
+	public void setStaleElementsExpected(boolean staleElementsExpected) {
+		this.staleElementsExpected = staleElementsExpected;
+	}
+
 	/**
 	 * Defines if the Selenium Listener connected to the driver must handle
 	 * exceptions or not.
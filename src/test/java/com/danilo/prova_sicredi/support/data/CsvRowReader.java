@@ -0,0 +1,134 @@
+package com.danilo.prova_sicredi.support.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class reads the rows of a CSV file. The first line has the names of the
+ * columns, that are used as the keys of the rows. Values can be quoted with '"'
+ * to have commas, quotes ('""') and line breaks. Empty values are kept as empty
+ * Strings.
+ *
+ * @author danilo
+ *
+ */
+class CsvRowReader extends RowReader {
+
+	// The names of the columns
+	private List<String> header;
+
+	// The number of the line being read, for the error messages
+	private int line = 0;
+
+	/**
+	 * Creates a reader for an open file.
+	 *
+	 * @param reader
+	 *            The file.
+	 * @param name
+	 *            The name of the file.
+	 */
+	CsvRowReader(BufferedReader reader, String name) {
+		super(reader, name);
+	}
+
+	@Override
+	protected Map<String, String> readRow() throws IOException {
+
+		List<String> values;
+		Map<String, String> row;
+
+		// The first line names the columns
+		if (header == null) {
+			header = readRecord();
+			if (header == null)
+				return null;
+		}
+
+		// Skip the blank lines
+		do {
+			values = readRecord();
+		} while (values != null && values.size() == 1 && values.get(0).isEmpty());
+
+		if (values == null)
+			return null;
+
+		if (values.size() != header.size())
+			throw new IllegalStateException(String.format("Line %d of '%s' has %d value(s), the header has %d.", line,
+					name, values.size(), header.size()));
+
+		row = new LinkedHashMap<>();
+		for (int i = 0; i < header.size(); i++) {
+			row.put(header.get(i), values.get(i));
+		}
+
+		return row;
+	}
+
+	/**
+	 * Reads the values of a record, that may take more than one line when a quoted
+	 * value has line breaks.
+	 *
+	 * @return the values, or null at the end of the file.
+	 */
+	private List<String> readRecord() throws IOException {
+
+		List<String> values;
+		StringBuilder value;
+		boolean quoted;
+		int c;
+
+		c = reader.read();
+		if (c == -1)
+			return null;
+
+		values = new ArrayList<>();
+		value = new StringBuilder();
+		quoted = false;
+		line++;
+
+		while (true) {
+
+			if (quoted) {
+				// Inside quotes only a quote not followed by another one ends the value
+				if (c == -1)
+					throw new IllegalStateException(String.format("Quote not closed at line %d of '%s'.", line, name));
+
+				if (c == '"') {
+					reader.mark(1);
+					if (reader.read() == '"') {
+						value.append('"');
+					} else {
+						reader.reset();
+						quoted = false;
+					}
+				} else {
+					if (c == '\n')
+						line++;
+					value.append((char) c);
+				}
+
+			} else if (c == '"' && value.length() == 0) {
+				quoted = true;
+
+			} else if (c == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+
+			} else if (c == '\n' || c == -1) {
+				values.add(value.toString());
+				return values;
+
+			} else if (c != '\r') {
+				value.append((char) c);
+			}
+
+			c = reader.read();
+		}
+	}
+
+}
@@ -0,0 +1,316 @@
+package com.danilo.prova_sicredi.support.data;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.danilo.prova_sicredi.support.Settings;
+import com.danilo.prova_sicredi.support.proxy.TrafficArchive;
+
+/**
+ * This class creates customer records for the Grocery CRUD tests. The records
+ * are realistic, so they go through the form validations, and each one has a
+ * name no other test is using at the same time, so the searches of a test
+ * never find the customers of another one.
+ *
+ * The records only depend on the seed of the run and on the namespace of the
+ * generator. When 'data_seed' is empty each run takes a new seed from the
+ * clock, and the seed goes to the report, so a run can be repeated with the
+ * very same data by setting 'data_seed' to it. The replay of a traffic archive
+ * takes the seed of the recording, so its requests are found. Each
+ * namespace gives a different tag, that goes at the end of the names, and
+ * every tag has the same length, so a name is never part of another one.
+ *
+ * The data providers use rows(), that works as set by 'data_generator':
+ * 'off' gives the rows of the file as they are, 'unique' adds the tag to the
+ * names of the rows of the file and 'synthetic' creates
+ * 'data_generator_rows' records instead of reading the file.
+ *
+ * @author danilo
+ *
+ */
+public class CustomerGenerator {
+
+	// The data used to build the records, the cities come with the start of their
+	// postal codes
+	private static final String[] FIRST_NAMES = { "Ana", "Bruno", "Camila", "Diego", "Eduarda", "Felipe", "Gabriela",
+			"Henrique", "Isabela", "Joao", "Larissa", "Marcelo", "Natalia", "Otavio", "Paula", "Rafael", "Simone",
+			"Tiago", "Vanessa", "Vinicius" };
+	private static final String[] LAST_NAMES = { "Almeida", "Barbosa", "Cardoso", "Costa", "Ferreira", "Gomes",
+			"Lima", "Martins", "Oliveira", "Pereira", "Ribeiro", "Rocha", "Santos", "Silva", "Souza" };
+	private static final String[] STREETS = { "Av Assis Brasil", "Av Ipiranga", "Rua dos Andradas",
+			"Av Protasio Alves", "Rua Padre Chagas", "Av Borges de Medeiros", "Rua Ramiro Barcelos" };
+	private static final String[][] CITIES = { { "Porto Alegre", "RS", "91" }, { "Curitiba", "PR", "80" },
+			{ "Florianopolis", "SC", "88" }, { "Sao Paulo", "SP", "01" }, { "Belo Horizonte", "MG", "30" } };
+
+	// The employees of the demo database, the only values accepted by the form
+	private static final String[] EMPLOYERS = { "Fixter", "Jennings", "Thompson", "Firrelli", "Patterson", "Bow",
+			"Castillo", "Vanauf" };
+
+	// Length of the tags
+	private static final int TAG_LENGTH = 8;
+
+	// The seed of the run, null until it is first needed
+	private static Long seed;
+
+	// Where the seed came from, for the statistics
+	private static String seedSource;
+
+	// The generator of each thread
+	private static ThreadLocal<CustomerGenerator> threadGenerators = new ThreadLocal<>();
+
+	// Statistics
+	private static AtomicLong generated = new AtomicLong();
+	private static AtomicLong tagged = new AtomicLong();
+
+	// The random numbers of this generator
+	private final Random random;
+
+	// The namespace of this generator, as a tag
+	private final String tag;
+
+	// The number of records given so far
+	private int sequence = 0;
+
+	/**
+	 * Creates a generator for a namespace.
+	 *
+	 * @param seed
+	 *            The seed of the run.
+	 * @param namespace
+	 *            The namespace, any text that tells the users of the data apart.
+	 */
+	public CustomerGenerator(long seed, String namespace) {
+		this.tag = toTag(seed, namespace);
+		this.random = new Random(mix(seed, namespace));
+	}
+
+	/**
+	 * Returns the generator of the current thread, with the thread name as the
+	 * namespace.
+	 *
+	 * @return the generator.
+	 */
+	public static CustomerGenerator forCurrentThread() {
+
+		CustomerGenerator generator;
+
+		generator = threadGenerators.get();
+		if (generator == null) {
+			generator = new CustomerGenerator(getSeed(), Thread.currentThread().getName());
+			threadGenerators.set(generator);
+		}
+
+		return generator;
+	}
+
+	/**
+	 * Gives the rows of a data file to a data provider, as set by
+	 * 'data_generator'. Each row of each test method gets its own namespace, so
+	 * the tests sharing a data provider don't use the same customers.
+	 *
+	 * @param testName
+	 *            The name of the test method.
+	 * @param dataFile
+	 *            The data file, read by the DataSources.
+	 * @return the parameters of each invocation of the test.
+	 */
+	public static Iterator<Object[]> rows(String testName, String dataFile) {
+
+		String mode;
+		long seed;
+		int count;
+		Iterator<Object[]> rows;
+
+		mode = Settings.getProperty("data_generator");
+		seed = getSeed();
+
+		switch (mode) {
+		case "off":
+			return DataSources.rows(dataFile);
+
+		case "unique":
+			rows = DataSources.rows(dataFile);
+			return new Iterator<Object[]>() {
+
+				private int index = 0;
+
+				@Override
+				public synchronized boolean hasNext() {
+					return rows.hasNext();
+				}
+
+				@Override
+				@SuppressWarnings("unchecked")
+				public synchronized Object[] next() {
+					return new Object[] { new CustomerGenerator(seed, testName + "#" + index++)
+							.makeUnique((Map<String, String>) rows.next()[0]) };
+				}
+			};
+
+		case "synthetic":
+			count = Integer.parseInt(Settings.getProperty("data_generator_rows"));
+			return new Iterator<Object[]>() {
+
+				private int index = 0;
+
+				@Override
+				public synchronized boolean hasNext() {
+					return index < count;
+				}
+
+				@Override
+				public synchronized Object[] next() {
+					if (!hasNext())
+						throw new NoSuchElementException();
+					return new Object[] { new CustomerGenerator(seed, testName + "#" + index++).next() };
+				}
+			};
+
+		default:
+			throw new RuntimeException(String.format("Invalid data generator '%s'. Use 'off', 'unique' or "
+					+ "'synthetic'.", mode));
+		}
+	}
+
+	/**
+	 * Creates the next record of this generator.
+	 *
+	 * @return the customer, with the same keys as the data files.
+	 */
+	public Map<String, String> next() {
+
+		Map<String, String> customer;
+		String[] city;
+		String firstName, lastName;
+
+		firstName = pick(FIRST_NAMES);
+		lastName = pick(LAST_NAMES);
+		city = CITIES[random.nextInt(CITIES.length)];
+
+		customer = new LinkedHashMap<>();
+		customer.put("name", firstName + " " + nextTag());
+		customer.put("lastName", lastName);
+		customer.put("contactFirstName", pick(FIRST_NAMES) + " " + pick(LAST_NAMES));
+		customer.put("phone", String.format("51 9%03d-%04d", random.nextInt(1000), random.nextInt(10000)));
+		customer.put("addressLine1", String.format("%s, %d", pick(STREETS), 1 + random.nextInt(5000)));
+		customer.put("addressLine2", random.nextBoolean() ? "Apto " + (101 + random.nextInt(1200))
+				: "Torre " + (char) ('A' + random.nextInt(6)));
+		customer.put("city", city[0]);
+		customer.put("state", city[1]);
+		customer.put("postalCode", String.format("%s%03d-%03d", city[2], random.nextInt(1000), random.nextInt(1000)));
+		customer.put("country", "Brasil");
+		customer.put("fromEmployer", pick(EMPLOYERS));
+		customer.put("creditLimit", String.valueOf(100 * (1 + random.nextInt(100))));
+
+		generated.incrementAndGet();
+
+		return customer;
+	}
+
+	/**
+	 * Copies a record, adding the next tag of this generator to its name.
+	 *
+	 * @param row
+	 *            The record.
+	 * @return the copy.
+	 */
+	public Map<String, String> makeUnique(Map<String, String> row) {
+
+		Map<String, String> customer;
+
+		customer = new LinkedHashMap<>(row);
+		customer.put("name", row.get("name") + " " + nextTag());
+
+		tagged.incrementAndGet();
+
+		return customer;
+	}
+
+	/**
+	 * @return a line with the generator statistics.
+	 */
+	public static String getStatistics() {
+		return String.format("Seed: %d (%s), mode: %s, records created: %d, records tagged: %d", getSeed(),
+				seedSource, Settings.getProperty("data_generator"), generated.get(), tagged.get());
+	}
+
+	/**
+	 * Returns the seed of the run: the one set by 'data_seed' or, when it is
+	 * empty, the one of the traffic archive being replayed, so the requests are
+	 * the recorded ones. Otherwise it is taken from the clock when the run first
+	 * needs it. Everything random in the framework starts from it.
+	 *
+	 * @return the seed of the run.
+	 */
+	public static synchronized long getSeed() {
+
+		String value;
+
+		if (seed == null) {
+			value = Settings.getProperty("data_seed").trim();
+			if (!value.isEmpty()) {
+				seed = Long.parseLong(value);
+				seedSource = "fixed";
+			} else {
+				seed = TrafficArchive.getRecordedSeed();
+				seedSource = "from the traffic archive";
+			}
+
+			if (seed == null) {
+				seed = System.currentTimeMillis();
+				seedSource = "set data_seed to it to replay the run";
+			}
+		}
+
+		return seed;
+	}
+
+	/**
+	 * @return the tag of the namespace followed by the number of the record.
+	 */
+	private String nextTag() {
+		return String.format("%s-%04d", tag, ++sequence);
+	}
+
+	/**
+	 * @return a random item of a list.
+	 */
+	private String pick(String[] items) {
+		return items[random.nextInt(items.length)];
+	}
+
+	/**
+	 * Builds the tag of a namespace: always TAG_LENGTH letters and digits.
+	 */
+	private static String toTag(long seed, String namespace) {
+
+		String tag;
+
+		tag = Long.toString(mix(seed, namespace) & Long.MAX_VALUE, 36).toUpperCase();
+		while (tag.length() < TAG_LENGTH) {
+			tag = "0" + tag;
+		}
+
+		return tag.substring(tag.length() - TAG_LENGTH);
+	}
+
+	/**
+	 * Mixes the seed with a namespace, so close namespaces give far apart numbers
+	 * (the finalizer of SplitMix64).
+	 */
+	private static long mix(long seed, String namespace) {
+
+		long z;
+
+		z = seed * 0x9E3779B97F4A7C15L + namespace.hashCode() * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+		return z ^ (z >>> 31);
+	}
+
+}
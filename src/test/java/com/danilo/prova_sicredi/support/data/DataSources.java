@@ -0,0 +1,234 @@
+package com.danilo.prova_sicredi.support.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.danilo.prova_sicredi.support.Settings;
+
+/**
+ * This class gives the rows of the data files used by the data providers. The
+ * files are under the folder set by 'data_path' and the format is taken from
+ * the extension: '.yaml' or '.yml', '.csv' and '.jsonl'. Each row is a
+ * Map<String, String>, given to the test as its only parameter.
+ *
+ * The rows are read as the test runner asks for them, so a big file never has
+ * to fit in memory. The datasets up to 'data_cache_max_rows' rows are kept once
+ * read, so the next data providers using the same file during the suite don't
+ * parse it again.
+ *
+ * The iterators can be used by data providers with 'parallel = true'.
+ *
+ * @author danilo
+ *
+ */
+public abstract class DataSources {
+
+	// Holds the initialization status
+	private static boolean initialized = false;
+
+	// The folder of the data files
+	private static Path dataPath;
+
+	// The maximum number of rows of a dataset to be kept in memory
+	private static int cacheMaxRows;
+
+	// The datasets fully read, by their path
+	private static Map<Path, List<Map<String, String>>> cache = new ConcurrentHashMap<>();
+
+	// Statistics
+	private static AtomicLong rowsStreamed = new AtomicLong();
+	private static AtomicLong rowsFromCache = new AtomicLong();
+	private static AtomicLong filesOpened = new AtomicLong();
+
+	/**
+	 * Load the settings.
+	 */
+	private static synchronized void initialize() {
+
+		if (initialized)
+			return;
+
+		dataPath = Paths.get(Settings.getProperty("data_path"));
+		cacheMaxRows = Integer.parseInt(Settings.getProperty("data_cache_max_rows"));
+
+		initialized = true;
+	}
+
+	/**
+	 * Gives the rows of a data file to a data provider, from the cache when the
+	 * file has already been read.
+	 *
+	 * @param name
+	 *            The path of the file inside the data folder, with '/' as
+	 *            separator.
+	 * @return the parameters of each invocation of the test.
+	 */
+	public static Iterator<Object[]> rows(String name) {
+
+		Path path;
+		List<Map<String, String>> cached;
+
+		if (!initialized)
+			initialize();
+
+		path = dataPath.resolve(name).normalize();
+
+		// Read from memory in case it is there
+		cached = cache.get(path);
+		if (cached != null) {
+			return new Iterator<Object[]>() {
+
+				private final Iterator<Map<String, String>> rows = cached.iterator();
+
+				@Override
+				public synchronized boolean hasNext() {
+					return rows.hasNext();
+				}
+
+				@Override
+				public synchronized Object[] next() {
+					rowsFromCache.incrementAndGet();
+					return new Object[] { rows.next() };
+				}
+			};
+		}
+
+		// Read the file, keeping the rows in case it is small enough
+		return new CachingIterator(path, open(path));
+	}
+
+	/**
+	 * Reads the rows of a data file, without using the cache.
+	 *
+	 * @param name
+	 *            The path of the file inside the data folder, with '/' as
+	 *            separator.
+	 * @return the rows, read one at a time.
+	 */
+	public static Iterator<Map<String, String>> stream(String name) {
+
+		if (!initialized)
+			initialize();
+
+		return open(dataPath.resolve(name).normalize());
+	}
+
+	/**
+	 * Forget the datasets read so far.
+	 */
+	public static void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * @return a line with the data source statistics.
+	 */
+	public static String getStatistics() {
+		return String.format("Files read: %d, rows streamed: %d, rows from cache: %d, datasets cached: %d",
+				filesOpened.get(), rowsStreamed.get(), rowsFromCache.get(), cache.size());
+	}
+
+	/**
+	 * Opens a data file with the reader of its format.
+	 */
+	private static RowReader open(Path path) {
+
+		String extension;
+		BufferedReader reader;
+
+		extension = path.getFileName().toString().replaceFirst(".*\\.", "").toLowerCase();
+
+		try {
+			reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(
+					String.format("Could not open the data file '%s'.", path.toAbsolutePath()), e);
+		}
+
+		filesOpened.incrementAndGet();
+
+		switch (extension) {
+		case "yaml":
+		case "yml":
+			return new YamlRowReader(reader, path.toString());
+		case "csv":
+			return new CsvRowReader(reader, path.toString());
+		case "jsonl":
+			return new JsonlRowReader(reader, path.toString());
+		default:
+			try {
+				reader.close();
+			} catch (IOException e) {
+				// Nothing was read, there is nothing to lose
+			}
+			throw new IllegalArgumentException(String.format("Unknown data file format '%s'.", path));
+		}
+	}
+
+	/**
+	 * This class reads the rows of a file and keeps them, so the dataset goes to
+	 * the cache once it is read to the end. The rows stop being kept as soon as
+	 * there are more than 'data_cache_max_rows' of them.
+	 */
+	private static class CachingIterator implements Iterator<Object[]> {
+
+		// The path of the file
+		private final Path path;
+
+		// The rows of the file
+		private final RowReader reader;
+
+		// The rows read so far, null when there are too many to be kept
+		private List<Map<String, String>> rows = new ArrayList<>();
+
+		CachingIterator(Path path, RowReader reader) {
+			this.path = path;
+			this.reader = reader;
+		}
+
+		@Override
+		public synchronized boolean hasNext() {
+
+			// Put the dataset in the cache when the file ends
+			if (!reader.hasNext()) {
+				if (rows != null)
+					cache.putIfAbsent(path, Collections.unmodifiableList(rows));
+				rows = null;
+				return false;
+			}
+
+			return true;
+		}
+
+		@Override
+		public synchronized Object[] next() {
+
+			Map<String, String> row;
+
+			row = Collections.unmodifiableMap(reader.next());
+			rowsStreamed.incrementAndGet();
+
+			// Keep it while the dataset is small enough
+			if (rows != null) {
+				rows.add(row);
+				if (rows.size() > cacheMaxRows)
+					rows = null;
+			}
+
+			return new Object[] { row };
+		}
+	}
+
+}
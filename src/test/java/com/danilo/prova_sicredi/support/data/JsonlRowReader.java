@@ -0,0 +1,67 @@
+package com.danilo.prova_sicredi.support.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openqa.selenium.json.Json;
+
+/**
+ * This class reads the rows of a JSON Lines file, where each line is a JSON
+ * object. The values are kept as Strings, numbers and booleans included, so the
+ * rows look the same as the ones read from YAML and CSV. Blank lines are
+ * skipped.
+ *
+ * @author danilo
+ *
+ */
+class JsonlRowReader extends RowReader {
+
+	// The parser
+	private final Json json = new Json();
+
+	// The number of the line being read, for the error messages
+	private int line = 0;
+
+	/**
+	 * Creates a reader for an open file.
+	 *
+	 * @param reader
+	 *            The file.
+	 * @param name
+	 *            The name of the file.
+	 */
+	JsonlRowReader(BufferedReader reader, String name) {
+		super(reader, name);
+	}
+
+	@Override
+	protected Map<String, String> readRow() throws IOException {
+
+		String text;
+		Map<String, Object> object;
+		Map<String, String> row;
+
+		// Skip the blank lines
+		do {
+			text = reader.readLine();
+			line++;
+		} while (text != null && text.trim().isEmpty());
+
+		if (text == null)
+			return null;
+
+		try {
+			object = json.toType(text, Json.MAP_TYPE);
+		} catch (RuntimeException e) {
+			throw new IllegalStateException(String.format("Line %d of '%s' is not a JSON object.", line, name), e);
+		}
+
+		row = new LinkedHashMap<>();
+		object.forEach((key, value) -> row.put(key, value == null ? null : String.valueOf(value)));
+
+		return row;
+	}
+
+}
@@ -0,0 +1,104 @@
+package com.danilo.prova_sicredi.support.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * This class reads the rows of a data file one at a time, so the file never has
+ * to fit in memory. Each format only has to tell how the next row is read; the
+ * file is closed as soon as the last row is given.
+ *
+ * @author danilo
+ *
+ */
+abstract class RowReader implements Iterator<Map<String, String>>, AutoCloseable {
+
+	// The file being read
+	protected final BufferedReader reader;
+
+	// The name of the file, for the error messages
+	protected final String name;
+
+	// The row read ahead by hasNext()
+	private Map<String, String> next;
+
+	// Whether the end of the file has been reached
+	private boolean finished = false;
+
+	/**
+	 * Creates a reader for an open file.
+	 *
+	 * @param reader
+	 *            The file.
+	 * @param name
+	 *            The name of the file.
+	 */
+	RowReader(BufferedReader reader, String name) {
+		this.reader = reader;
+		this.name = name;
+	}
+
+	/**
+	 * Reads the next row of the file.
+	 *
+	 * @return the row, or null at the end of the file.
+	 * @throws IOException
+	 *             In case the file can't be read.
+	 */
+	protected abstract Map<String, String> readRow() throws IOException;
+
+	@Override
+	public boolean hasNext() {
+
+		if (next != null)
+			return true;
+		if (finished)
+			return false;
+
+		// Read ahead, closing the file at the end
+		try {
+			next = readRow();
+		} catch (IOException e) {
+			close();
+			throw new UncheckedIOException(String.format("Could not read the data file '%s'.", name), e);
+		}
+
+		if (next == null)
+			close();
+
+		return next != null;
+	}
+
+	@Override
+	public Map<String, String> next() {
+
+		Map<String, String> row;
+
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		row = next;
+		next = null;
+
+		return row;
+	}
+
+	/**
+	 * Closes the file. Called by itself at the end of the file, or by the user in
+	 * case not all the rows are read.
+	 */
+	@Override
+	public void close() {
+		finished = true;
+		try {
+			reader.close();
+		} catch (IOException e) {
+			System.err.println(String.format("Could not close the data file '%s': %s", name, e.getMessage()));
+		}
+	}
+
+}
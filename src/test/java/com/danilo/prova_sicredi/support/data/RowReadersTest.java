@@ -0,0 +1,203 @@
+package com.danilo.prova_sicredi.support.data;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.danilo.prova_sicredi.support.TestClass;
+
+/**
+ * Unit tests of the readers of the data files, on files written in memory. They
+ * don't need a browser.
+ *
+ * @author danilo
+ *
+ */
+@TestClass("Data Reader Unit Tests")
+public class RowReadersTest {
+
+	@Test(testName = "001 - CSV quoted values", description = "CSV values can be quoted to have commas, quotes and line breaks;")
+	public void csvQuotedValues() {
+
+		List<Map<String, String>> rows;
+
+		rows = read(new CsvRowReader(open("name,address,note\n\"Silva, Ana\",\"Av \"\"Central\"\", 10\",\"one\ntwo\"\n"),
+				"quoted.csv"));
+
+		assert (rows.size() == 1);
+		assert (rows.get(0).get("name").equals("Silva, Ana"));
+		assert (rows.get(0).get("address").equals("Av \"Central\", 10"));
+		assert (rows.get(0).get("note").equals("one\ntwo"));
+	}
+
+	@Test(testName = "002 - CSV empty values", description = "CSV empty values, quoted or not, are empty Strings;")
+	public void csvEmptyValues() {
+
+		List<Map<String, String>> rows;
+
+		rows = read(new CsvRowReader(open("name,address,note\nSouza,,\"\"\n"), "empty.csv"));
+
+		assert (rows.size() == 1);
+		assert (rows.get(0).get("name").equals("Souza"));
+		assert (rows.get(0).get("address").isEmpty());
+		assert (rows.get(0).get("note").isEmpty());
+	}
+
+	@Test(testName = "003 - CSV line ends and blank lines", description = "CSV files with CRLF line ends and blank lines;")
+	public void csvCrlfAndBlankLines() {
+
+		List<Map<String, String>> rows;
+
+		rows = read(new CsvRowReader(open("name,city\r\n\r\nAna,Porto Alegre\r\n\r\n\r\nBruno,\"Curitiba\"\r\n"),
+				"crlf.csv"));
+
+		assert (rows.size() == 2);
+		assert (rows.get(0).keySet().toString().equals("[name, city]"));
+		assert (rows.get(0).get("city").equals("Porto Alegre"));
+		assert (rows.get(1).get("name").equals("Bruno"));
+		assert (rows.get(1).get("city").equals("Curitiba"));
+	}
+
+	@Test(testName = "004 - CSV end of file", description = "CSV files without a line break at the end, or with only the header;")
+	public void csvEndOfFile() {
+
+		List<Map<String, String>> rows;
+
+		rows = read(new CsvRowReader(open("name,city\nAna,Porto Alegre"), "last.csv"));
+		assert (rows.size() == 1);
+		assert (rows.get(0).get("city").equals("Porto Alegre"));
+
+		assert (read(new CsvRowReader(open("name,city\n"), "header.csv")).isEmpty());
+		assert (read(new CsvRowReader(open(""), "empty.csv")).isEmpty());
+	}
+
+	@Test(testName = "005 - CSV row longer than the header", description = "A CSV row with more values than the header is an error;", expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "Line 3 of 'long.csv' has 3 value\\(s\\), the header has 2\\.")
+	public void csvRowLongerThanHeader() {
+		read(new CsvRowReader(open("name,city\nAna,Porto Alegre\nBruno,Curitiba,PR\n"), "long.csv"));
+	}
+
+	@Test(testName = "006 - CSV row shorter than the header", description = "A CSV row with less values than the header is an error;", expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "Line 2 of 'short.csv' has 1 value\\(s\\), the header has 2\\.")
+	public void csvRowShorterThanHeader() {
+		read(new CsvRowReader(open("name,city\nAna\n"), "short.csv"));
+	}
+
+	@Test(testName = "007 - CSV quote not closed", description = "A CSV quote that is never closed is an error;", expectedExceptions = IllegalStateException.class)
+	public void csvQuoteNotClosed() {
+		read(new CsvRowReader(open("name,city\n\"Ana,Porto Alegre\n"), "quote.csv"));
+	}
+
+	@Test(testName = "008 - YAML list", description = "YAML rows can be a list at the root of the file;")
+	public void yamlList() {
+
+		List<Map<String, String>> rows;
+
+		rows = read(new YamlRowReader(open("- name: Ana\n  limit: 200\n- name: Bruno\n  limit: 300\n"), "list.yaml"));
+
+		assert (rows.size() == 2);
+		assert (rows.get(0).get("name").equals("Ana"));
+		assert (rows.get(0).get("limit").equals("200"));
+		assert (rows.get(1).get("limit").equals("300"));
+	}
+
+	@Test(testName = "009 - YAML documents", description = "YAML rows can be the documents of a file with many documents;")
+	public void yamlDocuments() {
+
+		List<Map<String, String>> rows;
+
+		rows = read(new YamlRowReader(open("---\nname: Ana\ncity: Porto Alegre\n---\nname: Bruno\ncity: Curitiba\n"
+				+ "...\n---\nname: Camila\ncity: Florianopolis\n"), "documents.yaml"));
+
+		assert (rows.size() == 3);
+		assert (rows.get(0).get("city").equals("Porto Alegre"));
+		assert (rows.get(1).get("name").equals("Bruno"));
+		assert (rows.get(2).get("city").equals("Florianopolis"));
+	}
+
+	@Test(testName = "010 - YAML null values", description = "YAML plain nulls are null, quoted ones and the other values are kept as written;")
+	public void yamlNullValues() {
+
+		List<Map<String, String>> rows;
+
+		rows = read(new YamlRowReader(open("- a: ~\n  b: null\n  c:\n  d: 'null'\n  e: \"~\"\n  f: 007\n  g: true\n"),
+				"nulls.yaml"));
+
+		assert (rows.size() == 1);
+		assert (rows.get(0).containsKey("a") && rows.get(0).get("a") == null);
+		assert (rows.get(0).containsKey("b") && rows.get(0).get("b") == null);
+		assert (rows.get(0).containsKey("c") && rows.get(0).get("c") == null);
+		assert (rows.get(0).get("d").equals("null"));
+		assert (rows.get(0).get("e").equals("~"));
+		assert (rows.get(0).get("f").equals("007"));
+		assert (rows.get(0).get("g").equals("true"));
+	}
+
+	@Test(testName = "011 - YAML nested value", description = "YAML rows with nested values are an error;", expectedExceptions = IllegalStateException.class)
+	public void yamlNestedValue() {
+		read(new YamlRowReader(open("- name: Ana\n  phones:\n    - 51 9999-9999\n"), "nested.yaml"));
+	}
+
+	@Test(testName = "012 - JSON Lines rows", description = "JSON Lines values are Strings, nulls stay null and blank lines are skipped;")
+	public void jsonlRows() {
+
+		List<Map<String, String>> rows;
+
+		rows = read(new JsonlRowReader(open("{\"name\": \"Ana\", \"limit\": 200, \"active\": true, \"note\": null}\n"
+				+ "\n   \n" + "{\"name\": \"Bruno \\\"B\\\"\", \"limit\": 300}\r\n"), "rows.jsonl"));
+
+		assert (rows.size() == 2);
+		assert (rows.get(0).get("name").equals("Ana"));
+		assert (rows.get(0).get("limit").equals("200"));
+		assert (rows.get(0).get("active").equals("true"));
+		assert (rows.get(0).containsKey("note") && rows.get(0).get("note") == null);
+		assert (rows.get(1).get("name").equals("Bruno \"B\""));
+		assert (rows.get(1).get("limit").equals("300"));
+	}
+
+	@Test(testName = "013 - JSON Lines broken line", description = "A JSON Lines line that is not an object is an error;", expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "Line 3 of 'broken.jsonl' is not a JSON object\\.")
+	public void jsonlBrokenLine() {
+		read(new JsonlRowReader(open("{\"name\": \"Ana\"}\n\n{\"name\": \n"), "broken.jsonl"));
+	}
+
+	@Test(testName = "014 - End of the readers", description = "The readers give no rows after the end and can be closed early;")
+	public void readerEnd() {
+
+		RowReader reader;
+
+		reader = new JsonlRowReader(open("{\"name\": \"Ana\"}\n{\"name\": \"Bruno\"}\n"), "end.jsonl");
+		assert (reader.next().get("name").equals("Ana"));
+		reader.close();
+		assert (!reader.hasNext());
+
+		reader = new CsvRowReader(open("name\nAna\n"), "end.csv");
+		assert (reader.next().get("name").equals("Ana"));
+		assert (!reader.hasNext());
+		assert (!reader.hasNext());
+	}
+
+	/**
+	 * @return a file with the given text.
+	 */
+	private static BufferedReader open(String text) {
+		return new BufferedReader(new StringReader(text));
+	}
+
+	/**
+	 * @return all the rows of a reader.
+	 */
+	private static List<Map<String, String>> read(RowReader reader) {
+
+		List<Map<String, String>> rows;
+
+		rows = new ArrayList<>();
+		while (reader.hasNext()) {
+			rows.add(reader.next());
+		}
+
+		return rows;
+	}
+
+}
@@ -0,0 +1,105 @@
+package com.danilo.prova_sicredi.support.data;
+
+import java.io.BufferedReader;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ScalarEvent;
+
+/**
+ * This class reads the rows of a YAML file. The rows are the mappings of a list
+ * at the root of the file, or the mappings at the root of each document of a
+ * file with many documents ('---').
+ *
+ * The file is read through the parser events instead of being loaded, so only
+ * the current row is in memory. As a result the rows must be flat: every value
+ * is kept as a String, exactly as written, and lists, nested mappings and
+ * aliases are not supported.
+ *
+ * @author danilo
+ *
+ */
+class YamlRowReader extends RowReader {
+
+	// The events of the parser, read as needed
+	private final Iterator<Event> events;
+
+	/**
+	 * Creates a reader for an open file.
+	 *
+	 * @param reader
+	 *            The file.
+	 * @param name
+	 *            The name of the file.
+	 */
+	YamlRowReader(BufferedReader reader, String name) {
+		super(reader, name);
+		this.events = new Yaml().parse(reader).iterator();
+	}
+
+	@Override
+	protected Map<String, String> readRow() {
+
+		Event event;
+
+		// Skip the lists and documents until the next row
+		while (events.hasNext()) {
+			event = events.next();
+
+			if (event.is(Event.ID.MappingStart))
+				return readMapping();
+			if (event.is(Event.ID.StreamEnd))
+				return null;
+			if (!event.is(Event.ID.StreamStart) && !event.is(Event.ID.DocumentStart)
+					&& !event.is(Event.ID.DocumentEnd) && !event.is(Event.ID.SequenceStart)
+					&& !event.is(Event.ID.SequenceEnd))
+				throw new IllegalStateException(
+						String.format("The rows of '%s' must be mappings, found %s.", name, event));
+		}
+
+		return null;
+	}
+
+	/**
+	 * Reads the keys and values of a row, up to the end of the mapping.
+	 */
+	private Map<String, String> readMapping() {
+
+		Map<String, String> row;
+		Event key, value;
+
+		row = new LinkedHashMap<>();
+
+		while (true) {
+			key = events.next();
+			if (key.is(Event.ID.MappingEnd))
+				return row;
+
+			value = events.next();
+			if (!key.is(Event.ID.Scalar) || !value.is(Event.ID.Scalar))
+				throw new IllegalStateException(String.format(
+						"The rows of '%s' must have only plain keys and values, found %s.", name, value));
+
+			row.put(((ScalarEvent) key).getValue(), toValue((ScalarEvent) value));
+		}
+	}
+
+	/**
+	 * Gives the value of a scalar. The plain null values of YAML become null, any
+	 * other value is kept as written.
+	 */
+	private static String toValue(ScalarEvent scalar) {
+
+		String value;
+
+		value = scalar.getValue();
+		if (scalar.getImplicit().canOmitTagInPlainScalar() && value.matches("|~|null|Null|NULL"))
+			return null;
+
+		return value;
+	}
+
+}
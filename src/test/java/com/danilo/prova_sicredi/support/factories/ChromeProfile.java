@@ -0,0 +1,204 @@
+package com.danilo.prova_sicredi.support.factories;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.openqa.selenium.chrome.ChromeOptions;
+
+import com.danilo.prova_sicredi.support.Settings;
+import com.danilo.prova_sicredi.support.proxy.BrowserProxy;
+
+/**
+ * This class is the launch profile of a Chrome session: the ChromeOptions built
+ * from the settings and the temporary profile directory of the browser.
+ *
+ * The settings are:
+ *
+ * - 'chrome_headless': starts Chrome without a window, which saves most of the
+ * startup and rendering time.
+ *
+ * - 'chrome_window_size': the size of the window, like '1366x768', so the pages
+ * are laid out the same way in every machine. When empty, the window is
+ * maximized.
+ *
+ * - 'chrome_disable_extensions' and 'chrome_disable_gpu'.
+ *
+ * - 'chrome_block_images': the images are not downloaded nor decoded.
+ *
+ * - 'chrome_profile_dir': where the temporary profiles are created, ideally a
+ * tmpfs like '/dev/shm'. When the folder does not exist the system temporary
+ * folder is used, and when empty Chrome picks the folder. The profile is
+ * deleted when the session is closed.
+ *
+ * - 'chrome_arguments': more command line arguments, separated by spaces.
+ *
+ * @author danilo
+ *
+ */
+public class ChromeProfile {
+
+	// The options to start Chrome with
+	public final ChromeOptions options;
+
+	// The temporary profile directory, may be null
+	public final Path directory;
+
+	// Whether the window has to be maximized once started
+	public final boolean maximize;
+
+	/**
+	 * Creates a profile.
+	 */
+	private ChromeProfile(ChromeOptions options, Path directory, boolean maximize) {
+		this.options = options;
+		this.directory = directory;
+		this.maximize = maximize;
+	}
+
+	/**
+	 * Builds the profile of a new session from the settings.
+	 *
+	 * @param proxy
+	 *            The proxy to be used by the browser, or null.
+	 * @return the profile, with its directory already created.
+	 */
+	public static ChromeProfile create(BrowserProxy proxy) {
+
+		ChromeOptions options;
+		Map<String, Object> preferences;
+		List<String> arguments;
+		Path directory;
+		String size;
+
+		options = new ChromeOptions();
+		arguments = new ArrayList<>();
+		preferences = new HashMap<>();
+
+		// Avoid annoying (and sometimes blocking) password pop-ups
+		preferences.put("credentials_enable_service", false);
+		preferences.put("profile.password_manager_enabled", false);
+
+		if (isSet("chrome_headless"))
+			arguments.add("--headless");
+
+		// A fixed window, or a maximized one
+		size = Settings.getProperty("chrome_window_size").trim();
+		if (!size.isEmpty())
+			arguments.add("--window-size=" + size.replace('x', ','));
+
+		if (isSet("chrome_disable_extensions"))
+			arguments.add("--disable-extensions");
+
+		if (isSet("chrome_disable_gpu"))
+			arguments.add("--disable-gpu");
+
+		if (isSet("chrome_block_images")) {
+			arguments.add("--blink-settings=imagesEnabled=false");
+			preferences.put("profile.managed_default_content_settings.images", 2);
+		}
+
+		// Nothing to set up on the first run
+		arguments.add("--no-first-run");
+		arguments.add("--no-default-browser-check");
+
+		// A new profile in the fastest folder available
+		directory = createDirectory();
+		if (directory != null)
+			arguments.add("--user-data-dir=" + directory);
+
+		// Send everything through the proxy, the local servers included
+		if (proxy != null) {
+			arguments.add("--proxy-server=http://" + proxy.getAddress());
+			arguments.add("--proxy-bypass-list=<-loopback>");
+		}
+
+		for (String argument : Settings.getProperty("chrome_arguments").trim().split("\\s+")) {
+			if (!argument.isEmpty())
+				arguments.add(argument);
+		}
+
+		options.addArguments(arguments);
+		options.setExperimentalOption("prefs", preferences);
+
+		return new ChromeProfile(options, directory, size.isEmpty());
+	}
+
+	/**
+	 * @return a short description of the profile set, for the report.
+	 */
+	public static String describe() {
+
+		String size;
+
+		size = Settings.getProperty("chrome_window_size").trim();
+
+		return String.format("%s, window %s%s%s%s, profiles in %s", isSet("chrome_headless") ? "headless" : "headed",
+				size.isEmpty() ? "maximized" : size, isSet("chrome_disable_extensions") ? ", no extensions" : "",
+				isSet("chrome_disable_gpu") ? ", no GPU" : "", isSet("chrome_block_images") ? ", no images" : "",
+				Settings.getProperty("chrome_profile_dir").trim().isEmpty() ? "the default folder"
+						: getProfileParent());
+	}
+
+	/**
+	 * Deletes the profile directory, once the browser is closed. Files still in
+	 * use are left behind.
+	 */
+	public void delete() {
+
+		if (directory == null)
+			return;
+
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		} catch (IOException e) {
+			System.err.println("Could not delete the browser profile " + directory + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates a temporary profile directory, in case a folder is set.
+	 */
+	private static Path createDirectory() {
+
+		if (Settings.getProperty("chrome_profile_dir").trim().isEmpty())
+			return null;
+
+		try {
+			return Files.createTempDirectory(getProfileParent().toPath(), "chrome-profile-");
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not create the browser profile.", e);
+		}
+	}
+
+	/**
+	 * @return the folder set for the profiles, or the system temporary folder in
+	 *         case it does not exist.
+	 */
+	private static File getProfileParent() {
+
+		File parent;
+
+		parent = new File(Settings.getProperty("chrome_profile_dir").trim());
+		if (!parent.isDirectory())
+			parent = new File(System.getProperty("java.io.tmpdir"));
+
+		return parent;
+	}
+
+	/**
+	 * @return whether a boolean setting is true.
+	 */
+	private static boolean isSet(String name) {
+		return Boolean.parseBoolean(Settings.getProperty(name).trim());
+	}
+
+}
@@ -1,29 +1,51 @@
 package com.danilo.prova_sicredi.support.factories;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import com.danilo.prova_sicredi.support.TestContext;
 
 /**
  * This class takes care of instantiating the Text Context for each thread in
- * the test. It checks for the Thread ID in a map and, in case it is not found,
- * it will create a new instance of it.
- * 
+ * the test. The context of the current thread is kept in a ThreadLocal and, in
+ * case it is not found, a new instance is created.
+ *
  * In TestNG, an entire test will always run in the same thread, even the
  * listener methods. That makes it possible to handle the webdriver and report
- * by using the Thread ID.
- * 
+ * by using the thread.
+ *
+ * Work done in other threads (executors, CompletableFutures) doesn't see the
+ * context of the test by itself. The tasks have to be wrapped by wrap(), or run
+ * through propagating() or supplyAsync(), so they are attached to the context
+ * of the thread that created them. A context can also be attached by hand with
+ * attach(), in a try-with-resources block.
+ *
+ * The contexts not finalized are counted as leaked at the end of the suite.
+ *
  * @author danilo
  *
  */
 public abstract class ContextFactory {
 
-	// This variable will hold all instances of the test context
-	private static HashMap<Long, TestContext> instances = new HashMap<Long, TestContext>();
+	// The context of each thread
+	private static ThreadLocal<TestContext> current = new ThreadLocal<>();
+
+	// The contexts created and not finalized yet, with the name of their tests
+	private static Map<TestContext, String> active = new ConcurrentHashMap<>();
+
+	// Statistics
+	private static AtomicLong created = new AtomicLong();
+	private static AtomicLong finalized = new AtomicLong();
+	private static AtomicLong propagated = new AtomicLong();
 
 	/**
 	 * Get a new context for the current Thread. Adds a test name to the context.
-	 * 
+	 *
 	 * @return a new Test context initialized with the test name.
 	 */
 	public static TestContext getContext() {
@@ -33,28 +55,27 @@ public abstract class ContextFactory {
 	/**
 	 * Returns the TestContext for the current Thread. Create a new one in case it
 	 * doesn't exists.
-	 * 
+	 *
 	 * @return
 	 */
 	public static TestContext getContext(String testName) {
 
-		long threadId;
-		TestContext newContext;
-
-		// Get the thread id
-		threadId = Thread.currentThread().getId();
+		TestContext context;
 
 		// Check if it exists and return it
-		if (instances.containsKey(threadId)) {
-			return instances.get(threadId);
+		context = current.get();
+		if (context != null) {
+			return context;
 		}
 
-		// Create a new one and add to the list of instances
-		newContext = new TestContext(testName);
-		instances.put(threadId, newContext);
+		// Create a new one and keep it for the thread
+		context = new TestContext(testName);
+		current.set(context);
+		active.put(context, testName);
+		created.incrementAndGet();
 
 		// Return it
-		return newContext;
+		return context;
 
 	}
 
@@ -62,14 +83,172 @@ public abstract class ContextFactory {
 	 * Removes the context from the list of instances for the calling thread.
 	 */
 	public static void finalizeContext() {
-		long threadId;
 
-		// Get the thread id
-		threadId = Thread.currentThread().getId();
-		
-		if(instances.containsKey(threadId)){
-			instances.remove(threadId);
+		TestContext context;
+
+		context = current.get();
+		current.remove();
+
+		if (context != null && active.remove(context) != null) {
+			finalized.incrementAndGet();
 		}
 	}
-	
+
+	/**
+	 * Attaches a context to the current thread until the scope is closed. The
+	 * context that was attached before, if any, is restored by close().
+	 *
+	 * @param context
+	 *            The context to be attached.
+	 * @return the scope, to be used in a try-with-resources block.
+	 */
+	public static Scope attach(TestContext context) {
+
+		Scope scope;
+
+		scope = new Scope(current.get());
+		current.set(context);
+
+		return scope;
+	}
+
+	/**
+	 * Makes a task run with the context of the calling thread.
+	 *
+	 * @param task
+	 *            The task.
+	 * @return a task that attaches the context, runs the task and detaches it.
+	 */
+	public static Runnable wrap(Runnable task) {
+
+		TestContext context;
+
+		context = current.get();
+		if (context == null)
+			return task;
+
+		return () -> {
+			Scope scope = attach(context);
+			try {
+				propagated.incrementAndGet();
+				task.run();
+			} finally {
+				scope.close();
+			}
+		};
+	}
+
+	/**
+	 * Makes a task run with the context of the calling thread.
+	 *
+	 * @param task
+	 *            The task.
+	 * @return a task that attaches the context, runs the task and detaches it.
+	 */
+	public static <T> Callable<T> wrap(Callable<T> task) {
+
+		TestContext context;
+
+		context = current.get();
+		if (context == null)
+			return task;
+
+		return () -> {
+			Scope scope = attach(context);
+			try {
+				propagated.incrementAndGet();
+				return task.call();
+			} finally {
+				scope.close();
+			}
+		};
+	}
+
+	/**
+	 * Makes a task run with the context of the calling thread.
+	 *
+	 * @param task
+	 *            The task.
+	 * @return a task that attaches the context, runs the task and detaches it.
+	 */
+	public static <T> Supplier<T> wrap(Supplier<T> task) {
+
+		TestContext context;
+
+		context = current.get();
+		if (context == null)
+			return task;
+
+		return () -> {
+			Scope scope = attach(context);
+			try {
+				propagated.incrementAndGet();
+				return task.get();
+			} finally {
+				scope.close();
+			}
+		};
+	}
+
+	/**
+	 * Wraps an executor, so every task sent to it runs with the context of the
+	 * thread that sent it. Useful with CompletableFuture.runAsync(task, executor).
+	 *
+	 * @param executor
+	 *            The executor.
+	 * @return an executor that propagates the context.
+	 */
+	public static Executor propagating(Executor executor) {
+		return task -> executor.execute(wrap(task));
+	}
+
+	/**
+	 * Runs a task in the common pool with the context of the calling thread.
+	 *
+	 * @param task
+	 *            The task.
+	 * @return the future of the task.
+	 */
+	public static <T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+		return CompletableFuture.supplyAsync(wrap(task));
+	}
+
+	/**
+	 * @return the number of contexts created and never finalized.
+	 */
+	public static int countLeaked() {
+		return active.size();
+	}
+
+	/**
+	 * @return a line with the context statistics, naming the leaked ones.
+	 */
+	public static String getStatistics() {
+		return String.format("Created: %d, finalized: %d, propagated tasks: %d, leaked: %d %s", created.get(),
+				finalized.get(), propagated.get(), active.size(), active.isEmpty() ? "" : active.values());
+	}
+
+	/**
+	 * This class is the scope of a context attached to a thread. Closing it puts
+	 * back the context that was attached before.
+	 */
+	public static class Scope implements AutoCloseable {
+
+		// The context attached before this scope
+		private final TestContext previous;
+
+		private Scope(TestContext previous) {
+			this.previous = previous;
+		}
+
+		@Override
+		public void close() {
+			if (previous == null) {
+				current.remove();
+			} else {
+				current.set(previous);
+			}
+		}
+	}
+
 }
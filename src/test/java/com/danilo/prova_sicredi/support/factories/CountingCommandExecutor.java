@@ -0,0 +1,52 @@
+package com.danilo.prova_sicredi.support.factories;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.Response;
+
+/**
+ * This class counts the commands sent to the driver. Every command is an HTTP
+ * round trip to the driver process, so the count tells how chatty a test is
+ * with the browser.
+ *
+ * @author danilo
+ *
+ */
+public class CountingCommandExecutor implements CommandExecutor {
+
+	// The executor that actually sends the commands
+	private final CommandExecutor executor;
+
+	// Number of commands sent so far
+	private final AtomicLong commands = new AtomicLong();
+
+	/**
+	 * Wraps an executor.
+	 *
+	 * @param executor
+	 *            The executor that sends the commands.
+	 */
+	public CountingCommandExecutor(CommandExecutor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Counts and sends the command.
+	 */
+	@Override
+	public Response execute(Command command) throws IOException {
+		commands.incrementAndGet();
+		return executor.execute(command);
+	}
+
+	/**
+	 * @return the number of commands sent so far.
+	 */
+	public long getCount() {
+		return commands.get();
+	}
+
+}
@@ -1,15 +1,25 @@
 package com.danilo.prova_sicredi.support.factories;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
-import org.openqa.selenium.support.events.EventFiringWebDriver;
+import org.openqa.selenium.chrome.ChromeDriverService;
+import org.openqa.selenium.internal.WrapsDriver;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
 
 import com.danilo.prova_sicredi.support.Settings;
 import com.danilo.prova_sicredi.support.TestContext;
+import com.danilo.prova_sicredi.support.listeners.ListeningDriver;
 import com.danilo.prova_sicredi.support.listeners.SeleniumListener;
+import com.danilo.prova_sicredi.support.proxy.BrowserProxy;
+import com.danilo.prova_sicredi.support.proxy.TrafficArchive;
+import com.danilo.prova_sicredi.support.report.LatencyHistogram;
+import com.danilo.prova_sicredi.support.stub.StubDriver;
 
 /**
  * This class takes care of instantiating and setting up the web drivers. The
@@ -17,16 +27,41 @@ import com.danilo.prova_sicredi.support.listeners.SeleniumListener;
  * class to know what browser to request. The selection of the browser is
  * delegated to the TestContext so that the class can be called manually if
  * needed.
- * 
+ *
+ * When the setting 'driver_pool' is true, the drivers are leased from the
+ * DriverPool instead of being created for each test.
+ *
+ * When the setting 'proxy' is true, each browser is started with its own
+ * BrowserProxy, that caches the static assets and blocks the third-party hosts.
+ * The proxy is also used when 'proxy_archive' records or replays the traffic of
+ * the browsers.
+ *
+ * Chrome is started with the ChromeProfile set in the settings (headless,
+ * window size, temporary profile and so on), and the time each session takes to
+ * start is measured.
+ *
+ * When the setting 'browser' is 'stub', the StubDriver is used instead of a real
+ * browser: it loads the pages of the local server in memory, with no driver,
+ * proxy nor profile, so the framework can be loaded with many tests at once.
+ *
  * @author danilo
  *
  */
 public abstract class DriverFactory {
 
+	// The chromedriver process shared by all the pooled sessions
+	private static ChromeDriverService chromeService;
+
+	// The sessions not created by the pool, by the raw driver
+	private static Map<WebDriver, DriverSession> sessions = new ConcurrentHashMap<>();
+
+	// The time each session took to start
+	private static LatencyHistogram startupTimes = new LatencyHistogram();
+
 	/**
 	 * Will return an instance of the WebDriver accordingly to the browser passed as
 	 * parameter.
-	 * 
+	 *
 	 * @param context
 	 *            TestContext for the current Thread.
 	 * @param browser
@@ -34,10 +69,18 @@ public abstract class DriverFactory {
 	 * @return a WebDriver instance connected to a SeleniumListener instance.
 	 */
 	public static WebDriver getDriver(TestContext context, String browser) {
+
+		// Lease it from the pool in case it is enabled
+		if (DriverPool.isEnabled()) {
+			return DriverPool.lease(context, browser);
+		}
+
 		// Call the right method to get the browser
 		switch (browser.trim().toUpperCase()) {
 		case "CHROME":
 			return DriverFactory.getChromeDriver(context);
+		case "STUB":
+			return DriverFactory.getStubDriver(context);
 		default:
 			// Throw an exception in case of wrong browser
 			throw new RuntimeException(String.format("Browser '%s' is not supported.", browser));
@@ -45,46 +88,298 @@ public abstract class DriverFactory {
 
 	}
 
+	/**
+	 * Gives back a driver obtained through getDriver(). Pooled drivers are returned
+	 * to the pool, other drivers are closed.
+	 *
+	 * @param context
+	 *            TestContext for the current Thread.
+	 * @param driver
+	 *            The driver returned by getDriver().
+	 */
+	public static void releaseDriver(TestContext context, WebDriver driver) {
+
+		DriverSession session;
+
+		if (DriverPool.isEnabled()) {
+			DriverPool.release(context, driver);
+			return;
+		}
+
+		session = sessions.remove(unwrap(driver));
+		if (session == null) {
+			driver.quit();
+			return;
+		}
+
+		// Report what the proxy saved during the test
+		if (session.proxy != null) {
+			context.report.info("Browser proxy: " + session.proxy.getCounters() + ".");
+		}
+
+		// Close the browser along with its proxy and profile
+		session.close();
+	}
+
+	/**
+	 * Creates a new browser session that is not connected to any listener. This is
+	 * used by the DriverPool, the session is decorated every time it is leased.
+	 *
+	 * @param browser
+	 *            The browser name.
+	 * @return A new DriverSession.
+	 */
+	public static DriverSession newSession(String browser) {
+
+		WebDriver driver;
+		CountingCommandExecutor commands;
+		BrowserProxy proxy;
+		ChromeProfile profile;
+		long start;
+
+		// Take the time so we know how long the browser takes to start
+		start = System.nanoTime();
+
+		proxy = null;
+		profile = null;
+
+		try {
+			// Call the right method to get the browser
+			switch (browser.trim().toUpperCase()) {
+			case "CHROME":
+				// Each browser gets its own proxy, in case they are needed
+				proxy = startProxy();
+				profile = ChromeProfile.create(proxy);
+
+				// Count the commands sent to the driver
+				commands = new CountingCommandExecutor(new HttpCommandExecutor(getChromeDriverService().getUrl()));
+				driver = new RemoteWebDriver(commands, profile.options);
+				break;
+			case "STUB":
+				// The pages are in memory, there is nothing to proxy
+				commands = null;
+				driver = new StubDriver();
+				break;
+			default:
+				// Throw an exception in case of wrong browser
+				throw new RuntimeException(String.format("Browser '%s' is not supported.", browser));
+			}
+
+			// Maximize the window, unless it has a fixed size
+			if (profile != null && profile.maximize)
+				driver.manage().window().maximize();
+
+		} catch (RuntimeException e) {
+			if (proxy != null)
+				proxy.close();
+			if (profile != null)
+				profile.delete();
+			throw e;
+		}
+
+		// Return it
+		return new DriverSession(driver, browser, measureStartup(start), commands, proxy, profile);
+	}
+
+	/**
+	 * Connects a new SeleniumListener to a raw driver. The ListeningDriver calls
+	 * the listener directly, without the reflective proxies of the
+	 * EventFiringWebDriver.
+	 *
+	 * @param context
+	 *            TestContext for the current Thread.
+	 * @param driver
+	 *            The raw driver.
+	 * @return The driver connected to the listener.
+	 */
+	public static WebDriver decorate(TestContext context, WebDriver driver) {
+		return new ListeningDriver(driver, new SeleniumListener(context));
+	}
+
+	/**
+	 * Returns the raw driver behind a driver returned by decorate().
+	 *
+	 * @param driver
+	 *            A decorated driver.
+	 * @return The raw driver.
+	 */
+	public static WebDriver unwrap(WebDriver driver) {
+		if (driver instanceof WrapsDriver) {
+			return ((WrapsDriver) driver).getWrappedDriver();
+		}
+		return driver;
+	}
+
+	/**
+	 * @return a line with the browser startup statistics.
+	 */
+	public static String getStatistics() {
+
+		double[] percentiles;
+
+		percentiles = startupTimes.getPercentiles(50, 95, 100);
+
+		return String.format("Sessions started: %d, startup p50: %.0f ms, p95: %.0f ms, max: %.0f ms. Chrome: %s",
+				startupTimes.getCount(), percentiles[0], percentiles[1], percentiles[2], ChromeProfile.describe());
+	}
+
+	/**
+	 * Stops the driver services started by this class.
+	 */
+	public static synchronized void stopServices() {
+		if (chromeService != null && chromeService.isRunning()) {
+			chromeService.stop();
+		}
+		chromeService = null;
+	}
+
 	/**
 	 * Will instantiate and setup a ChromeDriver.
-	 * 
+	 *
 	 * @param context
 	 *            TestContext for the current Thread.
 	 * @return A ChromeDriver.
 	 */
 	private static WebDriver getChromeDriver(TestContext context) {
 
-		EventFiringWebDriver eventDriver;
 		WebDriver driver;
-		ChromeOptions options;
-		SeleniumListener listener;
+		BrowserProxy proxy;
+		ChromeProfile profile;
+		DriverSession session;
+		long start;
+
+		// Take the time so we know how long the browser takes to start
+		start = System.nanoTime();
 
 		// Add the property for the chromedriver path
-		System.setProperty("webdriver.chrome.driver",
-				Settings.getProperty("driver_path") + File.separator + "chromedriver.exe");
+		System.setProperty("webdriver.chrome.driver", getChromeDriverPath());
 
-		// Setup desired capabilities
-		options = new ChromeOptions();
+		// Setup the launch profile, with a proxy in case they are enabled
+		proxy = startProxy();
+		profile = null;
 
-		// Avoid annoying (and sometimes blocking) password pop-ups
-		options.setCapability("credentials_enable_service", false);
-		options.setCapability("password_manager_enabled", false);
+		try {
+			profile = ChromeProfile.create(proxy);
 
-		// Instantiate the listener
-		listener = new SeleniumListener(context);
+			// Instantiate the driver
+			driver = new ChromeDriver(profile.options);
 
-		// Instantiate the driver
-		driver = new ChromeDriver();
+			// Maximize the window, unless it has a fixed size
+			if (profile.maximize)
+				driver.manage().window().maximize();
 
-		// Connect the listener to the driver
-		eventDriver = new EventFiringWebDriver(driver);
-		eventDriver.register(listener);
+		} catch (RuntimeException e) {
+			if (proxy != null)
+				proxy.close();
+			if (profile != null)
+				profile.delete();
+			throw e;
+		}
 
-		// Maximize the window
-		driver.manage().window().maximize();
+		// Keep the session so it can be closed with its proxy and profile
+		session = new DriverSession(driver, "chrome", measureStartup(start), null, proxy, profile);
+		sessions.put(driver, session);
+		context.report.info(String.format("Started a new browser session in %d ms.", session.startupMillis));
 
-		// Return it
-		return eventDriver;
+		// Connect the listener to the driver and return it
+		return decorate(context, driver);
+	}
+
+	/**
+	 * Will instantiate a StubDriver.
+	 *
+	 * @param context
+	 *            TestContext for the current Thread.
+	 * @return A StubDriver.
+	 */
+	private static WebDriver getStubDriver(TestContext context) {
+
+		WebDriver driver;
+		DriverSession session;
+		long start;
+
+		// Take the time, even if there is no browser to wait for
+		start = System.nanoTime();
+		driver = new StubDriver();
+
+		// Keep the session so it is closed as the other ones
+		session = new DriverSession(driver, "stub", measureStartup(start), null, null, null);
+		sessions.put(driver, session);
+		context.report.info(String.format("Started a new browser session in %d ms.", session.startupMillis));
+
+		// Connect the listener to the driver and return it
+		return decorate(context, driver);
+	}
+
+	/**
+	 * Starts the proxy of a browser, in case the proxies are enabled or the traffic
+	 * is recorded or replayed.
+	 *
+	 * @return The proxy, or null in case the browser goes straight to the server.
+	 */
+	private static BrowserProxy startProxy() {
+		return BrowserProxy.isEnabled() || TrafficArchive.isEnabled() ? BrowserProxy.start() : null;
+	}
+
+	/**
+	 * Records the time a session took to start.
+	 *
+	 * @param start
+	 *            When the session started to be created, from System.nanoTime().
+	 * @return The startup time, in milliseconds.
+	 */
+	private static long measureStartup(long start) {
+
+		long nanos;
+
+		nanos = System.nanoTime() - start;
+		startupTimes.add(nanos);
+
+		return nanos / 1000000;
+	}
+
+	/**
+	 * Starts (only once) the chromedriver process shared by the pooled sessions.
+	 *
+	 * We can't use the ChromeDriver class with a shared service because it stops
+	 * the service when the session quits. That's why the pooled sessions are
+	 * RemoteWebDrivers pointing to the service URL.
+	 *
+	 * @return The running service.
+	 */
+	private static synchronized ChromeDriverService getChromeDriverService() {
+
+		// Start it only once
+		if (chromeService != null && chromeService.isRunning()) {
+			return chromeService;
+		}
+
+		// Setup the service
+		chromeService = new ChromeDriverService.Builder().usingDriverExecutable(new File(getChromeDriverPath()))
+				.usingAnyFreePort().build();
+
+		// Start it
+		try {
+			chromeService.start();
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to start chromedriver.", e);
+		}
+
+		return chromeService;
+	}
+
+	/**
+	 * @return The path for the chromedriver executable, with the extension only on
+	 *         Windows.
+	 */
+	private static String getChromeDriverPath() {
+
+		String name;
+
+		name = System.getProperty("os.name").toLowerCase().startsWith("windows") ? "chromedriver.exe"
+				: "chromedriver";
+
+		return Settings.getProperty("driver_path") + File.separator + name;
 	}
 
 }
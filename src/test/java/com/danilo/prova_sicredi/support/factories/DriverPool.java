@@ -0,0 +1,302 @@
+package com.danilo.prova_sicredi.support.factories;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import com.danilo.prova_sicredi.support.Settings;
+import com.danilo.prova_sicredi.support.TestContext;
+import com.danilo.prova_sicredi.support.proxy.BrowserProxy;
+
+/**
+ * This class keeps a bounded pool of warm browser sessions. Starting a browser
+ * is the most expensive thing a test does, so instead of creating a new driver
+ * for each test we lease an existing session and give it back when the test is
+ * over.
+ *
+ * Before going back to the pool a session has its state reset (cookies,
+ * storage and extra windows). The SeleniumListener is connected again every
+ * time the session is leased, so the steps go to the right report. Sessions
+ * are retired after a configurable number of uses or age.
+ *
+ * @author danilo
+ *
+ */
+public abstract class DriverPool {
+
+	// Clears the storage of the current page, ignoring the pages without storage
+	public static final String CLEAR_STORAGE_SCRIPT = "try { window.localStorage.clear(); "
+			+ "window.sessionStorage.clear(); } catch (e) { }";
+
+	// Limits the number of sessions alive at the same time
+	private static Semaphore permits;
+
+	// Sessions waiting to be leased, the most recently used ones first
+	private static LinkedBlockingDeque<DriverSession> idle = new LinkedBlockingDeque<DriverSession>();
+
+	// Sessions currently leased, indexed by the raw driver
+	private static Map<WebDriver, DriverSession> leased = new ConcurrentHashMap<WebDriver, DriverSession>();
+
+	// Statistics
+	private static AtomicLong hits = new AtomicLong();
+	private static AtomicLong misses = new AtomicLong();
+	private static AtomicLong retired = new AtomicLong();
+	private static AtomicLong totalWaitMillis = new AtomicLong();
+	private static AtomicLong maxWaitMillis = new AtomicLong();
+	private static AtomicLong driverCommands = new AtomicLong();
+
+	// Settings, loaded on the first call
+	private static boolean initialized = false;
+	private static boolean enabled;
+	private static int maxUses;
+	private static long maxAgeSeconds;
+
+	/**
+	 * Load the pool settings from the config.properties.
+	 */
+	private static synchronized void initialize() {
+
+		// Do not initialize twice
+		if (initialized)
+			return;
+
+		enabled = Boolean.parseBoolean(Settings.getProperty("driver_pool"));
+		maxUses = Integer.parseInt(Settings.getProperty("driver_session_max_uses"));
+		maxAgeSeconds = Long.parseLong(Settings.getProperty("driver_session_max_age"));
+		permits = new Semaphore(Integer.parseInt(Settings.getProperty("driver_pool_size")), true);
+
+		// Make sure the browsers are closed even if the suite is interrupted
+		Runtime.getRuntime().addShutdownHook(new Thread(DriverPool::shutdown));
+
+		// Mark initialized
+		initialized = true;
+	}
+
+	/**
+	 * @return true in case the drivers must be leased from the pool.
+	 */
+	public static boolean isEnabled() {
+		if (!initialized)
+			initialize();
+
+		return enabled;
+	}
+
+	/**
+	 * Lease a session from the pool, waiting for one in case all of them are in
+	 * use. A new session is created in case there are no idle ones.
+	 *
+	 * @param context
+	 *            TestContext for the current Thread.
+	 * @param browser
+	 *            The browser name.
+	 * @return A driver connected to a SeleniumListener for this context.
+	 */
+	public static WebDriver lease(TestContext context, String browser) {
+
+		DriverSession session;
+		long start, waited;
+		boolean warm;
+
+		if (!initialized)
+			initialize();
+
+		// Wait for a free slot
+		start = System.currentTimeMillis();
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for a browser session.", e);
+		}
+		waited = System.currentTimeMillis() - start;
+
+		// Update the wait statistics
+		totalWaitMillis.addAndGet(waited);
+		maxWaitMillis.accumulateAndGet(waited, Math::max);
+
+		try {
+			// Get the most recent idle session, retiring the ones that can't be used
+			session = idle.pollFirst();
+			while (session != null && (isExpired(session) || !session.browser.equalsIgnoreCase(browser))) {
+				retire(session);
+				session = idle.pollFirst();
+			}
+
+			// Create a new one in case there is nothing to reuse
+			warm = session != null;
+			if (warm) {
+				hits.incrementAndGet();
+			} else {
+				misses.incrementAndGet();
+				session = DriverFactory.newSession(browser);
+			}
+
+		} catch (RuntimeException e) {
+			// Give the slot back in case we can't start a browser
+			permits.release();
+			throw e;
+		}
+
+		// Mark it as leased
+		session.markUsed();
+		leased.put(session.driver, session);
+
+		// Add some log
+		if (warm) {
+			context.report.info(String.format("Reusing a warm browser session (use %d), waited %d ms for it.",
+					session.getUses(), waited));
+		} else {
+			context.report.info(String.format("Started a new browser session in %d ms, waited %d ms for a slot.",
+					session.startupMillis, waited));
+		}
+
+		// Connect the listener for this context
+		return DriverFactory.decorate(context, session.driver);
+	}
+
+	/**
+	 * Give a session back to the pool. The session is reset before going back to
+	 * the pool and retired in case the reset fails or the session is too old.
+	 *
+	 * @param context
+	 *            TestContext for the current Thread.
+	 * @param driver
+	 *            The driver returned by lease().
+	 */
+	public static void release(TestContext context, WebDriver driver) {
+
+		DriverSession session;
+		long commands;
+		BrowserProxy.Counters proxy;
+
+		// Find the session behind the driver
+		session = leased.remove(DriverFactory.unwrap(driver));
+
+		// Not from the pool, just close it
+		if (session == null) {
+			driver.quit();
+			return;
+		}
+
+		// Report how many round trips to the driver the test made
+		commands = session.getCommandsSinceLease();
+		if (commands >= 0) {
+			driverCommands.addAndGet(commands);
+			context.report.info(String.format("Driver commands sent by the test: %d.", commands));
+		}
+
+		// Report what the proxy saved during the test
+		proxy = session.getProxyCountersSinceLease();
+		if (proxy != null) {
+			context.report.info("Browser proxy: " + proxy + ".");
+		}
+
+		try {
+			// Retire old sessions
+			if (isExpired(session)) {
+				retire(session);
+				return;
+			}
+
+			// Clean it and put it back to the pool
+			reset(session);
+			idle.offerFirst(session);
+
+		} catch (WebDriverException e) {
+			// A session that can't be reset can't be reused
+			retire(session);
+
+		} finally {
+			// Free the slot
+			permits.release();
+		}
+	}
+
+	/**
+	 * Close all the idle sessions and stop the driver services. Sessions still
+	 * leased will be closed by the test when released.
+	 */
+	public static synchronized void shutdown() {
+
+		DriverSession session;
+
+		// Close all the idle sessions
+		while ((session = idle.pollFirst()) != null) {
+			retire(session);
+		}
+
+		// Stop the services if nobody is using them
+		if (leased.isEmpty()) {
+			DriverFactory.stopServices();
+		}
+	}
+
+	/**
+	 * @return a line with the pool statistics.
+	 */
+	public static String getStatistics() {
+
+		long leases;
+
+		leases = hits.get() + misses.get();
+
+		return String.format(
+				"Leases: %d, hits: %d, misses: %d, retired: %d, avg wait: %d ms, max wait: %d ms, avg driver commands per test: %d",
+				leases, hits.get(), misses.get(), retired.get(), leases == 0 ? 0 : totalWaitMillis.get() / leases,
+				maxWaitMillis.get(), leases == 0 ? 0 : driverCommands.get() / leases);
+	}
+
+	/**
+	 * Bring the session back to a clean state.
+	 */
+	private static void reset(DriverSession session) {
+
+		WebDriver driver;
+
+		driver = session.driver;
+
+		// Close any window opened by the test
+		for (String handle : driver.getWindowHandles()) {
+			if (!handle.equals(session.mainWindowHandle)) {
+				driver.switchTo().window(handle);
+				driver.close();
+			}
+		}
+		driver.switchTo().window(session.mainWindowHandle);
+
+		// Cookies can only be deleted for the current domain, so do it before leaving
+		// the page
+		driver.manage().deleteAllCookies();
+		((JavascriptExecutor) driver).executeScript(CLEAR_STORAGE_SCRIPT);
+
+		// Leave the application
+		driver.get("about:blank");
+	}
+
+	/**
+	 * Check if the session has been used too many times or if it is too old.
+	 */
+	private static boolean isExpired(DriverSession session) {
+		return session.getUses() >= maxUses || session.getAgeSeconds() >= maxAgeSeconds;
+	}
+
+	/**
+	 * Close a session for good.
+	 */
+	private static void retire(DriverSession session) {
+		retired.incrementAndGet();
+		try {
+			session.close();
+		} catch (WebDriverException e) {
+			System.err.println("Could not close a browser session: " + e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+package com.danilo.prova_sicredi.support.factories;
+
+import org.openqa.selenium.WebDriver;
+
+import com.danilo.prova_sicredi.support.proxy.BrowserProxy;
+
+/**
+ * This class represents a browser session created by the DriverFactory. It
+ * holds the raw (not decorated) driver along with some bookkeeping information
+ * used by the DriverPool to decide when a session has to be retired.
+ *
+ * @author danilo
+ *
+ */
+public class DriverSession {
+
+	// The raw driver, without any listener attached to it
+	public final WebDriver driver;
+
+	// The browser name used to create the session
+	public final String browser;
+
+	// The handle of the first window, the one we keep when resetting the session
+	public final String mainWindowHandle;
+
+	// When the session has been created, in milliseconds
+	public final long createdAt;
+
+	// How long it took to start the session, in milliseconds
+	public final long startupMillis;
+
+	// Counts the commands sent to the driver, may be null
+	public final CountingCommandExecutor commands;
+
+	// The proxy used by the browser, may be null
+	public final BrowserProxy proxy;
+
+	// The launch profile of the browser, may be null
+	public final ChromeProfile profile;
+
+	// How many times the session has been leased
+	private int uses;
+
+	// Number of commands sent before the current lease
+	private long commandsAtLease;
+
+	// What the proxy had done before the current lease
+	private BrowserProxy.Counters proxyAtLease;
+
+	/**
+	 * Creates a new session holder.
+	 *
+	 * @param driver
+	 *            The raw driver.
+	 * @param browser
+	 *            The browser name.
+	 * @param startupMillis
+	 *            Time it took to start the browser.
+	 * @param commands
+	 *            The executor counting the commands, or null in case they are not
+	 *            counted.
+	 * @param proxy
+	 *            The proxy used by the browser, or null in case there is none.
+	 * @param profile
+	 *            The launch profile of the browser, or null in case there is none.
+	 */
+	public DriverSession(WebDriver driver, String browser, long startupMillis, CountingCommandExecutor commands,
+			BrowserProxy proxy, ChromeProfile profile) {
+		this.driver = driver;
+		this.commands = commands;
+		this.proxy = proxy;
+		this.profile = profile;
+		this.browser = browser;
+		this.startupMillis = startupMillis;
+		this.mainWindowHandle = driver.getWindowHandle();
+		this.createdAt = System.currentTimeMillis();
+		this.uses = 0;
+	}
+
+	/**
+	 * Marks the session as leased one more time.
+	 *
+	 * @return the number of times the session has been leased, including this
+	 *         one.
+	 */
+	public int markUsed() {
+		commandsAtLease = commands == null ? 0 : commands.getCount();
+		proxyAtLease = proxy == null ? null : proxy.getCounters();
+		return ++uses;
+	}
+
+	/**
+	 * @return the number of commands sent to the driver since the session was
+	 *         leased, or -1 in case the commands are not counted.
+	 */
+	public long getCommandsSinceLease() {
+		return commands == null ? -1 : commands.getCount() - commandsAtLease;
+	}
+
+	/**
+	 * @return what the proxy did since the session was leased, or null in case
+	 *         there is no proxy.
+	 */
+	public BrowserProxy.Counters getProxyCountersSinceLease() {
+		return proxy == null ? null : proxy.getCounters().since(proxyAtLease);
+	}
+
+	/**
+	 * @return the number of times the session has been leased.
+	 */
+	public int getUses() {
+		return uses;
+	}
+
+	/**
+	 * @return the age of the session in seconds.
+	 */
+	public long getAgeSeconds() {
+		return (System.currentTimeMillis() - createdAt) / 1000;
+	}
+
+	/**
+	 * Quits the browser, then closes its proxy and deletes its profile, even in
+	 * case the browser fails to quit.
+	 */
+	public void close() {
+		try {
+			driver.quit();
+		} finally {
+			if (proxy != null)
+				proxy.close();
+			if (profile != null)
+				profile.delete();
+		}
+	}
+
+}
@@ -0,0 +1,227 @@
+package com.danilo.prova_sicredi.support.fixtures;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.json.Json;
+
+import com.danilo.prova_sicredi.support.Environment;
+import com.danilo.prova_sicredi.support.Settings;
+import com.danilo.prova_sicredi.support.TestContext;
+import com.danilo.prova_sicredi.support.report.LatencyHistogram;
+
+/**
+ * This class creates the preconditions of the tests straight through the
+ * application, without the browser. A test that needs a customer to exist
+ * doesn't have to go through the add form, that is tested by its own test.
+ *
+ * The fixtures are used when 'fixture_mode' is 'api'. With 'ui', isEnabled()
+ * is false and the tests go through the pages as before.
+ *
+ * The preconditions are run by run(), that times them the same way whether
+ * they go through the fixture or through the pages. The times through the
+ * pages are kept across runs in the file set by 'fixture_profile_path', so the
+ * runs with the fixtures can show in the report how much time they saved.
+ *
+ * @author danilo
+ *
+ */
+public abstract class Fixtures {
+
+	// Names of the preconditions, used in the statistics
+	public static final String CUSTOMER_EXISTS = "Customer exists";
+
+	// The fields of the add customer form, by the keys of the data files
+	private static final String[][] CUSTOMER_FIELDS = { { "name", "customerName" },
+			{ "lastName", "contactLastName" }, { "contactFirstName", "contactFirstName" }, { "phone", "phone" },
+			{ "addressLine1", "addressLine1" }, { "addressLine2", "addressLine2" }, { "city", "city" },
+			{ "state", "state" }, { "postalCode", "postalCode" }, { "country", "country" },
+			{ "creditLimit", "creditLimit" } };
+
+	// Time taken by each precondition in this run, through the API and through
+	// the pages
+	private static Map<String, LatencyHistogram> apiTimes = new LinkedHashMap<>();
+	private static Map<String, LatencyHistogram> uiTimes = new LinkedHashMap<>();
+
+	// Time taken by each precondition through the pages in all the runs kept,
+	// loaded by update()
+	private static Map<String, Map<String, Object>> profile = new LinkedHashMap<>();
+
+	// Statistics
+	private static AtomicLong failures = new AtomicLong();
+
+	/**
+	 * @return whether the preconditions should be created by the fixtures.
+	 */
+	public static boolean isEnabled() {
+		return Settings.getProperty("fixture_mode").equals("api");
+	}
+
+	/**
+	 * Runs a precondition and times it: through the fixture in case they are
+	 * enabled, through the pages otherwise. Both must leave the test at the same
+	 * point, so their times can be compared.
+	 *
+	 * @param precondition
+	 *            The name of the precondition.
+	 * @param fixture
+	 *            Creates the precondition with the fixtures.
+	 * @param pages
+	 *            Creates the precondition through the pages.
+	 */
+	public static void run(String precondition, Runnable fixture, Runnable pages) {
+
+		long start;
+
+		start = System.nanoTime();
+		if (isEnabled()) {
+			fixture.run();
+			record(apiTimes, precondition, System.nanoTime() - start);
+		} else {
+			pages.run();
+			record(uiTimes, precondition, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Creates a customer through the insert endpoint of the customers CRUD.
+	 *
+	 * @param context
+	 *            TestContext for the current Thread.
+	 * @param data
+	 *            The customer, with the same keys as the data files.
+	 * @return the id of the new customer.
+	 */
+	public static String customerExists(TestContext context, Map<String, String> data) {
+
+		GroceryCrudApi api;
+		Map<String, String> fields;
+		long start;
+		String id;
+
+		start = System.nanoTime();
+		api = new GroceryCrudApi(Environment.getGroceryCrudUrl(),
+				Integer.parseInt(Settings.getProperty("fixture_timeout")));
+
+		try {
+			// The same fields the form sends, the employer goes by its number
+			fields = new LinkedHashMap<>();
+			for (String[] field : CUSTOMER_FIELDS) {
+				fields.put(field[1], data.get(field[0]));
+			}
+			fields.put("salesRepEmployeeNumber", data.get("fromEmployer").matches("\\d+") ? data.get("fromEmployer")
+					: api.findOption("salesRepEmployeeNumber", data.get("fromEmployer")));
+
+			id = api.insert(fields);
+
+		} catch (RuntimeException e) {
+			failures.incrementAndGet();
+			throw e;
+		}
+
+		context.report.info(String.format("Precondition '%s': customer '%s' created by the API in %d ms (id %s).",
+				CUSTOMER_EXISTS, data.get("name"), (System.nanoTime() - start) / 1000000, id));
+
+		return id;
+	}
+
+	/**
+	 * Adds the times through the pages of this run to the file set by
+	 * 'fixture_profile_path', and loads the times of all the runs kept. Must be
+	 * called before getStatistics().
+	 */
+	@SuppressWarnings("unchecked")
+	public static synchronized void update() {
+
+		Path path;
+		Map<String, Object> data, entry;
+
+		path = Paths.get(Settings.getProperty("fixture_profile_path"));
+		profile = new LinkedHashMap<>();
+
+		// Load the previous runs
+		if (Files.exists(path)) {
+			try {
+				data = new Json().toType(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), Json.MAP_TYPE);
+				data.forEach((precondition, kept) -> profile.put(precondition,
+						new LinkedHashMap<>((Map<String, Object>) kept)));
+			} catch (IOException | RuntimeException e) {
+				System.err.println("Could not read the fixture profile, starting a new one: " + e.getMessage());
+			}
+		}
+
+		// Nothing new to keep
+		if (uiTimes.isEmpty())
+			return;
+
+		// Add this run and write it back
+		for (Map.Entry<String, LatencyHistogram> ui : uiTimes.entrySet()) {
+			entry = profile.computeIfAbsent(ui.getKey(), key -> new LinkedHashMap<>());
+			entry.put("samples", (long) number(entry, "samples") + ui.getValue().getCount());
+			entry.put("millis", number(entry, "millis") + ui.getValue().getTotalMillis());
+		}
+
+		try {
+			Files.write(path, new Json().toJson(profile).getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			System.err.println("Could not write the fixture profile: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return a line with the fixture statistics, including the time saved for
+	 *         each precondition ever measured through the pages.
+	 */
+	public static synchronized String getStatistics() {
+
+		StringBuilder line;
+		Map<String, Object> pages;
+		double average, saved;
+
+		line = new StringBuilder(String.format("Failures: %d", failures.get()));
+
+		for (Map.Entry<String, LatencyHistogram> api : apiTimes.entrySet()) {
+			pages = profile.get(api.getKey());
+			line.append(String.format("; %s: %d by the API, %.0f ms each", api.getKey(), api.getValue().getCount(),
+					api.getValue().getTotalMillis() / api.getValue().getCount()));
+
+			if (pages == null) {
+				line.append(", never measured through the pages (run it once with fixture_mode=ui)");
+				continue;
+			}
+
+			average = number(pages, "millis") / number(pages, "samples");
+			saved = api.getValue().getCount() * average - api.getValue().getTotalMillis();
+			line.append(String.format(", %.0f ms through the pages (%.0f samples kept), time saved: %.1f s", average,
+					number(pages, "samples"), saved / 1000));
+		}
+
+		for (Map.Entry<String, LatencyHistogram> ui : uiTimes.entrySet()) {
+			line.append(String.format("; %s: %d through the pages, %.0f ms each", ui.getKey(),
+					ui.getValue().getCount(), ui.getValue().getTotalMillis() / ui.getValue().getCount()));
+		}
+
+		return line.toString();
+	}
+
+	/**
+	 * @return a number of a profile entry, 0 in case it is not there.
+	 */
+	private static double number(Map<String, Object> entry, String key) {
+		return entry.containsKey(key) ? ((Number) entry.get(key)).doubleValue() : 0;
+	}
+
+	/**
+	 * Adds a time to the histogram of a precondition.
+	 */
+	private static synchronized void record(Map<String, LatencyHistogram> times, String precondition, long nanos) {
+		times.computeIfAbsent(precondition, key -> new LatencyHistogram()).add(nanos);
+	}
+
+}
@@ -0,0 +1,200 @@
+package com.danilo.prova_sicredi.support.fixtures;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openqa.selenium.json.Json;
+
+/**
+ * This class sends requests straight to a Grocery CRUD application, the same
+ * ones its pages send when a form is saved. It is used by the fixtures to
+ * create the data a test needs without going through the browser.
+ *
+ * @author danilo
+ *
+ */
+class GroceryCrudApi {
+
+	// The options of a select: value and text
+	private static final Pattern OPTION = Pattern.compile("<option[^>]*value=\"([^\"]*)\"[^>]*>([^<]*)</option>");
+
+	// The select of a field of the add form, up to its end
+	private static final String SELECT = "<select[^>]*id=\"field-%s\"[^>]*>(.*?)</select>";
+
+	// The options of the relation fields already read, by the URL of the form
+	private static Map<String, Map<String, String>> relations = new ConcurrentHashMap<>();
+
+	// The URL of the CRUD, without the trailing slash
+	private final String url;
+
+	// Timeout of each request, in milliseconds
+	private final int timeout;
+
+	/**
+	 * Creates a client for a CRUD.
+	 *
+	 * @param url
+	 *            The URL of the CRUD, the page with the list.
+	 * @param timeout
+	 *            Timeout of each request, in seconds.
+	 */
+	GroceryCrudApi(String url, int timeout) {
+		this.url = url.replaceAll("/+$", "");
+		this.timeout = timeout * 1000;
+	}
+
+	/**
+	 * Inserts a record, as the Save button of the add form does.
+	 *
+	 * @param fields
+	 *            The values, by the name of the fields.
+	 * @return the primary key of the new record.
+	 */
+	String insert(Map<String, String> fields) {
+
+		String response;
+		Map<String, Object> result;
+
+		response = request("POST", url + "/insert", encode(fields));
+
+		// The answer is a JSON object, that some versions wrap in a textarea
+		try {
+			result = new Json().toType(response.substring(response.indexOf('{'), response.lastIndexOf('}') + 1),
+					Json.MAP_TYPE);
+		} catch (RuntimeException e) {
+			throw new RuntimeException(String.format("Unexpected answer from '%s/insert': %s", url, response), e);
+		}
+
+		if (!Boolean.parseBoolean(String.valueOf(result.get("success"))))
+			throw new RuntimeException(String.format("The record was not inserted at '%s': %s", url,
+					result.containsKey("error_message") ? result.get("error_message") : result));
+
+		return String.valueOf(result.get("insert_primary_key"));
+	}
+
+	/**
+	 * Finds the value of an option of a relation field, as the chosen widget of
+	 * the add form does when some text is typed.
+	 *
+	 * @param field
+	 *            The name of the field.
+	 * @param text
+	 *            Part of the text of the option.
+	 * @return the value of the first option with the text.
+	 */
+	String findOption(String field, String text) {
+
+		Map<String, String> options;
+
+		options = relations.computeIfAbsent(url + "/add#" + field, key -> readOptions(field));
+		for (Map.Entry<String, String> option : options.entrySet()) {
+			if (option.getValue().toLowerCase().contains(text.toLowerCase()))
+				return option.getKey();
+		}
+
+		throw new RuntimeException(String.format("No option with '%s' for the field '%s' at '%s/add'.", text, field,
+				url));
+	}
+
+	/**
+	 * Reads the options of a select in the add form.
+	 */
+	private Map<String, String> readOptions(String field) {
+
+		Map<String, String> options;
+		Matcher select, option;
+
+		options = new LinkedHashMap<>();
+		select = Pattern.compile(String.format(SELECT, field), Pattern.DOTALL).matcher(request("GET", url + "/add",
+				null));
+		if (!select.find())
+			return options;
+
+		option = OPTION.matcher(select.group(1));
+		while (option.find()) {
+			if (!option.group(1).isEmpty())
+				options.put(option.group(1), option.group(2).trim());
+		}
+
+		return options;
+	}
+
+	/**
+	 * Sends a request and returns the body of the answer.
+	 */
+	private String request(String method, String address, String form) {
+
+		HttpURLConnection connection;
+		ByteArrayOutputStream body;
+		byte[] buffer;
+		int read;
+
+		try {
+			connection = (HttpURLConnection) new URL(address).openConnection();
+			connection.setRequestMethod(method);
+			connection.setConnectTimeout(timeout);
+			connection.setReadTimeout(timeout);
+			connection.setRequestProperty("X-Requested-With", "XMLHttpRequest");
+
+			if (form != null) {
+				connection.setDoOutput(true);
+				connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+				try (OutputStream output = connection.getOutputStream()) {
+					output.write(form.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+
+			if (connection.getResponseCode() >= 400)
+				throw new RuntimeException(String.format("%s '%s' answered %d %s.", method, address,
+						connection.getResponseCode(), connection.getResponseMessage()));
+
+			body = new ByteArrayOutputStream();
+			buffer = new byte[8192];
+			try (InputStream input = connection.getInputStream()) {
+				while ((read = input.read(buffer)) != -1) {
+					body.write(buffer, 0, read);
+				}
+			}
+
+			return new String(body.toByteArray(), StandardCharsets.UTF_8);
+
+		} catch (IOException e) {
+			throw new UncheckedIOException(String.format("Could not %s '%s'.", method, address), e);
+		}
+	}
+
+	/**
+	 * Encodes the fields as a form.
+	 */
+	private static String encode(Map<String, String> fields) {
+
+		StringBuilder form;
+
+		form = new StringBuilder();
+		try {
+			for (Map.Entry<String, String> field : fields.entrySet()) {
+				if (form.length() > 0)
+					form.append('&');
+				form.append(URLEncoder.encode(field.getKey(), "UTF-8")).append('=')
+						.append(URLEncoder.encode(field.getValue() == null ? "" : field.getValue(), "UTF-8"));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return form.toString();
+	}
+
+}
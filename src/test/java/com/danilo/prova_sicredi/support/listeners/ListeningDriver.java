@@ -0,0 +1,809 @@
+package com.danilo.prova_sicredi.support.listeners;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openqa.selenium.Alert;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.interactions.HasInputDevices;
+import org.openqa.selenium.interactions.Interactive;
+import org.openqa.selenium.interactions.Keyboard;
+import org.openqa.selenium.interactions.Mouse;
+import org.openqa.selenium.interactions.Sequence;
+import org.openqa.selenium.interactions.internal.Coordinates;
+import org.openqa.selenium.interactions.internal.Locatable;
+import org.openqa.selenium.internal.WrapsDriver;
+import org.openqa.selenium.internal.WrapsElement;
+
+/**
+ * This class connects a SeleniumListener to a driver, in place of the
+ * EventFiringWebDriver. It sends the same events, in the same order and with
+ * the same arguments, but it calls the listener directly: there are no
+ * reflective proxies around the driver and the elements, no dispatch over a
+ * list of listeners and no arrays built for each call.
+ *
+ * The one difference is that the element events get the wrapped element, which
+ * keeps the locator it was found by, so the listener can describe it without
+ * asking the browser. The elements returned by scripts have no locator, unless
+ * one is given with foundBy().
+ *
+ * As with the EventFiringWebDriver, the exceptions thrown by the driver and by
+ * the elements go to SeleniumListener.onException before they reach the test,
+ * and the listener may replace them (see TestContext.isHandleExceptions()).
+ * The navigation, window, frame and alert commands are not sent through
+ * onException, as they were not before.
+ *
+ * @author danilo
+ *
+ */
+public class ListeningDriver implements WebDriver, JavascriptExecutor, TakesScreenshot, WrapsDriver,
+		HasInputDevices, Interactive {
+
+	// The raw driver
+	private final WebDriver driver;
+
+	// The listener of this driver
+	private final SeleniumListener listener;
+
+	/**
+	 * Connects a listener to a driver.
+	 *
+	 * @param driver
+	 *            The raw driver.
+	 * @param listener
+	 *            The listener.
+	 */
+	public ListeningDriver(WebDriver driver, SeleniumListener listener) {
+		this.driver = driver;
+		this.listener = listener;
+	}
+
+	@Override
+	public WebDriver getWrappedDriver() {
+		return driver;
+	}
+
+	@Override
+	public void get(String url) {
+		listener.beforeNavigateTo(url, driver);
+		try {
+			driver.get(url);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+		listener.afterNavigateTo(url, driver);
+	}
+
+	@Override
+	public String getCurrentUrl() {
+		try {
+			return driver.getCurrentUrl();
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public String getTitle() {
+		try {
+			return driver.getTitle();
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public List<WebElement> findElements(By by) {
+
+		List<WebElement> found;
+
+		listener.beforeFindBy(by, null, driver);
+		try {
+			found = driver.findElements(by);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+		listener.afterFindBy(by, null, driver);
+
+		return wrap(found, by);
+	}
+
+	@Override
+	public WebElement findElement(By by) {
+
+		WebElement found;
+
+		listener.beforeFindBy(by, null, driver);
+		try {
+			found = driver.findElement(by);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+		listener.afterFindBy(by, null, driver);
+
+		return new ListeningElement(found, by);
+	}
+
+	@Override
+	public String getPageSource() {
+		try {
+			return driver.getPageSource();
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			driver.close();
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public void quit() {
+		try {
+			driver.quit();
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public Set<String> getWindowHandles() {
+		try {
+			return driver.getWindowHandles();
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public String getWindowHandle() {
+		try {
+			return driver.getWindowHandle();
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public TargetLocator switchTo() {
+		try {
+			return new ListeningTargetLocator(driver.switchTo());
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public Navigation navigate() {
+		try {
+			return new ListeningNavigation(driver.navigate());
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public Options manage() {
+		try {
+			return driver.manage();
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public Object executeScript(String script, Object... args) {
+
+		Object result;
+
+		if (!(driver instanceof JavascriptExecutor))
+			throw new UnsupportedOperationException("The driver does not support JavaScript.");
+
+		listener.beforeScript(script, driver);
+		try {
+			result = ((JavascriptExecutor) driver).executeScript(script, unwrap(args));
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+		listener.afterScript(script, driver);
+
+		return wrap(result);
+	}
+
+	@Override
+	public Object executeAsyncScript(String script, Object... args) {
+
+		Object result;
+
+		if (!(driver instanceof JavascriptExecutor))
+			throw new UnsupportedOperationException("The driver does not support JavaScript.");
+
+		listener.beforeScript(script, driver);
+		try {
+			result = ((JavascriptExecutor) driver).executeAsyncScript(script, unwrap(args));
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+		listener.afterScript(script, driver);
+
+		return wrap(result);
+	}
+
+	@Override
+	public <X> X getScreenshotAs(OutputType<X> target) {
+
+		if (!(driver instanceof TakesScreenshot))
+			throw new UnsupportedOperationException("The driver does not support screenshots.");
+
+		try {
+			return ((TakesScreenshot) driver).getScreenshotAs(target);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public Keyboard getKeyboard() {
+		if (!(driver instanceof HasInputDevices))
+			throw new UnsupportedOperationException("The driver does not support input devices.");
+		return ((HasInputDevices) driver).getKeyboard();
+	}
+
+	@Override
+	public Mouse getMouse() {
+		if (!(driver instanceof HasInputDevices))
+			throw new UnsupportedOperationException("The driver does not support input devices.");
+		return ((HasInputDevices) driver).getMouse();
+	}
+
+	@Override
+	public void perform(Collection<Sequence> actions) {
+
+		if (!(driver instanceof Interactive))
+			throw new UnsupportedOperationException("The driver does not support actions.");
+
+		try {
+			((Interactive) driver).perform(actions);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public void resetInputState() {
+
+		if (!(driver instanceof Interactive))
+			throw new UnsupportedOperationException("The driver does not support actions.");
+
+		try {
+			((Interactive) driver).resetInputState();
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	/**
+	 * Gives an exception of the driver to the listener, which may throw another
+	 * one in its place.
+	 *
+	 * @return the exception, to be thrown by the caller.
+	 */
+	private RuntimeException failed(RuntimeException exception) {
+		listener.onException(exception, driver);
+		return exception;
+	}
+
+	/**
+	 * Tells the locator of an element returned by a script, in case the caller
+	 * knows it, so the listener can describe the element.
+	 *
+	 * @param element
+	 *            The element returned by a script.
+	 * @param locator
+	 *            The locator that finds the same element.
+	 * @return the element, with the locator in case it is connected to a listener.
+	 */
+	public static WebElement foundBy(WebElement element, By locator) {
+
+		if (element instanceof ListeningElement)
+			return ((ListeningElement) element).foundBy(locator);
+
+		return element;
+	}
+
+	/**
+	 * @return the elements found, connected to the listener.
+	 */
+	private List<WebElement> wrap(List<WebElement> elements, By locator) {
+
+		List<WebElement> wrapped;
+
+		wrapped = new ArrayList<>(elements.size());
+		for (WebElement element : elements) {
+			wrapped.add(new ListeningElement(element, locator));
+		}
+
+		return wrapped;
+	}
+
+	/**
+	 * @return the result of a script, with the elements in it connected to the
+	 *         listener.
+	 */
+	private Object wrap(Object result) {
+
+		List<Object> list;
+		Map<Object, Object> map;
+
+		if (result instanceof WebElement)
+			return new ListeningElement((WebElement) result, null);
+
+		if (result instanceof List) {
+			list = new ArrayList<>(((List<?>) result).size());
+			for (Object item : (List<?>) result) {
+				list.add(wrap(item));
+			}
+			return list;
+		}
+
+		if (result instanceof Map) {
+			map = new LinkedHashMap<>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) result).entrySet()) {
+				map.put(entry.getKey(), wrap(entry.getValue()));
+			}
+			return map;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the arguments of a script, with the raw elements in place of the
+	 *         wrapped ones. The array is only copied in case something changed.
+	 */
+	private static Object[] unwrap(Object[] args) {
+
+		Object[] unwrapped;
+		Object arg;
+
+		unwrapped = args;
+		for (int i = 0; i < args.length; i++) {
+			arg = unwrap(args[i]);
+			if (arg != args[i]) {
+				if (unwrapped == args)
+					unwrapped = args.clone();
+				unwrapped[i] = arg;
+			}
+		}
+
+		return unwrapped;
+	}
+
+	/**
+	 * @return the raw element behind a wrapped one, also inside lists and maps.
+	 */
+	private static Object unwrap(Object arg) {
+
+		List<Object> list;
+		Map<Object, Object> map;
+
+		if (arg instanceof WrapsElement)
+			return unwrap(((WrapsElement) arg).getWrappedElement());
+
+		if (arg instanceof List) {
+			list = new ArrayList<>(((List<?>) arg).size());
+			for (Object item : (List<?>) arg) {
+				list.add(unwrap(item));
+			}
+			return list;
+		}
+
+		if (arg instanceof Map) {
+			map = new LinkedHashMap<>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) arg).entrySet()) {
+				map.put(entry.getKey(), unwrap(entry.getValue()));
+			}
+			return map;
+		}
+
+		return arg;
+	}
+
+	/**
+	 * This class connects an element found by the driver to the listener.
+	 */
+	class ListeningElement implements WebElement, WrapsElement, Locatable {
+
+		// The raw element
+		private final WebElement element;
+
+		// The locator the element was found by, null when it is not known
+		private final By locator;
+
+		private ListeningElement(WebElement element, By locator) {
+			this.element = element;
+			this.locator = locator;
+		}
+
+		/**
+		 * @return the locator the element was found by, or null.
+		 */
+		By getLocator() {
+			return locator;
+		}
+
+		/**
+		 * @return the same element, found by the given locator.
+		 */
+		private ListeningElement foundBy(By locator) {
+			return new ListeningElement(element, locator);
+		}
+
+		@Override
+		public WebElement getWrappedElement() {
+			return element;
+		}
+
+		@Override
+		public void click() {
+			listener.beforeClickOn(this, driver);
+			try {
+				element.click();
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+			listener.afterClickOn(this, driver);
+		}
+
+		@Override
+		public void submit() {
+			try {
+				element.submit();
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public void sendKeys(CharSequence... keysToSend) {
+			listener.beforeChangeValueOf(this, driver, keysToSend);
+			try {
+				element.sendKeys(keysToSend);
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+			listener.afterChangeValueOf(this, driver, keysToSend);
+		}
+
+		@Override
+		public void clear() {
+			listener.beforeChangeValueOf(this, driver, null);
+			try {
+				element.clear();
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+			listener.afterChangeValueOf(this, driver, null);
+		}
+
+		@Override
+		public String getTagName() {
+			try {
+				return element.getTagName();
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public String getAttribute(String name) {
+			try {
+				return element.getAttribute(name);
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public boolean isSelected() {
+			try {
+				return element.isSelected();
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public boolean isEnabled() {
+			try {
+				return element.isEnabled();
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public String getText() {
+			try {
+				return element.getText();
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public List<WebElement> findElements(By by) {
+
+			List<WebElement> found;
+
+			listener.beforeFindBy(by, this, driver);
+			try {
+				found = element.findElements(by);
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+			listener.afterFindBy(by, this, driver);
+
+			return wrap(found, by);
+		}
+
+		@Override
+		public WebElement findElement(By by) {
+
+			WebElement found;
+
+			listener.beforeFindBy(by, this, driver);
+			try {
+				found = element.findElement(by);
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+			listener.afterFindBy(by, this, driver);
+
+			return new ListeningElement(found, by);
+		}
+
+		@Override
+		public boolean isDisplayed() {
+			try {
+				return element.isDisplayed();
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public Point getLocation() {
+			try {
+				return element.getLocation();
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public Dimension getSize() {
+			try {
+				return element.getSize();
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public Rectangle getRect() {
+			try {
+				return element.getRect();
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public String getCssValue(String propertyName) {
+			try {
+				return element.getCssValue(propertyName);
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public <X> X getScreenshotAs(OutputType<X> target) {
+			try {
+				return element.getScreenshotAs(target);
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public Coordinates getCoordinates() {
+			try {
+				return ((Locatable) element).getCoordinates();
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (other instanceof WrapsElement)
+				other = ((WrapsElement) other).getWrappedElement();
+			return element.equals(other);
+		}
+
+		@Override
+		public int hashCode() {
+			return element.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return element.toString();
+		}
+	}
+
+	/**
+	 * This class sends the navigation events to the listener.
+	 */
+	private class ListeningNavigation implements Navigation {
+
+		// The raw navigation
+		private final Navigation navigation;
+
+		private ListeningNavigation(Navigation navigation) {
+			this.navigation = navigation;
+		}
+
+		@Override
+		public void back() {
+			listener.beforeNavigateBack(driver);
+			navigation.back();
+			listener.afterNavigateBack(driver);
+		}
+
+		@Override
+		public void forward() {
+			listener.beforeNavigateForward(driver);
+			navigation.forward();
+			listener.afterNavigateForward(driver);
+		}
+
+		@Override
+		public void to(String url) {
+			listener.beforeNavigateTo(url, driver);
+			navigation.to(url);
+			listener.afterNavigateTo(url, driver);
+		}
+
+		@Override
+		public void to(URL url) {
+			to(String.valueOf(url));
+		}
+
+		@Override
+		public void refresh() {
+			listener.beforeNavigateRefresh(driver);
+			navigation.refresh();
+			listener.afterNavigateRefresh(driver);
+		}
+	}
+
+	/**
+	 * This class sends the window switching events to the listener.
+	 */
+	private class ListeningTargetLocator implements TargetLocator {
+
+		// The raw locator
+		private final TargetLocator locator;
+
+		private ListeningTargetLocator(TargetLocator locator) {
+			this.locator = locator;
+		}
+
+		@Override
+		public WebDriver frame(int index) {
+			locator.frame(index);
+			return ListeningDriver.this;
+		}
+
+		@Override
+		public WebDriver frame(String nameOrId) {
+			locator.frame(nameOrId);
+			return ListeningDriver.this;
+		}
+
+		@Override
+		public WebDriver frame(WebElement frameElement) {
+			locator.frame((WebElement) ListeningDriver.unwrap(frameElement));
+			return ListeningDriver.this;
+		}
+
+		@Override
+		public WebDriver parentFrame() {
+			locator.parentFrame();
+			return ListeningDriver.this;
+		}
+
+		@Override
+		public WebDriver window(String nameOrHandle) {
+			listener.beforeSwitchToWindow(nameOrHandle, driver);
+			locator.window(nameOrHandle);
+			listener.afterSwitchToWindow(nameOrHandle, driver);
+			return ListeningDriver.this;
+		}
+
+		@Override
+		public WebDriver defaultContent() {
+			locator.defaultContent();
+			return ListeningDriver.this;
+		}
+
+		@Override
+		public WebElement activeElement() {
+			return new ListeningElement(locator.activeElement(), null);
+		}
+
+		@Override
+		public Alert alert() {
+			return new ListeningAlert(locator.alert());
+		}
+	}
+
+	/**
+	 * This class sends the alert events to the listener.
+	 */
+	private class ListeningAlert implements Alert {
+
+		// The raw alert
+		private final Alert alert;
+
+		private ListeningAlert(Alert alert) {
+			this.alert = alert;
+		}
+
+		@Override
+		public void dismiss() {
+			listener.beforeAlertDismiss(driver);
+			alert.dismiss();
+			listener.afterAlertDismiss(driver);
+		}
+
+		@Override
+		public void accept() {
+			listener.beforeAlertAccept(driver);
+			alert.accept();
+			listener.afterAlertAccept(driver);
+		}
+
+		@Override
+		public String getText() {
+			return alert.getText();
+		}
+
+		@Override
+		public void sendKeys(String keysToSend) {
+			alert.sendKeys(keysToSend);
+		}
+	}
+
+}
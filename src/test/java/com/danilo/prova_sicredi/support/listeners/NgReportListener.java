@@ -7,11 +7,23 @@ import org.testng.ITestListener;
 import org.testng.ITestResult;
 import org.testng.annotations.Test;
 
+import com.danilo.prova_sicredi.support.ElementCache;
 import com.danilo.prova_sicredi.support.TestClass;
 import com.danilo.prova_sicredi.support.TestContext;
+import com.danilo.prova_sicredi.support.data.CustomerGenerator;
+import com.danilo.prova_sicredi.support.data.DataSources;
 import com.danilo.prova_sicredi.support.factories.ContextFactory;
+import com.danilo.prova_sicredi.support.factories.DriverFactory;
+import com.danilo.prova_sicredi.support.factories.DriverPool;
+import com.danilo.prova_sicredi.support.fixtures.Fixtures;
+import com.danilo.prova_sicredi.support.proxy.BrowserProxy;
+import com.danilo.prova_sicredi.support.proxy.TrafficArchive;
 import com.danilo.prova_sicredi.support.report.ParallelReport;
 import com.danilo.prova_sicredi.support.report.ReportHelper;
+import com.danilo.prova_sicredi.support.server.GroceryCrudServer;
+import com.danilo.prova_sicredi.support.stub.StubDriver;
+import com.danilo.prova_sicredi.support.waits.EventWait;
+import com.danilo.prova_sicredi.support.waits.Retry;
 
 /**
  * This class handles the automatic reporting for the TestNG invocations.
@@ -52,13 +64,13 @@ public class NgReportListener implements IInvokedMethodListener, ITestListener {
 	}
 
 	/**
-	 * Makes sure we flush the report after each test. We can't finalize Selenium
-	 * here because we may need to use at the OnTestFailure, OnFinish and other
-	 * methods that are executed after this one.
+	 * Makes sure we ask for a flush of the report after each test. We can't
+	 * finalize Selenium here because we may need to use at the OnTestFailure,
+	 * OnFinish and other methods that are executed after this one.
 	 */
 	@Override
 	public void afterInvocation(IInvokedMethod method, ITestResult result) {
-		ParallelReport.flush();
+		ParallelReport.requestFlush();
 	}
 
 	/**
@@ -75,8 +87,8 @@ public class NgReportListener implements IInvokedMethodListener, ITestListener {
 		context.report.fail(result.getThrowable());
 		context.finalizeSelenium();
 
-		// Flush the report
-		ParallelReport.flush();
+		// Ask the writer to flush the report
+		ParallelReport.requestFlush();
 		
 		// Finalize the context
 		ContextFactory.finalizeContext();
@@ -97,8 +109,8 @@ public class NgReportListener implements IInvokedMethodListener, ITestListener {
 		context.report.fail(result.getThrowable());
 		context.finalizeSelenium();
 
-		// Flush the report
-		ParallelReport.flush();
+		// Ask the writer to flush the report
+		ParallelReport.requestFlush();
 		
 		// Finalize the context
 		ContextFactory.finalizeContext();
@@ -116,8 +128,8 @@ public class NgReportListener implements IInvokedMethodListener, ITestListener {
 		context.report.skip("Test skipped.");
 		context.finalizeSelenium();
 
-		// Flush the report
-		ParallelReport.flush();
+		// Ask the writer to flush the report
+		ParallelReport.requestFlush();
 		
 		// Finalize the context
 		ContextFactory.finalizeContext();
@@ -134,8 +146,8 @@ public class NgReportListener implements IInvokedMethodListener, ITestListener {
 		context = ContextFactory.getContext();
 		context.finalizeSelenium();
 
-		// Flush the report
-		ParallelReport.flush();
+		// Ask the writer to flush the report
+		ParallelReport.requestFlush();
 		
 		// Finalize the context
 		ContextFactory.finalizeContext();
@@ -150,28 +162,88 @@ public class NgReportListener implements IInvokedMethodListener, ITestListener {
 	}
 	
 	/**
-	 * Helps taking screenshots in case of errors.
+	 * Helps taking screenshots in case of errors. The screenshots kept in memory
+	 * by the screenshot policy are saved as well.
 	 */
 	private void takeScreenshot(TestContext context, Throwable exception) {
 		if (context.driver != null && exception != null) {
 
+			// Save what has been kept in memory
+			ReportHelper.addBufferedScreenshots(context);
+
 			// We can't take a screenshot in this case
 			if (exception.getMessage() !=null && exception.getMessage().contains("UnhandledAlertException")) {
 				context.report.info("Cannot take a screenshot, an alert is blocking it.");
 			} else {
 				// Add the screenshot
-				ReportHelper.addScreenshot(context);
+				ReportHelper.attachScreenshot(context);
 			}
 		}
 	}
 
-	// Methods below aren't used.
+	/**
+	 * Close the pooled browsers, publish the pool, wait, retry and element cache
+	 * statistics and write the final version of the report.
+	 */
 	@Override
-	public void onTestStart(ITestResult arg0) {
+	public void onFinish(ITestContext arg0) {
+
+		// Add the browser startup statistics
+		ParallelReport.setSystemInfo("Browser startup", DriverFactory.getStatistics());
+
+		// Add the stub browser statistics
+		if (StubDriver.isEnabled()) {
+			ParallelReport.setSystemInfo("Stub browser", StubDriver.getStatistics());
+		}
+
+		// Add the pool statistics to the report
+		if (DriverPool.isEnabled()) {
+			ParallelReport.setSystemInfo("Browser pool", DriverPool.getStatistics());
+			DriverPool.shutdown();
+		}
+
+		// Add the wait, retry and element cache statistics
+		ParallelReport.setSystemInfo("Waits", EventWait.getStatistics());
+		ParallelReport.setSystemInfo("Element cache", ElementCache.getStatistics());
+		Retry.getStatistics().forEach((site, line) -> ParallelReport.setSystemInfo("Retries at " + site, line));
+
+		// Add the data source statistics
+		ParallelReport.setSystemInfo("Data sources", DataSources.getStatistics());
+		ParallelReport.setSystemInfo("Data generator", CustomerGenerator.getStatistics());
+
+		// Add the fixture statistics, keeping the times through the pages
+		Fixtures.update();
+		ParallelReport.setSystemInfo("Fixtures", Fixtures.getStatistics());
+
+		// Add the local server statistics and stop it
+		if (GroceryCrudServer.isRunning()) {
+			ParallelReport.setSystemInfo("Local server", GroceryCrudServer.getStatistics());
+			GroceryCrudServer.stop();
+		}
+
+		// Add the browser proxy statistics
+		if (BrowserProxy.isEnabled() || TrafficArchive.isEnabled()) {
+			ParallelReport.setSystemInfo("Browser proxy", BrowserProxy.getStatistics());
+		}
+
+		// Add the traffic archive statistics, closing the file being recorded
+		if (TrafficArchive.isEnabled()) {
+			ParallelReport.setSystemInfo("Traffic archive", TrafficArchive.getStatistics());
+			TrafficArchive.close();
+		}
+
+		// Add the context statistics, the contexts never finalized are leaked
+		ParallelReport.setSystemInfo("Contexts", ContextFactory.getStatistics());
+		if (ContextFactory.countLeaked() > 0)
+			System.err.println("Test contexts leaked: " + ContextFactory.getStatistics());
+
+		// Write the final version of the report
+		ParallelReport.close();
 	}
 
+	// Methods below aren't used.
 	@Override
-	public void onFinish(ITestContext arg0) {
+	public void onTestStart(ITestResult arg0) {
 	}
 
 }
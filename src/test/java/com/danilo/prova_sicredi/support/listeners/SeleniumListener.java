@@ -1,16 +1,22 @@
 package com.danilo.prova_sicredi.support.listeners;
 
+import java.util.function.Supplier;
+
 import org.openqa.selenium.By;
+import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.support.events.WebDriverEventListener;
 
-import com.aventstack.extentreports.ExtentTest;
 import com.aventstack.extentreports.markuputils.MarkupHelper;
+import com.danilo.prova_sicredi.support.Locators;
+import com.danilo.prova_sicredi.support.Settings;
 import com.danilo.prova_sicredi.support.TestContext;
+import com.danilo.prova_sicredi.support.report.ReportNode;
+import com.danilo.prova_sicredi.support.report.StepTimings;
 
 /**
- * This class handles the log of Selenium events in the ExtentTest instance.
+ * This class handles the log of Selenium events in the ReportNode of the test.
  * This listener is connected to the webdriver by the time it is instantiated by
  * the DriverFactory class.
  * 
@@ -23,12 +29,22 @@ public class SeleniumListener implements WebDriverEventListener {
 	private TestContext context;
 
 	// The report for the current thread
-	private ExtentTest report;
+	private ReportNode report;
 
 	// Stores the last step executed, used for error handling.
-	private String lastStep;
+	// The description is only rendered in case it goes to the report.
+	private Supplier<String> lastStep;
 	private String script;
 
+	// The step being timed: kind of command, locator and when it started
+	private String stepCommand;
+	private String stepLocator;
+	private long stepStart;
+
+	// Whether to ask the browser for the tag names of the elements. This costs a
+	// round trip to the driver for each click and each value change.
+	private boolean logTagNames;
+
 	/**
 	 * Initializes the Selenium Listener using the Test Context, so it has access to
 	 * the report.
@@ -41,63 +57,61 @@ public class SeleniumListener implements WebDriverEventListener {
 		report = context.report;
 		lastStep = null;
 		script = null;
+		logTagNames = Boolean.parseBoolean(Settings.getProperty("step_log_tag_names"));
 	}
 
 	@Override
 	public void afterAlertAccept(WebDriver arg0) {
-		report.pass(lastStep);
-		lastStep = null;
+		passStep();
 	}
 
 	@Override
 	public void afterAlertDismiss(WebDriver arg0) {
-		report.pass(lastStep);
-		lastStep = null;
+		passStep();
 	}
 
 	@Override
 	public void afterChangeValueOf(WebElement arg0, WebDriver arg1, CharSequence[] arg2) {
-		report.pass(lastStep);
-		lastStep = null;
+		passStep();
 	}
 
 	@Override
 	public void afterClickOn(WebElement arg0, WebDriver arg1) {
-		report.pass(lastStep);
-		lastStep = null;
+		passStep();
 	}
 
 	@Override
 	public void afterFindBy(By arg0, WebElement arg1, WebDriver arg2) {
+		endStep();
 	}
 
 	@Override
 	public void afterNavigateBack(WebDriver arg0) {
-		report.pass(lastStep);
-		lastStep = null;
+		passStep();
+		context.countNavigation();
 	}
 
 	@Override
 	public void afterNavigateForward(WebDriver arg0) {
-		report.pass(lastStep);
-		lastStep = null;
+		passStep();
+		context.countNavigation();
 	}
 
 	@Override
 	public void afterNavigateRefresh(WebDriver arg0) {
-		report.pass(lastStep);
-		lastStep = null;
+		passStep();
+		context.countNavigation();
 	}
 
 	@Override
 	public void afterNavigateTo(String arg0, WebDriver arg1) {
-		report.pass(lastStep);
-		lastStep = null;
+		passStep();
+		context.countNavigation();
 	}
 
 	@Override
 	public void afterScript(String script, WebDriver driver) {
-		report.pass(lastStep);
+		passStep();
 		report.pass(MarkupHelper.createCodeBlock(script));
 		lastStep = null;
 		this.script = null;
@@ -105,64 +119,186 @@ public class SeleniumListener implements WebDriverEventListener {
 
 	@Override
 	public void afterSwitchToWindow(String arg0, WebDriver arg1) {
-		report.pass(lastStep);
-		lastStep = null;
+		passStep();
 	}
 
 	@Override
 	public void beforeAlertAccept(WebDriver driver) {
-		lastStep = "Accept alert.";
+		startStep("alert", null);
+		lastStep = () -> "Accept alert.";
 	}
 
 	@Override
 	public void beforeAlertDismiss(WebDriver driver) {
-		lastStep = "Dismiss alert.";
+		startStep("alert", null);
+		lastStep = () -> "Dismiss alert.";
 	}
 
 	@Override
 	public void beforeChangeValueOf(WebElement element, WebDriver driver, CharSequence[] value) {
-		lastStep = "Change value of element with tag &lsaquo;" + element.getTagName() + "&rsaquo; to '" + value[0].toString() + "'.";
+		String target;
+
+		// The description of the element has to be taken now, the element may be gone
+		// by the time the step is rendered
+		target = describe(element);
+		startStep("change value", timingKey(element, target));
+		lastStep = () -> "Change value of " + target + " to '" + value[0].toString() + "'.";
 	}
 
 	@Override
 	public void beforeClickOn(WebElement element, WebDriver driver) {
-		lastStep = "Click on element with tag 	&lsaquo;" + element.getTagName() + "&rsaquo;.";
+		String target;
+
+		// The description of the element has to be taken now, the element may be gone
+		// by the time the step is rendered
+		target = describe(element);
+		startStep("click", timingKey(element, target));
+		lastStep = () -> "Click on " + target + ".";
 	}
 
 	@Override
 	public void beforeFindBy(By selector, WebElement element, WebDriver driver) {
-		lastStep = "Find element '" + selector.toString() + "'";
+		startStep("find", Locators.describe(selector));
+		lastStep = () -> "Find element '" + selector.toString() + "'";
 	}
 
 	@Override
 	public void beforeNavigateBack(WebDriver driver) {
-		lastStep = "Navigate back.";
+		startStep("navigate", null);
+		lastStep = () -> "Navigate back.";
 	}
 
 	@Override
 	public void beforeNavigateForward(WebDriver driver) {
-		lastStep = "Navigate forward.";
+		startStep("navigate", null);
+		lastStep = () -> "Navigate forward.";
 	}
 
 	@Override
 	public void beforeNavigateRefresh(WebDriver driver) {
-		lastStep = "Refresh the page.";
+		startStep("navigate", null);
+		lastStep = () -> "Refresh the page.";
 	}
 
 	@Override
 	public void beforeNavigateTo(String path, WebDriver driver) {
-		lastStep = "Navigate to '" + path + "'.";
+		startStep("navigate", null);
+		lastStep = () -> "Navigate to '" + path + "'.";
 	}
 
 	@Override
 	public void beforeScript(String script, WebDriver driver) {
-		lastStep = "Inject script:";
+		startStep("script", null);
+		lastStep = () -> "Inject script:";
 		this.script = script;
 	}
 
 	@Override
 	public void beforeSwitchToWindow(String handle, WebDriver driver) {
-		lastStep = "Switch to window with handle '" + handle + "'.";
+		startStep("switch window", null);
+		lastStep = () -> "Switch to window with handle '" + handle + "'.";
+	}
+
+	/**
+	 * Starts timing a step.
+	 * 
+	 * @param command
+	 *            The kind of command.
+	 * @param locator
+	 *            The locator of the element, or null.
+	 */
+	private void startStep(String command, String locator) {
+		stepCommand = command;
+		stepLocator = locator;
+		stepStart = System.nanoTime();
+	}
+
+	/**
+	 * Stops timing the current step and records its duration.
+	 */
+	private void endStep() {
+		if (stepCommand != null)
+			StepTimings.record(stepCommand, stepLocator, System.nanoTime() - stepStart);
+		stepCommand = null;
+	}
+
+	/**
+	 * Adds the last step to the report as passed.
+	 */
+	private void passStep() {
+		endStep();
+		if (lastStep != null)
+			report.pass(lastStep.get());
+		lastStep = null;
+	}
+
+	/**
+	 * Describes an element without asking anything to the browser. The elements
+	 * of the ListeningDriver keep the locator they were found by, the ElementCache
+	 * gives it to the ones found by its script. Remote elements found by the
+	 * driver also print their locator in toString(), which is a local call, the
+	 * ones returned by a script print 'unknown locator'.
+	 * 
+	 * @param element
+	 *            The element to be described.
+	 * @return a description of the element.
+	 */
+	private String describe(WebElement element) {
+
+		By locator;
+		String text;
+		int index;
+
+		// The old behavior, costs a round trip to the driver
+		if (logTagNames)
+			return "element with tag &lsaquo;" + element.getTagName() + "&rsaquo;";
+
+		// Use the locator kept by the element, "By.xpath: //a" is shown as "xpath: //a"
+		locator = getLocator(element);
+		if (locator != null)
+			return "element '" + locator.toString().replaceFirst("^By\\.", "") + "'";
+
+		// Get the locator from the element, it looks like "[[driver] -> xpath: //a]"
+		text = element.toString();
+		index = text.lastIndexOf(" -> ");
+		if (index >= 0 && !text.contains("unknown locator"))
+			return "element '" + text.substring(index + 4, text.length() - 1) + "'";
+
+		return "element";
+	}
+
+	/**
+	 * Tells under which locator the step on an element is timed. The elements
+	 * found by a locator filled from a template are timed under the template, so
+	 * the timings don't get a new entry for each value.
+	 *
+	 * @param element
+	 *            The element.
+	 * @param target
+	 *            The description of the element.
+	 * @return the locator for the timings.
+	 */
+	private String timingKey(WebElement element, String target) {
+
+		By locator;
+
+		locator = getLocator(element);
+		if (locator instanceof Locators.ByTemplate)
+			return "element 'xpath: " + ((Locators.ByTemplate) locator).getTemplate() + "'";
+
+		return target;
+	}
+
+	/**
+	 * @return the locator the element was found by, or null in case it is not
+	 *         known.
+	 */
+	private static By getLocator(WebElement element) {
+
+		if (element instanceof ListeningDriver.ListeningElement)
+			return ((ListeningDriver.ListeningElement) element).getLocator();
+
+		return null;
 	}
 
 	/**
@@ -185,13 +321,22 @@ public class SeleniumListener implements WebDriverEventListener {
 	@Override
 	public void onException(Throwable exception, WebDriver driver) {
 
+		// Failed steps are timed apart, most of them are polls of the waits
+		if (stepCommand != null)
+			stepCommand = stepCommand + " (failed)";
+		endStep();
+
+		// Stale cached elements are found again by the ElementCache
+		if (exception instanceof StaleElementReferenceException && context.isStaleElementsExpected())
+			return;
+
 		// Skip the handling of exceptions in case it is needed.
 		if (!context.isHandleExceptions())
 			return;
 
 		// In case we have existing steps, fail them
 		if (lastStep != null)
-			report.fail(lastStep);
+			report.fail(lastStep.get());
 
 		// Add the script as well in case we have it
 		if (script != null)
@@ -0,0 +1,395 @@
+package com.danilo.prova_sicredi.support.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.openqa.selenium.json.Json;
+
+import com.aventstack.extentreports.markuputils.MarkupHelper;
+import com.danilo.prova_sicredi.support.Settings;
+import com.danilo.prova_sicredi.support.TestContext;
+import com.danilo.prova_sicredi.support.data.CustomerGenerator;
+import com.danilo.prova_sicredi.support.factories.ContextFactory;
+import com.danilo.prova_sicredi.support.factories.DriverPool;
+import com.danilo.prova_sicredi.support.report.LatencyHistogram;
+import com.danilo.prova_sicredi.support.report.ParallelReport;
+import com.danilo.prova_sicredi.support.report.ReportNode;
+
+/**
+ * This class runs virtual users through the flows of the page objects, to
+ * measure the application under load instead of checking it once. Each user
+ * runs the transactions added, in order and with the same customer, over and
+ * over until the run is over. A transaction that fails skips the rest of the
+ * iteration, as the next ones depend on it.
+ *
+ * The users are started evenly over 'load_ramp_up' seconds, and all of them
+ * stop when 'load_duration' seconds have passed since the start, ramp-up
+ * included. After each transaction a user waits 'load_think_time'
+ * milliseconds, plus a random part of up to 'load_think_time_jitter'
+ * milliseconds that comes from the seed of the run.
+ *
+ * The browsers are leased from the DriverPool for each transaction and given
+ * back during the think time, so 'load_users' users share 'driver_pool_size'
+ * browsers. The time waiting for a browser is not part of the transactions, it
+ * is measured apart as 'browser lease'. The load runs against the local server
+ * only, so the public demo is never loaded.
+ *
+ * The throughput and the percentiles of each transaction go to a 'Load' node
+ * of the report and to 'load_report.json' in the report folder. The steps of
+ * each user go to a report node of the user.
+ *
+ * @author danilo
+ *
+ */
+public class LoadRunner {
+
+	// The percentiles published
+	private static final double[] PERCENTILES = { 50, 90, 99, 100 };
+
+	// The name of the time spent waiting for a browser
+	private static final String LEASE = "browser lease";
+
+	// Settings
+	private final int users;
+	private final long rampUpMillis;
+	private final long durationMillis;
+	private final long thinkTimeMillis;
+	private final int thinkTimeJitterMillis;
+	private final long seed;
+
+	// The transactions of an iteration, by name
+	private final Map<String, Consumer<Map<String, String>>> transactions = new LinkedHashMap<>();
+
+	// Statistics, by transaction
+	private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+	private final Map<String, AtomicLong> failures = new LinkedHashMap<>();
+	private final AtomicLong iterations = new AtomicLong();
+
+	// When the run started and how long it took
+	private long start;
+	private long elapsedNanos;
+
+	/**
+	 * Creates a runner with the load set in config.properties.
+	 */
+	public LoadRunner() {
+		users = Integer.parseInt(Settings.getProperty("load_users"));
+		rampUpMillis = Long.parseLong(Settings.getProperty("load_ramp_up")) * 1000;
+		durationMillis = Long.parseLong(Settings.getProperty("load_duration")) * 1000;
+		thinkTimeMillis = Long.parseLong(Settings.getProperty("load_think_time"));
+		thinkTimeJitterMillis = Integer.parseInt(Settings.getProperty("load_think_time_jitter"));
+		seed = CustomerGenerator.getSeed();
+
+		latencies.put(LEASE, new LatencyHistogram());
+	}
+
+	/**
+	 * Adds a transaction to the iterations of the users.
+	 *
+	 * @param name
+	 *            Name of the transaction in the report.
+	 * @param flow
+	 *            The flow, given the customer of the iteration. It runs in the
+	 *            thread of the user, with a browser in its context, and fails by
+	 *            throwing.
+	 * @return this runner.
+	 */
+	public LoadRunner addTransaction(String name, Consumer<Map<String, String>> flow) {
+		transactions.put(name, flow);
+		latencies.put(name, new LatencyHistogram());
+		failures.put(name, new AtomicLong());
+		return this;
+	}
+
+	/**
+	 * Runs the users until the duration is over, then publishes the results.
+	 */
+	public void run() {
+
+		List<Thread> threads;
+		Thread thread;
+
+		// Never load the public demo
+		if (!Settings.getProperty("environment").equals("local"))
+			throw new RuntimeException("The load mode runs against the local server only, set 'environment' to "
+					+ "'local'.");
+
+		// The browsers must be bounded
+		if (!DriverPool.isEnabled())
+			throw new RuntimeException("The load mode shares the browsers of the pool, set 'driver_pool' to 'true'.");
+
+		System.out.println(String.format("Load: %s", describe()));
+
+		// Start the users, each one waits for its turn in the ramp-up
+		start = System.currentTimeMillis();
+		threads = new ArrayList<>();
+		for (int user = 0; user < users; user++) {
+			final int index = user;
+			thread = new Thread(() -> runUser(index), "virtual-user-" + (index + 1));
+			threads.add(thread);
+			thread.start();
+		}
+
+		// Wait for all of them
+		for (Thread user : threads) {
+			try {
+				user.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for the virtual users.", e);
+			}
+		}
+		elapsedNanos = (System.currentTimeMillis() - start) * 1000000;
+
+		// Publish the results
+		addToReport();
+		writeSummary();
+		ParallelReport.setSystemInfo("Load", getStatistics());
+		System.out.println("Load: " + getStatistics());
+	}
+
+	/**
+	 * @return the number of transactions that passed.
+	 */
+	public long getPassed() {
+
+		long passed;
+
+		passed = 0;
+		for (String name : transactions.keySet()) {
+			passed += latencies.get(name).getCount();
+		}
+
+		return passed;
+	}
+
+	/**
+	 * @return the number of transactions that failed.
+	 */
+	public long getFailed() {
+
+		long failed;
+
+		failed = 0;
+		for (AtomicLong count : failures.values()) {
+			failed += count.get();
+		}
+
+		return failed;
+	}
+
+	/**
+	 * @return a line with the results of the run.
+	 */
+	public String getStatistics() {
+		return String.format("Users: %d, iterations: %d, transactions passed: %d, failed: %d, in %.1f s (%.1f/s)",
+				users, iterations.get(), getPassed(), getFailed(), elapsedNanos / 1e9,
+				getPassed() / Math.max(elapsedNanos / 1e9, 0.001));
+	}
+
+	/**
+	 * Runs a virtual user, until the run is over.
+	 *
+	 * @param index
+	 *            The index of the user, from 0.
+	 */
+	private void runUser(int index) {
+
+		TestContext context;
+		CustomerGenerator generator;
+		Random random;
+		Map<String, String> customer;
+		long end;
+
+		end = start + durationMillis;
+		random = new Random(seed + index);
+
+		// Wait for the turn of the user
+		if (!pause(users > 1 ? rampUpMillis * index / users : 0, end))
+			return;
+
+		// The user has its own report and its own customers
+		context = ContextFactory.getContext(String.format("Virtual user %d", index + 1));
+		generator = CustomerGenerator.forCurrentThread();
+
+		try {
+			while (System.currentTimeMillis() < end) {
+				customer = generator.next();
+				iterations.incrementAndGet();
+
+				for (Map.Entry<String, Consumer<Map<String, String>>> transaction : transactions.entrySet()) {
+					if (!runTransaction(context, transaction.getKey(), transaction.getValue(), customer))
+						break;
+					if (!pause(thinkTimeMillis + (thinkTimeJitterMillis > 0 ? random.nextInt(thinkTimeJitterMillis
+							+ 1) : 0), end))
+						break;
+				}
+
+				ParallelReport.requestFlush();
+			}
+		} finally {
+			context.finalizeSelenium();
+			ContextFactory.finalizeContext();
+		}
+	}
+
+	/**
+	 * Runs a transaction with a browser leased for it.
+	 *
+	 * @return true in case the transaction passed.
+	 */
+	private boolean runTransaction(TestContext context, String name, Consumer<Map<String, String>> flow,
+			Map<String, String> customer) {
+
+		long begin;
+
+		try {
+			// Get a browser, the wait is not part of the transaction
+			begin = System.nanoTime();
+			context.initializeSelenium();
+			latencies.get(LEASE).add(System.nanoTime() - begin);
+
+			begin = System.nanoTime();
+			flow.accept(customer);
+			latencies.get(name).add(System.nanoTime() - begin);
+
+			return true;
+
+		} catch (Throwable e) {
+			failures.get(name).incrementAndGet();
+			context.report.fail(String.format("Transaction '%s' failed: %s", name, e));
+			return false;
+
+		} finally {
+			// Give the browser back during the think time
+			context.finalizeSelenium();
+		}
+	}
+
+	/**
+	 * Waits, unless the run is over before that.
+	 *
+	 * @return true in case the run is not over.
+	 */
+	private boolean pause(long millis, long end) {
+
+		long remaining;
+
+		remaining = end - System.currentTimeMillis();
+		if (remaining <= 0)
+			return false;
+
+		try {
+			Thread.sleep(Math.min(millis, remaining));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		return millis < remaining;
+	}
+
+	/**
+	 * @return a short description of the load, for the report.
+	 */
+	private String describe() {
+		return String.format("%d users over %d browsers, ramp-up %d s, duration %d s, think time %d-%d ms", users,
+				Integer.parseInt(Settings.getProperty("driver_pool_size")), rampUpMillis / 1000,
+				durationMillis / 1000, thinkTimeMillis, thinkTimeMillis + thinkTimeJitterMillis);
+	}
+
+	/**
+	 * Adds a node with the results table to the report.
+	 */
+	private void addToReport() {
+
+		ReportNode test;
+		String[][] table;
+		double[] values;
+		LatencyHistogram histogram;
+		int row;
+
+		table = new String[latencies.size() + 1][];
+		table[0] = new String[] { "Transaction", "Passed", "Failed", "Per second", "p50", "p90", "p99", "Max" };
+
+		row = 1;
+		for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+			histogram = entry.getValue();
+			values = histogram.getPercentiles(PERCENTILES);
+			table[row++] = new String[] { entry.getKey(), String.valueOf(histogram.getCount()),
+					failures.containsKey(entry.getKey()) ? String.valueOf(failures.get(entry.getKey()).get()) : "-",
+					String.format("%.2f", histogram.getCount() / Math.max(elapsedNanos / 1e9, 0.001)),
+					String.format("%.1f", values[0]), String.format("%.1f", values[1]),
+					String.format("%.1f", values[2]), String.format("%.1f", values[3]) };
+		}
+
+		test = ParallelReport.getExtentTest("Load");
+		test.info(describe());
+		test.info("<strong>Transactions</strong> (ms)");
+		test.info(MarkupHelper.createTable(table));
+		if (getFailed() > 0)
+			test.fail(String.format("%d transactions failed, see the reports of the users.", getFailed()));
+		else
+			test.pass(getStatistics());
+	}
+
+	/**
+	 * Writes the results to 'load_report.json' in the report folder.
+	 */
+	private void writeSummary() {
+
+		Map<String, Object> summary, profile, line;
+		List<Map<String, Object>> results;
+		double[] values;
+
+		profile = new LinkedHashMap<>();
+		profile.put("users", users);
+		profile.put("browsers", Integer.parseInt(Settings.getProperty("driver_pool_size")));
+		profile.put("browser", Settings.getProperty("browser"));
+		profile.put("ramp_up_seconds", rampUpMillis / 1000);
+		profile.put("duration_seconds", durationMillis / 1000);
+		profile.put("think_time_millis", thinkTimeMillis);
+		profile.put("think_time_jitter_millis", thinkTimeJitterMillis);
+		profile.put("data_seed", seed);
+
+		results = new ArrayList<>();
+		for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+			values = entry.getValue().getPercentiles(PERCENTILES);
+
+			line = new LinkedHashMap<>();
+			line.put("name", entry.getKey());
+			line.put("passed", entry.getValue().getCount());
+			line.put("failed", failures.containsKey(entry.getKey()) ? failures.get(entry.getKey()).get() : 0);
+			line.put("per_second", entry.getValue().getCount() / Math.max(elapsedNanos / 1e9, 0.001));
+			line.put("p50", values[0]);
+			line.put("p90", values[1]);
+			line.put("p99", values[2]);
+			line.put("max", values[3]);
+			results.add(line);
+		}
+
+		summary = new LinkedHashMap<>();
+		summary.put("profile", profile);
+		summary.put("elapsed_seconds", elapsedNanos / 1e9);
+		summary.put("iterations", iterations.get());
+		summary.put("transactions", results);
+
+		try {
+			Files.write(Paths.get(Settings.getProperty("report_path") + File.separator + "load_report.json"),
+					new Json().toJson(summary).getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			System.err.println("Could not write the load report: " + e.getMessage());
+		}
+	}
+
+}
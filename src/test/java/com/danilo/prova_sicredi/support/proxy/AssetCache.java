@@ -0,0 +1,178 @@
+package com.danilo.prova_sicredi.support.proxy;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps the static assets (styles, scripts, fonts and images)
+ * downloaded by the browsers, shared by all the proxies. It is bounded by the
+ * total size of the assets: when it is full, the assets not used for the
+ * longest time are dropped.
+ *
+ * Only answers that can be kept by any cache are kept: a 200 to a GET, without
+ * cookies and without 'no-store', 'no-cache' or 'private'.
+ *
+ * @author danilo
+ *
+ */
+public class AssetCache {
+
+	// The extensions of the static assets, for the answers without a type
+	private static final String STATIC_EXTENSIONS = ".*\\.(css|js|woff2?|ttf|otf|eot|svg|png|jpe?g|gif|ico|webp)$";
+
+	// The types of the static assets
+	private static final String STATIC_TYPES = "(text/css|text/javascript|application/(x-)?javascript|font/.*"
+			+ "|application/(x-)?font.*|application/vnd\\.ms-fontobject|image/.*)(;.*)?";
+
+	// The assets, the least recently used first
+	private final LinkedHashMap<String, Response> assets = new LinkedHashMap<>(64, 0.75f, true);
+
+	// The maximum size of all the assets, in bytes
+	private final long maxBytes;
+
+	// The size of the assets kept
+	private long bytes = 0;
+
+	// Statistics
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param maxBytes
+	 *            The maximum size of all the assets, in bytes.
+	 */
+	public AssetCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Looks for an asset.
+	 *
+	 * @param url
+	 *            The URL of the asset.
+	 * @return the answer kept, or null in case it is not in the cache.
+	 */
+	public synchronized Response get(String url) {
+
+		Response response;
+
+		response = assets.get(url);
+		if (response == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+
+		return response;
+	}
+
+	/**
+	 * Keeps an answer in case it is a static asset that can be cached.
+	 *
+	 * @param url
+	 *            The URL requested.
+	 * @param response
+	 *            The answer of the server.
+	 * @return whether the answer has been kept.
+	 */
+	public synchronized boolean put(String url, Response response) {
+
+		Iterator<Response> oldest;
+		Response removed;
+
+		if (!isCacheable(url, response))
+			return false;
+
+		// Replace any older version
+		removed = assets.remove(url);
+		if (removed != null)
+			bytes -= removed.body.length;
+
+		assets.put(url, response);
+		bytes += response.body.length;
+
+		// Drop the least recently used ones until it fits
+		oldest = assets.values().iterator();
+		while (bytes > maxBytes && oldest.hasNext()) {
+			removed = oldest.next();
+			oldest.remove();
+			bytes -= removed.body.length;
+			evictions.incrementAndGet();
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return a line with the cache statistics.
+	 */
+	public synchronized String getStatistics() {
+		return String.format("Assets: %d (%.1f of %.1f MB), hits: %d, misses: %d, evictions: %d", assets.size(),
+				bytes / 1048576.0, maxBytes / 1048576.0, hits.get(), misses.get(), evictions.get());
+	}
+
+	/**
+	 * Tells whether an answer is a static asset that can be kept.
+	 */
+	private boolean isCacheable(String url, Response response) {
+
+		String type, control;
+
+		if (response.status != 200 || response.body.length > maxBytes / 8)
+			return false;
+
+		// Private answers
+		control = response.getHeader("Cache-Control");
+		if (response.getHeader("Set-Cookie") != null
+				|| (control != null && control.matches("(?i).*(no-store|no-cache|private).*")))
+			return false;
+
+		// Only static assets
+		type = response.getHeader("Content-Type");
+		if (type != null)
+			return type.toLowerCase().matches(STATIC_TYPES);
+
+		return url.replaceFirst("[?#].*", "").toLowerCase().matches(STATIC_EXTENSIONS);
+	}
+
+	/**
+	 * This class is an answer of a server, fully read.
+	 */
+	public static class Response {
+
+		// The status code and message
+		public final int status;
+		public final String message;
+
+		// The headers, without the hop-by-hop ones
+		public final Map<String, List<String>> headers;
+
+		// The body
+		public final byte[] body;
+
+		public Response(int status, String message, Map<String, List<String>> headers, byte[] body) {
+			this.status = status;
+			this.message = message;
+			this.headers = headers;
+			this.body = body;
+		}
+
+		/**
+		 * @return the first value of a header, ignoring the case of the name, or null.
+		 */
+		public String getHeader(String name) {
+			for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+				if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty())
+					return header.getValue().get(0);
+			}
+			return null;
+		}
+	}
+
+}
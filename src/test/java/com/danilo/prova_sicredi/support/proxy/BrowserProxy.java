@@ -0,0 +1,644 @@
+package com.danilo.prova_sicredi.support.proxy;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.danilo.prova_sicredi.support.Settings;
+import com.danilo.prova_sicredi.support.proxy.AssetCache.Response;
+
+/**
+ * This class is an HTTP proxy that runs inside the test run, one for each
+ * browser session. The browser is started with it by the DriverFactory when
+ * 'proxy' is true.
+ *
+ * The static assets downloaded through plain HTTP are kept in an AssetCache
+ * shared by all the proxies, so the styles, scripts and fonts of the
+ * application are downloaded only once for all the browsers. The hosts set by
+ * 'proxy_blocked_hosts' (and their subdomains) are never reached: the browser
+ * gets an empty answer right away.
+ *
+ * HTTPS goes through a tunnel (CONNECT), so it can be blocked but never
+ * cached, as the proxy can't see inside it.
+ *
+ * What is not blocked nor cached goes through the TrafficArchive, that can
+ * record the exchanges or replay them instead of calling the server.
+ *
+ * Each proxy counts what it did, so the DriverPool can tell what the proxy
+ * saved during each test.
+ *
+ * @author danilo
+ *
+ */
+public class BrowserProxy implements AutoCloseable {
+
+	// Headers that only make sense for one connection
+	private static final Set<String> HOP_BY_HOP = new HashSet<>(Arrays.asList("connection", "keep-alive",
+			"proxy-connection", "proxy-authenticate", "proxy-authorization", "te", "trailer", "transfer-encoding",
+			"upgrade", "content-length", "host"));
+
+	// Timeout of the connections, in milliseconds
+	private static final int TIMEOUT = 60000;
+
+	// Shared by all the proxies, created with the first one
+	private static AssetCache cache;
+	private static Set<String> blockedHosts;
+
+	// All the proxies started, for the statistics
+	private static Queue<BrowserProxy> proxies = new ConcurrentLinkedQueue<>();
+
+	// The connections of all the proxies
+	private static ExecutorService connections = Executors.newCachedThreadPool(task -> {
+		Thread thread = new Thread(task, "browser-proxy");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// The socket the browser connects to
+	private final ServerSocket server;
+
+	// What this proxy did
+	private final Counters counters = new Counters();
+
+	/**
+	 * Starts a proxy on a free port of the loopback interface.
+	 */
+	private BrowserProxy() throws IOException {
+		server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		connections.execute(this::accept);
+		proxies.add(this);
+	}
+
+	/**
+	 * @return whether the browsers should be started with a proxy.
+	 */
+	public static boolean isEnabled() {
+		return Boolean.parseBoolean(Settings.getProperty("proxy"));
+	}
+
+	/**
+	 * Starts a new proxy for a browser session.
+	 *
+	 * @return the running proxy.
+	 */
+	public static BrowserProxy start() {
+
+		synchronized (BrowserProxy.class) {
+			if (cache == null) {
+				cache = new AssetCache(Long.parseLong(Settings.getProperty("proxy_cache_max_bytes")));
+				blockedHosts = new HashSet<>();
+				for (String host : Settings.getProperty("proxy_blocked_hosts").split(",")) {
+					if (!host.trim().isEmpty())
+						blockedHosts.add(host.trim().toLowerCase());
+				}
+			}
+		}
+
+		if (TrafficArchive.isEnabled())
+			TrafficArchive.open();
+
+		try {
+			return new BrowserProxy();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not start the browser proxy.", e);
+		}
+	}
+
+	/**
+	 * @return the address the browser has to use, as host:port.
+	 */
+	public String getAddress() {
+		return server.getInetAddress().getHostAddress() + ":" + server.getLocalPort();
+	}
+
+	/**
+	 * @return a copy of what this proxy did so far.
+	 */
+	public Counters getCounters() {
+		return counters.copy();
+	}
+
+	/**
+	 * @return a line with what all the proxies did and the statistics of the
+	 *         shared cache.
+	 */
+	public static synchronized String getStatistics() {
+
+		Counters total;
+
+		if (cache == null)
+			return "Not used";
+
+		total = new Counters();
+		for (BrowserProxy proxy : proxies) {
+			total.add(proxy.counters, 1);
+		}
+
+		return String.format("Proxies: %d, %s. %s", proxies.size(), total, cache.getStatistics());
+	}
+
+	/**
+	 * Stops taking connections. The ones open are closed by the browser.
+	 */
+	@Override
+	public void close() {
+		try {
+			server.close();
+		} catch (IOException e) {
+			System.err.println("Could not close the browser proxy: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Takes the connections of the browser.
+	 */
+	private void accept() {
+		while (!server.isClosed()) {
+			try {
+				Socket socket = server.accept();
+				connections.execute(() -> serve(socket));
+			} catch (IOException e) {
+				// Closed
+			}
+		}
+	}
+
+	/**
+	 * Answers the requests of a connection, until the browser closes it.
+	 */
+	private void serve(Socket socket) {
+
+		InputStream input;
+		OutputStream output;
+		Request request;
+
+		try {
+			socket.setSoTimeout(TIMEOUT);
+			input = new BufferedInputStream(socket.getInputStream());
+			output = socket.getOutputStream();
+
+			while ((request = Request.read(input)) != null) {
+
+				counters.requests.incrementAndGet();
+
+				// HTTPS, the connection becomes a tunnel
+				if (request.method.equals("CONNECT")) {
+					tunnel(request, socket, input, output);
+					return;
+				}
+
+				write(output, handle(request), request.method.equals("HEAD"));
+
+				if ("close".equalsIgnoreCase(request.getHeader("Connection"))
+						|| "close".equalsIgnoreCase(request.getHeader("Proxy-Connection")))
+					return;
+			}
+
+		} catch (SocketException | SocketTimeoutException e) {
+			// The browser closed the connection, or left it idle
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Browser proxy failed: " + e);
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Nothing else to do
+			}
+		}
+	}
+
+	/**
+	 * Answers a plain HTTP request: blocked, from the cache or from the server.
+	 */
+	private Response handle(Request request) throws IOException {
+
+		Response response;
+		String url;
+
+		url = request.target;
+
+		// Never reach the blocked hosts
+		if (isBlocked(new URL(url).getHost())) {
+			counters.blocked.incrementAndGet();
+			return new Response(204, "No Content", new LinkedHashMap<>(), new byte[0]);
+		}
+
+		// Only the plain GETs can come from the cache
+		if (!request.method.equals("GET") || request.getHeader("Range") != null
+				|| request.getHeader("Authorization") != null)
+			return fetch(request);
+
+		response = cache.get(url);
+		if (response != null) {
+			counters.cacheHits.incrementAndGet();
+			counters.bytesSaved.addAndGet(response.body.length);
+			return response;
+		}
+
+		response = fetch(request);
+		cache.put(url, response);
+
+		return response;
+	}
+
+	/**
+	 * Sends a request to the server, or to the archive in case it is recording or
+	 * replaying.
+	 */
+	private Response fetch(Request request) throws IOException {
+		return TrafficArchive.exchange(request, this::download);
+	}
+
+	/**
+	 * Sends a request to the server.
+	 */
+	private Response download(Request request) throws IOException {
+
+		HttpURLConnection connection;
+		Map<String, List<String>> headers;
+		InputStream body;
+		Response response;
+
+		connection = (HttpURLConnection) new URL(request.target).openConnection(Proxy.NO_PROXY);
+		connection.setInstanceFollowRedirects(false);
+		connection.setUseCaches(false);
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		connection.setRequestMethod(request.method);
+
+		request.headers.forEach((name, values) -> {
+			if (!HOP_BY_HOP.contains(name.toLowerCase())) {
+				for (String value : values) {
+					connection.addRequestProperty(name, value);
+				}
+			}
+		});
+
+		if (request.body.length > 0) {
+			connection.setDoOutput(true);
+			try (OutputStream output = connection.getOutputStream()) {
+				output.write(request.body);
+			}
+		}
+
+		// The answer, without the hop-by-hop headers
+		headers = new LinkedHashMap<>();
+		connection.getHeaderFields().forEach((name, values) -> {
+			if (name != null && !HOP_BY_HOP.contains(name.toLowerCase()))
+				headers.put(name, values);
+		});
+
+		body = connection.getResponseCode() >= 400 ? connection.getErrorStream() : connection.getInputStream();
+		response = new Response(connection.getResponseCode(), connection.getResponseMessage(), headers,
+				body == null ? new byte[0] : readAll(body));
+
+		counters.bytesFetched.addAndGet(response.body.length);
+
+		return response;
+	}
+
+	/**
+	 * Connects the browser to the server of a CONNECT request, copying the bytes
+	 * both ways until one of them closes.
+	 */
+	private void tunnel(Request request, Socket client, InputStream input, OutputStream output) throws IOException {
+
+		String[] address;
+		OutputStream remoteOutput;
+
+		address = request.target.split(":");
+		if (isBlocked(address[0])) {
+			counters.blocked.incrementAndGet();
+			output.write("HTTP/1.1 403 Forbidden\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+			return;
+		}
+
+		counters.tunnels.incrementAndGet();
+
+		try (Socket remote = new Socket()) {
+			remote.connect(new InetSocketAddress(address[0], address.length > 1 ? Integer.parseInt(address[1]) : 443),
+					TIMEOUT);
+			client.setSoTimeout(0);
+			output.write("HTTP/1.1 200 Connection Established\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+			output.flush();
+
+			remoteOutput = remote.getOutputStream();
+			connections.execute(() -> pipe(remote, input, remoteOutput));
+			pipe(client, remote.getInputStream(), output);
+		}
+	}
+
+	/**
+	 * Copies bytes until the end of the stream, then closes the socket given.
+	 */
+	private static void pipe(Socket closing, InputStream from, OutputStream to) {
+
+		byte[] buffer;
+		int read;
+
+		buffer = new byte[16384];
+		try {
+			while ((read = from.read(buffer)) != -1) {
+				to.write(buffer, 0, read);
+				to.flush();
+			}
+		} catch (IOException e) {
+			// One of the sides closed the connection
+		} finally {
+			try {
+				closing.shutdownOutput();
+			} catch (IOException e) {
+				// Already closed
+			}
+		}
+	}
+
+	/**
+	 * Sends an answer to the browser, with its full length so the connection can
+	 * be used again.
+	 */
+	private static void write(OutputStream output, Response response, boolean headOnly) throws IOException {
+
+		StringBuilder head;
+
+		head = new StringBuilder();
+		head.append("HTTP/1.1 ").append(response.status).append(' ')
+				.append(response.message == null ? "" : response.message).append("\r\n");
+		response.headers.forEach((name, values) -> {
+			for (String value : values) {
+				head.append(name).append(": ").append(value).append("\r\n");
+			}
+		});
+		head.append("Content-Length: ").append(response.body.length).append("\r\n\r\n");
+
+		output.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+		if (!headOnly)
+			output.write(response.body);
+		output.flush();
+	}
+
+	/**
+	 * @return whether a host or its domain is blocked.
+	 */
+	private static boolean isBlocked(String host) {
+
+		String domain;
+
+		domain = host.toLowerCase();
+		while (true) {
+			if (blockedHosts.contains(domain))
+				return true;
+			if (domain.indexOf('.') < 0)
+				return false;
+			domain = domain.substring(domain.indexOf('.') + 1);
+		}
+	}
+
+	/**
+	 * Reads a stream to the end.
+	 */
+	static byte[] readAll(InputStream input) throws IOException {
+
+		ByteArrayOutputStream bytes;
+		byte[] buffer;
+		int read;
+
+		bytes = new ByteArrayOutputStream();
+		buffer = new byte[16384];
+		try (InputStream stream = input) {
+			while ((read = stream.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * This class is a request sent by the browser, fully read.
+	 */
+	static class Request {
+
+		// The method, the target (absolute URL, or host:port for CONNECT) and the
+		// headers
+		final String method;
+		final String target;
+		final Map<String, List<String>> headers;
+
+		// The body, empty when there is none
+		final byte[] body;
+
+		Request(String method, String target, Map<String, List<String>> headers, byte[] body) {
+			this.method = method;
+			this.target = target;
+			this.headers = headers;
+			this.body = body;
+		}
+
+		/**
+		 * @return the first value of a header, ignoring the case of the name, or null.
+		 */
+		String getHeader(String name) {
+			for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+				if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty())
+					return header.getValue().get(0);
+			}
+			return null;
+		}
+
+		/**
+		 * Reads the next request of a connection.
+		 *
+		 * @return the request, or null in case the connection has been closed.
+		 */
+		static Request read(InputStream input) throws IOException {
+
+			String line;
+			String[] parts;
+			Map<String, List<String>> headers;
+			Request head;
+			byte[] body;
+
+			// Request line, ignoring the empty lines between requests
+			do {
+				line = readLine(input);
+			} while (line != null && line.isEmpty());
+
+			if (line == null)
+				return null;
+
+			parts = line.split(" ");
+			if (parts.length < 3)
+				throw new IOException("Invalid request line: " + line);
+
+			// Headers
+			headers = new LinkedHashMap<>();
+			while ((line = readLine(input)) != null && !line.isEmpty()) {
+				headers.computeIfAbsent(line.substring(0, line.indexOf(':')).trim(), key -> new ArrayList<>())
+						.add(line.substring(line.indexOf(':') + 1).trim());
+			}
+
+			// Body
+			head = new Request(parts[0], parts[1], headers, new byte[0]);
+			if ("chunked".equalsIgnoreCase(head.getHeader("Transfer-Encoding"))) {
+				body = readChunked(input);
+			} else if (head.getHeader("Content-Length") != null) {
+				body = readBytes(input, Integer.parseInt(head.getHeader("Content-Length")));
+			} else {
+				body = new byte[0];
+			}
+
+			return new Request(parts[0], parts[1], headers, body);
+		}
+
+		/**
+		 * Reads a line ended by CRLF, as ISO-8859-1.
+		 */
+		private static String readLine(InputStream input) throws IOException {
+
+			StringBuilder line;
+			int c;
+
+			line = new StringBuilder();
+			while ((c = input.read()) != -1) {
+				if (c == '\n')
+					return line.toString();
+				if (c != '\r')
+					line.append((char) c);
+			}
+
+			return line.length() == 0 ? null : line.toString();
+		}
+
+		/**
+		 * Reads a number of bytes.
+		 */
+		private static byte[] readBytes(InputStream input, int length) throws IOException {
+
+			byte[] bytes;
+			int offset, read;
+
+			bytes = new byte[length];
+			offset = 0;
+			while (offset < length) {
+				read = input.read(bytes, offset, length - offset);
+				if (read == -1)
+					throw new IOException("Connection closed in the middle of a request.");
+				offset += read;
+			}
+
+			return bytes;
+		}
+
+		/**
+		 * Reads a chunked body.
+		 */
+		private static byte[] readChunked(InputStream input) throws IOException {
+
+			ByteArrayOutputStream body;
+			int length;
+			String line;
+
+			body = new ByteArrayOutputStream();
+			while (true) {
+				line = readLine(input);
+				length = Integer.parseInt(line.split(";")[0].trim(), 16);
+				if (length == 0)
+					break;
+				body.write(readBytes(input, length));
+				readLine(input);
+			}
+
+			// Trailers
+			while ((line = readLine(input)) != null && !line.isEmpty()) {
+				// Ignored
+			}
+
+			return body.toByteArray();
+		}
+	}
+
+	/**
+	 * This class holds what a proxy did.
+	 */
+	public static class Counters {
+
+		public final AtomicLong requests = new AtomicLong();
+		public final AtomicLong cacheHits = new AtomicLong();
+		public final AtomicLong bytesSaved = new AtomicLong();
+		public final AtomicLong bytesFetched = new AtomicLong();
+		public final AtomicLong blocked = new AtomicLong();
+		public final AtomicLong tunnels = new AtomicLong();
+
+		/**
+		 * @return a copy of the counters.
+		 */
+		public Counters copy() {
+
+			Counters copy;
+
+			copy = new Counters();
+			copy.add(this, 1);
+
+			return copy;
+		}
+
+		/**
+		 * @return the counters minus the ones given, what was done since then.
+		 */
+		public Counters since(Counters before) {
+
+			Counters difference;
+
+			difference = copy();
+			difference.add(before, -1);
+
+			return difference;
+		}
+
+		/**
+		 * Adds other counters to these ones, multiplied by a sign.
+		 */
+		public void add(Counters other, int sign) {
+			requests.addAndGet(sign * other.requests.get());
+			cacheHits.addAndGet(sign * other.cacheHits.get());
+			bytesSaved.addAndGet(sign * other.bytesSaved.get());
+			bytesFetched.addAndGet(sign * other.bytesFetched.get());
+			blocked.addAndGet(sign * other.blocked.get());
+			tunnels.addAndGet(sign * other.tunnels.get());
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d requests, %d from the cache (%.1f KB saved), %.1f KB downloaded, %d blocked, "
+					+ "%d tunneled", requests.get(), cacheHits.get(), bytesSaved.get() / 1024.0,
+					bytesFetched.get() / 1024.0, blocked.get(), tunnels.get());
+		}
+	}
+
+}
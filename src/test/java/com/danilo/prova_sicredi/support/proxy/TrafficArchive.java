@@ -0,0 +1,383 @@
+package com.danilo.prova_sicredi.support.proxy;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.json.Json;
+
+import com.danilo.prova_sicredi.support.Settings;
+import com.danilo.prova_sicredi.support.data.CustomerGenerator;
+import com.danilo.prova_sicredi.support.proxy.AssetCache.Response;
+import com.danilo.prova_sicredi.support.proxy.BrowserProxy.Request;
+
+/**
+ * This class records the HTTP exchanges made by the browsers through their
+ * BrowserProxy, and replays them in later runs, so the pages come from a local
+ * file instead of the server.
+ *
+ * The setting 'proxy_archive' tells what to do:
+ *
+ * - 'off': nothing, the proxies go to the server.
+ *
+ * - 'record': every exchange goes to the server and is written to the file set
+ * by 'proxy_archive_file', one JSON object per line. The file is replaced.
+ *
+ * - 'replay': the exchanges are answered from the file. A request matches a
+ * recorded one with the same method, URL and body hash. In case the same
+ * request was recorded more than once, the answers are given in the order they
+ * were recorded, repeating the last one. When a request is not in the file, it
+ * goes to the server in case 'proxy_archive_fallthrough' is true, or gets a 504
+ * otherwise.
+ *
+ * The port of the loopback URLs is not matched, so the archives of the local
+ * server, that starts on a free port, can be replayed. HTTPS goes through a
+ * tunnel, so it is never recorded.
+ *
+ * The URL and the body carry the data of the tests, and the generated data
+ * changes with the seed of the run. So the first line of the file keeps the
+ * seed of the recording, and a replay with an empty 'data_seed' generates the
+ * same data again from it (see CustomerGenerator.getSeed()). A replay with
+ * another 'data_seed' misses every request with generated data, and a warning
+ * is printed.
+ *
+ * @author danilo
+ *
+ */
+public abstract class TrafficArchive {
+
+	// The mode, loaded on the first exchange
+	private static volatile String mode;
+
+	// Whether the requests not in the archive go to the server
+	private static boolean fallthrough;
+
+	// The recorded answers by the request key, for the replay
+	private static Map<String, Recording> recordings;
+
+	// The file being recorded
+	private static BufferedWriter writer;
+
+	// Statistics
+	private static AtomicLong recorded = new AtomicLong();
+	private static AtomicLong hits = new AtomicLong();
+	private static AtomicLong misses = new AtomicLong();
+	private static AtomicLong fellThrough = new AtomicLong();
+
+	/**
+	 * This is the server behind the archive, called when an exchange is recorded
+	 * or falls through.
+	 */
+	interface Server {
+		Response send(Request request) throws IOException;
+	}
+
+	/**
+	 * @return whether the exchanges are recorded or replayed.
+	 */
+	public static boolean isEnabled() {
+		return !Settings.getProperty("proxy_archive").equals("off");
+	}
+
+	/**
+	 * Answers a request of a browser, from the archive or from the server,
+	 * depending on the mode.
+	 *
+	 * @param request
+	 *            The request of the browser.
+	 * @param server
+	 *            The server, in case the request has to be sent.
+	 * @return the answer.
+	 */
+	static Response exchange(Request request, Server server) throws IOException {
+
+		Recording recording;
+		Response response;
+		String key;
+
+		open();
+
+		key = getKey(request);
+
+		switch (mode) {
+		case "record":
+			response = server.send(request);
+			record(key, request, response);
+			return response;
+
+		case "replay":
+			recording = recordings.get(key);
+			if (recording != null) {
+				hits.incrementAndGet();
+				return recording.next();
+			}
+
+			misses.incrementAndGet();
+			if (fallthrough) {
+				fellThrough.incrementAndGet();
+				return server.send(request);
+			}
+			return new Response(504, "Not In Archive", new LinkedHashMap<>(),
+					("Not in the archive: " + key).getBytes(StandardCharsets.UTF_8));
+
+		default:
+			return server.send(request);
+		}
+	}
+
+	/**
+	 * Reads the seed of the run that recorded the archive, to be used by a replay.
+	 *
+	 * @return the seed, or null in case the archive is not being replayed or has
+	 *         no seed.
+	 */
+	public static Long getRecordedSeed() {
+
+		File file;
+		String line;
+		Map<String, Object> header;
+
+		if (!Settings.getProperty("proxy_archive").equals("replay"))
+			return null;
+
+		file = new File(Settings.getProperty("proxy_archive_file"));
+		if (!file.exists())
+			return null;
+
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			line = reader.readLine();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read the traffic archive " + file, e);
+		}
+
+		if (line == null)
+			return null;
+
+		header = new Json().toType(line, Json.MAP_TYPE);
+		if (!header.containsKey("seed"))
+			return null;
+
+		return ((Number) header.get("seed")).longValue();
+	}
+
+	/**
+	 * Closes the file being recorded, in case there is one.
+	 */
+	public static synchronized void close() {
+
+		if (writer == null)
+			return;
+
+		try {
+			writer.close();
+		} catch (IOException e) {
+			System.err.println("Could not close the traffic archive: " + e.getMessage());
+		}
+		writer = null;
+	}
+
+	/**
+	 * @return a line with the archive statistics.
+	 */
+	public static String getStatistics() {
+
+		long requests;
+
+		if (mode == null)
+			return "Not used";
+
+		if (mode.equals("record"))
+			return String.format("Mode: record, exchanges recorded: %d", recorded.get());
+
+		requests = hits.get() + misses.get();
+
+		return String.format("Mode: replay, requests in the archive: %d, hits: %d, misses: %d (hit rate %.1f%%), "
+				+ "fell through: %d", recordings.size(), hits.get(), misses.get(),
+				requests == 0 ? 0.0 : 100.0 * hits.get() / requests, fellThrough.get());
+	}
+
+	/**
+	 * Loads the settings and opens the file, in case it is not open yet. Called
+	 * when a proxy starts, so a missing archive fails the browser setup.
+	 */
+	static synchronized void open() {
+
+		File file;
+
+		if (mode != null)
+			return;
+
+		file = new File(Settings.getProperty("proxy_archive_file"));
+		fallthrough = Boolean.parseBoolean(Settings.getProperty("proxy_archive_fallthrough"));
+
+		try {
+			switch (Settings.getProperty("proxy_archive")) {
+			case "record":
+				if (file.getAbsoluteFile().getParentFile() != null)
+					file.getAbsoluteFile().getParentFile().mkdirs();
+				writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+
+				// The seed goes first, so the replay generates the same data
+				writer.write(new Json().toJson(Collections.singletonMap("seed", CustomerGenerator.getSeed())));
+				writer.newLine();
+				writer.flush();
+				break;
+			case "replay":
+				recordings = read(file);
+				checkSeed();
+				break;
+			case "off":
+				break;
+			default:
+				throw new RuntimeException(String.format("Invalid proxy_archive '%s'. Use 'off', 'record' or "
+						+ "'replay'.", Settings.getProperty("proxy_archive")));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not open the traffic archive " + file, e);
+		}
+
+		mode = Settings.getProperty("proxy_archive");
+	}
+
+	/**
+	 * Warns in case the data of this run is not the one of the recording.
+	 */
+	private static void checkSeed() {
+
+		Long recordedSeed;
+
+		recordedSeed = getRecordedSeed();
+		if (recordedSeed == null) {
+			System.err.println("The traffic archive has no seed, the requests with generated data will only be "
+					+ "found in case 'data_seed' is the seed of the recording.");
+		} else if (recordedSeed != CustomerGenerator.getSeed()) {
+			System.err.println(String.format("The traffic archive was recorded with the seed %d and this run uses "
+					+ "%d, the requests with generated data will not be found.", recordedSeed,
+					CustomerGenerator.getSeed()));
+		}
+	}
+
+	/**
+	 * Reads the recordings of a file. The line with the seed is skipped.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, Recording> read(File file) throws IOException {
+
+		Map<String, Recording> read;
+		Map<String, Object> exchange;
+		Map<String, List<String>> headers;
+		String line;
+
+		read = new ConcurrentHashMap<>();
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().isEmpty())
+					continue;
+
+				exchange = new Json().toType(line, Json.MAP_TYPE);
+				if (!exchange.containsKey("key"))
+					continue;
+
+				headers = new LinkedHashMap<>();
+				for (Map.Entry<String, List<Object>> header : ((Map<String, List<Object>>) exchange.get("headers"))
+						.entrySet()) {
+					headers.put(header.getKey(), new ArrayList<>());
+					for (Object value : header.getValue()) {
+						headers.get(header.getKey()).add(String.valueOf(value));
+					}
+				}
+
+				read.computeIfAbsent((String) exchange.get("key"), key -> new Recording()).responses
+						.add(new Response(((Number) exchange.get("status")).intValue(),
+								(String) exchange.get("message"), headers,
+								Base64.getDecoder().decode((String) exchange.get("body"))));
+			}
+		}
+
+		return read;
+	}
+
+	/**
+	 * Writes an exchange to the file.
+	 */
+	private static synchronized void record(String key, Request request, Response response) throws IOException {
+
+		Map<String, Object> exchange;
+
+		if (writer == null)
+			return;
+
+		exchange = new LinkedHashMap<>();
+		exchange.put("key", key);
+		exchange.put("method", request.method);
+		exchange.put("url", request.target);
+		exchange.put("status", response.status);
+		exchange.put("message", response.message);
+		exchange.put("headers", response.headers);
+		exchange.put("body", Base64.getEncoder().encodeToString(response.body));
+
+		// One line for each exchange, flushed so a broken run still leaves it
+		writer.write(new Json().toJson(exchange).replaceAll("\\s*\\n\\s*", " "));
+		writer.newLine();
+		writer.flush();
+
+		recorded.incrementAndGet();
+	}
+
+	/**
+	 * @return the key of a request: the method, the URL without the loopback port
+	 *         and the hash of the body.
+	 */
+	private static String getKey(Request request) throws IOException {
+
+		URL url;
+		String target;
+		StringBuilder hash;
+
+		url = new URL(request.target);
+		target = request.target;
+		if (url.getPort() != -1 && (url.getHost().equals("127.0.0.1") || url.getHost().equals("localhost")))
+			target = target.replaceFirst(":" + url.getPort(), "");
+
+		hash = new StringBuilder();
+		try {
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(request.body)) {
+				hash.append(String.format("%02x", b));
+			}
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+
+		return request.method + " " + target + " " + hash;
+	}
+
+	/**
+	 * This class holds the answers recorded for a request, given in order.
+	 */
+	private static class Recording {
+
+		private final List<Response> responses = new ArrayList<>();
+		private final AtomicInteger next = new AtomicInteger();
+
+		private Response next() {
+			return responses.get(Math.min(next.getAndIncrement(), responses.size() - 1));
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.danilo.prova_sicredi.support.report;
+
+/**
+ * This class keeps the durations measured for one kind of step and calculates
+ * the percentiles on demand. The samples are not kept: each one only counts in
+ * a bucket, so the memory is the same for a short suite and for a long load
+ * run, and a percentile is found with a single pass over the buckets.
+ *
+ * The buckets are log-linear: each power of two is split in SUB_BUCKETS
+ * buckets of the same width, so a percentile is off by at most 1/SUB_BUCKETS
+ * of its value (about 3%), whatever the scale. The minimum and the maximum are
+ * kept exactly.
+ *
+ * @author danilo
+ *
+ */
+public class LatencyHistogram {
+
+	// Buckets in each power of two, as a power of two itself
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	// The largest power of two counted apart, 2^45 ns is almost 10 hours
+	private static final int MAX_EXPONENT = 45;
+
+	// Number of samples in each bucket
+	private final int[] buckets = new int[(MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS];
+
+	// Number of samples
+	private int count = 0;
+
+	// Sum of all the samples, in nanoseconds
+	private long total = 0;
+
+	// The smallest and the largest samples, in nanoseconds
+	private long min = Long.MAX_VALUE;
+	private long max = 0;
+
+	/**
+	 * Adds a duration to the histogram.
+	 *
+	 * @param nanos
+	 *            The duration in nanoseconds.
+	 */
+	public synchronized void add(long nanos) {
+
+		// The clock may go back a little between threads
+		nanos = Math.max(0, nanos);
+
+		buckets[toBucket(nanos)]++;
+		count++;
+		total += nanos;
+		min = Math.min(min, nanos);
+		max = Math.max(max, nanos);
+	}
+
+	/**
+	 * @return the number of samples.
+	 */
+	public synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the sum of all the samples, in milliseconds.
+	 */
+	public synchronized double getTotalMillis() {
+		return total / 1000000.0;
+	}
+
+	/**
+	 * Calculates some percentiles at once, with a single pass over the buckets
+	 * for each one.
+	 *
+	 * @param percentiles
+	 *            The percentiles wanted, from 0 to 100.
+	 * @return the values of the percentiles in milliseconds, in the same order.
+	 */
+	public synchronized double[] getPercentiles(double... percentiles) {
+
+		double[] result;
+		int rank, seen, bucket;
+
+		result = new double[percentiles.length];
+		if (count == 0)
+			return result;
+
+		for (int i = 0; i < percentiles.length; i++) {
+
+			// Nearest rank
+			rank = Math.max(1, Math.min(count, (int) Math.ceil(percentiles[i] / 100.0 * count)));
+
+			// The ends are known exactly
+			if (rank == 1 || rank == count) {
+				result[i] = (rank == 1 ? min : max) / 1000000.0;
+				continue;
+			}
+
+			// Find the bucket of the sample with that rank
+			seen = 0;
+			bucket = 0;
+			while (seen + buckets[bucket] < rank) {
+				seen += buckets[bucket++];
+			}
+
+			// The middle of the bucket, it can't be out of the samples seen
+			result[i] = Math.max(min, Math.min(max, getMiddle(bucket))) / 1000000.0;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Finds the bucket of a duration. Below SUB_BUCKETS nanoseconds each value
+	 * has its own bucket, above it each power of two has SUB_BUCKETS buckets.
+	 *
+	 * @param nanos
+	 *            The duration in nanoseconds, not negative.
+	 * @return the index of the bucket.
+	 */
+	private static int toBucket(long nanos) {
+
+		int exponent;
+
+		if (nanos < SUB_BUCKETS)
+			return (int) nanos;
+
+		// The durations too long to be counted apart go to the last bucket
+		exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent > MAX_EXPONENT)
+			return (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS - 1;
+
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS
+				+ (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+	}
+
+	/**
+	 * @param bucket
+	 *            The index of a bucket.
+	 * @return the duration in the middle of the bucket, in nanoseconds.
+	 */
+	private static double getMiddle(int bucket) {
+
+		int shift;
+
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+
+		shift = bucket / SUB_BUCKETS - 1;
+
+		return ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift) + ((1L << shift) - 1) / 2.0;
+	}
+
+}
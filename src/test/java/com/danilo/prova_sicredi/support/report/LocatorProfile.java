@@ -0,0 +1,206 @@
+package com.danilo.prova_sicredi.support.report;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openqa.selenium.json.Json;
+
+import com.aventstack.extentreports.ExtentReports;
+import com.aventstack.extentreports.ExtentTest;
+import com.aventstack.extentreports.markuputils.MarkupHelper;
+import com.danilo.prova_sicredi.support.Locators;
+import com.danilo.prova_sicredi.support.Settings;
+
+/**
+ * This class keeps how long each locator takes to be resolved, across runs.
+ * Two times are kept: the time the browser takes to evaluate the selector,
+ * measured inside the page by the scripts that resolve many locators at once,
+ * and the time of the find commands seen by the SeleniumListener, that also
+ * includes the trip to the driver.
+ *
+ * The times of the run are added to the ones in the file set by
+ * 'locator_profile_path' at the end of the suite, and the slowest locators go
+ * to the report, with a CSS suggestion when the XPath is simple enough.
+ *
+ * @author danilo
+ *
+ */
+public abstract class LocatorProfile {
+
+	// Maximum number of locators shown in the report
+	private static final int REPORT_LOCATORS = 20;
+
+	// Time spent by the browser on each locator in this run, in milliseconds
+	private static Map<String, LatencyHistogram> browserTimes = new ConcurrentHashMap<>();
+
+	/**
+	 * Records the time the browser took to evaluate a locator.
+	 *
+	 * @param locator
+	 *            The locator, as given by By.toString().
+	 * @param millis
+	 *            The time in milliseconds.
+	 */
+	public static void recordBrowserTime(String locator, double millis) {
+		browserTimes.computeIfAbsent(locator, key -> new LatencyHistogram()).add((long) (millis * 1000000));
+	}
+
+	/**
+	 * Adds the times of this run to the profile file and adds the slowest locators
+	 * to the report.
+	 *
+	 * @param report
+	 *            The report.
+	 */
+	public static void update(ExtentReports report) {
+
+		Map<String, Map<String, Object>> profile;
+
+		profile = load();
+
+		// Add this run
+		browserTimes.forEach((locator, histogram) -> add(profile, locator, "browser", histogram));
+		StepTimings.getLocators("find").forEach((locator, histogram) -> add(profile, locator, "find", histogram));
+
+		// Nothing has ever been measured
+		if (profile.isEmpty())
+			return;
+
+		save(profile);
+		addToReport(report, profile);
+	}
+
+	/**
+	 * Forget the times of this run. Used when a new report is started.
+	 */
+	public static void clear() {
+		browserTimes.clear();
+	}
+
+	/**
+	 * Adds the times of a histogram to the profile of a locator.
+	 */
+	private static void add(Map<String, Map<String, Object>> profile, String locator, String kind,
+			LatencyHistogram histogram) {
+
+		Map<String, Object> entry;
+
+		entry = profile.computeIfAbsent(locator, key -> new TreeMap<>());
+		entry.put(kind + "Samples", (long) number(entry, kind + "Samples") + histogram.getCount());
+		entry.put(kind + "Millis", number(entry, kind + "Millis") + histogram.getTotalMillis());
+		entry.put(kind + "Max", Math.max(number(entry, kind + "Max"), histogram.getPercentiles(100)[0]));
+	}
+
+	/**
+	 * Builds the table with the slowest locators. The locators are ranked by the
+	 * average time in the browser, or by the average find time for the ones never
+	 * timed inside the page.
+	 */
+	private static void addToReport(ExtentReports report, Map<String, Map<String, Object>> profile) {
+
+		List<String> ranked;
+		String[][] table;
+		ExtentTest test;
+		Map<String, Object> entry;
+		String suggestion;
+
+		ranked = new ArrayList<>(profile.keySet());
+		ranked.sort((a, b) -> Double.compare(rank(profile.get(b)), rank(profile.get(a))));
+
+		table = new String[Math.min(REPORT_LOCATORS, ranked.size()) + 1][];
+		table[0] = new String[] { "Locator", "Avg in browser (ms)", "Avg find (ms)", "Max find (ms)", "Samples",
+				"CSS suggestion" };
+
+		for (int i = 1; i < table.length; i++) {
+			entry = profile.get(ranked.get(i - 1));
+			suggestion = ranked.get(i - 1).startsWith("By.xpath: ")
+					? Locators.toCssSuggestion(ranked.get(i - 1).substring(10))
+					: null;
+
+			table[i] = new String[] { ranked.get(i - 1), format(average(entry, "browser")),
+					format(average(entry, "find")), format(number(entry, "findMax")),
+					String.format("%.0f", number(entry, "browserSamples") + number(entry, "findSamples")),
+					suggestion == null ? "-" : suggestion };
+		}
+
+		test = report.createTest("Slowest locators");
+		test.info("Times of all the runs kept in '" + Settings.getProperty("locator_profile_path") + "'.");
+		test.info(MarkupHelper.createTable(table));
+	}
+
+	/**
+	 * @return the value used to rank a locator.
+	 */
+	private static double rank(Map<String, Object> entry) {
+		return average(entry, "browser") >= 0 ? average(entry, "browser") : average(entry, "find");
+	}
+
+	/**
+	 * @return the average time of a kind, or -1 in case it has not been measured.
+	 */
+	private static double average(Map<String, Object> entry, String kind) {
+		return number(entry, kind + "Samples") == 0 ? -1
+				: number(entry, kind + "Millis") / number(entry, kind + "Samples");
+	}
+
+	/**
+	 * @return a number from the profile, or 0 in case it is not there.
+	 */
+	private static double number(Map<String, Object> entry, String key) {
+		return entry.get(key) instanceof Number ? ((Number) entry.get(key)).doubleValue() : 0;
+	}
+
+	/**
+	 * @return the time formatted for the report.
+	 */
+	private static String format(double millis) {
+		return millis < 0 ? "-" : String.format("%.2f", millis);
+	}
+
+	/**
+	 * Reads the profile file.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, Map<String, Object>> load() {
+
+		Path path;
+		Map<String, Object> data;
+		Map<String, Map<String, Object>> profile;
+
+		profile = new LinkedHashMap<>();
+		path = Paths.get(Settings.getProperty("locator_profile_path"));
+		if (!Files.exists(path))
+			return profile;
+
+		try {
+			data = new Json().toType(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), Json.MAP_TYPE);
+			data.forEach((locator, entry) -> profile.put(locator, new TreeMap<>((Map<String, Object>) entry)));
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Could not read the locator profile, starting a new one: " + e.getMessage());
+		}
+
+		return profile;
+	}
+
+	/**
+	 * Writes the profile file.
+	 */
+	private static void save(Map<String, Map<String, Object>> profile) {
+		try {
+			Files.write(Paths.get(Settings.getProperty("locator_profile_path")),
+					new Json().toJson(profile).getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			System.err.println("Could not write the locator profile: " + e.getMessage());
+		}
+	}
+
+}
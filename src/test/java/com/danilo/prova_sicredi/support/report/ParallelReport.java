@@ -6,15 +6,14 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 
 import com.aventstack.extentreports.ExtentReports;
-import com.aventstack.extentreports.ExtentTest;
 import com.aventstack.extentreports.reporter.ExtentHtmlReporter;
 import com.danilo.prova_sicredi.support.Settings;
 
 /**
  * This class manages the main context for the Extent Report instance. This will
- * provide ExtentTest instances for whoever requests it. This is meant to be
- * used by the TextContext so it can get the ExtentTest instance for each thread
- * that will run.
+ * provide ReportNode instances for whoever requests it. This is meant to be
+ * used by the TextContext so it can get the ReportNode instance for each thread
+ * that will run. The model is only changed or flushed holding LOCK.
  * 
  * @author danilo
  *
@@ -24,6 +23,13 @@ public abstract class ParallelReport {
 	// This is the main report instance
 	public static ExtentReports report;
 
+	// Held while the report model is changed or flushed, so a test never logs
+	// while the writer is reading the model
+	private static final Object LOCK = new Object();
+
+	// Writes the report in the background
+	private static ReportWriter writer;
+
 	// Store the initialization status
 	private static boolean initialized = false;
 
@@ -44,6 +50,15 @@ public abstract class ParallelReport {
 		// Instantiate the ExtentReports main class
 		report = new ExtentReports();
 		report.attachReporter(htmlReporter);
+
+		// Stop the writer of a previous report, if any
+		if (writer != null) {
+			writer.close();
+		}
+
+		// Start the background writer
+		writer = new ReportWriter(report, LOCK, Long.parseLong(Settings.getProperty("report_flush_interval")),
+				Integer.parseInt(Settings.getProperty("report_flush_batch_size")));
 		
 		// Clean the screenshots folder
 		cleanFolders();
@@ -75,6 +90,13 @@ public abstract class ParallelReport {
 		for(File file : Paths.get(screenshotFolder).toFile().listFiles()) {
 			file.delete();
 		}
+
+		// The stored images are gone
+		ScreenshotStore.clear();
+
+		// Start measuring the steps and the locators again
+		StepTimings.clear();
+		LocatorProfile.clear();
 		
 	}
 
@@ -83,20 +105,93 @@ public abstract class ParallelReport {
 	 * 
 	 * @param testName
 	 *            Name of the test to be displayed in the report.
-	 * @return An instance of ExtentTest.
+	 * @return The new node, all the logs have to go through it.
 	 */
-	public static synchronized ExtentTest getExtentTest(String testName) {
+	public static synchronized ReportNode getExtentTest(String testName) {
 		if (!initialized)
 			initialize();
 
-		return report.createTest(testName);
+		synchronized (LOCK) {
+			return new ReportNode(report.createTest(testName), LOCK);
+		}
+	}
+
+	/**
+	 * Adds a line to the 'Environment' section of the report. Used to publish
+	 * statistics about the execution.
+	 * 
+	 * @param name
+	 *            Name of the entry.
+	 * @param value
+	 *            Value of the entry.
+	 */
+	public static synchronized void setSystemInfo(String name, String value) {
+		if (!initialized)
+			initialize();
+
+		synchronized (LOCK) {
+			report.setSystemInfo(name, value);
+		}
+	}
+
+	/**
+	 * Ask the background writer to flush the report. This method doesn't wait for
+	 * the report to be written, so it is safe to call it from the tests.
+	 */
+	public static void requestFlush() {
+		if (writer != null) {
+			writer.requestFlush();
+		}
 	}
 
 	/**
-	 * Will flush the existing contents to the html in the disk.
+	 * Will flush the existing contents to the html in the disk. This blocks until
+	 * the report is written, prefer requestFlush() while the tests are running.
 	 */
 	public static synchronized void flush() {
-		report.flush();
+		synchronized (LOCK) {
+			report.flush();
+		}
+	}
+
+	/**
+	 * Stops the background writer and writes the final version of the report.
+	 */
+	public static synchronized void close() {
+
+		// Nothing to do in case it has not been initialized
+		if (writer == null) {
+			return;
+		}
+
+		// Make sure all the screenshots are in the disk before the final flush
+		if (!ScreenshotWriter.awaitPending(60)) {
+			System.err.println("Some screenshots are still being written, they may be missing in the report.");
+		}
+
+		// The writer may still be flushing, keep it out while the model changes
+		synchronized (LOCK) {
+
+			// Add the writer statistics
+			report.setSystemInfo("Screenshots", ReportHelper.getStatistics());
+			report.setSystemInfo("Screenshot store", ScreenshotStore.getStatistics());
+			report.setSystemInfo("Screenshot encoder", ScreenshotEncoder.getStatistics());
+			report.setSystemInfo("Screenshot writer", ScreenshotWriter.getStatistics());
+			report.setSystemInfo("Report writer", writer.getStatistics());
+			report.setSystemInfo("Step latencies", StepTimings.getStatistics());
+
+			// Add the latency tables and write the summary for other tools
+			StepTimings.addToReport(report);
+			StepTimings.writeSummary();
+
+			// Add this run to the locator profile and rank the slowest ones
+			LocatorProfile.update(report);
+		}
+
+		// Do the final flush, out of the lock since the writer thread may need it
+		// to finish
+		writer.close();
+		writer = null;
 	}
 
 }
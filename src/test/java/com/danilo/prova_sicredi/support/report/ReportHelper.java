@@ -2,11 +2,15 @@ package com.danilo.prova_sicredi.support.report;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.openqa.selenium.Dimension;
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
 import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
@@ -25,18 +29,60 @@ import com.danilo.prova_sicredi.support.TestContext;
  */
 public abstract class ReportHelper {
 
+	// Brings an element into view and returns its bounds in the viewport, in
+	// device pixels
+	public static final String SHOW_ELEMENT_SCRIPT = "arguments[0].scrollIntoView(true);"
+			+ "var r = arguments[0].getBoundingClientRect(), d = window.devicePixelRatio || 1;"
+			+ "return [r.left * d, r.top * d, r.width * d, r.height * d];";
+
 	// Make sure screenshots are going to have unique names.
-	// This one is volatile to make sure the threads are always going to pick the
-	// value from the memory instead of getting from the cache.
-	private volatile static int screenshotCount = 0;
+	// This one is atomic because the tests run in parallel, a volatile counter
+	// could give the same number to two threads.
+	private static AtomicInteger screenshotCount = new AtomicInteger();
+
+	// Statistics for the screenshot policy
+	private static AtomicLong requested = new AtomicLong();
+	private static AtomicLong saved = new AtomicLong();
+	private static AtomicLong buffered = new AtomicLong();
 
 	/**
-	 * Will take a screenshot, save to the disk and add to the ExtentTest instance.
+	 * Will take a screenshot and add it to the report, accordingly to the
+	 * screenshot policy defined at config.properties.
 	 */
 	public static void addScreenshot(TestContext context) {
+		takeScreenshot(context, null);
+	}
+
+	/**
+	 * Will bring an element into view and take the screenshot, accordingly to the
+	 * screenshot policy defined at config.properties.
+	 */
+	public static void addScreenshot(TestContext context, WebElement element) {
+		takeScreenshot(context, element);
+	}
+
+	/**
+	 * Will take a screenshot, save to the disk and add to the ExtentTest instance.
+	 * This one ignores the screenshot policy.
+	 */
+	public static void attachScreenshot(TestContext context) {
+		attachScreenshot(context, null);
+	}
+
+	/**
+	 * Will take a screenshot, save to the disk and add to the ExtentTest instance.
+	 * In case the encoding is enabled, the screenshot is cropped to the bounds
+	 * (when provided), resized and re-encoded before being written.
+	 */
+	private static void attachScreenshot(TestContext context, Rectangle bounds) {
 
 		String screenshotPath;
-		MediaEntityModelProvider screenshot;
+
+		// Crop, resize and encode in case it is enabled
+		if (ScreenshotEncoder.isEnabled()) {
+			saveAndReport(context, ((TakesScreenshot) context.driver).getScreenshotAs(OutputType.BYTES), bounds, "");
+			return;
+		}
 
 		// Save the screenshot
 		screenshotPath = saveScreenshot(context);
@@ -46,102 +92,279 @@ public abstract class ReportHelper {
 			context.report.info("Could not take screenshot.");
 			return;
 		}
-		
-		// Remove the report folder from the beginning of the path
-		screenshotPath = screenshotPath.replaceAll(Settings.getProperty("report_path"), "");
-		
-		// Remove / from the beginning
-		if(screenshotPath.startsWith(File.separator)) {
-			screenshotPath = screenshotPath.substring(1, screenshotPath.length());
+
+		// Add it to the report
+		addToReport(context, screenshotPath, "");
+	}
+
+	/**
+	 * Save the screenshots kept in memory by the RING_BUFFER policy and add them
+	 * to the report. Meant to be called when the test fails.
+	 */
+	public static void addBufferedScreenshots(TestContext context) {
+
+		List<byte[]> screenshots;
+		int index;
+
+		// Get the screenshots from the buffer
+		screenshots = context.getScreenshotBuffer().drain();
+		if (screenshots.isEmpty())
+			return;
+
+		context.report.info(String.format("Last %d screenshots taken before the failure:", screenshots.size()));
+
+		// Write them and add to the report
+		index = 1;
+		for (byte[] data : screenshots) {
+			saveAndReport(context, data, null, String.format("%d of %d", index++, screenshots.size()));
+		}
+	}
+
+	/**
+	 * @return a line with the screenshot policy statistics.
+	 */
+	public static String getStatistics() {
+		return String.format("Policy: %s, requested: %d, saved: %d, kept in memory: %d", ScreenshotPolicy.get(),
+				requested.get(), saved.get(), buffered.get());
+	}
+
+	/**
+	 * Apply the screenshot policy and take the screenshot if needed.
+	 */
+	private static void takeScreenshot(TestContext context, WebElement element) {
+
+		Rectangle bounds;
+
+		requested.incrementAndGet();
+
+		// Check if the screenshot must be taken at all
+		switch (ScreenshotPolicy.get()) {
+		case EVERY_NTH:
+			if ((context.countScreenshotRequest() - 1)
+					% Integer.parseInt(Settings.getProperty("screenshot_every_nth")) != 0)
+				return;
+			break;
+		case FAILURE_ONLY:
+			return;
+		default:
+			break;
+		}
+
+		// Bring the element into view, getting its bounds in the same call
+		bounds = null;
+		if (element != null) {
+			bounds = showElement(context, element);
+		}
+
+		// Keep it in memory in case of ring buffer
+		if (ScreenshotPolicy.get() == ScreenshotPolicy.RING_BUFFER) {
+			context.getScreenshotBuffer().add(((TakesScreenshot) context.driver).getScreenshotAs(OutputType.BYTES));
+			buffered.incrementAndGet();
+			return;
+		}
+
+		// Save it and add to the report
+		attachScreenshot(context, ScreenshotEncoder.isCropEnabled() ? bounds : null);
+	}
+
+	/**
+	 * Schedule a screenshot to be encoded and written, then add it to the report.
+	 * In case thumbnails are enabled, the report shows the thumbnail with a link to
+	 * the full image.
+	 */
+	private static void saveAndReport(TestContext context, byte[] data, Rectangle bounds, String title) {
+
+		String variant, fullPath, thumbnailPath;
+
+		// Not encoding, just save it
+		if (!ScreenshotEncoder.isEnabled()) {
+			addToReport(context, saveScreenshot(data), title);
+			return;
+		}
+
+		saved.incrementAndGet();
+
+		// Identifies this version of the screenshot
+		variant = bounds == null ? "full" : bounds.x + "," + bounds.y + "," + bounds.width + "," + bounds.height;
+
+		// Encode and write it in the background
+		if (isContentAddressed()) {
+			fullPath = ScreenshotStore.store(data, variant, ScreenshotEncoder.getExtension(),
+					() -> ScreenshotEncoder.encode(data, bounds));
+		} else {
+			fullPath = nextScreenshotPath(ScreenshotEncoder.getExtension());
+			ScreenshotWriter.write(fullPath, () -> ScreenshotEncoder.encode(data, bounds));
+		}
+
+		// Without thumbnails, the report shows the full image
+		if (!ScreenshotEncoder.isThumbnailEnabled()) {
+			addToReport(context, fullPath, title);
+			return;
 		}
 
-		// Create the screenshot
+		// Create the thumbnail in the background as well
+		if (isContentAddressed()) {
+			thumbnailPath = ScreenshotStore.store(data, variant + ":thumbnail", "jpg",
+					() -> ScreenshotEncoder.thumbnail(data, bounds));
+		} else {
+			thumbnailPath = nextScreenshotPath("jpg");
+			ScreenshotWriter.write(thumbnailPath, () -> ScreenshotEncoder.thumbnail(data, bounds));
+		}
+
+		// Add the thumbnail with a link to the full image
+		context.report.info(String.format("%s<br/><a href='%s' target='_blank'><img src='%s'/></a>", title,
+				toReportPath(fullPath), toReportPath(thumbnailPath)));
+	}
+
+	/**
+	 * Adds a screenshot that has been saved (or scheduled to be saved) to the
+	 * report.
+	 */
+	private static void addToReport(TestContext context, String screenshotPath, String title) {
+
+		MediaEntityModelProvider screenshot;
+
+		// Create the screenshot. The builder replaces its (static) ThreadLocal on
+		// every call, so two threads building at once may lose their media.
 		try {
-			screenshot = MediaEntityBuilder.createScreenCaptureFromPath(screenshotPath).build();
+			synchronized (MediaEntityBuilder.class) {
+				screenshot = MediaEntityBuilder.createScreenCaptureFromPath(toReportPath(screenshotPath)).build();
+			}
 		} catch (IOException e) {
 			context.report.info("Could not add screenshot to the report.");
 			return;
 		}
 
 		// Add to the report
-		context.report.info("", screenshot);
+		context.report.info(title, screenshot);
 	}
-	
+
 	/**
-	 * Will bring an element into view and take the screenshot.
+	 * Turns the path of a screenshot into a path relative to the report.
 	 */
-	public static void addScreenshot(TestContext context, WebElement element) {
-		showElement(context, element);
-		addScreenshot(context);
+	private static String toReportPath(String screenshotPath) {
+
+		// Remove the report folder from the beginning of the path
+		screenshotPath = screenshotPath.replaceAll(Settings.getProperty("report_path"), "");
+
+		// Remove / from the beginning
+		if (screenshotPath.startsWith(File.separator)) {
+			screenshotPath = screenshotPath.substring(1, screenshotPath.length());
+		}
+
+		return screenshotPath;
+	}
+
+	/**
+	 * Build a unique path for a new screenshot.
+	 */
+	private static String nextScreenshotPath(String extension) {
+
+		String screenshotName, screenshotPath;
+		long threadId;
+
+		// Get the Thread ID
+		threadId = Thread.currentThread().getId();
+
+		// Set the filename and build the path
+		screenshotName = String.format("scr_%d_%d.%s", threadId, screenshotCount.incrementAndGet(), extension);
+		screenshotPath = Settings.getProperty("report_path") + File.separator + "screenshots";
+
+		return screenshotPath + File.separator + screenshotName;
 	}
 
 	/**
-	 * Will take a screenshot, save to the disk and return the filename.
+	 * Will take a screenshot, schedule it to be saved to the disk and return the
+	 * filename. The file is written in the background by the ScreenshotWriter,
+	 * so it may not exist yet when this method returns.
 	 * 
 	 * @return Path to the screenshot.
 	 */
 	public static String saveScreenshot(TestContext context) {
 
 		WebDriver driver;
-		String screenshotName, screenshotPath, fullPath;
-		byte[] screenshotData;
-		long threadId;
+		String fullPath, screenshotData;
 
 		// Initialize some stuff
 		driver = context.driver;
 
-		// Increment the screenshot count
-		screenshotCount++;
+		// The content addressed store needs the bytes to calculate the hash
+		if (isContentAddressed()) {
+			return saveScreenshot(((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES));
+		}
 
-		// Get the Thread ID
-		threadId = Thread.currentThread().getId();
+		// Build the path
+		fullPath = nextScreenshotPath("png");
 
-		// Set the filename and build the path
-		screenshotName = String.format("scr_%d_%d.png", threadId, screenshotCount);
-		screenshotPath = Settings.getProperty("report_path") + File.separator + "screenshots";
-		fullPath = screenshotPath + File.separator + screenshotName;
+		// Get the screenshot as it comes from the driver, the decoding is done by the
+		// writer
+		screenshotData = ((TakesScreenshot) driver).getScreenshotAs(OutputType.BASE64);
 
-		// Get the bytes from the screenshot
-		screenshotData = ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES);
+		// Write it in the background
+		ScreenshotWriter.write(fullPath, screenshotData);
+		saved.incrementAndGet();
 
-		try {
-			// Create the folders
-			Files.createDirectories(Paths.get(screenshotPath));
+		return fullPath;
 
-			// Create the file
-			Files.write(Paths.get(fullPath), screenshotData);
+	}
 
-		} catch (IOException e) {
-			// Return empty in case of issue.
-			return null;
+	/**
+	 * Schedule a screenshot that has already been taken to be saved to the disk.
+	 * 
+	 * @param data
+	 *            The PNG bytes.
+	 * @return Path to the screenshot.
+	 */
+	private static String saveScreenshot(byte[] data) {
+
+		String fullPath;
 
+		saved.incrementAndGet();
+
+		// Store by content, so identical images are written only once
+		if (isContentAddressed()) {
+			return ScreenshotStore.store(data, "png");
 		}
 
+		// Write it with a sequential name
+		fullPath = nextScreenshotPath("png");
+		ScreenshotWriter.write(fullPath, data);
+
 		return fullPath;
+	}
 
+	/**
+	 * @return true in case the screenshots are named after their contents.
+	 */
+	private static boolean isContentAddressed() {
+		return Settings.getProperty("screenshot_naming").trim().equalsIgnoreCase("content");
 	}
 
 	/**
-	 * Bring an element into view.
+	 * Bring an element into view. The same script returns the bounds of the
+	 * element, so cropping the screenshot doesn't need another call to the
+	 * driver.
 	 * 
 	 * @param context
 	 *            Test context containing the driver.
 	 * @param element
 	 *            Element to be displayed.
+	 * @return The bounds of the element in the viewport, in device pixels.
 	 */
-	public static void showElement(TestContext context, WebElement element) {
+	@SuppressWarnings("unchecked")
+	public static Rectangle showElement(TestContext context, WebElement element) {
 
 		JavascriptExecutor js;
-		String script;
+		List<Number> rect;
 
 		// Get the driver
 		js = (JavascriptExecutor) context.driver;
 
-		// Setup the script
-		script = "arguments[0].scrollIntoView(true);";
-
 		// Run the script
-		js.executeScript(script, element);
+		rect = (List<Number>) js.executeScript(SHOW_ELEMENT_SCRIPT, element);
+
+		return new Rectangle(new Point(rect.get(0).intValue(), rect.get(1).intValue()),
+				new Dimension((int) Math.ceil(rect.get(2).doubleValue()), (int) Math.ceil(rect.get(3).doubleValue())));
 
 	}
 
@@ -0,0 +1,100 @@
+package com.danilo.prova_sicredi.support.report;
+
+import com.aventstack.extentreports.ExtentTest;
+import com.aventstack.extentreports.MediaEntityModelProvider;
+import com.aventstack.extentreports.markuputils.Markup;
+
+/**
+ * A test node of the shared report. The ExtentTest adds each log to lists that
+ * the ExtentReports reads while it is flushed, and the ExtentTest and the
+ * ExtentReports don't lock each other, so a test logging while the
+ * ReportWriter is flushing could break the flush. Every log goes through this
+ * class instead, holding the same lock the ReportWriter holds while it
+ * flushes.
+ *
+ * @author danilo
+ *
+ */
+public class ReportNode {
+
+	// The node in the ExtentReports model
+	private final ExtentTest test;
+
+	// Held while the model is changed or flushed
+	private final Object lock;
+
+	/**
+	 * @param test
+	 *            The node in the report model.
+	 * @param lock
+	 *            The lock of the report model.
+	 */
+	ReportNode(ExtentTest test, Object lock) {
+		this.test = test;
+		this.lock = lock;
+	}
+
+	public ReportNode info(String details) {
+		synchronized (lock) {
+			test.info(details);
+		}
+		return this;
+	}
+
+	public ReportNode info(Markup markup) {
+		synchronized (lock) {
+			test.info(markup);
+		}
+		return this;
+	}
+
+	public ReportNode info(String details, MediaEntityModelProvider provider) {
+		synchronized (lock) {
+			test.info(details, provider);
+		}
+		return this;
+	}
+
+	public ReportNode pass(String details) {
+		synchronized (lock) {
+			test.pass(details);
+		}
+		return this;
+	}
+
+	public ReportNode pass(Markup markup) {
+		synchronized (lock) {
+			test.pass(markup);
+		}
+		return this;
+	}
+
+	public ReportNode fail(String details) {
+		synchronized (lock) {
+			test.fail(details);
+		}
+		return this;
+	}
+
+	public ReportNode fail(Markup markup) {
+		synchronized (lock) {
+			test.fail(markup);
+		}
+		return this;
+	}
+
+	public ReportNode fail(Throwable t) {
+		synchronized (lock) {
+			test.fail(t);
+		}
+		return this;
+	}
+
+	public ReportNode skip(String details) {
+		synchronized (lock) {
+			test.skip(details);
+		}
+		return this;
+	}
+
+}
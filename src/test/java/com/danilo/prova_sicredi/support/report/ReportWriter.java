@@ -0,0 +1,191 @@
+package com.danilo.prova_sicredi.support.report;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.aventstack.extentreports.ExtentReports;
+
+/**
+ * This class writes the report to the disk in a background thread. Test threads
+ * only put events in a queue and move on, the writer thread drains the queue
+ * and flushes the report when enough events have been collected or when some
+ * time has passed since the last flush.
+ *
+ * Flushing the ExtentReports rewrites the whole html file, so the idea here is
+ * to do it a few times per run instead of once per test. The flush holds the
+ * lock of the report model, the same one the ReportNode holds to log, so the
+ * tests wait for it instead of changing the model while it is read.
+ *
+ * @author danilo
+ *
+ */
+public class ReportWriter implements Runnable {
+
+	// Events handled by the writer
+	private enum Event {
+		FLUSH_REQUESTED, SHUTDOWN
+	}
+
+	// The report being written
+	private final ExtentReports report;
+
+	// Held while the report model is changed or flushed
+	private final Object lock;
+
+	// Events waiting to be handled
+	private final BlockingQueue<Event> events;
+
+	// Flush settings
+	private final long intervalMillis;
+	private final int batchSize;
+
+	// The thread running the writer
+	private final Thread thread;
+
+	// Statistics
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong flushes = new AtomicLong();
+	private final AtomicLong flushMillis = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+
+	/**
+	 * Creates and starts the writer.
+	 *
+	 * @param report
+	 *            The report to be flushed.
+	 * @param lock
+	 *            The lock held by whoever changes the report.
+	 * @param intervalMillis
+	 *            Maximum time a flush request waits before being handled.
+	 * @param batchSize
+	 *            Number of requests that triggers a flush right away.
+	 */
+	public ReportWriter(ExtentReports report, Object lock, long intervalMillis, int batchSize) {
+		this.report = report;
+		this.lock = lock;
+		this.intervalMillis = intervalMillis;
+		this.batchSize = batchSize;
+		this.events = new LinkedBlockingQueue<Event>();
+
+		// Start the thread, it should never keep the JVM alive
+		thread = new Thread(this, "report-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Ask for the report to be flushed. This method never blocks.
+	 */
+	public void requestFlush() {
+		requests.incrementAndGet();
+		events.offer(Event.FLUSH_REQUESTED);
+	}
+
+	/**
+	 * Stops the writer thread and does the final flush. This one blocks until the
+	 * report is written.
+	 */
+	public void close() {
+
+		// Ask the thread to stop and wait for it
+		events.offer(Event.SHUTDOWN);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		// Final flush, from the calling thread
+		flush();
+	}
+
+	/**
+	 * @return a line with the writer statistics.
+	 */
+	public String getStatistics() {
+		return String.format("Flush requests: %d, flushes: %d, avg flush time: %d ms, errors: %d", requests.get(),
+				flushes.get(), flushes.get() == 0 ? 0 : flushMillis.get() / flushes.get(), errors.get());
+	}
+
+	/**
+	 * Drains the queue and flushes the report from time to time. Nothing but
+	 * close() stops it, a failed flush is logged and tried again later.
+	 */
+	@Override
+	public void run() {
+
+		Event event;
+		int pending;
+		long lastFlush, timeLeft;
+
+		pending = 0;
+		lastFlush = System.currentTimeMillis();
+
+		while (true) {
+
+			// Wait for the next event, but not longer than the flush interval
+			timeLeft = Math.max(1, intervalMillis - (System.currentTimeMillis() - lastFlush));
+			try {
+				event = events.poll(timeLeft, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			// Leave, the final flush is done by close()
+			if (event == Event.SHUTDOWN)
+				return;
+
+			// Count the request
+			if (event == Event.FLUSH_REQUESTED)
+				pending++;
+
+			// Flush in case we have enough requests or waited for long enough
+			try {
+				if (pending >= batchSize
+						|| (pending > 0 && System.currentTimeMillis() - lastFlush >= intervalMillis)) {
+					if (flush())
+						pending = 0;
+					lastFlush = System.currentTimeMillis();
+				}
+
+			} catch (Throwable e) {
+				// Keep the thread alive, otherwise the report is only written at the end
+				errors.incrementAndGet();
+				lastFlush = System.currentTimeMillis();
+				System.err.println("The report writer failed: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Writes the report to the disk.
+	 *
+	 * @return false in case the flush has to be tried again later.
+	 */
+	private boolean flush() {
+
+		long start;
+
+		start = System.currentTimeMillis();
+		try {
+			synchronized (lock) {
+				report.flush();
+			}
+
+		} catch (RuntimeException e) {
+			// Some reporter failed, try again in the next round
+			errors.incrementAndGet();
+			System.err.println("Could not write the report: " + e);
+			return false;
+		}
+
+		// Update the statistics
+		flushes.incrementAndGet();
+		flushMillis.addAndGet(System.currentTimeMillis() - start);
+
+		return true;
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.danilo.prova_sicredi.support.report;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A ring buffer that keeps the last screenshots of a test in memory. Used by
+ * the RING_BUFFER screenshot policy: the screenshots only go to the disk in
+ * case the test fails, otherwise they are just dropped with the context.
+ *
+ * The buffer is limited both by the number of screenshots and by the number of
+ * bytes. The images are stored as the PNG bytes, which is the most compact
+ * form we get from the driver.
+ *
+ * @author danilo
+ *
+ */
+public class ScreenshotBuffer {
+
+	// The screenshots, the oldest one first
+	private final ArrayDeque<byte[]> screenshots;
+
+	// Limits
+	private final int maxScreenshots;
+	private final long maxBytes;
+
+	// Bytes currently in the buffer
+	private long bytes;
+
+	/**
+	 * Creates an empty buffer.
+	 *
+	 * @param maxScreenshots
+	 *            Maximum number of screenshots kept.
+	 * @param maxBytes
+	 *            Maximum number of bytes kept.
+	 */
+	public ScreenshotBuffer(int maxScreenshots, long maxBytes) {
+		this.screenshots = new ArrayDeque<byte[]>(maxScreenshots);
+		this.maxScreenshots = maxScreenshots;
+		this.maxBytes = maxBytes;
+		this.bytes = 0;
+	}
+
+	/**
+	 * Adds a screenshot, dropping the oldest ones in case a limit is exceeded.
+	 *
+	 * @param data
+	 *            The PNG bytes.
+	 */
+	public synchronized void add(byte[] data) {
+
+		// Nothing to do for images bigger than the buffer
+		if (data.length > maxBytes || maxScreenshots == 0)
+			return;
+
+		// Make room for the new screenshot
+		while (screenshots.size() >= maxScreenshots || bytes + data.length > maxBytes) {
+			bytes -= screenshots.removeFirst().length;
+		}
+
+		screenshots.addLast(data);
+		bytes += data.length;
+	}
+
+	/**
+	 * Removes all the screenshots from the buffer.
+	 *
+	 * @return the screenshots, the oldest one first.
+	 */
+	public synchronized List<byte[]> drain() {
+
+		List<byte[]> result;
+
+		result = new ArrayList<byte[]>(screenshots);
+		screenshots.clear();
+		bytes = 0;
+
+		return result;
+	}
+
+	/**
+	 * @return the number of screenshots in the buffer.
+	 */
+	public synchronized int size() {
+		return screenshots.size();
+	}
+
+}
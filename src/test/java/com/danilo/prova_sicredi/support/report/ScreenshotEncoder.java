@@ -0,0 +1,276 @@
+package com.danilo.prova_sicredi.support.report;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.openqa.selenium.Rectangle;
+
+import com.danilo.prova_sicredi.support.Settings;
+
+/**
+ * This class post-processes the screenshots before they are written: crops
+ * them to the bounds of an element, downscales them and re-encodes them as
+ * JPEG. It also creates the small thumbnails used in the report.
+ *
+ * The methods here are meant to be called by the ScreenshotWriter threads, so
+ * the test thread doesn't pay for the encoding.
+ *
+ * @author danilo
+ *
+ */
+public abstract class ScreenshotEncoder {
+
+	// Settings, loaded on the first call
+	private static boolean initialized = false;
+	private static boolean crop;
+	private static String format;
+	private static float quality;
+	private static double scale;
+	private static int thumbnailWidth;
+
+	// Statistics
+	private static AtomicLong encoded = new AtomicLong();
+	private static AtomicLong thumbnails = new AtomicLong();
+	private static AtomicLong encodeNanos = new AtomicLong();
+	private static AtomicLong bytesIn = new AtomicLong();
+	private static AtomicLong bytesOut = new AtomicLong();
+
+	/**
+	 * Load the settings from the config.properties.
+	 */
+	private static synchronized void initialize() {
+
+		// Do not initialize twice
+		if (initialized)
+			return;
+
+		crop = Boolean.parseBoolean(Settings.getProperty("screenshot_crop"));
+		format = Settings.getProperty("screenshot_format").trim().toLowerCase();
+		quality = Float.parseFloat(Settings.getProperty("screenshot_quality"));
+		scale = Double.parseDouble(Settings.getProperty("screenshot_scale"));
+		thumbnailWidth = Integer.parseInt(Settings.getProperty("screenshot_thumbnail_width"));
+
+		// Mark initialized
+		initialized = true;
+	}
+
+	/**
+	 * @return true in case the screenshots have to be processed before being
+	 *         written. When false, the PNG from the driver is written as is.
+	 */
+	public static boolean isEnabled() {
+		if (!initialized)
+			initialize();
+
+		return crop || !format.equals("png") || scale != 1.0 || thumbnailWidth > 0;
+	}
+
+	/**
+	 * @return true in case the screenshots of elements must be cropped.
+	 */
+	public static boolean isCropEnabled() {
+		if (!initialized)
+			initialize();
+
+		return crop;
+	}
+
+	/**
+	 * @return true in case thumbnails must be added to the report.
+	 */
+	public static boolean isThumbnailEnabled() {
+		if (!initialized)
+			initialize();
+
+		return thumbnailWidth > 0;
+	}
+
+	/**
+	 * @return the extension of the encoded images.
+	 */
+	public static String getExtension() {
+		if (!initialized)
+			initialize();
+
+		return format.equals("jpeg") ? "jpg" : format;
+	}
+
+	/**
+	 * Crop, downscale and re-encode a screenshot accordingly to the settings.
+	 *
+	 * @param png
+	 *            The screenshot from the driver.
+	 * @param bounds
+	 *            Area to crop, in device pixels, or null to keep the whole image.
+	 * @return the encoded image.
+	 */
+	public static byte[] encode(byte[] png, Rectangle bounds) {
+
+		BufferedImage image;
+		byte[] result;
+		long start;
+
+		if (!initialized)
+			initialize();
+
+		start = System.nanoTime();
+
+		// Crop and resize
+		image = read(png);
+		if (bounds != null) {
+			image = crop(image, bounds);
+		}
+		image = resize(image, scale);
+
+		// Encode it
+		result = write(image, getExtension(), quality);
+
+		// Update the statistics
+		encoded.incrementAndGet();
+		encodeNanos.addAndGet(System.nanoTime() - start);
+		bytesIn.addAndGet(png.length);
+		bytesOut.addAndGet(result.length);
+
+		return result;
+	}
+
+	/**
+	 * Creates a small JPEG version of the screenshot.
+	 *
+	 * @param png
+	 *            The screenshot from the driver.
+	 * @param bounds
+	 *            Area to crop, in device pixels, or null to keep the whole image.
+	 * @return the thumbnail.
+	 */
+	public static byte[] thumbnail(byte[] png, Rectangle bounds) {
+
+		BufferedImage image;
+
+		if (!initialized)
+			initialize();
+
+		image = read(png);
+		if (bounds != null) {
+			image = crop(image, bounds);
+		}
+		image = resize(image, Math.min(1.0, (double) thumbnailWidth / image.getWidth()));
+		thumbnails.incrementAndGet();
+
+		return write(image, "jpg", 0.7f);
+	}
+
+	/**
+	 * @return a line with the encoding statistics.
+	 */
+	public static String getStatistics() {
+
+		long count;
+
+		count = encoded.get();
+
+		return String.format(
+				"Encoded: %d, thumbnails: %d, avg encode time: %.1f ms, bytes: %d -> %d (%.0f%% smaller)", count,
+				thumbnails.get(), count == 0 ? 0.0 : encodeNanos.get() / 1000000.0 / count, bytesIn.get(),
+				bytesOut.get(), bytesIn.get() == 0 ? 0.0 : 100.0 - 100.0 * bytesOut.get() / bytesIn.get());
+	}
+
+	/**
+	 * Decodes an image.
+	 */
+	private static BufferedImage read(byte[] data) {
+		try {
+			return ImageIO.read(new ByteArrayInputStream(data));
+		} catch (IOException e) {
+			throw new RuntimeException("Could not decode the screenshot.", e);
+		}
+	}
+
+	/**
+	 * Cuts the area of the element from the screenshot.
+	 */
+	private static BufferedImage crop(BufferedImage image, Rectangle bounds) {
+
+		int x, y, width, height;
+
+		// Keep it inside the image
+		x = Math.max(0, bounds.x);
+		y = Math.max(0, bounds.y);
+		width = Math.min(image.getWidth() - x, bounds.width);
+		height = Math.min(image.getHeight() - y, bounds.height);
+
+		// The element is not in the screenshot, keep the whole image
+		if (width <= 0 || height <= 0)
+			return image;
+
+		return image.getSubimage(x, y, width, height);
+	}
+
+	/**
+	 * Resizes an image. Also converts it to RGB, as JPEG has no alpha channel.
+	 */
+	private static BufferedImage resize(BufferedImage image, double factor) {
+
+		BufferedImage result;
+		Graphics2D graphics;
+		int width, height;
+
+		width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+		height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+
+		// Draw it in the new size
+		result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		graphics = result.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		graphics.drawImage(image, 0, 0, width, height, null);
+		graphics.dispose();
+
+		return result;
+	}
+
+	/**
+	 * Encodes an image in the given format.
+	 */
+	private static byte[] write(BufferedImage image, String extension, float quality) {
+
+		ByteArrayOutputStream output;
+		ImageWriter writer;
+		ImageWriteParam params;
+
+		output = new ByteArrayOutputStream();
+		writer = ImageIO.getImageWritersByFormatName(extension).next();
+
+		try (ImageOutputStream stream = ImageIO.createImageOutputStream(output)) {
+			writer.setOutput(stream);
+
+			// Set the quality in case the format supports it
+			params = writer.getDefaultWriteParam();
+			if (extension.equals("jpg") && params.canWriteCompressed()) {
+				params.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				params.setCompressionQuality(quality);
+			}
+
+			writer.write(null, new IIOImage(image, null, null), params);
+
+		} catch (IOException e) {
+			throw new RuntimeException("Could not encode the screenshot.", e);
+
+		} finally {
+			writer.dispose();
+		}
+
+		return output.toByteArray();
+	}
+
+}
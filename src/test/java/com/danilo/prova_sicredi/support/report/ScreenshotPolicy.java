@@ -0,0 +1,41 @@
+package com.danilo.prova_sicredi.support.report;
+
+import com.danilo.prova_sicredi.support.Settings;
+
+/**
+ * Defines when the screenshots requested by the page objects are saved. The
+ * policy is selected by the setting 'screenshot_policy'. Screenshots of
+ * failures are always saved, no matter the policy.
+ *
+ * @author danilo
+ *
+ */
+public enum ScreenshotPolicy {
+
+	// Every screenshot is saved
+	ALWAYS,
+
+	// Only one of every 'screenshot_every_nth' screenshots is saved
+	EVERY_NTH,
+
+	// Only the failure screenshot is saved
+	FAILURE_ONLY,
+
+	// The last 'screenshot_buffer_size' screenshots are kept in memory and saved
+	// only in case the test fails
+	RING_BUFFER;
+
+	// The policy loaded from the settings
+	private static ScreenshotPolicy current;
+
+	/**
+	 * @return the policy defined at config.properties.
+	 */
+	public static ScreenshotPolicy get() {
+		if (current == null)
+			current = valueOf(Settings.getProperty("screenshot_policy").trim().toUpperCase());
+
+		return current;
+	}
+
+}
@@ -0,0 +1,138 @@
+package com.danilo.prova_sicredi.support.report;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.danilo.prova_sicredi.support.Settings;
+
+/**
+ * This class stores the screenshots by their content. Each image is named
+ * after the hash of its bytes, so identical screenshots (like the ones taken
+ * by two validatePageLoaded() calls in a row) are written only once and all
+ * the report entries point to the same file.
+ *
+ * @author danilo
+ *
+ */
+public abstract class ScreenshotStore {
+
+	// Hashes of the images already stored in this run, or being written. A hash
+	// is removed in case its file could not be written, so the next store of the
+	// same image tries again
+	private static Set<String> stored = ConcurrentHashMap.newKeySet();
+
+	// Statistics
+	private static AtomicLong total = new AtomicLong();
+	private static AtomicLong totalBytes = new AtomicLong();
+	private static AtomicLong savedBytes = new AtomicLong();
+
+	/**
+	 * Stores a screenshot, writing it only in case the same image has not been
+	 * stored before.
+	 *
+	 * @param data
+	 *            The bytes of the image.
+	 * @param extension
+	 *            The file extension, without the dot.
+	 * @return the path of the file that holds the image.
+	 */
+	public static String store(byte[] data, String extension) {
+		return store(data, "", extension, () -> data);
+	}
+
+	/**
+	 * Stores a version of a screenshot (cropped, resized, thumbnail...). The
+	 * version is identified by the original image plus a variant name, so the
+	 * encoding is done only the first time a version is stored.
+	 *
+	 * @param data
+	 *            The bytes of the original image.
+	 * @param variant
+	 *            Identifies how the original image is transformed.
+	 * @param extension
+	 *            The file extension, without the dot.
+	 * @param encoder
+	 *            Produces the bytes to be written, called by the writer thread.
+	 * @return the path of the file that holds the image.
+	 */
+	public static String store(byte[] data, String variant, String extension, Supplier<byte[]> encoder) {
+
+		String hash, fullPath;
+
+		// Name the file after its contents
+		hash = hash(data, variant);
+		fullPath = Settings.getProperty("report_path") + File.separator + "screenshots" + File.separator + hash
+				+ "." + extension;
+
+		// Update the statistics
+		total.incrementAndGet();
+		totalBytes.addAndGet(data.length);
+
+		// Write it only once
+		if (stored.add(hash)) {
+			ScreenshotWriter.write(fullPath, encoder, () -> stored.remove(hash));
+		} else {
+			savedBytes.addAndGet(data.length);
+		}
+
+		return fullPath;
+	}
+
+	/**
+	 * Forget the stored images. Must be called when the screenshots folder is
+	 * cleaned.
+	 */
+	public static void clear() {
+		stored.clear();
+	}
+
+	/**
+	 * @return a line with the deduplication statistics.
+	 */
+	public static String getStatistics() {
+
+		long unique;
+
+		unique = stored.size();
+
+		return String.format("Screenshots: %d, unique: %d, dedup ratio: %.2f, bytes saved: %d of %d", total.get(),
+				unique, unique == 0 ? 1.0 : (double) total.get() / unique, savedBytes.get(), totalBytes.get());
+	}
+
+	/**
+	 * Calculates the SHA-256 of the data and the variant.
+	 *
+	 * @return the hash as a hex string.
+	 */
+	private static String hash(byte[] data, String variant) {
+
+		MessageDigest digest;
+		StringBuilder hex;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every JVM has to support SHA-256
+			throw new RuntimeException(e);
+		}
+
+		// Hash the image and the variant together
+		digest.update(data);
+		digest.update(variant.getBytes(StandardCharsets.UTF_8));
+
+		// Convert to hex
+		hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+
+		return hex.toString();
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.danilo.prova_sicredi.support.report;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.danilo.prova_sicredi.support.Settings;
+import com.danilo.prova_sicredi.support.factories.ContextFactory;
+
+/**
+ * This class writes the screenshots to the disk in background threads. The
+ * path of the screenshot is defined before the file is written, so the report
+ * can point to it right away while the file is still being written.
+ *
+ * The number of screenshots waiting to be written is limited. When the disk
+ * can't keep up, the test thread waits for a free slot before moving on, so
+ * the memory used by pending screenshots doesn't grow without control.
+ *
+ * @author danilo
+ *
+ */
+public abstract class ScreenshotWriter {
+
+	// Threads that write the files
+	private static ExecutorService executor;
+
+	// Slots for pending screenshots, used for the backpressure
+	private static Semaphore slots;
+	private static int capacity;
+
+	// Statistics
+	private static AtomicLong written = new AtomicLong();
+	private static AtomicLong failed = new AtomicLong();
+	private static AtomicLong blockedMillis = new AtomicLong();
+
+	// Store the initialization status
+	private static boolean initialized = false;
+
+	/**
+	 * Start the writer threads.
+	 */
+	private static synchronized void initialize() {
+
+		int threads;
+
+		// Do not initialize twice
+		if (initialized)
+			return;
+
+		// Load the settings
+		threads = Integer.parseInt(Settings.getProperty("screenshot_writer_threads"));
+		capacity = Integer.parseInt(Settings.getProperty("screenshot_writer_capacity"));
+
+		// The writers should never keep the JVM alive
+		executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "screenshot-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		slots = new Semaphore(capacity);
+
+		// Mark initialized
+		initialized = true;
+	}
+
+	/**
+	 * Schedule a screenshot to be written to the disk. Blocks in case there are
+	 * too many screenshots waiting to be written.
+	 *
+	 * @param fullPath
+	 *            Path of the file to be written.
+	 * @param base64Data
+	 *            The screenshot as returned by the driver, encoded in base 64.
+	 * @return A future that is completed with the path once the file is written.
+	 */
+	public static Future<String> write(String fullPath, String base64Data) {
+		return write(fullPath, () -> Base64.getMimeDecoder().decode(base64Data));
+	}
+
+	/**
+	 * Schedule a screenshot that is already decoded to be written to the disk.
+	 * Blocks in case there are too many screenshots waiting to be written.
+	 *
+	 * @param fullPath
+	 *            Path of the file to be written.
+	 * @param data
+	 *            The bytes of the image.
+	 * @return A future that is completed with the path once the file is written.
+	 */
+	public static Future<String> write(String fullPath, byte[] data) {
+		return write(fullPath, () -> data);
+	}
+
+	/**
+	 * Wait for a slot and then write the file in the background. The bytes are
+	 * produced by the writer thread, so any encoding done by the supplier is off
+	 * the test thread.
+	 *
+	 * @param fullPath
+	 *            Path of the file to be written.
+	 * @param data
+	 *            Provides the bytes of the image, called by the writer thread.
+	 * @return A future that is completed with the path once the file is written.
+	 */
+	public static Future<String> write(String fullPath, Supplier<byte[]> data) {
+		return write(fullPath, data, () -> {
+		});
+	}
+
+	/**
+	 * Same as write(fullPath, data), telling the caller when the file could not
+	 * be written.
+	 *
+	 * @param fullPath
+	 *            Path of the file to be written.
+	 * @param data
+	 *            Provides the bytes of the image, called by the writer thread.
+	 * @param onFailure
+	 *            Called by the writer thread in case the file is not written.
+	 * @return A future that is completed with the path once the file is written,
+	 *         or with null in case it failed.
+	 */
+	public static Future<String> write(String fullPath, Supplier<byte[]> data, Runnable onFailure) {
+
+		long start;
+		Callable<String> task;
+
+		if (!initialized)
+			initialize();
+
+		// Wait for a slot in case the disk is falling behind
+		start = System.currentTimeMillis();
+		slots.acquireUninterruptibly();
+		blockedMillis.addAndGet(System.currentTimeMillis() - start);
+
+		// Do the decoding and the writing in the background, with the context of the
+		// test
+		task = () -> {
+			try {
+				Path path = Paths.get(fullPath);
+
+				// Create the folders and the file
+				Files.createDirectories(path.getParent());
+				Files.write(path, data.get());
+
+				written.incrementAndGet();
+				return fullPath;
+
+			} catch (IOException | RuntimeException e) {
+				failed.incrementAndGet();
+				System.err.println(String.format("Could not write screenshot '%s': %s", fullPath, e.getMessage()));
+				onFailure.run();
+				return null;
+
+			} finally {
+				slots.release();
+			}
+		};
+
+		return executor.submit(ContextFactory.wrap(task));
+	}
+
+	/**
+	 * Wait for all the pending screenshots to be written. Must be called before
+	 * the final flush of the report.
+	 *
+	 * @param timeoutSeconds
+	 *            Maximum time to wait.
+	 * @return false in case some screenshots are still pending after the timeout.
+	 */
+	public static boolean awaitPending(long timeoutSeconds) {
+
+		// Nothing was written
+		if (!initialized)
+			return true;
+
+		// Once we get all the slots, nothing is pending
+		try {
+			if (slots.tryAcquire(capacity, timeoutSeconds, TimeUnit.SECONDS)) {
+				slots.release(capacity);
+				return true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return a line with the writer statistics.
+	 */
+	public static String getStatistics() {
+		return String.format("Written: %d, failed: %d, time blocked by backpressure: %d ms", written.get(),
+				failed.get(), blockedMillis.get());
+	}
+
+}
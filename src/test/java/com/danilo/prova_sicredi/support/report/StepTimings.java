@@ -0,0 +1,230 @@
+package com.danilo.prova_sicredi.support.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openqa.selenium.json.Json;
+
+import com.aventstack.extentreports.ExtentReports;
+import com.aventstack.extentreports.ExtentTest;
+import com.aventstack.extentreports.markuputils.MarkupHelper;
+import com.danilo.prova_sicredi.support.Settings;
+
+/**
+ * This class aggregates the duration of the steps seen by the SeleniumListener,
+ * by kind of command (click, find, navigate...) and by locator. At the end of
+ * the suite the percentiles go to the report and to a JSON file, so slow runs
+ * can be traced back to the app, the browser or the waits.
+ *
+ * @author danilo
+ *
+ */
+public abstract class StepTimings {
+
+	// The percentiles published
+	private static final double[] PERCENTILES = { 50, 90, 99, 100 };
+
+	// Maximum number of locators shown in the report, the JSON has all of them
+	private static final int REPORT_LOCATORS = 20;
+
+	// The histograms by kind of command and by locator
+	private static Map<String, LatencyHistogram> byCommand = new ConcurrentHashMap<>();
+	private static Map<String, LatencyHistogram> byLocator = new ConcurrentHashMap<>();
+
+	/**
+	 * Records the duration of a step.
+	 *
+	 * @param command
+	 *            The kind of command, like 'click' or 'find'.
+	 * @param locator
+	 *            The locator of the element, or null for commands not related to
+	 *            elements.
+	 * @param nanos
+	 *            The duration in nanoseconds.
+	 */
+	public static void record(String command, String locator, long nanos) {
+		byCommand.computeIfAbsent(command, key -> new LatencyHistogram()).add(nanos);
+		if (locator != null) {
+			byLocator.computeIfAbsent(command + " " + locator, key -> new LatencyHistogram()).add(nanos);
+		}
+	}
+
+	/**
+	 * Returns the average duration of a kind of command measured so far.
+	 *
+	 * @param command
+	 *            The kind of command, like 'click' or 'find'.
+	 * @return the average in milliseconds, or -1 in case it has not been measured.
+	 */
+	public static double getAverageMillis(String command) {
+
+		LatencyHistogram histogram;
+
+		histogram = byCommand.get(command);
+		if (histogram == null || histogram.getCount() == 0)
+			return -1;
+
+		return histogram.getTotalMillis() / histogram.getCount();
+	}
+
+	/**
+	 * Returns the histograms by locator of a kind of command.
+	 *
+	 * @param command
+	 *            The kind of command, like 'click' or 'find'.
+	 * @return the histograms by locator.
+	 */
+	public static Map<String, LatencyHistogram> getLocators(String command) {
+
+		Map<String, LatencyHistogram> result;
+
+		result = new LinkedHashMap<>();
+		byLocator.forEach((key, histogram) -> {
+			if (key.startsWith(command + " "))
+				result.put(key.substring(command.length() + 1), histogram);
+		});
+
+		return result;
+	}
+
+	/**
+	 * Adds a node with the percentile tables to the report.
+	 *
+	 * @param report
+	 *            The report.
+	 */
+	public static void addToReport(ExtentReports report) {
+
+		ExtentTest test;
+
+		// Nothing has been measured
+		if (byCommand.isEmpty())
+			return;
+
+		test = report.createTest("Step latencies");
+		test.info("<strong>By command</strong> (ms)");
+		test.info(MarkupHelper.createTable(toTable(byCommand, Integer.MAX_VALUE)));
+		test.info("<strong>Slowest locators</strong> (ms, by total time)");
+		test.info(MarkupHelper.createTable(toTable(byLocator, REPORT_LOCATORS)));
+	}
+
+	/**
+	 * Writes the percentiles to 'step_latencies.json' in the report folder.
+	 */
+	public static void writeSummary() {
+
+		Map<String, Object> summary;
+
+		summary = new LinkedHashMap<>();
+		summary.put("commands", toSummary(byCommand));
+		summary.put("locators", toSummary(byLocator));
+
+		try {
+			Files.write(Paths.get(Settings.getProperty("report_path") + File.separator + "step_latencies.json"),
+					new Json().toJson(summary).getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			System.err.println("Could not write the step latencies: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return a line with the number of steps and the time spent on them.
+	 */
+	public static String getStatistics() {
+
+		long steps;
+		double millis;
+
+		steps = 0;
+		millis = 0;
+		for (LatencyHistogram histogram : byCommand.values()) {
+			steps += histogram.getCount();
+			millis += histogram.getTotalMillis();
+		}
+
+		return String.format("Steps: %d, time in driver calls: %.0f ms", steps, millis);
+	}
+
+	/**
+	 * Forget the measures. Used when a new report is started.
+	 */
+	public static void clear() {
+		byCommand.clear();
+		byLocator.clear();
+	}
+
+	/**
+	 * Sorts the histograms by the total time, the slowest first.
+	 */
+	private static List<Map.Entry<String, LatencyHistogram>> sorted(Map<String, LatencyHistogram> histograms) {
+
+		List<Map.Entry<String, LatencyHistogram>> entries;
+
+		entries = new ArrayList<>(histograms.entrySet());
+		entries.sort((a, b) -> Double.compare(b.getValue().getTotalMillis(), a.getValue().getTotalMillis()));
+
+		return entries;
+	}
+
+	/**
+	 * Builds a table for the report.
+	 */
+	private static String[][] toTable(Map<String, LatencyHistogram> histograms, int limit) {
+
+		List<Map.Entry<String, LatencyHistogram>> entries;
+		String[][] table;
+		double[] values;
+		LatencyHistogram histogram;
+
+		entries = sorted(histograms);
+		table = new String[Math.min(limit, entries.size()) + 1][];
+		table[0] = new String[] { "Step", "Count", "p50", "p90", "p99", "Max", "Total" };
+
+		for (int i = 1; i < table.length; i++) {
+			histogram = entries.get(i - 1).getValue();
+			values = histogram.getPercentiles(PERCENTILES);
+			table[i] = new String[] { entries.get(i - 1).getKey(), String.valueOf(histogram.getCount()),
+					String.format("%.1f", values[0]), String.format("%.1f", values[1]),
+					String.format("%.1f", values[2]), String.format("%.1f", values[3]),
+					String.format("%.0f", histogram.getTotalMillis()) };
+		}
+
+		return table;
+	}
+
+	/**
+	 * Builds the JSON friendly version of the histograms.
+	 */
+	private static List<Map<String, Object>> toSummary(Map<String, LatencyHistogram> histograms) {
+
+		List<Map<String, Object>> result;
+		Map<String, Object> line;
+		double[] values;
+
+		result = new ArrayList<>();
+		for (Map.Entry<String, LatencyHistogram> entry : sorted(histograms)) {
+			values = entry.getValue().getPercentiles(PERCENTILES);
+
+			line = new LinkedHashMap<>();
+			line.put("name", entry.getKey());
+			line.put("count", entry.getValue().getCount());
+			line.put("p50", values[0]);
+			line.put("p90", values[1]);
+			line.put("p99", values[2]);
+			line.put("max", values[3]);
+			line.put("total", entry.getValue().getTotalMillis());
+			result.add(line);
+		}
+
+		return result;
+	}
+
+}
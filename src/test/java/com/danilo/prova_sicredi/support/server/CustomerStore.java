@@ -0,0 +1,211 @@
+package com.danilo.prova_sicredi.support.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps the customers of the stand-in Grocery CRUD in memory. It
+ * starts with a few customers and the employees of the demo database, so the
+ * pages look like the ones of the demo, and it is safe to be used by many
+ * requests at once.
+ *
+ * The customers are kept with the names of the fields of the add form.
+ *
+ * @author danilo
+ *
+ */
+public class CustomerStore {
+
+	// The fields of a customer, in the order they are shown in the list
+	public static final String[] FIELDS = { "customerName", "contactLastName", "contactFirstName", "phone",
+			"addressLine1", "addressLine2", "city", "state", "postalCode", "country", "salesRepEmployeeNumber",
+			"creditLimit" };
+
+	// The fields that can't be empty
+	public static final String[] REQUIRED = { "customerName", "contactLastName", "contactFirstName", "phone",
+			"addressLine1", "city", "country" };
+
+	// The employees of the demo database: number, last name and first name
+	private static final String[][] EMPLOYEES = { { "1002", "Murphy", "Diane" }, { "1056", "Patterson", "Mary" },
+			{ "1076", "Firrelli", "Jeff" }, { "1088", "Patterson", "William" }, { "1102", "Bondur", "Gerard" },
+			{ "1143", "Bow", "Anthony" }, { "1165", "Jennings", "Leslie" }, { "1166", "Thompson", "Leslie" },
+			{ "1188", "Firrelli", "Julie" }, { "1216", "Patterson", "Steve" }, { "1286", "Tseng", "Foon Yue" },
+			{ "1323", "Vanauf", "George" }, { "1337", "Bondur", "Loui" }, { "1370", "Hernandez", "Gerard" },
+			{ "1401", "Castillo", "Pamela" }, { "1501", "Bott", "Larry" }, { "1504", "Jones", "Barry" },
+			{ "1611", "Fixter", "Andy" }, { "1612", "Marsh", "Peter" }, { "1619", "King", "Tom" },
+			{ "1621", "Nishi", "Mami" }, { "1625", "Kato", "Yoshimi" }, { "1702", "Gerard", "Martin" } };
+
+	// The customers the store starts with
+	private static final String[][] CUSTOMERS = {
+			{ "Atelier graphique", "Schmitt", "Carine", "40.32.2555", "54, rue Royale", "", "Nantes", "", "44000",
+					"France", "1370", "21000" },
+			{ "Signal Gift Stores", "King", "Jean", "7025551838", "8489 Strong St.", "", "Las Vegas", "NV", "83030",
+					"USA", "1166", "71800" },
+			{ "Australian Collectors, Co.", "Ferguson", "Peter", "03 9520 4555", "636 St Kilda Road", "Level 3",
+					"Melbourne", "Victoria", "3004", "Australia", "1611", "117300" },
+			{ "La Rochelle Gifts", "Labrune", "Janine", "40.67.8555", "67, rue des Cinquante Otages", "", "Nantes",
+					"", "44000", "France", "1370", "118200" },
+			{ "Baane Mini Imports", "Bergulfsen", "Jonas", "07-98 9555", "Erling Skakkes gate 78", "", "Stavern", "",
+					"4110", "Norway", "1504", "81700" } };
+
+	// The customers, by their ids
+	private final Map<Long, Map<String, String>> customers = new ConcurrentSkipListMap<>();
+
+	// The next id
+	private final AtomicLong nextId = new AtomicLong(103);
+
+	/**
+	 * Creates a store with the customers of the demo.
+	 */
+	public CustomerStore() {
+
+		Map<String, String> customer;
+
+		for (String[] values : CUSTOMERS) {
+			customer = new LinkedHashMap<>();
+			for (int i = 0; i < FIELDS.length; i++) {
+				customer.put(FIELDS[i], values[i]);
+			}
+			insert(customer);
+		}
+	}
+
+	/**
+	 * Checks the required fields of a customer.
+	 *
+	 * @param customer
+	 *            The customer.
+	 * @return the name of the first required field that is empty, or null in case
+	 *         they are all filled.
+	 */
+	public static String findMissingField(Map<String, String> customer) {
+		for (String field : REQUIRED) {
+			if (customer.get(field) == null || customer.get(field).trim().isEmpty())
+				return field;
+		}
+		return null;
+	}
+
+	/**
+	 * Adds a customer.
+	 *
+	 * @param customer
+	 *            The values, by the names of the fields. Unknown fields are
+	 *            ignored.
+	 * @return the id of the customer.
+	 */
+	public long insert(Map<String, String> customer) {
+
+		Map<String, String> values;
+		long id;
+
+		values = new LinkedHashMap<>();
+		for (String field : FIELDS) {
+			values.put(field, customer.get(field) == null ? "" : customer.get(field));
+		}
+
+		id = nextId.getAndIncrement();
+		customers.put(id, Collections.unmodifiableMap(values));
+
+		return id;
+	}
+
+	/**
+	 * Removes customers.
+	 *
+	 * @param ids
+	 *            The ids.
+	 * @return the number of customers removed.
+	 */
+	public int delete(List<Long> ids) {
+
+		int deleted;
+
+		deleted = 0;
+		for (Long id : ids) {
+			if (customers.remove(id) != null)
+				deleted++;
+		}
+
+		return deleted;
+	}
+
+	/**
+	 * Looks for customers with a text in any field, as the search of the list
+	 * does.
+	 *
+	 * @param text
+	 *            The text, or null or empty for all the customers.
+	 * @param limit
+	 *            The maximum number of customers to be returned.
+	 * @return the ids and the customers found, in the order they were added.
+	 */
+	public Map<Long, Map<String, String>> search(String text, int limit) {
+
+		Map<Long, Map<String, String>> found;
+		String term;
+
+		found = new LinkedHashMap<>();
+		term = text == null ? "" : text.trim().toLowerCase();
+
+		for (Map.Entry<Long, Map<String, String>> customer : customers.entrySet()) {
+			if (found.size() == limit)
+				break;
+			if (term.isEmpty() || matches(customer.getValue(), term))
+				found.put(customer.getKey(), customer.getValue());
+		}
+
+		return found;
+	}
+
+	/**
+	 * @return the number of customers.
+	 */
+	public int size() {
+		return customers.size();
+	}
+
+	/**
+	 * @return the employees, as the options of the employer field: the number and
+	 *         the name.
+	 */
+	public static List<String[]> getEmployees() {
+
+		List<String[]> employees;
+
+		employees = new ArrayList<>();
+		for (String[] employee : EMPLOYEES) {
+			employees.add(new String[] { employee[0], employee[1] + " " + employee[2] });
+		}
+
+		return employees;
+	}
+
+	/**
+	 * @return the name of an employee, or the number in case it is unknown.
+	 */
+	public static String getEmployeeName(String number) {
+		for (String[] employee : EMPLOYEES) {
+			if (employee[0].equals(number))
+				return employee[1] + " " + employee[2];
+		}
+		return number;
+	}
+
+	/**
+	 * @return whether any field of the customer has the term.
+	 */
+	private static boolean matches(Map<String, String> customer, String term) {
+		for (String value : customer.values()) {
+			if (value.toLowerCase().contains(term))
+				return true;
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,416 @@
+package com.danilo.prova_sicredi.support.server;
+
+import java.util.Map;
+
+/**
+ * This class builds the pages of the stand-in Grocery CRUD: the customers list,
+ * with the search, the delete modal and the growl message, and the add customer
+ * form, with the chosen widget of the employer field. The elements the page
+ * objects look for are the same as in the demo, down to the classes and the
+ * text nodes.
+ *
+ * The pages are well-formed XHTML, so they can also be read by an XML parser,
+ * and all the behavior is in a separate script served by the server.
+ *
+ * @author danilo
+ *
+ */
+public abstract class GroceryCrudPages {
+
+	// The messages of the CRUD
+	public static final String INSERT_MESSAGE = "Your data has been successfully stored into the database.";
+	public static final String DELETE_MESSAGE = "Your data has been successfully deleted from the database.";
+	public static final String DELETE_ONE_MESSAGE = "Are you sure that you want to delete this 1 item?";
+
+	// The names of the themes, at the end of the URL of the CRUD
+	public static final String THEME_V3 = "bootstrap_theme";
+	public static final String THEME_V4 = "bootstrap_theme_v4";
+
+	// The labels of the fields, in the same order as CustomerStore.FIELDS
+	private static final String[] LABELS = { "Name", "Last name", "Contact first name", "Phone", "Address line1",
+			"Address line2", "City", "State", "Postal code", "Country", "from Employeer", "Credit limit" };
+
+	// The fields shown in the list
+	private static final int[] LIST_FIELDS = { 0, 1, 3, 6, 9, 10 };
+
+	// The behavior of the pages. Uses the base URL of the CRUD, kept in the body.
+	public static final String SCRIPT = "(function () {"
+			+ "  var base = document.body.getAttribute('data-base');"
+			+ "  function one(selector) { return document.querySelector(selector); }"
+			+ "  function show(element, visible) { element.style.display = visible ? 'block' : 'none'; }"
+			+ "  function post(action, form, done) {"
+			+ "    var xhr = new XMLHttpRequest();"
+			+ "    xhr.open('POST', base + '/' + action);"
+			+ "    xhr.setRequestHeader('Content-Type', 'application/x-www-form-urlencoded; charset=UTF-8');"
+			+ "    xhr.setRequestHeader('X-Requested-With', 'XMLHttpRequest');"
+			+ "    xhr.onload = function () { done(JSON.parse(xhr.responseText)); };"
+			+ "    xhr.send(form.join('&'));"
+			+ "  }"
+			+ "  function field(name, value) { return encodeURIComponent(name) + '=' + encodeURIComponent(value); }"
+			// Theme switch
+			+ "  var version = one('#switch-version-select');"
+			+ "  if (version) version.onchange = function () { window.location.href = version.value; };"
+			// Search
+			+ "  var search = one('.search-button');"
+			+ "  if (search) search.onclick = function (event) {"
+			+ "    event.preventDefault();"
+			+ "    show(one('#search-box'), true);"
+			+ "    one('input[name=search]').focus();"
+			+ "  };"
+			// Delete the selected rows, after the modal
+			+ "  var modal = one('.delete-multiple-confirmation');"
+			+ "  function selected() { return document.querySelectorAll('input.select-row:checked'); }"
+			+ "  var remove = one('.filter-row a[title=Delete]');"
+			+ "  if (remove) remove.onclick = function (event) {"
+			+ "    event.preventDefault();"
+			+ "    var count = selected().length;"
+			+ "    if (count === 0) return;"
+			+ "    one('.delete-items-count').textContent = count;"
+			+ "    show(one('.alert-delete-multiple-one'), count === 1);"
+			+ "    show(one('.alert-delete-multiple'), count !== 1);"
+			+ "    show(modal, true);"
+			+ "  };"
+			+ "  if (modal) {"
+			+ "    one('.delete-multiple-confirmation-cancel').onclick = function () { show(modal, false); };"
+			+ "    one('.delete-multiple-confirmation-button').onclick = function () {"
+			+ "      var rows = selected(), form = [];"
+			+ "      for (var i = 0; i < rows.length; i++) form.push(field('ids[]', rows[i].value));"
+			+ "      post('delete_multiple', form, function (answer) {"
+			+ "        show(modal, false);"
+			+ "        for (var i = 0; i < rows.length; i++) {"
+			+ "          var row = rows[i].parentNode.parentNode;"
+			+ "          row.parentNode.removeChild(row);"
+			+ "        }"
+			+ "        var growl = document.createElement('div');"
+			+ "        growl.className = 'growl-container';"
+			+ "        growl.innerHTML = '<div class=\"alert alert-success growl\">'"
+			+ "            + '<span data-growl=\"message\">' + answer.success_message + '</span></div>';"
+			+ "        document.body.appendChild(growl);"
+			+ "      });"
+			+ "    };"
+			+ "  }"
+			// The chosen widget of the employer
+			+ "  var chosen = one('.chosen-container');"
+			+ "  if (chosen) {"
+			+ "    var select = one('select.chosen-select'), drop = one('.chosen-drop'),"
+			+ "        input = one('.chosen-search input'), results = one('.chosen-results');"
+			+ "    var matching = function () {"
+			+ "      var found = [], term = input.value.toLowerCase();"
+			+ "      for (var i = 0; i < select.options.length; i++) {"
+			+ "        var option = select.options[i];"
+			+ "        if (option.value && option.text.toLowerCase().indexOf(term) >= 0) found.push(option);"
+			+ "      }"
+			+ "      return found;"
+			+ "    };"
+			+ "    var list = function () {"
+			+ "      var found = matching();"
+			+ "      results.innerHTML = '';"
+			+ "      for (var i = 0; i < found.length; i++) {"
+			+ "        var item = document.createElement('li');"
+			+ "        item.className = 'active-result' + (i === 0 ? ' highlighted' : '');"
+			+ "        item.textContent = found[i].text;"
+			+ "        item.setAttribute('data-value', found[i].value);"
+			+ "        item.onmousedown = function () { pick(this.getAttribute('data-value')); };"
+			+ "        results.appendChild(item);"
+			+ "      }"
+			+ "    };"
+			+ "    var pick = function (value) {"
+			+ "      select.value = value;"
+			+ "      one('.chosen-single span').textContent = select.options[select.selectedIndex].text;"
+			+ "      show(drop, false);"
+			+ "    };"
+			+ "    one('.chosen-single').onclick = function (event) {"
+			+ "      event.preventDefault();"
+			+ "      show(drop, true);"
+			+ "      list();"
+			+ "      input.focus();"
+			+ "    };"
+			+ "    input.onkeyup = list;"
+			+ "    input.onkeydown = function (event) {"
+			+ "      if (event.keyCode !== 9 && event.keyCode !== 13) return;"
+			+ "      if (event.keyCode === 13) event.preventDefault();"
+			+ "      var found = matching();"
+			+ "      if (found.length > 0) pick(found[0].value);"
+			+ "    };"
+			+ "  }"
+			// Save the form
+			+ "  var save = one('#form-button-save');"
+			+ "  if (save) save.onclick = function () {"
+			+ "    var inputs = document.querySelectorAll('#crudForm input[name], #crudForm select[name]'), form = [];"
+			+ "    for (var i = 0; i < inputs.length; i++) form.push(field(inputs[i].name, inputs[i].value));"
+			+ "    post('insert', form, function (answer) {"
+			+ "      var success = one('#report-success'), error = one('#report-error');"
+			+ "      success.innerHTML = answer.success ? answer.success_message : '';"
+			+ "      error.innerHTML = answer.success ? '' : answer.error_message;"
+			+ "      show(success, answer.success);"
+			+ "      show(error, !answer.success);"
+			+ "    });"
+			+ "  };"
+			+ "})();";
+
+	/**
+	 * Builds the customers list.
+	 *
+	 * @param root
+	 *            The path of the CRUD without the theme, like '/demo/'.
+	 * @param theme
+	 *            The theme of the page.
+	 * @param customers
+	 *            The customers to be shown, by their ids.
+	 * @param search
+	 *            The text searched, or null.
+	 * @return the page.
+	 */
+	public static String listPage(String root, String theme, Map<Long, Map<String, String>> customers,
+			String search) {
+
+		StringBuilder page;
+		String base;
+
+		base = root + theme;
+		page = new StringBuilder();
+
+		open(page, "Customers", base);
+
+		// The theme switch
+		page.append("<div class=\"version-select\">\n");
+		page.append("<select id=\"switch-version-select\" class=\"form-control\">\n");
+		page.append(option(root + THEME_V3, "Bootstrap V3 Theme", theme.equals(THEME_V3)));
+		page.append(option(root + THEME_V4, "Bootstrap V4 Theme", theme.equals(THEME_V4)));
+		page.append("</select>\n</div>\n");
+
+		// The header and the tools
+		page.append("<div class=\"gc-container\">\n");
+		page.append("<div class=\"table-label\"><div class=\"floatL l5\">Customers</div></div>\n");
+		page.append("<div class=\"header-tools\">\n");
+		page.append("<div class=\"floatL t5\"><a class=\"btn btn-default btn-outline-dark\" href=\"").append(base)
+				.append("/add\">\n<i class=\"fa fa-plus\"></i> Add Customer</a></div>\n");
+		page.append("<div class=\"floatR\"><a class=\"btn btn-default btn-outline-dark search-button\" "
+				+ "href=\"#\">\n<i class=\"fa fa-search\"></i> Search</a></div>\n");
+		page.append("</div>\n");
+
+		// The search, sent by the Enter key
+		page.append("<form class=\"search-form\" method=\"get\" action=\"").append(base).append("\">\n");
+		page.append("<div id=\"search-box\" style=\"display: none\"><input type=\"text\" name=\"search\" "
+				+ "class=\"form-control\" value=\"").append(escape(search)).append("\"/></div>\n");
+		page.append("</form>\n");
+
+		// The list
+		page.append("<table class=\"table table-bordered grocery-crud-table table-hover\">\n<thead>\n<tr>");
+		page.append("<th>Actions</th>");
+		for (int field : LIST_FIELDS) {
+			page.append("<th>").append(LABELS[field]).append("</th>");
+		}
+		page.append("</tr>\n<tr class=\"filter-row gc-search-row\">");
+		page.append("<td><a title=\"Delete\" class=\"btn btn-default delete-selected-button\" href=\"#\">"
+				+ "<i class=\"fa fa-trash\"></i></a></td>");
+		for (int i = 0; i < LIST_FIELDS.length; i++) {
+			page.append("<td></td>");
+		}
+		page.append("</tr>\n</thead>\n<tbody>\n");
+
+		for (Map.Entry<Long, Map<String, String>> customer : customers.entrySet()) {
+			page.append("<tr><td><input type=\"checkbox\" class=\"select-row\" value=\"").append(customer.getKey())
+					.append("\"/></td>");
+			for (int field : LIST_FIELDS) {
+				page.append("<td>").append(escape(listValue(customer.getValue(), CustomerStore.FIELDS[field])))
+						.append("</td>");
+			}
+			page.append("</tr>\n");
+		}
+
+		if (customers.isEmpty()) {
+			page.append("<tr><td colspan=\"").append(LIST_FIELDS.length + 1)
+					.append("\">No items to display</td></tr>\n");
+		}
+		page.append("</tbody>\n</table>\n");
+
+		// The delete modal
+		page.append("<div class=\"delete-multiple-confirmation modal fade in\" style=\"display: none\">\n");
+		page.append("<div class=\"modal-dialog\"><div class=\"modal-content\">\n");
+		page.append("<div class=\"modal-header\"><h5 class=\"modal-title\">Delete</h5></div>\n");
+		page.append("<div class=\"modal-body\">\n");
+		page.append("<p class=\"alert-delete-multiple-one\">").append(DELETE_ONE_MESSAGE).append("</p>\n");
+		page.append("<p class=\"alert-delete-multiple\">Are you sure that you want to delete those "
+				+ "<span class=\"delete-items-count\">0</span> items?</p>\n");
+		page.append("</div>\n<div class=\"modal-footer\">\n");
+		page.append("<button type=\"button\" class=\"btn btn-secondary delete-multiple-confirmation-cancel\">\n"
+				+ "Cancel\n</button>\n");
+		page.append("<button type=\"button\" class=\"btn btn-danger delete-multiple-confirmation-button\">\n"
+				+ "Delete\n</button>\n");
+		page.append("</div>\n</div></div>\n</div>\n");
+
+		page.append("</div>\n");
+		close(page, root);
+
+		return page.toString();
+	}
+
+	/**
+	 * Builds the add customer form.
+	 *
+	 * @param root
+	 *            The path of the CRUD without the theme, like '/demo/'.
+	 * @param theme
+	 *            The theme of the page.
+	 * @return the page.
+	 */
+	public static String addPage(String root, String theme) {
+
+		StringBuilder page;
+		String field;
+
+		page = new StringBuilder();
+		open(page, "Add Customer", root + theme);
+
+		page.append("<div class=\"gc-container\">\n");
+		page.append("<div class=\"table-label\"><div class=\"floatL l5\">Add Customer</div></div>\n");
+		page.append("<form id=\"crudForm\" class=\"form-horizontal\" method=\"post\" action=\"").append(root)
+				.append(theme).append("/insert\">\n");
+
+		for (int i = 0; i < CustomerStore.FIELDS.length; i++) {
+			field = CustomerStore.FIELDS[i];
+			page.append("<div class=\"form-group\" id=\"").append(field).append("_field_box\">");
+			page.append("<label for=\"field-").append(field).append("\">").append(LABELS[i]).append("</label>");
+
+			if (field.equals("salesRepEmployeeNumber")) {
+				// The select is hidden by the chosen widget
+				page.append("\n<select id=\"field-").append(field).append("\" name=\"").append(field)
+						.append("\" class=\"chosen-select\" style=\"display: none\">\n");
+				page.append("<option value=\"\"></option>\n");
+				for (String[] employee : CustomerStore.getEmployees()) {
+					page.append(option(employee[0], employee[1], false));
+				}
+				page.append("</select>\n");
+				page.append("<div class=\"chosen-container chosen-container-single\">\n");
+				page.append("<a class=\"chosen-single chosen-default\" href=\"#\"><span>Select from Employeer</span>"
+						+ "</a>\n");
+				page.append("<div class=\"chosen-drop\" style=\"display: none\">");
+				page.append("<div class=\"chosen-search\"><input type=\"text\" autocomplete=\"off\"/></div>");
+				page.append("<ul class=\"chosen-results\"></ul></div>\n");
+				page.append("</div>");
+			} else {
+				page.append("<input id=\"field-").append(field).append("\" name=\"").append(field)
+						.append("\" type=\"text\" class=\"form-control\" maxlength=\"50\" value=\"\"/>");
+			}
+
+			page.append("</div>\n");
+		}
+
+		page.append("<div id=\"report-error\" class=\"report-div error\" style=\"display: none\"></div>\n");
+		page.append("<div id=\"report-success\" class=\"report-div success\" style=\"display: none\"></div>\n");
+		page.append("<button id=\"form-button-save\" type=\"button\" class=\"btn btn-default\">Save</button>\n");
+		page.append("</form>\n</div>\n");
+
+		close(page, root);
+
+		return page.toString();
+	}
+
+	/**
+	 * @return the message shown by the add form after a customer is inserted.
+	 */
+	public static String insertMessage(String root, String theme, long id) {
+		return String.format("<p>%s <a href=\"%s%s/edit/%d\">Edit Customer</a> or <a href=\"%s%s\">Go back to list</a>"
+				+ "</p>", INSERT_MESSAGE, root, theme, id, root, theme);
+	}
+
+	/**
+	 * @return the message shown by the list after customers are deleted.
+	 */
+	public static String deleteMessage() {
+		return "<p>" + DELETE_MESSAGE + "</p>";
+	}
+
+	/**
+	 * @return the message shown by the add form when a required field is empty.
+	 */
+	public static String requiredMessage(String field) {
+		return String.format("<p>The %s field is required.</p>", LABELS[indexOf(field)]);
+	}
+
+	/**
+	 * Escapes a text for the pages, quotes included, so it can go anywhere.
+	 *
+	 * @param text
+	 *            The text, or null.
+	 * @return the escaped text.
+	 */
+	public static String escape(String text) {
+
+		StringBuilder escaped;
+
+		if (text == null)
+			return "";
+
+		escaped = new StringBuilder(text.length());
+		for (char c : text.toCharArray()) {
+			switch (c) {
+			case '&':
+				escaped.append("&amp;");
+				break;
+			case '<':
+				escaped.append("&lt;");
+				break;
+			case '>':
+				escaped.append("&gt;");
+				break;
+			case '"':
+				escaped.append("&quot;");
+				break;
+			case '\'':
+				escaped.append("&#39;");
+				break;
+			default:
+				escaped.append(c);
+			}
+		}
+
+		return escaped.toString();
+	}
+
+	/**
+	 * Starts a page.
+	 */
+	private static void open(StringBuilder page, String title, String base) {
+		page.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\"/>\n<title>").append(title)
+				.append("</title>\n</head>\n");
+		page.append("<body data-base=\"").append(base).append("\">\n<div class=\"container\">\n");
+	}
+
+	/**
+	 * Ends a page, with the script.
+	 */
+	private static void close(StringBuilder page, String root) {
+		page.append("</div>\n<script src=\"").append(root).append("assets/grocery_crud.js\"></script>\n");
+		page.append("</body>\n</html>\n");
+	}
+
+	/**
+	 * @return an option of a select.
+	 */
+	private static String option(String value, String text, boolean selected) {
+		return String.format("<option value=\"%s\"%s>%s</option>\n", escape(value),
+				selected ? " selected=\"selected\"" : "", escape(text));
+	}
+
+	/**
+	 * @return the value of a field as shown in the list.
+	 */
+	private static String listValue(Map<String, String> customer, String field) {
+		return field.equals("salesRepEmployeeNumber") ? CustomerStore.getEmployeeName(customer.get(field))
+				: customer.get(field);
+	}
+
+	/**
+	 * @return the position of a field in CustomerStore.FIELDS.
+	 */
+	private static int indexOf(String field) {
+		for (int i = 0; i < CustomerStore.FIELDS.length; i++) {
+			if (CustomerStore.FIELDS[i].equals(field))
+				return i;
+		}
+		throw new IllegalArgumentException("Unknown field " + field);
+	}
+
+}
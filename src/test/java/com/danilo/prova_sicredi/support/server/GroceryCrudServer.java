@@ -0,0 +1,439 @@
+package com.danilo.prova_sicredi.support.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.json.Json;
+
+import com.danilo.prova_sicredi.support.Settings;
+import com.danilo.prova_sicredi.support.data.CustomerGenerator;
+import com.danilo.prova_sicredi.support.report.LatencyHistogram;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class is a stand-in for the Grocery CRUD demo, served from inside the
+ * test run. It has the same customers list, add form, search, delete modal and
+ * messages as the demo, with the customers kept in memory, so the tests can run
+ * offline and the times don't depend on the internet or on the load of the
+ * demo.
+ *
+ * Every answer can be delayed by 'local_server_latency' milliseconds, plus a
+ * random part of up to 'local_server_latency_jitter' milliseconds, to stand for
+ * a known server cost. The random part comes from the seed of the run, so the
+ * delays of a run can be repeated.
+ *
+ * The server is started by the Environment when 'environment' is 'local', and
+ * stopped at the end of the suite.
+ *
+ * The answers are also given without HTTP through answer(), that is how the
+ * StubDriver loads the pages.
+ *
+ * @author danilo
+ *
+ */
+public abstract class GroceryCrudServer {
+
+	// The path of the CRUD, the themes come after it
+	public static final String ROOT = "/demo/";
+
+	// Number of customers shown in the list, as in the demo
+	private static final int PAGE_SIZE = 10;
+
+	// The running server, null when it is stopped
+	private static HttpServer server;
+
+	// The threads of the server
+	private static ExecutorService executor;
+
+	// The customers
+	private static CustomerStore store;
+
+	// Settings for the latency
+	private static int latency;
+	private static int jitter;
+	private static Random random;
+
+	// Statistics
+	private static Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+	private static LatencyHistogram handlingTimes = new LatencyHistogram();
+	private static AtomicLong injectedMillis = new AtomicLong();
+
+	/**
+	 * Starts the server, in case it is not running yet.
+	 *
+	 * @return the URL of the customers CRUD, in the first theme.
+	 */
+	public static synchronized String start() {
+
+		int threads;
+
+		if (server != null)
+			return getUrl();
+
+		// Load the settings
+		latency = Integer.parseInt(Settings.getProperty("local_server_latency"));
+		jitter = Integer.parseInt(Settings.getProperty("local_server_latency_jitter"));
+		random = new Random(CustomerGenerator.getSeed());
+		threads = Integer.parseInt(Settings.getProperty("local_server_threads"));
+
+		store = new CustomerStore();
+
+		// Start it, with daemon threads so it never holds the JVM
+		executor = Executors.newFixedThreadPool(threads, task -> {
+			Thread thread = new Thread(task, "grocery-crud-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try {
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+					Integer.parseInt(Settings.getProperty("local_server_port"))), 50);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not start the local Grocery CRUD server.", e);
+		}
+
+		server.createContext(ROOT, GroceryCrudServer::handle);
+		server.setExecutor(executor);
+		server.start();
+
+		System.out.println("Local Grocery CRUD server started at " + getUrl());
+
+		return getUrl();
+	}
+
+	/**
+	 * Stops the server, in case it is running.
+	 */
+	public static synchronized void stop() {
+
+		if (server == null)
+			return;
+
+		server.stop(0);
+		executor.shutdownNow();
+		server = null;
+	}
+
+	/**
+	 * @return whether the server is running.
+	 */
+	public static synchronized boolean isRunning() {
+		return server != null;
+	}
+
+	/**
+	 * @return the URL of the customers CRUD, in the first theme.
+	 */
+	public static synchronized String getUrl() {
+		return String.format("http://%s:%d%s%s", server.getAddress().getHostString(), server.getAddress().getPort(),
+				ROOT, GroceryCrudPages.THEME_V3);
+	}
+
+	/**
+	 * @return the customers of the server, or null in case it never started.
+	 */
+	public static CustomerStore getStore() {
+		return store;
+	}
+
+	/**
+	 * @return a line with the server statistics.
+	 */
+	public static String getStatistics() {
+
+		double[] percentiles;
+
+		percentiles = handlingTimes.getPercentiles(50, 95);
+
+		return String.format("Requests: %s, handling p50: %.2f ms, p95: %.2f ms, injected latency: %.1f s, "
+				+ "customers: %d", new TreeMap<>(requests), percentiles[0], percentiles[1],
+				injectedMillis.get() / 1000.0, store == null ? 0 : store.size());
+	}
+
+	/**
+	 * Answers a request of the HTTP server.
+	 */
+	private static void handle(HttpExchange exchange) {
+
+		Answer answer;
+
+		try {
+			answer = answer(exchange.getRequestURI().getPath(), exchange.getRequestURI().getRawQuery(),
+					form(exchange));
+
+			if (answer.cacheable)
+				exchange.getResponseHeaders().set("Cache-Control", "public, max-age=3600");
+			send(exchange, answer.status, answer.type, answer.body);
+
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Local Grocery CRUD server failed: " + e);
+			try {
+				send(exchange, 500, "text/plain", String.valueOf(e));
+			} catch (IOException | RuntimeException ignored) {
+				// The client is gone
+			}
+
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Answers a request of the CRUD. Used by the HTTP server and by the StubDriver,
+	 * that calls it straight from the test thread, so both share the same
+	 * customers, latency and statistics. The server has to be started first.
+	 *
+	 * @param path
+	 *            The path, the theme followed by the action, like
+	 *            '/demo/bootstrap_theme_v4/insert'.
+	 * @param rawQuery
+	 *            The URL-encoded query string, or null.
+	 * @param form
+	 *            The fields of the form sent in the body, empty for a GET.
+	 * @return the answer.
+	 */
+	public static Answer answer(String path, String rawQuery, Map<String, List<String>> form) {
+
+		String[] parts;
+		String theme, action, search;
+		long start;
+
+		start = System.nanoTime();
+
+		try {
+			if (!path.startsWith(ROOT)) {
+				count("not found");
+				return new Answer(404, "text/plain", "Not found", false);
+			}
+
+			parts = path.substring(ROOT.length()).split("/");
+			theme = parts[0];
+			action = parts.length > 1 ? parts[1] : "list";
+
+			if (theme.equals("assets")) {
+				count("script");
+				return new Answer(200, "application/javascript", GroceryCrudPages.SCRIPT, true);
+			}
+
+			if (!theme.equals(GroceryCrudPages.THEME_V3) && !theme.equals(GroceryCrudPages.THEME_V4)) {
+				count("not found");
+				return new Answer(404, "text/plain", "Not found", false);
+			}
+
+			count(action);
+			delay();
+
+			switch (action) {
+			case "list":
+				search = first(parse(rawQuery), "search");
+				return new Answer(200, "text/html",
+						GroceryCrudPages.listPage(ROOT, theme, store.search(search, PAGE_SIZE), search), false);
+			case "add":
+				return new Answer(200, "text/html", GroceryCrudPages.addPage(ROOT, theme), false);
+			case "insert":
+				return new Answer(200, "application/json", insert(theme, form), false);
+			case "delete_multiple":
+				return new Answer(200, "application/json", deleteMultiple(form), false);
+			default:
+				return new Answer(404, "text/plain", "Not found", false);
+			}
+
+		} finally {
+			handlingTimes.add(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Inserts a customer, answering as the insert action of the CRUD.
+	 */
+	private static String insert(String theme, Map<String, List<String>> form) {
+
+		Map<String, String> customer;
+		Map<String, Object> answer;
+		String missing;
+		long id;
+
+		customer = new LinkedHashMap<>();
+		form.forEach((field, values) -> customer.put(field, values.get(0)));
+
+		answer = new LinkedHashMap<>();
+
+		missing = CustomerStore.findMissingField(customer);
+		if (missing != null) {
+			answer.put("success", false);
+			answer.put("error_message", GroceryCrudPages.requiredMessage(missing));
+			answer.put("error_fields", new String[] { missing });
+			return new Json().toJson(answer);
+		}
+
+		id = store.insert(customer);
+		answer.put("success", true);
+		answer.put("insert_primary_key", String.valueOf(id));
+		answer.put("success_message", GroceryCrudPages.insertMessage(ROOT, theme, id));
+		answer.put("success_list_url", ROOT + theme);
+
+		return new Json().toJson(answer);
+	}
+
+	/**
+	 * Deletes the customers selected in the list.
+	 */
+	private static String deleteMultiple(Map<String, List<String>> form) {
+
+		List<Long> ids;
+		Map<String, Object> answer;
+
+		ids = new ArrayList<>();
+		for (String id : form.getOrDefault("ids[]", new ArrayList<>())) {
+			ids.add(Long.parseLong(id));
+		}
+
+		answer = new LinkedHashMap<>();
+		answer.put("success", store.delete(ids) > 0);
+		answer.put("success_message", GroceryCrudPages.deleteMessage());
+
+		return new Json().toJson(answer);
+	}
+
+	/**
+	 * Waits for the latency set, to stand for the cost of a real server.
+	 */
+	private static void delay() {
+
+		long millis;
+
+		synchronized (random) {
+			millis = latency + (jitter > 0 ? random.nextInt(jitter + 1) : 0);
+		}
+
+		if (millis <= 0)
+			return;
+
+		injectedMillis.addAndGet(millis);
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Counts a request of an action.
+	 */
+	private static void count(String action) {
+		requests.computeIfAbsent(action, key -> new AtomicLong()).incrementAndGet();
+	}
+
+	/**
+	 * @return the first value of a field, or null.
+	 */
+	private static String first(Map<String, List<String>> fields, String name) {
+		return fields.containsKey(name) ? fields.get(name).get(0) : null;
+	}
+
+	/**
+	 * @return the fields of a form sent in the body.
+	 */
+	private static Map<String, List<String>> form(HttpExchange exchange) throws IOException {
+
+		ByteArrayOutputStream body;
+		byte[] buffer;
+		int read;
+
+		body = new ByteArrayOutputStream();
+		buffer = new byte[8192];
+		try (InputStream input = exchange.getRequestBody()) {
+			while ((read = input.read(buffer)) != -1) {
+				body.write(buffer, 0, read);
+			}
+		}
+
+		return parse(new String(body.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Parses URL-encoded fields, like a query string or a form.
+	 *
+	 * @param encoded
+	 *            The fields, or null.
+	 * @return the values of each field.
+	 */
+	public static Map<String, List<String>> parse(String encoded) {
+
+		Map<String, List<String>> fields;
+		String[] pair;
+
+		fields = new LinkedHashMap<>();
+		if (encoded == null || encoded.isEmpty())
+			return fields;
+
+		try {
+			for (String field : encoded.split("&")) {
+				pair = field.split("=", 2);
+				fields.computeIfAbsent(URLDecoder.decode(pair[0], "UTF-8"), key -> new ArrayList<>())
+						.add(pair.length > 1 ? URLDecoder.decode(pair[1], "UTF-8") : "");
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return fields;
+	}
+
+	/**
+	 * Sends an answer.
+	 */
+	private static void send(HttpExchange exchange, int status, String type, String body) throws IOException {
+
+		byte[] bytes;
+
+		bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+		if (!exchange.getResponseHeaders().containsKey("Cache-Control"))
+			exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+		exchange.sendResponseHeaders(status, bytes.length);
+
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(bytes);
+		}
+	}
+
+	/**
+	 * This class is an answer of the CRUD: the status, the content type and the
+	 * body, and whether it can be cached by the browser.
+	 */
+	public static class Answer {
+
+		public final int status;
+		public final String type;
+		public final String body;
+		public final boolean cacheable;
+
+		private Answer(int status, String type, String body, boolean cacheable) {
+			this.status = status;
+			this.type = type;
+			this.body = body;
+			this.cacheable = cacheable;
+		}
+	}
+
+}
@@ -0,0 +1,827 @@
+package com.danilo.prova_sicredi.support.stub;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import org.openqa.selenium.Alert;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.InvalidSelectorException;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoAlertPresentException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.NoSuchFrameException;
+import org.openqa.selenium.NoSuchSessionException;
+import org.openqa.selenium.NoSuchWindowException;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.FindsByLinkText;
+import org.openqa.selenium.internal.FindsByXPath;
+import org.openqa.selenium.internal.WrapsElement;
+import org.openqa.selenium.logging.Logs;
+import org.w3c.dom.Element;
+
+import com.danilo.prova_sicredi.support.ElementCache;
+import com.danilo.prova_sicredi.support.PageObject;
+import com.danilo.prova_sicredi.support.Settings;
+import com.danilo.prova_sicredi.support.data.CustomerGenerator;
+import com.danilo.prova_sicredi.support.factories.DriverPool;
+import com.danilo.prova_sicredi.support.report.ReportHelper;
+import com.danilo.prova_sicredi.support.server.GroceryCrudServer;
+import com.danilo.prova_sicredi.support.waits.EventWait;
+
+/**
+ * This class is a browser that lives in memory: it loads the pages of the local
+ * Grocery CRUD server straight from GroceryCrudServer.answer(), keeps them as a
+ * DOM and runs the behavior of their script in Java. It is picked with
+ * 'browser=stub' and 'environment=local', and the tests and page objects run on
+ * it unchanged, at a fraction of the cost of a real browser, so the report,
+ * contexts, screenshots and listeners can be loaded with thousands of tests.
+ *
+ * The elements are found by XPath (By.id, By.name, By.className and By.tagName
+ * fall back to it), and the scripts run are the ones of the framework, known
+ * by their text: the form filling, the element cache, the event waits, the
+ * highlight of the screenshots and the storage clean-up of the pool.
+ *
+ * Every command can be delayed by 'stub_command_latency' milliseconds, plus a
+ * random part of up to 'stub_command_latency_jitter' milliseconds, to stand
+ * for the round trip to a real driver. The random part comes from the seed of
+ * the run.
+ *
+ * @author danilo
+ *
+ */
+public class StubDriver implements WebDriver, JavascriptExecutor, TakesScreenshot, FindsByXPath, FindsByLinkText {
+
+	// The window of the sessions when 'chrome_window_size' is not set
+	private static final Dimension MAXIMIZED = new Dimension(1366, 768);
+
+	// Holds the initialization status
+	private static boolean initialized = false;
+
+	// Settings for the latency
+	private static int latency;
+	private static int jitter;
+	private static Random random;
+
+	// The screenshots, by the size of the window
+	private static Map<Dimension, byte[]> screenshots = new ConcurrentHashMap<>();
+
+	// Statistics
+	private static AtomicLong sessions = new AtomicLong();
+	private static AtomicLong commands = new AtomicLong();
+	private static AtomicLong pages = new AtomicLong();
+	private static AtomicLong injectedMillis = new AtomicLong();
+
+	private final String windowHandle;
+	private final Map<String, Cookie> cookies = new LinkedHashMap<>();
+	private final List<String> history = new ArrayList<>();
+	private int current = -1;
+	private StubPage page;
+	private Dimension windowSize;
+	private boolean closed = false;
+
+	/**
+	 * Opens a new session, in a blank page.
+	 */
+	public StubDriver() {
+
+		String[] size;
+
+		initialize();
+
+		windowHandle = "stub-" + sessions.incrementAndGet();
+		page = StubPage.blank();
+
+		// The same window as Chrome would have
+		size = Settings.getProperty("chrome_window_size").trim().split("x");
+		windowSize = size.length < 2 ? MAXIMIZED
+				: new Dimension(Integer.parseInt(size[0].trim()), Integer.parseInt(size[1].trim()));
+	}
+
+	/**
+	 * Loads the settings, once.
+	 */
+	private static synchronized void initialize() {
+
+		if (initialized)
+			return;
+
+		latency = Integer.parseInt(Settings.getProperty("stub_command_latency"));
+		jitter = Integer.parseInt(Settings.getProperty("stub_command_latency_jitter"));
+		random = new Random(CustomerGenerator.getSeed());
+
+		initialized = true;
+	}
+
+	/**
+	 * @return whether the tests run on the stub browser.
+	 */
+	public static boolean isEnabled() {
+		return Settings.getProperty("browser").trim().equalsIgnoreCase("stub");
+	}
+
+	/**
+	 * @return the sessions, commands and pages of the stub browser, for the
+	 *         report.
+	 */
+	public static String getStatistics() {
+		return String.format("Sessions: %d, commands: %d, pages loaded: %d, injected latency: %.1f s",
+				sessions.get(), commands.get(), pages.get(), injectedMillis.get() / 1000.0);
+	}
+
+	/**
+	 * Draws a page-like image, with a header and a few rows, and encodes it as PNG,
+	 * so it compresses about like a real screenshot.
+	 *
+	 * @param width
+	 *            Width of the image.
+	 * @param height
+	 *            Height of the image.
+	 * @return the PNG bytes.
+	 */
+	public static byte[] createScreenshot(int width, int height) {
+
+		BufferedImage image;
+		Graphics2D graphics;
+		ByteArrayOutputStream png;
+
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		graphics = image.createGraphics();
+
+		// White page with a dark header
+		graphics.setColor(Color.WHITE);
+		graphics.fillRect(0, 0, width, height);
+		graphics.setColor(new Color(0x33, 0x3d, 0x47));
+		graphics.fillRect(0, 0, width, 60);
+
+		// A table with some text in each row
+		for (int row = 0; row * 32 + 100 < height; row++) {
+			graphics.setColor(row % 2 == 0 ? new Color(0xf4, 0xf4, 0xf4) : Color.WHITE);
+			graphics.fillRect(20, row * 32 + 100, width - 40, 32);
+			graphics.setColor(Color.DARK_GRAY);
+			graphics.drawString("Customer " + row + " - Rua Nova, " + row * 7 + " - Porto Alegre", 30,
+					row * 32 + 120);
+		}
+		graphics.dispose();
+
+		png = new ByteArrayOutputStream();
+		try {
+			ImageIO.write(image, "png", png);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return png.toByteArray();
+	}
+
+	@Override
+	public void get(String url) {
+		command();
+		open(url);
+	}
+
+	@Override
+	public String getCurrentUrl() {
+		command();
+		return page.url;
+	}
+
+	@Override
+	public String getTitle() {
+		command();
+		return page.getTitle();
+	}
+
+	@Override
+	public List<WebElement> findElements(By by) {
+		return by.findElements(this);
+	}
+
+	@Override
+	public WebElement findElement(By by) {
+		return by.findElement(this);
+	}
+
+	@Override
+	public WebElement findElementByXPath(String using) {
+
+		List<WebElement> found;
+
+		found = findElementsByXPath(using);
+		if (found.isEmpty())
+			throw noSuchElement(using);
+
+		return found.get(0);
+	}
+
+	@Override
+	public List<WebElement> findElementsByXPath(String using) {
+
+		List<WebElement> found;
+
+		command();
+
+		found = new ArrayList<>();
+		for (Element element : page.find(using, page.document)) {
+			found.add(new StubElement(this, page, element, "xpath: " + using));
+		}
+
+		return found;
+	}
+
+	@Override
+	public WebElement findElementByLinkText(String using) {
+		return findElementByXPath(linkText(using));
+	}
+
+	@Override
+	public List<WebElement> findElementsByLinkText(String using) {
+		return findElementsByXPath(linkText(using));
+	}
+
+	@Override
+	public WebElement findElementByPartialLinkText(String using) {
+		return findElementByXPath(partialLinkText(using));
+	}
+
+	@Override
+	public List<WebElement> findElementsByPartialLinkText(String using) {
+		return findElementsByXPath(partialLinkText(using));
+	}
+
+	@Override
+	public String getPageSource() {
+		command();
+		return page.getSource();
+	}
+
+	@Override
+	public void close() {
+		quit();
+	}
+
+	@Override
+	public void quit() {
+		closed = true;
+		page = null;
+		history.clear();
+	}
+
+	@Override
+	public Set<String> getWindowHandles() {
+		command();
+		return new LinkedHashSet<>(Collections.singletonList(windowHandle));
+	}
+
+	@Override
+	public String getWindowHandle() {
+		command();
+		return windowHandle;
+	}
+
+	@Override
+	public TargetLocator switchTo() {
+		return new StubTargetLocator();
+	}
+
+	@Override
+	public Navigation navigate() {
+		return new StubNavigation();
+	}
+
+	@Override
+	public Options manage() {
+		return new StubOptions();
+	}
+
+	@Override
+	public Object executeScript(String script, Object... args) {
+
+		command();
+
+		if (script.equals(PageObject.FILL_SCRIPT))
+			return fill(args);
+		if (script.equals(ElementCache.RESOLVE_SCRIPT))
+			return resolve(args);
+		if (script.equals(ReportHelper.SHOW_ELEMENT_SCRIPT))
+			return StubPage.isDisplayed(unwrap(args[0])) ? Arrays.asList(8L, 8L, 400L, 24L)
+					: Arrays.asList(0L, 0L, 0L, 0L);
+		if (script.equals(DriverPool.CLEAR_STORAGE_SCRIPT))
+			return null;
+
+		throw new WebDriverException("The stub browser only runs the scripts of the framework, not: " + script);
+	}
+
+	@Override
+	public Object executeAsyncScript(String script, Object... args) {
+
+		command();
+
+		if (script.equals(EventWait.SCRIPT))
+			return await(args);
+
+		throw new WebDriverException("The stub browser only runs the scripts of the framework, not: " + script);
+	}
+
+	@Override
+	public <X> X getScreenshotAs(OutputType<X> target) {
+		command();
+		return target.convertFromPngBytes(
+				screenshots.computeIfAbsent(windowSize, size -> createScreenshot(size.width, size.height)));
+	}
+
+	@Override
+	public String toString() {
+		return "StubDriver: " + windowHandle;
+	}
+
+	/**
+	 * Runs a command: the session must be open, and the latency set is waited.
+	 */
+	void command() {
+
+		long millis;
+
+		if (closed)
+			throw new NoSuchSessionException("Session ID is null. Using WebDriver after calling quit()?");
+
+		commands.incrementAndGet();
+
+		if (latency <= 0 && jitter <= 0)
+			return;
+
+		synchronized (random) {
+			millis = latency + (jitter > 0 ? random.nextInt(jitter + 1) : 0);
+		}
+
+		if (millis <= 0)
+			return;
+
+		injectedMillis.addAndGet(millis);
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the page shown.
+	 */
+	StubPage getPage() {
+		return page;
+	}
+
+	/**
+	 * Goes to an address, relative to the page shown, and keeps it in the
+	 * history.
+	 */
+	void open(String address) {
+
+		String url;
+
+		url = absolute(address);
+		load(url);
+
+		while (history.size() > current + 1) {
+			history.remove(history.size() - 1);
+		}
+		history.add(url);
+		current++;
+	}
+
+	/**
+	 * Loads a page of the local server, or the blank page.
+	 */
+	private void load(String address) {
+
+		URL url;
+		GroceryCrudServer.Answer answer;
+
+		if (address.equals("about:blank")) {
+			page = StubPage.blank();
+			pages.incrementAndGet();
+			return;
+		}
+
+		try {
+			url = new URL(address);
+		} catch (MalformedURLException e) {
+			throw new WebDriverException("The stub browser can't go to " + address, e);
+		}
+
+		if (!GroceryCrudServer.isRunning() || !GroceryCrudServer.getUrl().startsWith(
+				url.getProtocol() + "://" + url.getAuthority() + "/"))
+			throw new WebDriverException(String.format(
+					"The stub browser only loads the pages of the local server, set 'environment' to 'local': %s",
+					address));
+
+		answer = GroceryCrudServer.answer(url.getPath(), url.getQuery(), Collections.emptyMap());
+		page = answer.type.startsWith("text/html") ? StubPage.parse(address, answer.body)
+				: StubPage.text(address, answer.body);
+		pages.incrementAndGet();
+	}
+
+	/**
+	 * @return an address relative to the page shown, as an absolute one.
+	 */
+	private String absolute(String address) {
+
+		if (address.equals("about:blank") || page == null || page.url.equals("about:blank"))
+			return address;
+
+		try {
+			return new URL(new URL(page.url), address).toString();
+		} catch (MalformedURLException e) {
+			throw new WebDriverException("The stub browser can't go to " + address, e);
+		}
+	}
+
+	/**
+	 * Runs PageObject.FILL_SCRIPT: sets the values of the elements found.
+	 *
+	 * @return the selectors not found.
+	 */
+	private Object fill(Object[] args) {
+
+		List<?> kinds, selectors, values;
+		List<Object> missing;
+		Element element;
+
+		kinds = (List<?>) args[0];
+		selectors = (List<?>) args[1];
+		values = (List<?>) args[2];
+		missing = new ArrayList<>();
+
+		for (int i = 0; i < selectors.size(); i++) {
+			element = page.find((String) kinds.get(i), (String) selectors.get(i));
+			if (element == null)
+				missing.add(selectors.get(i));
+			else
+				StubPage.setValue(element, (String) values.get(i));
+		}
+
+		return missing;
+	}
+
+	/**
+	 * Runs ElementCache.RESOLVE_SCRIPT: finds the elements of a list of locators.
+	 * As in a real browser, the elements returned by a script don't know the
+	 * locator that found them.
+	 *
+	 * @return the elements, null for the ones not found, and the time of each
+	 *         search in milliseconds.
+	 */
+	private Object resolve(Object[] args) {
+
+		List<?> kinds, selectors;
+		List<Object> elements, times;
+		Element element;
+		long start;
+
+		kinds = (List<?>) args[0];
+		selectors = (List<?>) args[1];
+		elements = new ArrayList<>();
+		times = new ArrayList<>();
+
+		for (int i = 0; i < selectors.size(); i++) {
+			start = System.nanoTime();
+			element = page.find((String) kinds.get(i), (String) selectors.get(i));
+			elements.add(element == null ? null : new StubElement(this, page, element, "unknown locator"));
+			times.add((System.nanoTime() - start) / 1e6);
+		}
+
+		return Arrays.asList(elements, times);
+	}
+
+	/**
+	 * Runs EventWait.SCRIPT: checks the condition once, and waits a slice of time
+	 * in case it is not met, as the script would before answering.
+	 *
+	 * @return whether the condition is met.
+	 */
+	private Object await(Object[] args) {
+
+		Element element;
+		boolean met;
+
+		element = page.find((String) args[0], (String) args[1]);
+
+		switch ((String) args[2]) {
+		case "present":
+			met = element != null;
+			break;
+		case "visible":
+		case "clickable":
+			met = element != null && StubPage.isDisplayed(element);
+			break;
+		case "invisible":
+			met = element == null || !StubPage.isDisplayed(element);
+			break;
+		default:
+			throw new InvalidSelectorException("The stub browser doesn't wait for " + args[2]);
+		}
+
+		if (!met) {
+			try {
+				Thread.sleep(((Number) args[3]).longValue());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		return met;
+	}
+
+	/**
+	 * @return an element passed to a script, as found by this driver.
+	 */
+	static Element unwrap(Object argument) {
+
+		Object element;
+
+		for (element = argument; element instanceof WrapsElement; element = ((WrapsElement) element)
+				.getWrappedElement())
+			;
+
+		if (!(element instanceof StubElement))
+			throw new WebDriverException("The element was not found by the stub browser: " + argument);
+
+		return ((StubElement) element).element;
+	}
+
+	/**
+	 * @return the error of an element not found, as chromedriver gives it.
+	 */
+	static NoSuchElementException noSuchElement(String xpath) {
+		return new NoSuchElementException(String.format(
+				"no such element: Unable to locate element: {\"method\":\"xpath\",\"selector\":\"%s\"}", xpath));
+	}
+
+	/**
+	 * @return the XPath of the links with a text.
+	 */
+	static String linkText(String text) {
+		return String.format("//a[normalize-space(.) = %s]", literal(text));
+	}
+
+	/**
+	 * @return the XPath of the links with a part of a text.
+	 */
+	static String partialLinkText(String text) {
+		return String.format("//a[contains(normalize-space(.), %s)]", literal(text));
+	}
+
+	/**
+	 * @return a text as an XPath literal.
+	 */
+	private static String literal(String text) {
+		return text.contains("'") ? "\"" + text + "\"" : "'" + text + "'";
+	}
+
+	/**
+	 * Moves between the pages of the history.
+	 */
+	private class StubNavigation implements Navigation {
+
+		@Override
+		public void back() {
+			command();
+			if (current > 0)
+				load(history.get(--current));
+		}
+
+		@Override
+		public void forward() {
+			command();
+			if (current < history.size() - 1)
+				load(history.get(++current));
+		}
+
+		@Override
+		public void to(String url) {
+			get(url);
+		}
+
+		@Override
+		public void to(URL url) {
+			get(url.toString());
+		}
+
+		@Override
+		public void refresh() {
+			command();
+			if (current >= 0)
+				load(history.get(current));
+		}
+	}
+
+	/**
+	 * There is a single window, without frames nor alerts.
+	 */
+	private class StubTargetLocator implements TargetLocator {
+
+		@Override
+		public WebDriver frame(int index) {
+			throw new NoSuchFrameException("no such frame: " + index);
+		}
+
+		@Override
+		public WebDriver frame(String nameOrId) {
+			throw new NoSuchFrameException("no such frame: " + nameOrId);
+		}
+
+		@Override
+		public WebDriver frame(WebElement frameElement) {
+			throw new NoSuchFrameException("no such frame: " + frameElement);
+		}
+
+		@Override
+		public WebDriver parentFrame() {
+			return StubDriver.this;
+		}
+
+		@Override
+		public WebDriver window(String nameOrHandle) {
+			command();
+			if (!windowHandle.equals(nameOrHandle))
+				throw new NoSuchWindowException("no such window: " + nameOrHandle);
+			return StubDriver.this;
+		}
+
+		@Override
+		public WebDriver defaultContent() {
+			return StubDriver.this;
+		}
+
+		@Override
+		public WebElement activeElement() {
+
+			Element element;
+
+			command();
+
+			element = page.focused != null && page.isAttached(page.focused) ? page.focused
+					: page.find("//body", page.document).get(0);
+
+			return new StubElement(StubDriver.this, page, element, "active element");
+		}
+
+		@Override
+		public Alert alert() {
+			throw new NoAlertPresentException();
+		}
+	}
+
+	/**
+	 * The cookies, timeouts and window of the session.
+	 */
+	private class StubOptions implements Options {
+
+		@Override
+		public void addCookie(Cookie cookie) {
+			command();
+			cookies.put(cookie.getName(), cookie);
+		}
+
+		@Override
+		public void deleteCookieNamed(String name) {
+			command();
+			cookies.remove(name);
+		}
+
+		@Override
+		public void deleteCookie(Cookie cookie) {
+			deleteCookieNamed(cookie.getName());
+		}
+
+		@Override
+		public void deleteAllCookies() {
+			command();
+			cookies.clear();
+		}
+
+		@Override
+		public Set<Cookie> getCookies() {
+			command();
+			return new LinkedHashSet<>(cookies.values());
+		}
+
+		@Override
+		public Cookie getCookieNamed(String name) {
+			command();
+			return cookies.get(name);
+		}
+
+		@Override
+		public Timeouts timeouts() {
+			return new StubTimeouts();
+		}
+
+		@Override
+		public ImeHandler ime() {
+			throw new UnsupportedOperationException("The stub browser has no input methods.");
+		}
+
+		@Override
+		public Window window() {
+			return new StubWindow();
+		}
+
+		@Override
+		public Logs logs() {
+			throw new UnsupportedOperationException("The stub browser has no logs.");
+		}
+	}
+
+	/**
+	 * The timeouts are accepted, the stub answers at once anyway.
+	 */
+	private class StubTimeouts implements Timeouts {
+
+		@Override
+		public Timeouts implicitlyWait(long time, TimeUnit unit) {
+			command();
+			return this;
+		}
+
+		@Override
+		public Timeouts setScriptTimeout(long time, TimeUnit unit) {
+			command();
+			return this;
+		}
+
+		@Override
+		public Timeouts pageLoadTimeout(long time, TimeUnit unit) {
+			command();
+			return this;
+		}
+	}
+
+	/**
+	 * The window only has a size, used for the screenshots.
+	 */
+	private class StubWindow implements Window {
+
+		@Override
+		public void setSize(Dimension targetSize) {
+			command();
+			windowSize = targetSize;
+		}
+
+		@Override
+		public void setPosition(Point targetPosition) {
+			command();
+		}
+
+		@Override
+		public Dimension getSize() {
+			command();
+			return windowSize;
+		}
+
+		@Override
+		public Point getPosition() {
+			command();
+			return new Point(0, 0);
+		}
+
+		@Override
+		public void maximize() {
+			command();
+			windowSize = MAXIMIZED;
+		}
+
+		@Override
+		public void fullscreen() {
+			maximize();
+		}
+	}
+
+}
@@ -0,0 +1,282 @@
+package com.danilo.prova_sicredi.support.stub;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.ElementNotInteractableException;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.FindsByLinkText;
+import org.openqa.selenium.internal.FindsByXPath;
+import org.w3c.dom.Element;
+
+/**
+ * This class is an element of a page of the StubDriver. Like the elements of a
+ * real browser it goes stale when the page changes or when it is removed, and
+ * it can't be clicked nor typed in when it is hidden.
+ *
+ * @author danilo
+ *
+ */
+class StubElement implements WebElement, FindsByXPath, FindsByLinkText {
+
+	// Where the visible elements are, there is no layout
+	private static final Rectangle SHOWN = new Rectangle(8, 8, 24, 400);
+	private static final Rectangle HIDDEN = new Rectangle(0, 0, 0, 0);
+
+	private final StubDriver driver;
+	private final StubPage page;
+	private final String locator;
+
+	// The node of the DOM
+	final Element element;
+
+	/**
+	 * Creates an element.
+	 *
+	 * @param driver
+	 *            The driver.
+	 * @param page
+	 *            The page the element was found in.
+	 * @param element
+	 *            The node.
+	 * @param locator
+	 *            How the element was found, for the messages.
+	 */
+	StubElement(StubDriver driver, StubPage page, Element element, String locator) {
+		this.driver = driver;
+		this.page = page;
+		this.element = element;
+		this.locator = locator;
+	}
+
+	@Override
+	public void click() {
+
+		String url;
+
+		check();
+		interactable();
+
+		url = page.click(element);
+		if (url != null)
+			driver.open(url);
+	}
+
+	@Override
+	public void submit() {
+
+		Element form;
+
+		check();
+
+		form = page.form(element);
+		if (form == null)
+			throw new WebDriverException("The element is not in a form: " + locator);
+
+		driver.open(page.submit(form));
+	}
+
+	@Override
+	public void sendKeys(CharSequence... keysToSend) {
+
+		String url;
+
+		check();
+		interactable();
+
+		url = page.type(element, keysToSend);
+		if (url != null)
+			driver.open(url);
+	}
+
+	@Override
+	public void clear() {
+		check();
+		interactable();
+		StubPage.setValue(element, "");
+	}
+
+	@Override
+	public String getTagName() {
+		check();
+		return element.getTagName();
+	}
+
+	@Override
+	public String getAttribute(String name) {
+
+		check();
+
+		switch (name) {
+		case "value":
+			return StubPage.getValue(element);
+		case "checked":
+		case "selected":
+			return element.hasAttribute(name) ? "true" : null;
+		default:
+			return element.hasAttribute(name) ? element.getAttribute(name) : null;
+		}
+	}
+
+	@Override
+	public boolean isSelected() {
+		check();
+		return element.hasAttribute("checked") || element.hasAttribute("selected");
+	}
+
+	@Override
+	public boolean isEnabled() {
+		check();
+		return !element.hasAttribute("disabled");
+	}
+
+	@Override
+	public String getText() {
+		check();
+		return StubPage.getText(element);
+	}
+
+	@Override
+	public List<WebElement> findElements(By by) {
+		return by.findElements(this);
+	}
+
+	@Override
+	public WebElement findElement(By by) {
+		return by.findElement(this);
+	}
+
+	@Override
+	public WebElement findElementByXPath(String using) {
+
+		List<WebElement> found;
+
+		found = findElementsByXPath(using);
+		if (found.isEmpty())
+			throw StubDriver.noSuchElement(using);
+
+		return found.get(0);
+	}
+
+	@Override
+	public List<WebElement> findElementsByXPath(String using) {
+
+		List<WebElement> found;
+
+		check();
+
+		found = new ArrayList<>();
+		for (Element child : page.find(using, element)) {
+			found.add(new StubElement(driver, page, child, "xpath: " + using));
+		}
+
+		return found;
+	}
+
+	@Override
+	public WebElement findElementByLinkText(String using) {
+		return findElementByXPath(StubDriver.linkText(using));
+	}
+
+	@Override
+	public List<WebElement> findElementsByLinkText(String using) {
+		return findElementsByXPath(StubDriver.linkText(using));
+	}
+
+	@Override
+	public WebElement findElementByPartialLinkText(String using) {
+		return findElementByXPath(StubDriver.partialLinkText(using));
+	}
+
+	@Override
+	public List<WebElement> findElementsByPartialLinkText(String using) {
+		return findElementsByXPath(StubDriver.partialLinkText(using));
+	}
+
+	@Override
+	public boolean isDisplayed() {
+		check();
+		return StubPage.isDisplayed(element);
+	}
+
+	@Override
+	public Point getLocation() {
+		return getRect().getPoint();
+	}
+
+	@Override
+	public Dimension getSize() {
+		return getRect().getDimension();
+	}
+
+	@Override
+	public Rectangle getRect() {
+		check();
+		return StubPage.isDisplayed(element) ? SHOWN : HIDDEN;
+	}
+
+	@Override
+	public String getCssValue(String propertyName) {
+
+		check();
+
+		switch (propertyName) {
+		case "display":
+			return StubPage.isDisplayed(element) ? "block" : "none";
+		case "visibility":
+			return StubPage.isDisplayed(element) ? "visible" : "hidden";
+		default:
+			return "";
+		}
+	}
+
+	@Override
+	public <X> X getScreenshotAs(OutputType<X> target) {
+		check();
+		return driver.getScreenshotAs(target);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof StubElement && ((StubElement) other).element == element;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(element);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("[[StubDriver] -> %s]", locator);
+	}
+
+	/**
+	 * Runs a command of the element: the element must still be in the page the
+	 * browser shows.
+	 */
+	private void check() {
+
+		driver.command();
+
+		if (driver.getPage() != page || !page.isAttached(element))
+			throw new StaleElementReferenceException(
+					"stale element reference: element is not attached to the page document");
+	}
+
+	/**
+	 * The hidden elements can't be used.
+	 */
+	private void interactable() {
+		if (!StubPage.isDisplayed(element))
+			throw new ElementNotInteractableException("element not interactable: " + locator);
+	}
+
+}
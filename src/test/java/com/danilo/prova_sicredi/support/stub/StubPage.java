@@ -0,0 +1,804 @@
+package com.danilo.prova_sicredi.support.stub;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.openqa.selenium.ElementNotInteractableException;
+import org.openqa.selenium.InvalidSelectorException;
+import org.openqa.selenium.Keys;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.json.Json;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import com.danilo.prova_sicredi.support.server.GroceryCrudPages;
+import com.danilo.prova_sicredi.support.server.GroceryCrudServer;
+
+/**
+ * This class is a page loaded by the StubDriver: the DOM of the XHTML built by
+ * the GroceryCrudPages, and the behavior of their script (GroceryCrudPages.SCRIPT)
+ * written again in Java. The requests of the script go straight to
+ * GroceryCrudServer.answer(), without HTTP.
+ *
+ * The elements are found with XPath over the DOM, and an element is visible
+ * unless it or one of its parents has the 'display: none' style set by the
+ * pages and their script.
+ *
+ * A page is used by one thread at a time, as the driver that loaded it.
+ *
+ * @author danilo
+ *
+ */
+class StubPage {
+
+	// The compiled XPaths kept by each thread
+	private static final int XPATH_CACHE_SIZE = 256;
+
+	// The delete modal, and not its buttons
+	private static final String MODAL = "//*[contains(concat(' ', @class, ' '), ' delete-multiple-confirmation ')]";
+
+	// The elements that are never shown
+	private static final List<String> NOT_RENDERED = Arrays.asList("head", "title", "meta", "script", "style");
+
+	// The elements whose text is not a block of its own
+	private static final List<String> INLINE = Arrays.asList("a", "span", "b", "i", "strong", "em", "label");
+
+	// The parsers and the XPaths can't be shared between threads
+	private static ThreadLocal<DocumentBuilder> builders = ThreadLocal.withInitial(StubPage::newBuilder);
+	private static ThreadLocal<XPath> xpaths = ThreadLocal.withInitial(() -> XPathFactory.newInstance().newXPath());
+	private static ThreadLocal<Map<String, XPathExpression>> expressions = ThreadLocal
+			.withInitial(() -> new LinkedHashMap<String, XPathExpression>(XPATH_CACHE_SIZE, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+					return size() > XPATH_CACHE_SIZE;
+				}
+			});
+
+	// The address of the page
+	final String url;
+
+	// The DOM
+	final Document document;
+
+	// The element with the focus, may be null
+	Element focused;
+
+	/**
+	 * Creates a page.
+	 */
+	private StubPage(String url, Document document) {
+		this.url = url;
+		this.document = document;
+	}
+
+	/**
+	 * @return an empty page.
+	 */
+	static StubPage blank() {
+		return parse("about:blank", "<html><head><title></title></head><body></body></html>");
+	}
+
+	/**
+	 * Parses the XHTML of a page.
+	 *
+	 * @param url
+	 *            The address of the page.
+	 * @param xhtml
+	 *            The page.
+	 * @return the page.
+	 */
+	static StubPage parse(String url, String xhtml) {
+		try {
+			return new StubPage(url, builders.get().parse(new InputSource(new StringReader(xhtml))));
+		} catch (SAXException | IOException e) {
+			throw new WebDriverException("The stub browser can't read the page " + url, e);
+		}
+	}
+
+	/**
+	 * Builds a page that shows a text, for the answers that are not pages.
+	 *
+	 * @param url
+	 *            The address of the page.
+	 * @param text
+	 *            The text.
+	 * @return the page.
+	 */
+	static StubPage text(String url, String text) {
+		return parse(url, "<html><head><title></title></head><body><pre>" + GroceryCrudPages.escape(text)
+				+ "</pre></body></html>");
+	}
+
+	/**
+	 * Finds the elements of an XPath.
+	 *
+	 * @param xpath
+	 *            The XPath.
+	 * @param context
+	 *            The node the relative XPaths start from.
+	 * @return the elements, in the order of the document.
+	 */
+	List<Element> find(String xpath, Node context) {
+
+		XPathExpression expression;
+		NodeList nodes;
+		List<Element> found;
+
+		try {
+			expression = expressions.get().get(xpath);
+			if (expression == null) {
+				expression = xpaths.get().compile(xpath);
+				expressions.get().put(xpath, expression);
+			}
+			nodes = (NodeList) expression.evaluate(context, XPathConstants.NODESET);
+		} catch (XPathExpressionException e) {
+			throw new InvalidSelectorException("invalid selector: " + xpath, e);
+		}
+
+		found = new ArrayList<>(nodes.getLength());
+		for (int i = 0; i < nodes.getLength(); i++) {
+			if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE)
+				found.add((Element) nodes.item(i));
+		}
+
+		return found;
+	}
+
+	/**
+	 * Finds an element for a locator given to a script, as document.evaluate()
+	 * and document.getElementById() would.
+	 *
+	 * @param kind
+	 *            'xpath' or 'id'.
+	 * @param selector
+	 *            The selector.
+	 * @return the first element found, or null.
+	 */
+	Element find(String kind, String selector) {
+
+		List<Element> found;
+
+		switch (kind) {
+		case "xpath":
+			found = find(selector, document);
+			break;
+		case "id":
+			found = find("//*[@id = " + quote(selector) + "]", document);
+			break;
+		default:
+			throw new InvalidSelectorException("The stub browser only finds elements by XPath: " + selector);
+		}
+
+		return found.isEmpty() ? null : found.get(0);
+	}
+
+	/**
+	 * @return whether a node is still part of the page.
+	 */
+	boolean isAttached(Node node) {
+
+		Node parent;
+
+		for (parent = node; parent != null; parent = parent.getParentNode()) {
+			if (parent == document)
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return the title of the page.
+	 */
+	String getTitle() {
+
+		List<Element> titles;
+
+		titles = find("//title", document);
+
+		return titles.isEmpty() ? "" : titles.get(0).getTextContent();
+	}
+
+	/**
+	 * @return the page as text.
+	 */
+	String getSource() {
+
+		Transformer transformer;
+		StringWriter source;
+
+		source = new StringWriter();
+		try {
+			transformer = TransformerFactory.newInstance().newTransformer();
+			transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+			transformer.transform(new DOMSource(document), new StreamResult(source));
+		} catch (TransformerException e) {
+			throw new WebDriverException(e);
+		}
+
+		return source.toString();
+	}
+
+	/**
+	 * @return whether an element and all its parents are shown.
+	 */
+	static boolean isDisplayed(Element element) {
+
+		Node node;
+
+		for (node = element; node instanceof Element; node = node.getParentNode()) {
+			if (!isShown((Element) node))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the text of an element as shown, with the spaces collapsed.
+	 */
+	static String getText(Element element) {
+
+		StringBuilder text;
+
+		if (!isDisplayed(element))
+			return "";
+
+		text = new StringBuilder();
+		appendText(element, text);
+
+		return text.toString().replaceAll("\\s+", " ").trim();
+	}
+
+	/**
+	 * @return the value of an input, or the value of the selected option of a
+	 *         select.
+	 */
+	static String getValue(Element element) {
+
+		Element selected;
+
+		switch (element.getTagName()) {
+		case "select":
+			selected = null;
+			for (Element option : children(element, "option")) {
+				if (selected == null || option.hasAttribute("selected"))
+					selected = option;
+				if (option.hasAttribute("selected"))
+					break;
+			}
+			return selected == null ? "" : getValue(selected);
+		case "option":
+			return element.hasAttribute("value") ? element.getAttribute("value") : element.getTextContent();
+		default:
+			return element.getAttribute("value");
+		}
+	}
+
+	/**
+	 * Sets the value of an input.
+	 */
+	static void setValue(Element element, String value) {
+		element.setAttribute("value", value);
+	}
+
+	/**
+	 * Clicks on an element, running the handlers of the script from the element
+	 * up to the page.
+	 *
+	 * @param target
+	 *            The element clicked.
+	 * @return the address to navigate to, or null in case the browser stays in
+	 *         the page.
+	 */
+	String click(Element target) {
+
+		String href;
+
+		focused = target;
+
+		// Check boxes and options change by themselves
+		if (target.getTagName().equals("input") && target.getAttribute("type").equals("checkbox")) {
+			if (target.hasAttribute("checked"))
+				target.removeAttribute("checked");
+			else
+				target.setAttribute("checked", "checked");
+		}
+
+		if (target.getTagName().equals("option") && !target.hasAttribute("selected"))
+			return select((Element) target.getParentNode(), target);
+
+		for (Element element = target; element != null; element = parent(element)) {
+
+			// Search
+			if (hasClass(element, "search-button")) {
+				show(one("//*[@id='search-box']"), true);
+				focused = one("//input[@name='search']");
+				return null;
+			}
+
+			// Delete the selected rows, after the modal
+			if (element.getTagName().equals("a") && element.getAttribute("title").equals("Delete")
+					&& parent(element) != null && parent(parent(element)) != null
+					&& hasClass(parent(parent(element)), "filter-row")) {
+				openDeleteModal();
+				return null;
+			}
+
+			if (hasClass(element, "delete-multiple-confirmation-cancel")) {
+				show(one(MODAL), false);
+				return null;
+			}
+
+			if (hasClass(element, "delete-multiple-confirmation-button")) {
+				deleteSelected();
+				return null;
+			}
+
+			// The chosen widget of the employer
+			if (hasClass(element, "chosen-single")) {
+				show(one("//*[contains(@class, 'chosen-drop')]"), true);
+				listEmployers();
+				focused = one("//*[@class='chosen-search']/input");
+				return null;
+			}
+
+			if (hasClass(element, "active-result")) {
+				pickEmployer(element.getAttribute("data-value"));
+				return null;
+			}
+
+			// Save the form
+			if (element.getAttribute("id").equals("form-button-save")) {
+				save();
+				return null;
+			}
+
+			// Links
+			href = element.getTagName().equals("a") ? element.getAttribute("href") : "";
+			if (!href.isEmpty() && !href.equals("#"))
+				return href;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Types keys in an input. Only Enter, Tab and Backspace have an effect among
+	 * the special keys.
+	 *
+	 * @param element
+	 *            The input.
+	 * @param keys
+	 *            The keys.
+	 * @return the address to navigate to, or null in case the browser stays in
+	 *         the page.
+	 */
+	String type(Element element, CharSequence... keys) {
+
+		String value;
+		boolean chosen;
+
+		if (!element.getTagName().equals("input") && !element.getTagName().equals("textarea"))
+			throw new ElementNotInteractableException("element not interactable: " + element.getTagName());
+
+		focused = element;
+		chosen = parent(element) != null && hasClass(parent(element), "chosen-search");
+
+		for (CharSequence sequence : keys) {
+			for (char key : sequence.toString().toCharArray()) {
+
+				value = element.getAttribute("value");
+
+				if (key == Keys.ENTER.charAt(0) || key == Keys.RETURN.charAt(0)) {
+					// Picks the first employer, or sends the form
+					if (chosen) {
+						pickFirstEmployer();
+					} else if (form(element) != null) {
+						return submit(form(element));
+					}
+				} else if (key == Keys.TAB.charAt(0)) {
+					if (chosen)
+						pickFirstEmployer();
+				} else if (key == Keys.BACK_SPACE.charAt(0)) {
+					if (!value.isEmpty())
+						setValue(element, value.substring(0, value.length() - 1));
+					if (chosen)
+						listEmployers();
+				} else if (key < '\uE000' || key > '\uF8FF') {
+					// The keys out of the private use area are characters
+					setValue(element, value + key);
+					if (chosen)
+						listEmployers();
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Sends a form, as the GET forms of the pages do.
+	 *
+	 * @param form
+	 *            The form.
+	 * @return the address to navigate to.
+	 */
+	String submit(Element form) {
+
+		StringBuilder query;
+
+		query = new StringBuilder();
+		try {
+			for (Element input : find(".//input[@name]", form)) {
+				query.append(query.length() == 0 ? "?" : "&").append(URLEncoder.encode(input.getAttribute("name"),
+						"UTF-8")).append('=').append(URLEncoder.encode(getValue(input), "UTF-8"));
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new WebDriverException(e);
+		}
+
+		return form.getAttribute("action") + query;
+	}
+
+	/**
+	 * @return the form of an element, or null.
+	 */
+	Element form(Element element) {
+
+		Element form;
+
+		for (form = element; form != null && !form.getTagName().equals("form"); form = parent(form))
+			;
+
+		return form;
+	}
+
+	/**
+	 * Selects an option of a select, as the user would.
+	 *
+	 * @return the address to navigate to, or null.
+	 */
+	private String select(Element select, Element option) {
+
+		for (Element other : children(select, "option")) {
+			other.removeAttribute("selected");
+		}
+		option.setAttribute("selected", "selected");
+
+		// The theme switch goes to the page of the theme
+		if (select.getAttribute("id").equals("switch-version-select"))
+			return getValue(option);
+
+		return null;
+	}
+
+	/**
+	 * Shows the delete modal in case there are rows selected.
+	 */
+	private void openDeleteModal() {
+
+		int count;
+
+		count = selectedRows().size();
+		if (count == 0)
+			return;
+
+		one("//*[@class='delete-items-count']").setTextContent(String.valueOf(count));
+		show(one("//*[@class='alert-delete-multiple-one']"), count == 1);
+		show(one("//*[@class='alert-delete-multiple']"), count != 1);
+		show(one(MODAL), true);
+	}
+
+	/**
+	 * Deletes the selected rows, removes them from the list and shows the growl
+	 * message.
+	 */
+	private void deleteSelected() {
+
+		List<Element> rows;
+		Map<String, List<String>> form;
+		Map<String, Object> answer;
+		Element growl, row;
+
+		rows = selectedRows();
+		form = new LinkedHashMap<>();
+		form.put("ids[]", new ArrayList<>());
+		for (Element checkbox : rows) {
+			form.get("ids[]").add(checkbox.getAttribute("value"));
+		}
+
+		answer = post("delete_multiple", form);
+
+		show(one(MODAL), false);
+		for (Element checkbox : rows) {
+			row = parent(parent(checkbox));
+			row.getParentNode().removeChild(row);
+		}
+
+		growl = document.createElement("div");
+		growl.setAttribute("class", "growl-container");
+		setInnerHtml(growl, "<div class=\"alert alert-success growl\"><span data-growl=\"message\">"
+				+ answer.get("success_message") + "</span></div>");
+		one("//body").appendChild(growl);
+	}
+
+	/**
+	 * Lists the employers matching the text typed in the chosen widget.
+	 */
+	private void listEmployers() {
+
+		Element results, item;
+		List<Element> found;
+
+		results = one("//*[@class='chosen-results']");
+		while (results.getFirstChild() != null) {
+			results.removeChild(results.getFirstChild());
+		}
+
+		found = matchingEmployers();
+		for (int i = 0; i < found.size(); i++) {
+			item = document.createElement("li");
+			item.setAttribute("class", "active-result" + (i == 0 ? " highlighted" : ""));
+			item.setAttribute("data-value", getValue(found.get(i)));
+			item.setTextContent(found.get(i).getTextContent());
+			results.appendChild(item);
+		}
+	}
+
+	/**
+	 * Picks the first employer matching the text typed, in case there is one.
+	 */
+	private void pickFirstEmployer() {
+
+		List<Element> found;
+
+		found = matchingEmployers();
+		if (!found.isEmpty())
+			pickEmployer(getValue(found.get(0)));
+	}
+
+	/**
+	 * Picks an employer in the chosen widget.
+	 */
+	private void pickEmployer(String value) {
+
+		Element select;
+
+		select = one("//select[contains(@class, 'chosen-select')]");
+		for (Element option : children(select, "option")) {
+			if (getValue(option).equals(value)) {
+				select(select, option);
+				one("//*[contains(@class, 'chosen-single')]/span").setTextContent(option.getTextContent());
+			}
+		}
+		show(one("//*[contains(@class, 'chosen-drop')]"), false);
+	}
+
+	/**
+	 * @return the options of the employers with the text typed.
+	 */
+	private List<Element> matchingEmployers() {
+
+		List<Element> found;
+		String term;
+
+		found = new ArrayList<>();
+		term = one("//*[@class='chosen-search']/input").getAttribute("value").toLowerCase();
+
+		for (Element option : children(one("//select[contains(@class, 'chosen-select')]"), "option")) {
+			if (!getValue(option).isEmpty() && option.getTextContent().toLowerCase().contains(term))
+				found.add(option);
+		}
+
+		return found;
+	}
+
+	/**
+	 * Sends the add form and shows the answer.
+	 */
+	private void save() {
+
+		Map<String, List<String>> form;
+		Map<String, Object> answer;
+		boolean success;
+		Element message, error;
+
+		form = new LinkedHashMap<>();
+		for (Element input : find("//form[@id='crudForm']//*[(self::input or self::select) and @name]", document)) {
+			form.put(input.getAttribute("name"), Collections.singletonList(getValue(input)));
+		}
+
+		answer = post("insert", form);
+		success = Boolean.TRUE.equals(answer.get("success"));
+
+		message = one("//*[@id='report-success']");
+		error = one("//*[@id='report-error']");
+		setInnerHtml(message, success ? (String) answer.get("success_message") : "");
+		setInnerHtml(error, success ? "" : (String) answer.get("error_message"));
+		show(message, success);
+		show(error, !success);
+	}
+
+	/**
+	 * Sends a request of the script to the server.
+	 */
+	private Map<String, Object> post(String action, Map<String, List<String>> form) {
+
+		GroceryCrudServer.Answer answer;
+
+		answer = GroceryCrudServer.answer(one("//body").getAttribute("data-base") + "/" + action, null, form);
+		if (answer.status != 200)
+			throw new WebDriverException(String.format("The server answered %d to %s: %s", answer.status, action,
+					answer.body));
+
+		return new Json().toType(answer.body, Json.MAP_TYPE);
+	}
+
+	/**
+	 * @return the check boxes of the rows selected in the list.
+	 */
+	private List<Element> selectedRows() {
+		return find("//input[contains(@class, 'select-row') and @checked]", document);
+	}
+
+	/**
+	 * @return the first element of an XPath, that must be in the page.
+	 */
+	private Element one(String xpath) {
+
+		List<Element> found;
+
+		found = find(xpath, document);
+		if (found.isEmpty())
+			throw new WebDriverException("The page has no " + xpath);
+
+		return found.get(0);
+	}
+
+	/**
+	 * Replaces the contents of an element by some HTML.
+	 */
+	private void setInnerHtml(Element element, String html) {
+
+		Element fragment;
+
+		while (element.getFirstChild() != null) {
+			element.removeChild(element.getFirstChild());
+		}
+
+		try {
+			fragment = builders.get().parse(new InputSource(new StringReader("<div>" + html + "</div>")))
+					.getDocumentElement();
+		} catch (SAXException | IOException e) {
+			throw new WebDriverException("The stub browser can't read " + html, e);
+		}
+
+		for (Node child = fragment.getFirstChild(); child != null; child = child.getNextSibling()) {
+			element.appendChild(document.importNode(child, true));
+		}
+	}
+
+	/**
+	 * Shows or hides an element, as the script does.
+	 */
+	private static void show(Element element, boolean visible) {
+		element.setAttribute("style", visible ? "display: block" : "display: none");
+	}
+
+	/**
+	 * @return whether an element is shown, without looking at its parents.
+	 */
+	private static boolean isShown(Element element) {
+
+		String style;
+
+		if (NOT_RENDERED.contains(element.getTagName()))
+			return false;
+		if (element.getTagName().equals("input") && element.getAttribute("type").equals("hidden"))
+			return false;
+
+		style = element.getAttribute("style").replace(" ", "");
+
+		return !style.contains("display:none");
+	}
+
+	/**
+	 * Adds the text of the nodes shown to the builder.
+	 */
+	private static void appendText(Node node, StringBuilder text) {
+		for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.TEXT_NODE) {
+				text.append(child.getNodeValue());
+			} else if (child.getNodeType() == Node.ELEMENT_NODE && isShown((Element) child)) {
+				if (!INLINE.contains(((Element) child).getTagName()))
+					text.append(' ');
+				appendText(child, text);
+			}
+		}
+	}
+
+	/**
+	 * @return whether an element has a class.
+	 */
+	private static boolean hasClass(Element element, String name) {
+		return (" " + element.getAttribute("class") + " ").contains(" " + name + " ");
+	}
+
+	/**
+	 * @return the parent element, or null.
+	 */
+	private static Element parent(Element element) {
+		return element.getParentNode() instanceof Element ? (Element) element.getParentNode() : null;
+	}
+
+	/**
+	 * @return the children of an element with a tag.
+	 */
+	private static List<Element> children(Element element, String tag) {
+
+		List<Element> children;
+
+		children = new ArrayList<>();
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE && ((Element) child).getTagName().equals(tag))
+				children.add((Element) child);
+		}
+
+		return children;
+	}
+
+	/**
+	 * @return a text as an XPath literal.
+	 */
+	private static String quote(String text) {
+		return text.contains("'") ? "\"" + text + "\"" : "'" + text + "'";
+	}
+
+	/**
+	 * @return a new parser, that doesn't load anything but the page.
+	 */
+	private static DocumentBuilder newBuilder() {
+
+		DocumentBuilderFactory factory;
+
+		factory = DocumentBuilderFactory.newInstance();
+		try {
+			factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+			return factory.newDocumentBuilder();
+		} catch (ParserConfigurationException e) {
+			throw new WebDriverException(e);
+		}
+	}
+
+}
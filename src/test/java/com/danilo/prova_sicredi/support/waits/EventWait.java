@@ -0,0 +1,329 @@
+package com.danilo.prova_sicredi.support.waits;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NotFoundException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+import com.danilo.prova_sicredi.support.Settings;
+import com.danilo.prova_sicredi.support.TestContext;
+import com.danilo.prova_sicredi.support.factories.DriverFactory;
+import com.danilo.prova_sicredi.support.report.StepTimings;
+
+/**
+ * This class replaces the WebDriverWait in the page objects. A WebDriverWait
+ * asks the driver every 500 ms whether the condition is met, so each wait
+ * loses up to half a second after the page is ready.
+ *
+ * For the conditions created by WaitConditions this class installs a
+ * MutationObserver in the page through an async script, so the browser answers
+ * as soon as the DOM changes in a way that meets the condition. The answer is
+ * then confirmed by Selenium. When the condition can't be checked inside the
+ * page, or the script keeps failing, the condition is polled with an interval
+ * that starts small and grows up to the one used by the WebDriverWait.
+ *
+ * @author danilo
+ *
+ */
+public class EventWait {
+
+	// The script that waits for the condition inside the page. Arguments are the
+	// kind of locator, the selector, the check and the time to wait in ms.
+	public static final String SCRIPT = "var kind = arguments[0], selector = arguments[1], check = arguments[2];"
+			+ "var done = arguments[arguments.length - 1], finished = false, observer, timer;"
+			+ "function find() {"
+			+ "  if (kind === 'xpath') return document.evaluate(selector, document, null,"
+			+ "      XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue;"
+			+ "  if (kind === 'css') return document.querySelector(selector);"
+			+ "  return document.getElementById(selector);"
+			+ "}"
+			+ "function visible(el) {"
+			+ "  if (!el.getClientRects().length) return false;"
+			+ "  var style = window.getComputedStyle(el);"
+			+ "  return style.visibility !== 'hidden' && parseFloat(style.opacity) > 0;"
+			+ "}"
+			+ "function met() {"
+			+ "  var el = find();"
+			+ "  if (check === 'present') return el !== null;"
+			+ "  if (check === 'visible') return el !== null && visible(el);"
+			+ "  if (check === 'clickable') return el !== null && visible(el) && !el.disabled;"
+			+ "  return el === null || !visible(el);"
+			+ "}"
+			+ "function finish(result) {"
+			+ "  if (finished) return;"
+			+ "  finished = true;"
+			+ "  if (observer) observer.disconnect();"
+			+ "  clearTimeout(timer);"
+			+ "  done(result);"
+			+ "}"
+			+ "if (met()) { finish(true); return; }"
+			+ "observer = new MutationObserver(function() { if (met()) finish(true); });"
+			+ "observer.observe(document, { childList: true, subtree: true, attributes: true, characterData: true });"
+			+ "timer = setTimeout(function() { finish(false); }, arguments[3]);";
+
+	// Number of script errors in a row before giving up on the events
+	private static final int MAX_SCRIPT_ERRORS = 3;
+
+	// The drivers that already have the script timeout set
+	private static Set<WebDriver> configured = Collections
+			.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+	// Settings, loaded on the first call
+	private static boolean initialized = false;
+	private static boolean eventsEnabled;
+	private static long sliceMillis;
+	private static long minInterval;
+	private static long maxInterval;
+
+	// Statistics
+	private static AtomicLong waits = new AtomicLong();
+	private static AtomicLong waitNanos = new AtomicLong();
+	private static AtomicLong eventRounds = new AtomicLong();
+	private static AtomicLong polls = new AtomicLong();
+	private static AtomicLong fallbacks = new AtomicLong();
+
+	// The context of the test, used to turn off the exception handling
+	private final TestContext context;
+
+	// How long to wait, in milliseconds
+	private final long timeoutMillis;
+
+	/**
+	 * Load the settings from the config.properties.
+	 */
+	private static synchronized void initialize() {
+
+		// Do not initialize twice
+		if (initialized)
+			return;
+
+		eventsEnabled = Settings.getProperty("wait_mode").trim().equalsIgnoreCase("event");
+		sliceMillis = Long.parseLong(Settings.getProperty("wait_slice"));
+		minInterval = Long.parseLong(Settings.getProperty("wait_poll_min_interval"));
+		maxInterval = Long.parseLong(Settings.getProperty("wait_poll_max_interval"));
+
+		// Mark initialized
+		initialized = true;
+	}
+
+	/**
+	 * Creates a new wait for the driver of the context.
+	 *
+	 * @param context
+	 *            TestContext for the current Thread.
+	 * @param timeout
+	 *            How long to wait, in seconds.
+	 */
+	public EventWait(TestContext context, int timeout) {
+		if (!initialized)
+			initialize();
+
+		this.context = context;
+		this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeout);
+	}
+
+	/**
+	 * Waits until the condition is met. The conditions from WaitConditions are
+	 * checked inside the page, other conditions are polled.
+	 *
+	 * @param condition
+	 *            The condition.
+	 * @return the value returned by the condition, like the element found.
+	 * @throws TimeoutException
+	 *             In case the condition is not met in time.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T until(ExpectedCondition<T> condition) {
+
+		long start, deadline;
+		String[] scriptLocator;
+
+		start = System.nanoTime();
+		deadline = System.currentTimeMillis() + timeoutMillis;
+
+		try {
+
+			// Check inside the page when possible
+			if (eventsEnabled && condition instanceof WaitCondition) {
+				scriptLocator = ((WaitCondition<T>) condition).getScriptLocator();
+				if (scriptLocator != null) {
+					return waitForEvents(condition, scriptLocator, deadline);
+				}
+			}
+
+			return poll(condition, deadline, minInterval);
+
+		} finally {
+			waits.incrementAndGet();
+			waitNanos.addAndGet(System.nanoTime() - start);
+			StepTimings.record("wait", condition instanceof WaitCondition ? ((WaitCondition<?>) condition).describe()
+					: condition.toString(), System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * @return a line with the wait statistics.
+	 */
+	public static String getStatistics() {
+
+		long count;
+
+		count = waits.get();
+
+		return String.format("Waits: %d, avg: %.0f ms, event rounds: %d, polls: %d, fallbacks to polling: %d", count,
+				count == 0 ? 0.0 : waitNanos.get() / 1000000.0 / count, eventRounds.get(), polls.get(),
+				fallbacks.get());
+	}
+
+	/**
+	 * Lets the browser tell when the condition may have been met, then confirms
+	 * it with Selenium.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T waitForEvents(ExpectedCondition<T> condition, String[] scriptLocator, long deadline) {
+
+		JavascriptExecutor executor;
+		String check;
+		Object answer;
+		T result;
+		long remaining, interval;
+		int errors;
+
+		// The script goes straight to the browser, so it doesn't show up in the report
+		executor = (JavascriptExecutor) DriverFactory.unwrap(context.driver);
+		check = ((WaitCondition<T>) condition).getCheck();
+		configure((WebDriver) executor);
+
+		errors = 0;
+		interval = minInterval;
+		while (true) {
+
+			// Wait at most a slice at a time, the script timeout is set accordingly
+			remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0)
+				throw timeout(condition);
+
+			try {
+				answer = executor.executeAsyncScript(SCRIPT, scriptLocator[0], scriptLocator[1], check,
+						Math.min(remaining, sliceMillis));
+				eventRounds.incrementAndGet();
+				errors = 0;
+			} catch (WebDriverException e) {
+				// The page may have been unloaded while waiting, try again in the new page
+				if (++errors >= MAX_SCRIPT_ERRORS) {
+					fallbacks.incrementAndGet();
+					return poll(condition, deadline, interval);
+				}
+				continue;
+			}
+
+			// Not yet, wait for another slice
+			if (!Boolean.TRUE.equals(answer))
+				continue;
+
+			// Confirm it
+			result = check(condition);
+			if (isMet(result))
+				return result;
+
+			// The page says yes but Selenium doesn't agree yet, like during an animation.
+			// Give it a moment so we don't flood the driver.
+			sleep(Math.min(interval, Math.max(0, deadline - System.currentTimeMillis())));
+			interval = Math.min(interval * 2, maxInterval);
+		}
+	}
+
+	/**
+	 * Checks the condition with Selenium, waiting a bit more after each miss.
+	 */
+	private <T> T poll(ExpectedCondition<T> condition, long deadline, long interval) {
+
+		T result;
+		long remaining;
+
+		while (true) {
+
+			// Check it
+			result = check(condition);
+			if (isMet(result))
+				return result;
+
+			// Give up in case the time is over
+			remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0)
+				throw timeout(condition);
+
+			// Wait and increase the interval
+			polls.incrementAndGet();
+			sleep(Math.min(interval, remaining));
+			interval = Math.min(interval * 2, maxInterval);
+		}
+	}
+
+	/**
+	 * Applies the condition once. The exception handling of the SeleniumListener
+	 * is turned off while doing it, as missing elements are expected here.
+	 */
+	private <T> T check(ExpectedCondition<T> condition) {
+
+		boolean handleExceptions;
+
+		handleExceptions = context.isHandleExceptions();
+		context.setHandleExceptions(false);
+
+		try {
+			return condition.apply(context.driver);
+		} catch (NotFoundException | StaleElementReferenceException e) {
+			return null;
+		} finally {
+			context.setHandleExceptions(handleExceptions);
+		}
+	}
+
+	/**
+	 * @return true in case the value returned by the condition means it is met.
+	 */
+	private static boolean isMet(Object result) {
+		return result != null && !Boolean.FALSE.equals(result);
+	}
+
+	/**
+	 * Makes sure the driver waits for the async script longer than a slice. This
+	 * is done once per driver.
+	 */
+	private static void configure(WebDriver driver) {
+		if (configured.add(driver)) {
+			driver.manage().timeouts().setScriptTimeout(sliceMillis + 5000, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Sleeps without bothering the caller with the checked exception.
+	 */
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting.", e);
+		}
+	}
+
+	/**
+	 * @return the exception thrown when the time is over.
+	 */
+	private TimeoutException timeout(ExpectedCondition<?> condition) {
+		return new TimeoutException(String.format("Expected condition failed: waiting for %s (tried for %d second(s))",
+				condition, TimeUnit.MILLISECONDS.toSeconds(timeoutMillis)));
+	}
+
+}
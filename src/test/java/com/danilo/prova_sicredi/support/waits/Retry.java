@@ -0,0 +1,308 @@
+package com.danilo.prova_sicredi.support.waits;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.danilo.prova_sicredi.support.Settings;
+import com.danilo.prova_sicredi.support.TestContext;
+
+/**
+ * This class repeats an action until it works, for the cases where waiting for
+ * a condition is not enough (like clicking on an element that keeps being
+ * replaced by the page). It works the same way as the FluentWait: set what can
+ * be ignored and call run() or get().
+ *
+ * The attempts are spaced with an exponential backoff plus some jitter, so the
+ * driver is not flooded, and are limited by the timeout and by a maximum
+ * number of attempts. The exception handling of the SeleniumListener is turned
+ * off while retrying and restored at the end, whatever happens.
+ *
+ * Each call site has its attempts and the time lost in failed attempts
+ * recorded, the statistics go to the report at the end of the suite.
+ *
+ * @author danilo
+ *
+ */
+public class Retry {
+
+	// Settings, loaded on the first call
+	private static boolean initialized = false;
+	private static long initialDelay;
+	private static long maxDelay;
+	private static double multiplier;
+	private static double jitter;
+	private static int defaultMaxAttempts;
+
+	// Statistics by call site
+	private static Map<String, CallSiteStatistics> statistics = new ConcurrentHashMap<>();
+
+	// The context of the test, used to turn off the exception handling
+	private final TestContext context;
+
+	// How long to keep trying, in milliseconds
+	private final long timeoutMillis;
+
+	// The name of the call site, used in the statistics
+	private String callSite;
+
+	// The exceptions that mean the action has to be tried again
+	private List<Class<? extends RuntimeException>> retryable = new ArrayList<>();
+
+	// Maximum number of attempts
+	private int maxAttempts;
+
+	/**
+	 * Load the settings from the config.properties.
+	 */
+	private static synchronized void initialize() {
+
+		// Do not initialize twice
+		if (initialized)
+			return;
+
+		initialDelay = Long.parseLong(Settings.getProperty("retry_initial_delay"));
+		maxDelay = Long.parseLong(Settings.getProperty("retry_max_delay"));
+		multiplier = Double.parseDouble(Settings.getProperty("retry_multiplier"));
+		jitter = Double.parseDouble(Settings.getProperty("retry_jitter"));
+		defaultMaxAttempts = Integer.parseInt(Settings.getProperty("retry_max_attempts"));
+
+		// Mark initialized
+		initialized = true;
+	}
+
+	/**
+	 * Creates a new retry. The call site is the method calling this constructor.
+	 *
+	 * @param context
+	 *            TestContext for the current Thread.
+	 * @param timeout
+	 *            How long to keep trying, in seconds.
+	 */
+	public Retry(TestContext context, int timeout) {
+
+		StackTraceElement caller;
+
+		if (!initialized)
+			initialize();
+
+		this.context = context;
+		this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeout);
+		this.maxAttempts = defaultMaxAttempts;
+
+		// Name the call site after the caller
+		caller = Thread.currentThread().getStackTrace()[2];
+		this.callSite = caller.getClassName().substring(caller.getClassName().lastIndexOf('.') + 1) + "."
+				+ caller.getMethodName();
+	}
+
+	/**
+	 * Sets the exceptions that mean the action has to be tried again. Any other
+	 * exception is thrown right away.
+	 *
+	 * @param exceptions
+	 *            The exceptions, subclasses are retried as well.
+	 * @return this instance.
+	 */
+	@SafeVarargs
+	public final Retry ignoring(Class<? extends RuntimeException>... exceptions) {
+		for (Class<? extends RuntimeException> exception : exceptions) {
+			retryable.add(exception);
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of attempts, replacing the one in the settings.
+	 *
+	 * @param maxAttempts
+	 *            The maximum number of attempts.
+	 * @return this instance.
+	 */
+	public Retry withMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+		return this;
+	}
+
+	/**
+	 * Sets the name used in the statistics, replacing the name of the caller.
+	 *
+	 * @param callSite
+	 *            The name of the call site.
+	 * @return this instance.
+	 */
+	public Retry named(String callSite) {
+		this.callSite = callSite;
+		return this;
+	}
+
+	/**
+	 * Runs the action until it works.
+	 *
+	 * @param action
+	 *            The action.
+	 * @throws RuntimeException
+	 *             In case the attempts or the time are over.
+	 */
+	public void run(Runnable action) {
+		get(() -> {
+			action.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Runs the action until it works.
+	 *
+	 * @param action
+	 *            The action.
+	 * @return the value returned by the action.
+	 * @throws RuntimeException
+	 *             In case the attempts or the time are over.
+	 */
+	public <T> T get(Supplier<T> action) {
+
+		CallSiteStatistics site;
+		boolean handleExceptions;
+		long start, deadline, attemptStart, delay;
+		int attempt;
+		T result;
+
+		site = statistics.computeIfAbsent(callSite, key -> new CallSiteStatistics());
+		start = System.nanoTime();
+		deadline = System.currentTimeMillis() + timeoutMillis;
+		delay = initialDelay;
+		attempt = 0;
+
+		// Deactivate Selenium's exception handling while retrying
+		handleExceptions = context.isHandleExceptions();
+		context.setHandleExceptions(false);
+
+		try {
+			while (true) {
+
+				attempt++;
+				attemptStart = System.nanoTime();
+
+				try {
+					result = action.get();
+
+					// Everything but the last attempt has been wasted
+					site.record(attempt, attemptStart - start, false);
+					if (attempt > 1) {
+						context.report.info(String.format("'%s' worked after %d attempts, %d ms lost.", callSite,
+								attempt, TimeUnit.NANOSECONDS.toMillis(attemptStart - start)));
+					}
+
+					return result;
+
+				} catch (RuntimeException e) {
+
+					// Not something that goes away by trying again
+					if (!isRetryable(e)) {
+						site.record(attempt, System.nanoTime() - start, true);
+						throw e;
+					}
+
+					// Give up in case the attempts or the time are over
+					if (attempt >= maxAttempts || System.currentTimeMillis() + delay > deadline) {
+						site.record(attempt, System.nanoTime() - start, true);
+						throw new RuntimeException(
+								String.format("'%s' failed after %d attempts in %d ms.", callSite, attempt,
+										TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)), e);
+					}
+				}
+
+				// Wait before the next attempt
+				sleep(withJitter(delay));
+				delay = Math.min(maxDelay, (long) (delay * multiplier));
+			}
+
+		} finally {
+			// Restore the exception handling, whatever happened
+			context.setHandleExceptions(handleExceptions);
+		}
+	}
+
+	/**
+	 * @return one line of statistics for each call site.
+	 */
+	public static Map<String, String> getStatistics() {
+
+		Map<String, String> result;
+
+		result = new TreeMap<>();
+		statistics.forEach((site, stats) -> result.put(site, stats.toString()));
+
+		return result;
+	}
+
+	/**
+	 * @return true in case the exception means the action has to be tried again.
+	 */
+	private boolean isRetryable(RuntimeException exception) {
+		for (Class<? extends RuntimeException> type : retryable) {
+			if (type.isInstance(exception))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Spreads the delay randomly, so the threads retrying at the same time don't
+	 * hit the driver at the same moment.
+	 */
+	private static long withJitter(long delay) {
+		return (long) (delay * (1.0 - jitter * ThreadLocalRandom.current().nextDouble()));
+	}
+
+	/**
+	 * Sleeps without bothering the caller with the checked exception.
+	 */
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while retrying.", e);
+		}
+	}
+
+	/**
+	 * The statistics of a call site.
+	 */
+	private static class CallSiteStatistics {
+
+		private AtomicLong calls = new AtomicLong();
+		private AtomicLong attempts = new AtomicLong();
+		private AtomicLong failures = new AtomicLong();
+		private AtomicLong maxAttempts = new AtomicLong();
+		private AtomicLong wastedNanos = new AtomicLong();
+
+		/**
+		 * Records a call.
+		 */
+		private void record(int attempts, long wastedNanos, boolean failed) {
+			calls.incrementAndGet();
+			this.attempts.addAndGet(attempts);
+			this.maxAttempts.accumulateAndGet(attempts, Math::max);
+			this.wastedNanos.addAndGet(wastedNanos);
+			if (failed)
+				failures.incrementAndGet();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Calls: %d, attempts: %d (max %d), failures: %d, time lost: %d ms", calls.get(),
+					attempts.get(), maxAttempts.get(), failures.get(),
+					TimeUnit.NANOSECONDS.toMillis(wastedNanos.get()));
+		}
+	}
+
+}
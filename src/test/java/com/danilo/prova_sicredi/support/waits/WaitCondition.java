@@ -0,0 +1,92 @@
+package com.danilo.prova_sicredi.support.waits;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+import com.danilo.prova_sicredi.support.Locators;
+
+/**
+ * This class is a condition about an element that can be checked both by
+ * Selenium and inside the page. The EventWait uses the in-page check to be
+ * notified by the browser when the condition may have been met, and then
+ * confirms it with Selenium.
+ *
+ * As it is an ExpectedCondition, it can also be used with a WebDriverWait.
+ *
+ * @author danilo
+ *
+ */
+public class WaitCondition<T> implements ExpectedCondition<T> {
+
+	// The locator of the element
+	private final By locator;
+
+	// The check done inside the page: present, visible, clickable or invisible
+	private final String check;
+
+	// The same check done by Selenium
+	private final ExpectedCondition<T> condition;
+
+	/**
+	 * Creates a new condition. Use the factories in WaitConditions.
+	 *
+	 * @param locator
+	 *            The locator of the element.
+	 * @param check
+	 *            The name of the check done inside the page.
+	 * @param condition
+	 *            The same check done by Selenium.
+	 */
+	WaitCondition(By locator, String check, ExpectedCondition<T> condition) {
+		this.locator = locator;
+		this.check = check;
+		this.condition = condition;
+	}
+
+	@Override
+	public T apply(WebDriver driver) {
+		return condition.apply(driver);
+	}
+
+	/**
+	 * @return the locator of the element.
+	 */
+	public By getLocator() {
+		return locator;
+	}
+
+	/**
+	 * @return the name of the check done inside the page.
+	 */
+	public String getCheck() {
+		return check;
+	}
+
+	/**
+	 * Tells how the element is found inside the page. Only XPath, CSS and id
+	 * locators can be checked inside the page, the other ones are only polled.
+	 *
+	 * @return 'xpath', 'css' or 'id' followed by the selector, or null in case the
+	 *         locator can't be used inside the page.
+	 */
+	public String[] getScriptLocator() {
+		return Locators.toScriptLocator(locator);
+	}
+
+	/**
+	 * Describes the condition for the timings. A locator filled from a template
+	 * is described by the template, so all its values share the same entry.
+	 *
+	 * @return the description of the condition.
+	 */
+	public String describe() {
+		return condition.toString().replace(locator.toString(), Locators.describe(locator));
+	}
+
+	@Override
+	public String toString() {
+		return condition.toString();
+	}
+
+}
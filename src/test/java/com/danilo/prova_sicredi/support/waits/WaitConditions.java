@@ -0,0 +1,61 @@
+package com.danilo.prova_sicredi.support.waits;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+/**
+ * This class has the same factories as Selenium's ExpectedConditions for the
+ * conditions the EventWait can check inside the page. Switching a wait over is
+ * a matter of replacing the class names.
+ *
+ * @author danilo
+ *
+ */
+public abstract class WaitConditions {
+
+	/**
+	 * The element is in the DOM.
+	 *
+	 * @param locator
+	 *            The locator of the element.
+	 * @return the condition, that returns the element.
+	 */
+	public static WaitCondition<WebElement> presenceOfElementLocated(By locator) {
+		return new WaitCondition<>(locator, "present", ExpectedConditions.presenceOfElementLocated(locator));
+	}
+
+	/**
+	 * The element is in the DOM and visible.
+	 *
+	 * @param locator
+	 *            The locator of the element.
+	 * @return the condition, that returns the element.
+	 */
+	public static WaitCondition<WebElement> visibilityOfElementLocated(By locator) {
+		return new WaitCondition<>(locator, "visible", ExpectedConditions.visibilityOfElementLocated(locator));
+	}
+
+	/**
+	 * The element is visible and enabled.
+	 *
+	 * @param locator
+	 *            The locator of the element.
+	 * @return the condition, that returns the element.
+	 */
+	public static WaitCondition<WebElement> elementToBeClickable(By locator) {
+		return new WaitCondition<>(locator, "clickable", ExpectedConditions.elementToBeClickable(locator));
+	}
+
+	/**
+	 * The element is not in the DOM or is not visible.
+	 *
+	 * @param locator
+	 *            The locator of the element.
+	 * @return the condition.
+	 */
+	public static WaitCondition<Boolean> invisibilityOfElementLocated(By locator) {
+		return new WaitCondition<>(locator, "invisible", ExpectedConditions.invisibilityOfElementLocated(locator));
+	}
+
+}
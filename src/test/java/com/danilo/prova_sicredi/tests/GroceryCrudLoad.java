@@ -0,0 +1,125 @@
+package com.danilo.prova_sicredi.tests;
+
+import java.util.Map;
+
+import org.openqa.selenium.support.PageFactory;
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+
+import com.danilo.prova_sicredi.pageobjects.PageAddCustomer;
+import com.danilo.prova_sicredi.pageobjects.PageCustomers;
+import com.danilo.prova_sicredi.support.Settings;
+import com.danilo.prova_sicredi.support.TestClass;
+import com.danilo.prova_sicredi.support.TestContext;
+import com.danilo.prova_sicredi.support.factories.ContextFactory;
+import com.danilo.prova_sicredi.support.listeners.NgReportListener;
+import com.danilo.prova_sicredi.support.load.LoadRunner;
+
+/**
+ * Runs the flows of the GroceryCrudTest with many virtual users at once, to
+ * measure the application under load. It is not part of the regular run, use
+ * 'mvn test -Pload' (see LoadRunner for the settings).
+ * 
+ * @author danilo
+ *
+ */
+@TestClass("Grocery Crud Load")
+@Listeners(NgReportListener.class)
+public class GroceryCrudLoad {
+
+	/**
+	 * Each virtual user adds a customer, searches for it and deletes it, over and
+	 * over, until the duration is over.
+	 */
+	@Test(testName = "001 - Customers under load", description = "Will add, search and delete customers with many virtual users and measure each transaction;")
+	public static void customersUnderLoad() {
+
+		LoadRunner runner;
+		double maxErrorRate;
+
+		runner = new LoadRunner().addTransaction("add", GroceryCrudLoad::addCustomer)
+				.addTransaction("search", GroceryCrudLoad::searchCustomer)
+				.addTransaction("delete", GroceryCrudLoad::deleteCustomer);
+
+		// Run it, the results go to the report
+		runner.run();
+
+		// Validate there were not too many errors
+		maxErrorRate = Double.parseDouble(Settings.getProperty("load_max_error_rate"));
+		assert (runner.getPassed() > 0);
+		assert (runner.getFailed() <= maxErrorRate * (runner.getPassed() + runner.getFailed()));
+	}
+
+	/**
+	 * Adds a customer through the form.
+	 * 
+	 * @param data
+	 *            The customer.
+	 */
+	private static void addCustomer(Map<String, String> data) {
+
+		TestContext context = ContextFactory.getContext();
+		PageCustomers pCust = PageFactory.initElements(context.driver, PageCustomers.class);
+		PageAddCustomer pAddCust = PageFactory.initElements(context.driver, PageAddCustomer.class);
+
+		goToCustomers(pCust);
+
+		pCust.doClickAddCustomer();
+		pAddCust.validatePageLoaded();
+
+		pAddCust.doFillOutForm(data.get("name"), data.get("lastName"), data.get("contactFirstName"), data.get("phone"),
+				data.get("addressLine1"), data.get("addressLine2"), data.get("city"), data.get("state"),
+				data.get("postalCode"), data.get("country"), data.get("fromEmployer"), data.get("creditLimit"));
+		pAddCust.doClickSave();
+		pAddCust.validateDataHasBeenInserted();
+	}
+
+	/**
+	 * Searches for the customer added.
+	 * 
+	 * @param data
+	 *            The customer.
+	 */
+	private static void searchCustomer(Map<String, String> data) {
+
+		TestContext context = ContextFactory.getContext();
+		PageCustomers pCust = PageFactory.initElements(context.driver, PageCustomers.class);
+
+		goToCustomers(pCust);
+
+		pCust.doSearch(data.get("name"));
+		pCust.validateSearchResultsDisplayed(data.get("name"));
+	}
+
+	/**
+	 * Deletes the customer added.
+	 * 
+	 * @param data
+	 *            The customer.
+	 */
+	private static void deleteCustomer(Map<String, String> data) {
+
+		TestContext context = ContextFactory.getContext();
+		PageCustomers pCust = PageFactory.initElements(context.driver, PageCustomers.class);
+
+		goToCustomers(pCust);
+
+		pCust.doSearch(data.get("name"));
+		pCust.validateSearchResultsDisplayed(data.get("name"));
+		pCust.doSelectSearchResult(data.get("name"));
+		pCust.doClickDelete();
+		pCust.validateDeletePopupIsDisplayed();
+		pCust.doConfirmDeleteModal();
+		pCust.validateDeleteConfirmation();
+	}
+
+	/**
+	 * Goes to the customers list in the Bootstrap V4 theme, as the tests do.
+	 */
+	private static void goToCustomers(PageCustomers pCust) {
+		pCust.navigateToCustomers();
+		pCust.doSelectVersion(PageCustomers.SelectVersionOptions.BOOTSTRAP_V4);
+		pCust.validatePageLoaded();
+	}
+
+}
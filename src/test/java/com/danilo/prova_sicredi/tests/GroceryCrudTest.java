@@ -1,21 +1,21 @@
 package com.danilo.prova_sicredi.tests;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.util.ArrayList;
+import java.lang.reflect.Method;
+import java.util.Iterator;
 import java.util.Map;
 
 import org.openqa.selenium.support.PageFactory;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Listeners;
 import org.testng.annotations.Test;
-import org.yaml.snakeyaml.Yaml;
 
 import com.danilo.prova_sicredi.pageobjects.PageAddCustomer;
 import com.danilo.prova_sicredi.pageobjects.PageCustomers;
 import com.danilo.prova_sicredi.support.TestClass;
 import com.danilo.prova_sicredi.support.TestContext;
+import com.danilo.prova_sicredi.support.data.CustomerGenerator;
 import com.danilo.prova_sicredi.support.factories.ContextFactory;
+import com.danilo.prova_sicredi.support.fixtures.Fixtures;
 import com.danilo.prova_sicredi.support.listeners.NgReportListener;
 
 @TestClass("Grocery Crud Example Tests")
@@ -45,7 +45,7 @@ public class GroceryCrudTest {
 	 * 7. Close the web browser.
 	 * 
 	 * @param data
-	 *            Data loaded from YAML file.
+	 *            Data read from the YAML file.
 	 */
 	@Test(testName = "001 - Add a customer", description = "Will add a customer and validate the system displays a success message;", dataProvider = "customerDataProvider")
 	public static void addCustomer(Map<String, String> data) {
@@ -103,7 +103,7 @@ public class GroceryCrudTest {
 	 * 8. Close the web driver.
 	 * 
 	 * @param data
-	 *            Data loaded from YAML file.
+	 *            Data read from the YAML file.
 	 */
 	@Test(testName = "002 - Delete a customer", description = "Will add a customer and then delete it", dataProvider = "customerDataProvider")
 	public static void deleteCustomer(Map<String, String> data) {
@@ -116,20 +116,26 @@ public class GroceryCrudTest {
 		PageCustomers pCust = PageFactory.initElements(context.driver, PageCustomers.class);
 		PageAddCustomer pAddCust = PageFactory.initElements(context.driver, PageAddCustomer.class);
 
-		// 0. Add a customer
+		// 0. Add a customer and 1. go to the list
 		/*
-		 * As the context is managed at a Thread ID level, we can just run the very same
-		 * steps from the previous test within this one. When requesting a new context
-		 * from the ContextFactory, it will find an existing context and will return it
-		 * instead of creating a new one. As a result, we can call directly the method
-		 * from the last test within this one and assure both will run within the same
-		 * context, using the same driver and the same report instance.
+		 * Adding a customer through the pages is tested by the previous test, so the
+		 * customer is created straight through the application by the fixtures. In
+		 * case they are disabled, the steps from the previous test are run within this
+		 * one: when requesting a new context from the ContextFactory, it will find the
+		 * existing context of the thread and will return it instead of creating a new
+		 * one, so both will run using the same driver and the same report instance.
+		 * Both ways end in the list, so the fixtures time them the same.
 		 */
-		addCustomer(data);
-
-		// 1. Click on 'Go Back to List'
-		pAddCust.doClickGoBackToList();
-		pCust.validatePageLoaded();
+		Fixtures.run(Fixtures.CUSTOMER_EXISTS, () -> {
+			Fixtures.customerExists(context, data);
+			pCust.navigateToCustomers();
+			pCust.doSelectVersion(PageCustomers.SelectVersionOptions.BOOTSTRAP_V4);
+			pCust.validatePageLoaded();
+		}, () -> {
+			addCustomer(data);
+			pAddCust.doClickGoBackToList();
+			pCust.validatePageLoaded();
+		});
 
 		// 2. Search for the customer that has been added on pre-conditions
 		pCust.doSearch(data.get("name"));
@@ -156,29 +162,17 @@ public class GroceryCrudTest {
 	}
 
 	/**
-	 * Data will be parsed from a YAML file using SnakeYAML.
+	 * Data will be read from a YAML file, one row at a time, and kept for the
+	 * other tests using the same file. Each test method gets its own customers,
+	 * so the tests running in parallel never search for each other's rows.
 	 * 
-	 * @return An array of Maps containing the data parsed from the file.
-	 * @throws FileNotFoundException
-	 *             In case the file path is wrong.
+	 * @param method
+	 *            The test method asking for the data.
+	 * @return The rows of the file, each one a Map with the data of a customer.
 	 */
-	@DataProvider()
-	public static Object[] customerDataProvider() throws FileNotFoundException {
-
-		ArrayList<Map<String, String>> data;
-		String dataPath;
-		Yaml yaml;
-
-		// Set the data input path
-		dataPath = "data\\grocery_crud\\001_add_customer.yaml";
-
-		// Instantiate the YAML parser and load the data
-		yaml = new Yaml();
-		data = yaml.load(new FileInputStream(dataPath));
-
-		// Parse the data and return it
-		return data.toArray();
-
+	@DataProvider(parallel = true)
+	public static Iterator<Object[]> customerDataProvider(Method method) {
+		return CustomerGenerator.rows(method.getName(), "grocery_crud/001_add_customer.yaml");
 	}
 
 }